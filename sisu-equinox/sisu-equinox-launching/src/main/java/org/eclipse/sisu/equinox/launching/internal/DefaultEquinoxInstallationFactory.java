@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -21,6 +21,8 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.LegacySupport;
 import org.codehaus.plexus.PlexusContainer;
 import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.archiver.UnArchiver;
@@ -38,13 +40,40 @@ import org.eclipse.tycho.ArtifactDescriptor;
 import org.eclipse.tycho.ArtifactKey;
 import org.eclipse.tycho.core.TychoConstants;
 import org.eclipse.tycho.core.osgitools.BundleReader;
+import org.eclipse.tycho.core.osgitools.DefaultBundleReader;
 import org.eclipse.tycho.core.osgitools.OsgiManifest;
+import org.eclipse.tycho.locking.facade.FileLockService;
 
 @Component(role = EquinoxInstallationFactory.class)
 public class DefaultEquinoxInstallationFactory implements EquinoxInstallationFactory {
+    /**
+     * If <code>true</code>, bundles are unpacked into a shared cache in the local repository instead
+     * of into each installation. Entries of the cache may be removed or unpacked again while they
+     * are in use, so this must not be enabled if other builds using the same local repository run
+     * test runtimes at the same time.
+     */
+    public static final String SHARED_EXPLODED_BUNDLES_PROPERTY = "tycho.equinox.sharedExplodedBundles";
+
+    /**
+     * Maximum number of bundles kept in the shared cache of unpacked bundles.
+     */
+    public static final String SHARED_EXPLODED_BUNDLES_MAX_ENTRIES_PROPERTY = "tycho.equinox.sharedExplodedBundles.maxEntries";
+
+    private static final int DEFAULT_SHARED_EXPLODED_BUNDLES_MAX_ENTRIES = 100;
+
+    private static final String EXPLODED_BUNDLES_PATH = DefaultBundleReader.CACHE_PATH + "/exploded";
+
     @Requirement
     private PlexusContainer plexus;
 
+    @Requirement
+    private LegacySupport buildContext;
+
+    @Requirement
+    private FileLockService fileLockService;
+
+    private ExplodedBundleCache explodedBundleCache;
+
     @Requirement
     private BundleReader manifestReader;
 
@@ -66,14 +95,19 @@ public class DefaultEquinoxInstallationFactory implements EquinoxInstallationFac
             boolean directoryShape = bundlesToExplode.contains(key.getId()) || mf.isDirectoryShape();
 
             if (!file.isDirectory() && directoryShape) {
-                String filename = key.getId() + "_" + key.getVersion();
-                File unpacked = new File(location, "plugins/" + filename);
+                ExplodedBundleCache cache = getExplodedBundleCache();
+                if (cache != null) {
+                    effective.put(key, explode(cache, file));
+                } else {
+                    String filename = key.getId() + "_" + key.getVersion();
+                    File unpacked = new File(location, "plugins/" + filename);
 
-                unpacked.mkdirs();
+                    unpacked.mkdirs();
 
-                unpack(file, unpacked);
+                    unpack(file, unpacked);
 
-                effective.put(key, unpacked);
+                    effective.put(key, unpacked);
+                }
             } else {
                 effective.put(key, file);
             }
@@ -139,6 +173,42 @@ public class DefaultEquinoxInstallationFactory implements EquinoxInstallationFac
         }
     }
 
+    private synchronized ExplodedBundleCache getExplodedBundleCache() {
+        MavenSession session = buildContext.getSession();
+        if (session == null
+                || !"true".equals(session.getUserProperties().getProperty(SHARED_EXPLODED_BUNDLES_PROPERTY))) {
+            return null;
+        }
+        if (explodedBundleCache == null) {
+            File cacheDir = new File(session.getLocalRepository().getBasedir(), EXPLODED_BUNDLES_PATH);
+            int maxEntries = DEFAULT_SHARED_EXPLODED_BUNDLES_MAX_ENTRIES;
+            String maxEntriesValue = session.getUserProperties().getProperty(
+                    SHARED_EXPLODED_BUNDLES_MAX_ENTRIES_PROPERTY);
+            if (maxEntriesValue != null) {
+                try {
+                    maxEntries = Integer.parseInt(maxEntriesValue.trim());
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring invalid value of " + SHARED_EXPLODED_BUNDLES_MAX_ENTRIES_PROPERTY + ": "
+                            + maxEntriesValue);
+                }
+            }
+            explodedBundleCache = new ExplodedBundleCache(cacheDir, maxEntries, fileLockService);
+        }
+        return explodedBundleCache;
+    }
+
+    private File explode(ExplodedBundleCache cache, File bundle) {
+        try {
+            return cache.getExplodedBundle(bundle, new ExplodedBundleCache.Unpacker() {
+                public void unpack(File source, File destination) {
+                    DefaultEquinoxInstallationFactory.this.unpack(source, destination);
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to unpack jar " + bundle, e);
+        }
+    }
+
     protected void unpack(File source, File destination) {
         UnArchiver unzip;
         try {
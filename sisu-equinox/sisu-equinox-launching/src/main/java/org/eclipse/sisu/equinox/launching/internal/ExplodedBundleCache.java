@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.equinox.launching.internal;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.tycho.core.utils.DigestUtils;
+import org.eclipse.tycho.locking.facade.FileLockService;
+import org.eclipse.tycho.locking.facade.FileLocker;
+
+/**
+ * Shared cache of unpacked bundle jars, so that bundles which need to be directory-shaped in test
+ * runtimes are unpacked only once instead of once per test runtime. Cache entries are keyed by the
+ * SHA-1 checksum of the jar. The number of entries is limited; the least recently used entries are
+ * removed first.
+ * <p>
+ * Each complete entry has a marker file next to its directory, which holds a fingerprint of the
+ * unpacked files. An entry that was modified, e.g. by a test runtime writing into its bundle
+ * directory, no longer matches its fingerprint and is unpacked again.
+ * <p>
+ * Entries used by this instance are never removed, but entries may be removed or unpacked again
+ * while test runtimes of other processes use them. The cache is therefore only enabled on request.
+ */
+class ExplodedBundleCache {
+
+    interface Unpacker {
+        void unpack(File source, File destination);
+    }
+
+    private static final String COMPLETE_MARKER_SUFFIX = ".complete";
+
+    private static final long LOCK_TIMEOUT = 5 * 60 * 1000L;
+
+    private final File cacheDir;
+
+    private final int maxEntries;
+
+    private final FileLockService fileLockService;
+
+    /** checksums by file, for files with unchanged size and modification time */
+    private final Map<File, Checksum> checksums = new HashMap<File, Checksum>();
+
+    /** entries returned by this instance, which are not removed to limit the cache size */
+    private final Set<String> usedEntries = new HashSet<String>();
+
+    ExplodedBundleCache(File cacheDir, int maxEntries, FileLockService fileLockService) {
+        this.cacheDir = cacheDir;
+        this.maxEntries = maxEntries;
+        this.fileLockService = fileLockService;
+    }
+
+    /**
+     * Returns the directory with the unpacked content of the given jar, and unpacks the jar if this
+     * hasn't been done yet.
+     */
+    File getExplodedBundle(File jar, Unpacker unpacker) throws IOException {
+        String entry = getChecksum(jar);
+        synchronized (usedEntries) {
+            usedEntries.add(entry);
+        }
+        File explodedBundle = new File(cacheDir, entry);
+        File completeMarker = getCompleteMarker(entry);
+
+        boolean added = false;
+        FileLocker locker = fileLockService.getFileLocker(explodedBundle);
+        locker.lock(LOCK_TIMEOUT);
+        try {
+            if (!isComplete(explodedBundle, completeMarker)) {
+                // remove leftovers of an interrupted build or of a modified entry
+                completeMarker.delete();
+                FileUtils.deleteDirectory(explodedBundle);
+                unpacker.unpack(jar, explodedBundle);
+                FileUtils.fileWrite(completeMarker.getAbsolutePath(), "UTF-8", getFingerprint(explodedBundle));
+                added = true;
+            } else {
+                // the modification time of the marker is the time of the last use
+                completeMarker.setLastModified(System.currentTimeMillis());
+            }
+        } finally {
+            locker.release();
+        }
+        if (added) {
+            removeLeastRecentlyUsedEntries();
+        }
+        return explodedBundle;
+    }
+
+    private File getCompleteMarker(String entry) {
+        return new File(cacheDir, entry + COMPLETE_MARKER_SUFFIX);
+    }
+
+    private static boolean isComplete(File explodedBundle, File completeMarker) throws IOException {
+        if (!completeMarker.isFile() || !explodedBundle.isDirectory()) {
+            return false;
+        }
+        return FileUtils.fileRead(completeMarker, "UTF-8").equals(getFingerprint(explodedBundle));
+    }
+
+    /**
+     * Returns a string which changes if files are added, removed or modified in the given directory.
+     */
+    static String getFingerprint(File dir) {
+        long[] filesSizeAndModified = new long[3];
+        addToFingerprint(dir, filesSizeAndModified);
+        return filesSizeAndModified[0] + " " + filesSizeAndModified[1] + " " + filesSizeAndModified[2];
+    }
+
+    private static void addToFingerprint(File dir, long[] filesSizeAndModified) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            filesSizeAndModified[0]++;
+            filesSizeAndModified[2] = Math.max(filesSizeAndModified[2], file.lastModified());
+            if (file.isDirectory()) {
+                addToFingerprint(file, filesSizeAndModified);
+            } else {
+                filesSizeAndModified[1] += file.length();
+            }
+        }
+    }
+
+    private void removeLeastRecentlyUsedEntries() throws IOException {
+        File[] completeMarkers = cacheDir.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.getName().endsWith(COMPLETE_MARKER_SUFFIX);
+            }
+        });
+        if (completeMarkers == null || completeMarkers.length <= maxEntries) {
+            return;
+        }
+        Arrays.sort(completeMarkers, new Comparator<File>() {
+            public int compare(File left, File right) {
+                long leftModified = left.lastModified();
+                long rightModified = right.lastModified();
+                return leftModified < rightModified ? -1 : (leftModified == rightModified ? 0 : 1);
+            }
+        });
+        int entriesToRemove = completeMarkers.length - maxEntries;
+        for (int i = 0; i < completeMarkers.length && entriesToRemove > 0; i++) {
+            String markerName = completeMarkers[i].getName();
+            String entry = markerName.substring(0, markerName.length() - COMPLETE_MARKER_SUFFIX.length());
+            synchronized (usedEntries) {
+                if (usedEntries.contains(entry)) {
+                    continue;
+                }
+            }
+            File explodedBundle = new File(cacheDir, entry);
+            FileLocker locker = fileLockService.getFileLocker(explodedBundle);
+            if (locker.isLocked()) {
+                continue;
+            }
+            locker.lock(LOCK_TIMEOUT);
+            try {
+                completeMarkers[i].delete();
+                FileUtils.deleteDirectory(explodedBundle);
+            } finally {
+                locker.release();
+            }
+            entriesToRemove--;
+        }
+    }
+
+    private synchronized String getChecksum(File file) throws IOException {
+        Checksum checksum = checksums.get(file);
+        if (checksum == null || checksum.length != file.length() || checksum.lastModified != file.lastModified()) {
+            checksum = new Checksum(file.length(), file.lastModified(), DigestUtils.digest(DigestUtils.SHA1, file));
+            checksums.put(file, checksum);
+        }
+        return checksum.value;
+    }
+
+    private static class Checksum {
+        final long length;
+        final long lastModified;
+        final String value;
+
+        Checksum(long length, long lastModified, String value) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.equinox.launching.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.tycho.locking.facade.FileLockService;
+import org.eclipse.tycho.locking.facade.FileLocker;
+import org.eclipse.tycho.locking.facade.LockTimeoutException;
+
+public class ExplodedBundleCacheTest extends TestCase {
+
+    private File basedir;
+
+    private File cacheDir;
+
+    private CountingUnpacker unpacker;
+
+    @Override
+    protected void setUp() throws Exception {
+        basedir = new File("target/exploded-bundle-cache-test/" + getName()).getAbsoluteFile();
+        FileUtils.deleteDirectory(basedir);
+        basedir.mkdirs();
+        cacheDir = new File(basedir, "cache");
+        unpacker = new CountingUnpacker();
+    }
+
+    public void testBundleIsUnpackedOnce() throws Exception {
+        File jar = createJar("a.jar", "a");
+        ExplodedBundleCache cache = newCache(10);
+
+        File explodedBundle = cache.getExplodedBundle(jar, unpacker);
+        assertEquals(explodedBundle, newCache(10).getExplodedBundle(jar, unpacker));
+
+        assertEquals(1, unpacker.count);
+        assertEquals("a", FileUtils.fileRead(new File(explodedBundle, "content.txt")));
+    }
+
+    public void testCompleteMarkerIsNotBundleContent() throws Exception {
+        File explodedBundle = newCache(10).getExplodedBundle(createJar("a.jar", "a"), unpacker);
+
+        assertEquals(Arrays.asList("content.txt"), Arrays.asList(explodedBundle.list()));
+        assertTrue(new File(cacheDir, explodedBundle.getName() + ".complete").isFile());
+    }
+
+    public void testJarsWithSameContentShareEntry() throws Exception {
+        ExplodedBundleCache cache = newCache(10);
+
+        File explodedBundle = cache.getExplodedBundle(createJar("a.jar", "a"), unpacker);
+
+        assertEquals(explodedBundle, cache.getExplodedBundle(createJar("b.jar", "a"), unpacker));
+        assertFalse(explodedBundle.equals(cache.getExplodedBundle(createJar("c.jar", "c"), unpacker)));
+        assertEquals(2, unpacker.count);
+    }
+
+    public void testAddedFileCausesUnpackAgain() throws Exception {
+        File jar = createJar("a.jar", "a");
+        ExplodedBundleCache cache = newCache(10);
+        File explodedBundle = cache.getExplodedBundle(jar, unpacker);
+
+        // simulate a test runtime writing into its bundle directory
+        FileUtils.fileWrite(new File(explodedBundle, "written.txt").getAbsolutePath(), "written");
+        cache.getExplodedBundle(jar, unpacker);
+
+        assertEquals(2, unpacker.count);
+        assertFalse(new File(explodedBundle, "written.txt").exists());
+    }
+
+    public void testModifiedFileCausesUnpackAgain() throws Exception {
+        File jar = createJar("a.jar", "a");
+        ExplodedBundleCache cache = newCache(10);
+        File explodedBundle = cache.getExplodedBundle(jar, unpacker);
+
+        File content = new File(explodedBundle, "content.txt");
+        FileUtils.fileWrite(content.getAbsolutePath(), "modified");
+        cache.getExplodedBundle(jar, unpacker);
+
+        assertEquals(2, unpacker.count);
+        assertEquals("a", FileUtils.fileRead(content));
+    }
+
+    public void testIncompleteEntryIsUnpackedAgain() throws Exception {
+        File jar = createJar("a.jar", "a");
+        File explodedBundle = newCache(10).getExplodedBundle(jar, unpacker);
+
+        new File(cacheDir, explodedBundle.getName() + ".complete").delete();
+        newCache(10).getExplodedBundle(jar, unpacker);
+
+        assertEquals(2, unpacker.count);
+    }
+
+    public void testLeastRecentlyUsedEntriesAreRemoved() throws Exception {
+        File oldBundle = newCache(2).getExplodedBundle(createJar("a.jar", "a"), unpacker);
+        File recentBundle = newCache(2).getExplodedBundle(createJar("b.jar", "b"), unpacker);
+        new File(cacheDir, oldBundle.getName() + ".complete").setLastModified(System.currentTimeMillis() - 60000);
+
+        File newBundle = newCache(2).getExplodedBundle(createJar("c.jar", "c"), unpacker);
+
+        assertFalse(oldBundle.exists());
+        assertFalse(new File(cacheDir, oldBundle.getName() + ".complete").exists());
+        assertTrue(recentBundle.isDirectory());
+        assertTrue(newBundle.isDirectory());
+    }
+
+    public void testEntriesUsedInSameBuildAreNotRemoved() throws Exception {
+        ExplodedBundleCache cache = newCache(1);
+
+        File firstBundle = cache.getExplodedBundle(createJar("a.jar", "a"), unpacker);
+        File secondBundle = cache.getExplodedBundle(createJar("b.jar", "b"), unpacker);
+
+        assertTrue(firstBundle.isDirectory());
+        assertTrue(secondBundle.isDirectory());
+    }
+
+    private ExplodedBundleCache newCache(int maxEntries) {
+        return new ExplodedBundleCache(cacheDir, maxEntries, new NoopFileLockService());
+    }
+
+    private File createJar(String name, String content) throws IOException {
+        File jar = new File(basedir, name);
+        FileUtils.fileWrite(jar.getAbsolutePath(), content);
+        return jar;
+    }
+
+    /**
+     * Creates a file <tt>content.txt</tt> with the content of the source file.
+     */
+    private static class CountingUnpacker implements ExplodedBundleCache.Unpacker {
+        int count;
+
+        public void unpack(File source, File destination) {
+            count++;
+            destination.mkdirs();
+            try {
+                FileUtils.copyFile(source, new File(destination, "content.txt"));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static class NoopFileLockService implements FileLockService {
+        public FileLocker getFileLocker(File file) {
+            return new FileLocker() {
+                public void lock() throws LockTimeoutException {
+                }
+
+                public void lock(long timeout) throws LockTimeoutException {
+                }
+
+                public void release() {
+                }
+
+                public boolean isLocked() {
+                    return false;
+                }
+            };
+        }
+    }
+}
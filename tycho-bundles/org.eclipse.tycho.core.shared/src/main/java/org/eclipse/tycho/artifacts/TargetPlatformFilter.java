@@ -61,6 +61,12 @@ public final class TargetPlatformFilter {
         return actionPattern;
     }
 
+    @Override
+    public String toString() {
+        return "TargetPlatformFilter(scope=" + scopePattern + ", action=" + action + ", actionPattern="
+                + actionPattern + ")";
+    }
+
     public enum FilterAction {
         REMOVE_ALL, RESTRICT
     }
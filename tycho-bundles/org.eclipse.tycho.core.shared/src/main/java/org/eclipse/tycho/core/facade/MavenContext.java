@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011 SAP AG and others.
+ * Copyright (c) 2011, 2012 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,7 @@
 package org.eclipse.tycho.core.facade;
 
 import java.io.File;
+import java.util.Properties;
 
 /**
  * Makes maven information which is constant for the whole maven session available as a service to
@@ -24,4 +25,10 @@ public interface MavenContext {
 
     public boolean isOffline();
 
+    /**
+     * Returns the properties of the Maven session, i.e. the system properties overridden by the
+     * user properties specified on the command line.
+     */
+    public Properties getSessionProperties();
+
 }
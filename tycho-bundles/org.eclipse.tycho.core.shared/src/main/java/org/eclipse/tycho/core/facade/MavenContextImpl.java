@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011 SAP AG and others.
+ * Copyright (c) 2011, 2012 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,7 @@
 package org.eclipse.tycho.core.facade;
 
 import java.io.File;
+import java.util.Properties;
 
 
 public class MavenContextImpl implements MavenContext {
@@ -18,6 +19,7 @@ public class MavenContextImpl implements MavenContext {
     private File localRepositoryRoot;
     private MavenLogger mavenLogger;
     private boolean offline;
+    private Properties sessionProperties = new Properties();
 
     public void setOffline(boolean offline) {
         this.offline = offline;
@@ -27,6 +29,10 @@ public class MavenContextImpl implements MavenContext {
         this.localRepositoryRoot = localRepositoryRoot;
     }
 
+    public void setSessionProperties(Properties sessionProperties) {
+        this.sessionProperties = sessionProperties;
+    }
+
     public void setLogger(MavenLogger mavenLogger) {
         this.mavenLogger = mavenLogger;
     }
@@ -43,4 +49,8 @@ public class MavenContextImpl implements MavenContext {
         return offline;
     }
 
+    public Properties getSessionProperties() {
+        return sessionProperties;
+    }
+
 }
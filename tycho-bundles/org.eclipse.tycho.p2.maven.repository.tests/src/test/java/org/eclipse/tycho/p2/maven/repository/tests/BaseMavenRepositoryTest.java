@@ -52,7 +52,7 @@ public abstract class BaseMavenRepositoryTest {
         return FileBasedTychoRepositoryIndex.createMetadataIndex(location, new NoopFileLockService());
     }
 
-    private static class NoopFileLockService implements FileLockService {
+    protected static class NoopFileLockService implements FileLockService {
 
         /*
          * (non-Javadoc)
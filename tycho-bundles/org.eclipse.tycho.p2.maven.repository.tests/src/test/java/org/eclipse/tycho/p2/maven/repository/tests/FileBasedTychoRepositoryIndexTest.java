@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.p2.maven.repository.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FilenameFilter;
+
+import org.eclipse.tycho.p2.impl.repo.FileBasedTychoRepositoryIndex;
+import org.eclipse.tycho.p2.repository.GAV;
+import org.junit.Test;
+
+public class FileBasedTychoRepositoryIndexTest extends BaseMavenRepositoryTest {
+
+    private static final GAV GAV_1 = new GAV("group", "artifact1", "1.0.0");
+    private static final GAV GAV_2 = new GAV("group", "artifact2", "1.0.0");
+
+    @Test
+    public void testJournalModeDoesNotWriteIndexFileOnSave() throws Exception {
+        FileBasedTychoRepositoryIndex index = createJournaledIndex();
+        index.addGav(GAV_1);
+        index.save();
+
+        assertFalse(new File(baseDir, FileBasedTychoRepositoryIndex.METADATA_INDEX_RELPATH).exists());
+        assertEquals(1, listJournals().length);
+    }
+
+    @Test
+    public void testJournaledChangesAreVisibleToOtherInstances() throws Exception {
+        FileBasedTychoRepositoryIndex index = createJournaledIndex();
+        index.addGav(GAV_1);
+        index.addGav(GAV_2);
+        index.save();
+        index.removeGav(GAV_2);
+        index.save();
+
+        assertEquals(1, createMetadataIndex(baseDir).getProjectGAVs().size());
+        assertTrue(createMetadataIndex(baseDir).getProjectGAVs().contains(GAV_1));
+    }
+
+    @Test
+    public void testCompactWritesIndexFileAndDeletesJournal() throws Exception {
+        FileBasedTychoRepositoryIndex index = createJournaledIndex();
+        index.addGav(GAV_1);
+        index.save();
+        index.compact();
+
+        assertTrue(new File(baseDir, FileBasedTychoRepositoryIndex.METADATA_INDEX_RELPATH).isFile());
+        assertEquals(0, listJournals().length);
+        assertTrue(createMetadataIndex(baseDir).getProjectGAVs().contains(GAV_1));
+    }
+
+    private FileBasedTychoRepositoryIndex createJournaledIndex() {
+        return FileBasedTychoRepositoryIndex.createMetadataIndex(baseDir, new NoopFileLockService(), true);
+    }
+
+    private File[] listJournals() {
+        return new File(baseDir, ".meta").listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".journal");
+            }
+        });
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,15 +14,20 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
 import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.repository.artifact.ArtifactKeyQuery;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRequest;
@@ -171,6 +176,42 @@ public class LocalArtifactRepositoryTest extends BaseMavenRepositoryTest {
         os.close();
     }
 
+    @Test
+    public void testArtifactIsAddedWhenStreamIsClosed() throws Exception {
+        LocalArtifactRepository repo = new LocalArtifactRepository(localRepoIndices);
+        ArtifactDescriptor desc = newBundleArtifactDescriptor(false);
+
+        OutputStream os = repo.getOutputStream(desc);
+        os.write(new byte[] { 111 });
+
+        // concurrent readers must not see the partially written artifact
+        Assert.assertFalse(repo.contains(desc.getArtifactKey()));
+
+        os.close();
+        Assert.assertTrue(repo.contains(desc.getArtifactKey()));
+        Assert.assertEquals(1, repo.getArtifactFile(desc).length());
+    }
+
+    @Test
+    public void testFailedWriteIsDiscarded() throws Exception {
+        LocalArtifactRepository repo = new LocalArtifactRepository(localRepoIndices);
+        ArtifactDescriptor desc = newBundleArtifactDescriptor(false);
+
+        OutputStream os = repo.getOutputStream(desc);
+        os.write(new byte[] { 111 });
+        ((IStateful) os).setStatus(new Status(IStatus.ERROR, Activator.ID, "Download failed"));
+        os.close();
+
+        Assert.assertFalse(repo.contains(desc.getArtifactKey()));
+        File artifactFile = repo.getArtifactFile(desc);
+        Assert.assertFalse(artifactFile.exists());
+        Assert.assertEquals(0, artifactFile.getParentFile().list().length);
+
+        // a retry succeeds
+        writeDummyArtifact(repo, desc);
+        Assert.assertTrue(repo.contains(desc.getArtifactKey()));
+    }
+
     @Test
     public void addMavenArtifact() throws Exception {
         LocalArtifactRepository repo = new LocalArtifactRepository(localRepoIndices);
@@ -263,4 +304,39 @@ public class LocalArtifactRepositoryTest extends BaseMavenRepositoryTest {
         Assert.assertArrayEquals(content, destination.toByteArray());
     }
 
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        final LocalArtifactRepository repo = new LocalArtifactRepository(localRepoIndices);
+        final int artifactsPerThread = 50;
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int thread = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < artifactsPerThread; j++) {
+                            ArtifactKey key = new ArtifactKey(PublisherHelper.OSGI_BUNDLE_CLASSIFIER,
+                                    "org.eclipse.tycho.test.concurrent" + thread, Version.createOSGi(1, 0, j));
+                            writeDummyArtifact(repo, new ArtifactDescriptor(key));
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        repo.save();
+
+        Assert.assertEquals(Collections.emptyList(), failures);
+        Assert.assertEquals(threads.length * artifactsPerThread, repo.query(ArtifactKeyQuery.ALL_KEYS, null)
+                .toUnmodifiableSet().size());
+    }
+
 }
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.p2.maven.repository.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.tycho.p2.maven.repository.xmlio.MetadataIO;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetadataIOTest {
+
+    private static final File CONTENT_FILE = new File("resources/repositories/module/target/p2content.xml");
+
+    @Test
+    public void testReadUnits() throws Exception {
+        Set<IInstallableUnit> units = new MetadataIO().readXML(new FileInputStream(CONTENT_FILE));
+
+        Assert.assertEquals(2, units.size());
+        Assert.assertEquals("bundle", units.iterator().next().getId());
+    }
+
+    @Test
+    public void testWriteAndReadAgain() throws Exception {
+        Set<IInstallableUnit> units = new MetadataIO().readXML(new FileInputStream(CONTENT_FILE));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MetadataIO().writeXML(units, out);
+        Set<IInstallableUnit> result = new MetadataIO().readXML(new ByteArrayInputStream(out.toByteArray()));
+
+        Assert.assertEquals(units, result);
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        final MetadataIO io = new MetadataIO();
+        Set<IInstallableUnit> expected = io.readXML(new FileInputStream(CONTENT_FILE));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Set<IInstallableUnit>>> futures = new ArrayList<Future<Set<IInstallableUnit>>>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(new Callable<Set<IInstallableUnit>>() {
+                    public Set<IInstallableUnit> call() throws IOException {
+                        return io.readXML(new FileInputStream(CONTENT_FILE));
+                    }
+                }));
+            }
+            for (Future<Set<IInstallableUnit>> future : futures) {
+                Assert.assertEquals(expected, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInvalidContent() throws Exception {
+        new MetadataIO().readXML(new ByteArrayInputStream("<units size='1'><unit".getBytes("UTF-8")));
+    }
+}
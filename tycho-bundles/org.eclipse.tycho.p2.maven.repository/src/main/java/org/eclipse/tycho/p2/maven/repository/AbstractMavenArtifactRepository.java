@@ -17,8 +17,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -43,7 +45,8 @@ import org.eclipse.tycho.p2.repository.RepositoryLayoutHelper;
 import org.eclipse.tycho.p2.repository.RepositoryReader;
 
 /**
- * Base class for p2 artifact repositories with GAV-based artifact storage.
+ * Base class for p2 artifact repositories with GAV-based artifact storage. The artifact descriptors
+ * are guarded by the repository instance, so that artifacts can be added concurrently.
  */
 public abstract class AbstractMavenArtifactRepository extends AbstractArtifactRepository implements
         IFileArtifactRepository {
@@ -65,21 +68,21 @@ public abstract class AbstractMavenArtifactRepository extends AbstractArtifactRe
     }
 
     @Override
-    public boolean contains(IArtifactDescriptor descriptor) {
+    public synchronized boolean contains(IArtifactDescriptor descriptor) {
         if (descriptor == null)
             throw new NullPointerException();
         return descriptors.contains(descriptor);
     }
 
     @Override
-    public boolean contains(IArtifactKey key) {
+    public synchronized boolean contains(IArtifactKey key) {
         if (key == null)
             throw new NullPointerException();
         return descriptorsMap.containsKey(key);
     }
 
     @Override
-    public IArtifactDescriptor[] getArtifactDescriptors(IArtifactKey key) {
+    public synchronized IArtifactDescriptor[] getArtifactDescriptors(IArtifactKey key) {
         Set<IArtifactDescriptor> descriptors = descriptorsMap.get(key);
         if (descriptors == null) {
             return ARTIFACT_DESCRIPTOR_ARRAY;
@@ -103,7 +106,7 @@ public abstract class AbstractMavenArtifactRepository extends AbstractArtifactRe
     }
 
     @Override
-    public void addDescriptor(IArtifactDescriptor descriptor) {
+    public synchronized void addDescriptor(IArtifactDescriptor descriptor) {
         super.addDescriptor(descriptor);
         internalAddDescriptor(descriptor);
         descriptorsChanged();
@@ -112,7 +115,7 @@ public abstract class AbstractMavenArtifactRepository extends AbstractArtifactRe
     /**
      * Adds a descriptor without triggering {@link #descriptorsChanged()}.
      */
-    protected final void internalAddDescriptor(IArtifactDescriptor descriptor) {
+    protected final synchronized void internalAddDescriptor(IArtifactDescriptor descriptor) {
         descriptors.add(descriptor);
 
         IArtifactKey key = descriptor.getArtifactKey();
@@ -139,7 +142,7 @@ public abstract class AbstractMavenArtifactRepository extends AbstractArtifactRe
     }
 
     @Override
-    public void addDescriptors(IArtifactDescriptor[] descriptors) {
+    public synchronized void addDescriptors(IArtifactDescriptor[] descriptors) {
         super.addDescriptors(descriptors);
 
         for (IArtifactDescriptor descriptor : descriptors) {
@@ -159,13 +162,21 @@ public abstract class AbstractMavenArtifactRepository extends AbstractArtifactRe
     }
 
     public IQueryResult<IArtifactKey> query(IQuery<IArtifactKey> query, IProgressMonitor monitor) {
-        return query.perform(descriptorsMap.keySet().iterator());
+        List<IArtifactKey> keys;
+        synchronized (this) {
+            keys = new ArrayList<IArtifactKey>(descriptorsMap.keySet());
+        }
+        return query.perform(keys.iterator());
     }
 
     public IQueryable<IArtifactDescriptor> descriptorQueryable() {
         return new IQueryable<IArtifactDescriptor>() {
             public IQueryResult<IArtifactDescriptor> query(IQuery<IArtifactDescriptor> query, IProgressMonitor monitor) {
-                return query.perform(descriptors.iterator());
+                List<IArtifactDescriptor> snapshot;
+                synchronized (AbstractMavenArtifactRepository.this) {
+                    snapshot = new ArrayList<IArtifactDescriptor>(descriptors);
+                }
+                return query.perform(snapshot.iterator());
             }
         };
     }
@@ -220,7 +231,7 @@ public abstract class AbstractMavenArtifactRepository extends AbstractArtifactRe
         return Status.OK_STATUS;
     }
 
-    public File getArtifactFile(IArtifactKey key) {
+    public synchronized File getArtifactFile(IArtifactKey key) {
         Set<IArtifactDescriptor> descriptors = descriptorsMap.get(key);
         if (descriptors == null || descriptors.isEmpty())
             return null;
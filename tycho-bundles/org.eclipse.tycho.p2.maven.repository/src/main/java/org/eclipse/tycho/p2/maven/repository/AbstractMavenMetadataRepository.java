@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,12 +14,15 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
@@ -33,6 +36,7 @@ import org.eclipse.tycho.p2.repository.GAV;
 import org.eclipse.tycho.p2.repository.RepositoryLayoutHelper;
 import org.eclipse.tycho.p2.repository.RepositoryReader;
 import org.eclipse.tycho.p2.repository.TychoRepositoryIndex;
+import org.eclipse.tycho.p2.util.WorkerPool;
 
 public abstract class AbstractMavenMetadataRepository extends AbstractMetadataRepository {
 
@@ -64,33 +68,50 @@ public abstract class AbstractMavenMetadataRepository extends AbstractMetadataRe
     }
 
     protected void load() {
-        MetadataIO io = new MetadataIO();
-
+        List<GAV> gavs = new ArrayList<GAV>();
         for (GAV gav : metadataIndex.getProjectGAVs()) {
-            try {
-                File localArtifactFileLocation = contentLocator.getLocalArtifactLocation(gav,
-                        RepositoryLayoutHelper.CLASSIFIER_P2_METADATA, RepositoryLayoutHelper.EXTENSION_P2_METADATA);
-                if (!localArtifactFileLocation.exists()) {
-                    // if files have been manually removed from the repository, simply remove them from the index (bug 351080)
-                    metadataIndex.removeGav(gav);
-                } else {
-                    InputStream is = contentLocator.getContents(gav, RepositoryLayoutHelper.CLASSIFIER_P2_METADATA,
-                            RepositoryLayoutHelper.EXTENSION_P2_METADATA);
-                    try {
-                        Set<IInstallableUnit> gavUnits = io.readXML(is);
+            File localArtifactFileLocation = contentLocator.getLocalArtifactLocation(gav,
+                    RepositoryLayoutHelper.CLASSIFIER_P2_METADATA, RepositoryLayoutHelper.EXTENSION_P2_METADATA);
+            if (!localArtifactFileLocation.exists()) {
+                // if files have been manually removed from the repository, simply remove them from the index (bug 351080)
+                metadataIndex.removeGav(gav);
+            } else {
+                gavs.add(gav);
+            }
+        }
+
+        // the metadata files are small and many, so they are parsed concurrently; the units are
+        // added in the order of the index
+        List<Set<IInstallableUnit>> results = readUnitsConcurrently(gavs);
+        for (int i = 0; i < gavs.size(); i++) {
+            Set<IInstallableUnit> gavUnits = results.get(i);
+            unitsMap.put(gavs.get(i), gavUnits);
+            units.addAll(gavUnits);
+        }
+    }
 
-                        unitsMap.put(gav, gavUnits);
-                        units.addAll(gavUnits);
-                    } finally {
-                        is.close();
+    private List<Set<IInstallableUnit>> readUnitsConcurrently(List<GAV> gavs) {
+        final MetadataIO io = new MetadataIO();
+        List<Callable<Set<IInstallableUnit>>> tasks = new ArrayList<Callable<Set<IInstallableUnit>>>(gavs.size());
+        for (final GAV gav : gavs) {
+            tasks.add(new Callable<Set<IInstallableUnit>>() {
+                public Set<IInstallableUnit> call() {
+                    try {
+                        InputStream is = contentLocator.getContents(gav, RepositoryLayoutHelper.CLASSIFIER_P2_METADATA,
+                                RepositoryLayoutHelper.EXTENSION_P2_METADATA);
+                        try {
+                            return io.readXML(is);
+                        } finally {
+                            is.close();
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException("Could not read the p2 metadata of " + gav, e);
                     }
                 }
-            } catch (IOException e) {
-                // TODO throw properly typed exception if repository cannot be loaded
-                e.printStackTrace();
-            }
-
+            });
         }
+        return WorkerPool.invokeAllUnchecked(tasks, Runtime.getRuntime().availableProcessors(),
+                "tycho-metadata-reader");
     }
 
     @Override
@@ -12,7 +12,6 @@ package org.eclipse.tycho.p2.maven.repository;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -20,6 +19,9 @@ import java.io.OutputStream;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
@@ -33,6 +35,7 @@ import org.eclipse.tycho.p2.repository.RepositoryLayoutHelper;
 import org.eclipse.tycho.p2.repository.RepositoryReader;
 import org.eclipse.tycho.p2.repository.TychoRepositoryIndex;
 
+@SuppressWarnings("restriction")
 public class LocalArtifactRepository extends AbstractMavenArtifactRepository {
 
     private final Set<IArtifactKey> changedDescriptors = new HashSet<IArtifactKey>();
@@ -89,7 +92,7 @@ public class LocalArtifactRepository extends AbstractMavenArtifactRepository {
         }
     }
 
-    private void saveMaven() {
+    private synchronized void saveMaven() {
         File location = getBasedir();
 
         TychoRepositoryIndex index = localRepoIndices.getArtifactsIndex();
@@ -146,7 +149,7 @@ public class LocalArtifactRepository extends AbstractMavenArtifactRepository {
     }
 
     @Override
-    public synchronized OutputStream getOutputStream(IArtifactDescriptor descriptor) throws ProvisionException {
+    public OutputStream getOutputStream(IArtifactDescriptor descriptor) throws ProvisionException {
         GAV gav = RepositoryLayoutHelper.getGAV(descriptor.getProperties());
 
         if (gav == null) {
@@ -157,26 +160,117 @@ public class LocalArtifactRepository extends AbstractMavenArtifactRepository {
         File file = new File(basedir, RepositoryLayoutHelper.getRelativePath(gav, null, null));
         file.getParentFile().mkdirs();
 
-        // TODO ideally, repository index should be updated after artifact has been written to the file
-
         ArtifactDescriptor newDescriptor = new ArtifactDescriptor(descriptor);
         newDescriptor.setRepository(this);
-        descriptors.add(newDescriptor);
 
-        IArtifactKey key = newDescriptor.getArtifactKey();
+        try {
+            return new ArtifactOutputStream(newDescriptor, file);
+        } catch (IOException e) {
+            throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, "Could not create artifact file "
+                    + file, e));
+        }
+    }
+
+    /**
+     * Adds the descriptor of an artifact which has been completely written to the given file.
+     */
+    synchronized void addWrittenDescriptor(ArtifactDescriptor descriptor) {
+        descriptors.add(descriptor);
+
+        IArtifactKey key = descriptor.getArtifactKey();
         Set<IArtifactDescriptor> keyDescriptors = descriptorsMap.get(key);
         if (keyDescriptors == null) {
             keyDescriptors = new HashSet<IArtifactDescriptor>();
             descriptorsMap.put(key, keyDescriptors);
         }
-        keyDescriptors.add(newDescriptor);
+        keyDescriptors.add(descriptor);
 
         changedDescriptors.add(key);
+    }
 
-        try {
-            return new FileOutputStream(file);
-        } catch (FileNotFoundException e) {
-            throw new ProvisionException("Could not create artifact file", e);
+    /**
+     * Stream for writing an artifact into the local repository. The content is written to a
+     * temporary file, which is only moved to the artifact location, and registered in the
+     * repository, if the stream is closed without errors. This ensures that concurrent readers
+     * never see partially written artifacts.
+     */
+    private class ArtifactOutputStream extends OutputStream implements IStateful {
+        private final ArtifactDescriptor descriptor;
+        private final File file;
+        private final File tempFile;
+        private final OutputStream out;
+        private IStatus status = Status.OK_STATUS;
+        private boolean closed;
+
+        ArtifactOutputStream(ArtifactDescriptor descriptor, File file) throws IOException {
+            this.descriptor = descriptor;
+            this.file = file;
+            this.tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+            this.out = new BufferedOutputStream(new FileOutputStream(tempFile));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                out.write(b);
+            } catch (IOException e) {
+                setStatus(errorStatus(e));
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                setStatus(errorStatus(e));
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                setStatus(errorStatus(e));
+            }
+
+            if (status.matches(IStatus.ERROR | IStatus.CANCEL)) {
+                // the download failed - discard the partial file
+                tempFile.delete();
+                return;
+            }
+            if (!tempFile.renameTo(file)) {
+                file.delete();
+                if (!tempFile.renameTo(file)) {
+                    tempFile.delete();
+                    throw new IOException("Could not move artifact to " + file);
+                }
+            }
+            addWrittenDescriptor(descriptor);
+        }
+
+        public IStatus getStatus() {
+            return status;
+        }
+
+        public void setStatus(IStatus status) {
+            this.status = status == null ? Status.OK_STATUS : status;
+        }
+
+        private IStatus errorStatus(IOException e) {
+            return new Status(IStatus.ERROR, Activator.ID, "Could not write artifact file " + file, e);
         }
     }
 
@@ -196,14 +290,14 @@ public class LocalArtifactRepository extends AbstractMavenArtifactRepository {
     }
 
     @Override
-    public void addDescriptor(IArtifactDescriptor descriptor) {
+    public synchronized void addDescriptor(IArtifactDescriptor descriptor) {
         super.addDescriptor(descriptor);
 
         changedDescriptors.add(descriptor.getArtifactKey());
     }
 
     @Override
-    public void removeDescriptor(IArtifactDescriptor descriptor) {
+    public synchronized void removeDescriptor(IArtifactDescriptor descriptor) {
         super.removeDescriptor(descriptor);
 
         IArtifactKey key = descriptor.getArtifactKey();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,17 +13,26 @@ package org.eclipse.tycho.p2.maven.repository;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.IQuery;
+import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.tycho.p2.maven.repository.xmlio.MetadataIO;
 import org.eclipse.tycho.p2.repository.GAV;
 import org.eclipse.tycho.p2.repository.RepositoryLayoutHelper;
 import org.eclipse.tycho.p2.repository.RepositoryReader;
 import org.eclipse.tycho.p2.repository.TychoRepositoryIndex;
 
+/**
+ * The p2 metadata in the local Maven repository. Instances are shared by all projects of a reactor,
+ * which may be resolved concurrently, so all access to the units is synchronized.
+ */
 public class LocalMetadataRepository extends AbstractMavenMetadataRepository {
 
     private Set<GAV> changedGAVs = new LinkedHashSet<GAV>();
@@ -49,7 +58,7 @@ public class LocalMetadataRepository extends AbstractMavenMetadataRepository {
     }
 
     @Override
-    public void addInstallableUnits(Collection<IInstallableUnit> newUnits) {
+    public synchronized void addInstallableUnits(Collection<IInstallableUnit> newUnits) {
         for (IInstallableUnit unit : newUnits) {
             GAV gav = RepositoryLayoutHelper.getGAV(unit.getProperties());
 
@@ -59,7 +68,7 @@ public class LocalMetadataRepository extends AbstractMavenMetadataRepository {
         save();
     }
 
-    public void addInstallableUnit(IInstallableUnit unit, GAV gav) {
+    public synchronized void addInstallableUnit(IInstallableUnit unit, GAV gav) {
         this.units.add(unit);
 
         Set<IInstallableUnit> gavUnits = unitsMap.get(gav);
@@ -72,7 +81,17 @@ public class LocalMetadataRepository extends AbstractMavenMetadataRepository {
         changedGAVs.add(gav);
     }
 
-    public void save() {
+    @Override
+    public IQueryResult<IInstallableUnit> query(IQuery<IInstallableUnit> query, IProgressMonitor monitor) {
+        // the query result may be evaluated lazily, so query a copy
+        List<IInstallableUnit> unitsCopy;
+        synchronized (this) {
+            unitsCopy = new ArrayList<IInstallableUnit>(units);
+        }
+        return query.perform(unitsCopy.iterator());
+    }
+
+    public synchronized void save() {
         File basedir = new File(getLocation());
 
         MetadataIO io = new MetadataIO();
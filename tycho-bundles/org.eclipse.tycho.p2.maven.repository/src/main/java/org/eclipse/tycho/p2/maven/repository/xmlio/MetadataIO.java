@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -18,11 +18,15 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
@@ -34,19 +38,28 @@ import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.metadata.MetadataFactory;
 import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
 import org.eclipse.tycho.p2.maven.repository.Activator;
+import org.osgi.framework.BundleContext;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 @SuppressWarnings("restriction")
 public class MetadataIO {
+
+    /**
+     * Parsers which are not in use. Creating the underlying SAX parser is expensive compared to
+     * parsing the typical small p2content.xml file, so parsers are reused. The pool grows to the
+     * number of concurrent readers. Parsers created for another bundle context are discarded.
+     */
+    private static final Queue<Parser> idleParsers = new ConcurrentLinkedQueue<Parser>();
+
     private static class Writer extends MetadataWriter {
 
         public Writer(OutputStream output) throws UnsupportedEncodingException {
             super(output, null);
         }
 
-        public void write(Set<IInstallableUnit> units) {
+        public void write(Collection<IInstallableUnit> units) {
             start(INSTALLABLE_UNITS_ELEMENT);
 
             attribute(COLLECTION_SIZE_ATTRIBUTE, units.size());
@@ -62,10 +75,11 @@ public class MetadataIO {
 
     private static class Parser extends MetadataParser {
 
-        private List<InstallableUnitDescription> units;
+        final BundleContext bundleContext;
 
-        public Parser() {
-            super(Activator.getContext(), Activator.ID);
+        public Parser(BundleContext bundleContext) {
+            super(bundleContext, Activator.ID);
+            this.bundleContext = bundleContext;
         }
 
         @Override
@@ -80,19 +94,31 @@ public class MetadataIO {
             return null;
         }
 
-        public synchronized void parse(InputStream stream, IProgressMonitor monitor) throws IOException {
+        /**
+         * Parses the given stream and adds each installable unit to the result as soon as its
+         * element is complete. A parser instance must not be used by several threads concurrently.
+         */
+        public void parse(InputStream stream, Set<IInstallableUnit> result, IProgressMonitor monitor)
+                throws IOException {
             this.status = null;
             setProgressMonitor(monitor);
             monitor.beginTask(Messages.repo_loading, IProgressMonitor.UNKNOWN);
             try {
-                // TODO: currently not caching the parser since we make no assumptions
-                // or restrictions on concurrent parsing
-                getParser();
-                InstallableUnitsHandler repositoryHandler = new InstallableUnitsHandler();
+                if (xmlReader == null) {
+                    if (bundleContext == null) {
+                        // outside of OSGi, there is no SAX parser factory service
+                        SAXParserFactory factory = SAXParserFactory.newInstance();
+                        factory.setNamespaceAware(true);
+                        xmlReader = factory.newSAXParser().getXMLReader();
+                    } else {
+                        getParser();
+                    }
+                }
+                InstallableUnitsHandler repositoryHandler = new InstallableUnitsHandler(result);
                 xmlReader.setContentHandler(new RepositoryDocHandler(INSTALLABLE_UNITS_ELEMENT, repositoryHandler));
                 xmlReader.parse(new InputSource(stream));
-                if (isValidXML()) {
-                    units = repositoryHandler.getUnits();
+                if (!isValidXML()) {
+                    throw new IOException(status.getMessage());
                 }
             } catch (SAXException e) {
                 if (!(e.getException() instanceof OperationCanceledException))
@@ -122,9 +148,19 @@ public class MetadataIO {
             }
         }
 
+        /**
+         * Creates each completed unit when the next unit starts or the root element ends, so that at
+         * most one unit description is held at a time.
+         */
         private final class InstallableUnitsHandler extends RootHandler {
 
-            private List<InstallableUnitDescription> units = new ArrayList<InstallableUnitDescription>();
+            private final Set<IInstallableUnit> result;
+
+            private final List<InstallableUnitDescription> units = new ArrayList<InstallableUnitDescription>(1);
+
+            public InstallableUnitsHandler(Set<IInstallableUnit> result) {
+                this.result = result;
+            }
 
             @Override
             protected void handleRootAttributes(Attributes attributes) {
@@ -132,44 +168,55 @@ public class MetadataIO {
 
             }
 
-            public List<InstallableUnitDescription> getUnits() {
-                return units;
-            }
-
             @Override
             public void startElement(String name, Attributes attributes) throws SAXException {
                 if (name.equals(INSTALLABLE_UNIT_ELEMENT)) {
+                    passCompletedUnits();
                     new InstallableUnitHandler(this, attributes, units);
                 } else {
                     invalidElement(name, attributes);
                 }
             }
-        }
 
-        public List<InstallableUnitDescription> getUnits() {
-            return units;
+            @Override
+            protected void finished() {
+                passCompletedUnits();
+            }
+
+            private void passCompletedUnits() {
+                for (InstallableUnitDescription description : units) {
+                    result.add(MetadataFactory.createInstallableUnit(description));
+                }
+                units.clear();
+            }
         }
     }
 
+    /**
+     * Reads the installable units from the given stream. This method may be called from several
+     * threads concurrently. The stream is closed by this method.
+     */
     public Set<IInstallableUnit> readXML(InputStream is) throws IOException {
-        Parser parser = new Parser();
-
-        parser.parse(is, new NullProgressMonitor());
-
-        Set<IInstallableUnit> units = new LinkedHashSet<IInstallableUnit>();
-
-        for (InstallableUnitDescription desc : parser.getUnits()) {
-            units.add(MetadataFactory.createInstallableUnit(desc));
+        BundleContext context = Activator.getContext();
+        Parser parser = idleParsers.poll();
+        if (parser == null || parser.bundleContext != context) {
+            parser = new Parser(context);
         }
+        Set<IInstallableUnit> units = new LinkedHashSet<IInstallableUnit>();
+        parser.parse(is, units, new NullProgressMonitor());
 
+        // only parsers which completed normally are reused
+        idleParsers.offer(parser);
         return units;
     }
 
-    public void writeXML(Set<IInstallableUnit> units, OutputStream os) throws IOException {
-        new Writer(os).write(units);
+    public void writeXML(Collection<IInstallableUnit> units, OutputStream os) throws IOException {
+        // the p2 writer emits many small strings
+        OutputStream buffered = os instanceof BufferedOutputStream ? os : new BufferedOutputStream(os);
+        new Writer(buffered).write(units);
     }
 
-    public void writeXML(Set<IInstallableUnit> units, File file) throws IOException {
+    public void writeXML(Collection<IInstallableUnit> units, File file) throws IOException {
         OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
         try {
             writeXML(units, os);
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.p2.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Executes independent tasks of the build on a bounded number of daemon threads.
+ */
+public class WorkerPool {
+
+    private WorkerPool() {
+    }
+
+    /**
+     * Executes the given tasks on at most <code>threads</code> threads, and returns their results
+     * in the order of the tasks. If a single thread is requested or there is only one task, the
+     * tasks are executed by the calling thread, which stops at the first failure. Otherwise all
+     * tasks are executed, and the failure of the first failed task in task order is reported.
+     *
+     * @param threadName
+     *            prefix for the names of the worker threads
+     * @throws ExecutionException
+     *             with the exception of the failed task as cause
+     */
+    public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks, int threads, String threadName)
+            throws ExecutionException, InterruptedException {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (threads <= 1 || tasks.size() <= 1) {
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (Exception e) {
+                    throw new TaskFailure(e);
+                }
+            }
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()),
+                new DaemonThreadFactory(threadName));
+        try {
+            List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            ExecutionException failure = null;
+            for (Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                    results.add(null);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Like {@link #invokeAll(List, int, String)}, but for tasks which only throw unchecked
+     * exceptions. The exception of the first failed task in task order is rethrown as it is.
+     */
+    public static <T> List<T> invokeAllUnchecked(List<? extends Callable<T>> tasks, int threads, String threadName) {
+        try {
+            return invokeAll(tasks, threads, threadName);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for " + threadName + " tasks", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static class TaskFailure extends ExecutionException {
+        private static final long serialVersionUID = 1L;
+
+        TaskFailure(Throwable cause) {
+            super(cause);
+        }
+    }
+}
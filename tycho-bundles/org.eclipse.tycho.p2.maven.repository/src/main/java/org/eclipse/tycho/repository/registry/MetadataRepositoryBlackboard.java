@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2012 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.repository.registry;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.spi.MetadataRepositoryFactory;
+import org.eclipse.tycho.repository.registry.facade.RepositoryBlackboardKey;
+import org.eclipse.tycho.repository.util.RepositoryFactoryTools;
+
+public class MetadataRepositoryBlackboard extends MetadataRepositoryFactory {
+
+    private static HashMap<URI, IMetadataRepository> registry = new HashMap<URI, IMetadataRepository>();
+
+    public static synchronized void putRepository(RepositoryBlackboardKey key, IMetadataRepository repository) {
+        registry.put(key.toURI(), repository);
+    }
+
+    public static synchronized IMetadataRepository getRepository(RepositoryBlackboardKey key) {
+        return registry.get(key.toURI());
+    }
+
+    public static synchronized void removeRepository(RepositoryBlackboardKey key) {
+        registry.remove(key.toURI());
+    }
+
+    @Override
+    public IMetadataRepository create(URI location, String name, String type, Map<String, String> properties)
+            throws ProvisionException {
+        throw RepositoryFactoryTools.unsupportedCreation(getClass());
+    }
+
+    @Override
+    public IMetadataRepository load(URI location, int flags, IProgressMonitor monitor) throws ProvisionException {
+        if (RepositoryBlackboardKey.SCHEME.equals(location.getScheme())) {
+            return getRegisteredRepositoryOrNull(location);
+        }
+        return null;
+    }
+
+    private static synchronized IMetadataRepository getRegisteredRepositoryOrNull(URI location) {
+        return registry.get(location);
+    }
+
+}
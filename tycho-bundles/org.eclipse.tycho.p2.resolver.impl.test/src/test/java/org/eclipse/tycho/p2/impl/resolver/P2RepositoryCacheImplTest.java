@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.p2.impl.resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.tycho.p2.impl.test.MavenLoggerStub;
+import org.eclipse.tycho.test.util.InstallableUnitUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+public class P2RepositoryCacheImplTest {
+
+    private static final URI REPO_A = URI.create("http://example.org/a");
+    private static final URI REPO_B = URI.create("http://example.org/b");
+    private static final URI REPO_C = URI.create("http://example.org/c");
+
+    private P2RepositoryCacheImpl subject;
+
+    @Before
+    public void initSubject() {
+        subject = new P2RepositoryCacheImpl(new MavenLoggerStub(), 4);
+    }
+
+    @Test
+    public void testCachedRepositoryIsReturned() {
+        IMetadataRepository repository = repositoryWithUnits(REPO_A, 2);
+        subject.putRepository(REPO_A, repository, null);
+
+        assertSame(repository, subject.getMetadataRepository(REPO_A));
+        assertEquals(2, subject.getTotalUnits());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedRepositoryIsEvicted() {
+        subject.putRepository(REPO_A, repositoryWithUnits(REPO_A, 2), null);
+        subject.putRepository(REPO_B, repositoryWithUnits(REPO_B, 2), null);
+        subject.getMetadataRepository(REPO_A);
+
+        subject.putRepository(REPO_C, repositoryWithUnits(REPO_C, 2), null);
+
+        assertNotNull(subject.getMetadataRepository(REPO_A));
+        assertNull(subject.getMetadataRepository(REPO_B));
+        assertNotNull(subject.getMetadataRepository(REPO_C));
+        assertEquals(4, subject.getTotalUnits());
+    }
+
+    @Test
+    public void testPinnedRepositoryIsNotEvicted() {
+        subject.pinRepository(REPO_A);
+        subject.putRepository(REPO_A, repositoryWithUnits(REPO_A, 3), null);
+        subject.putRepository(REPO_B, repositoryWithUnits(REPO_B, 3), null);
+
+        assertNotNull(subject.getMetadataRepository(REPO_A));
+        assertNull(subject.getMetadataRepository(REPO_B));
+    }
+
+    @Test
+    public void testUnpinningEnforcesBudget() {
+        subject.pinRepository(REPO_A);
+        subject.pinRepository(REPO_B);
+        subject.putRepository(REPO_A, repositoryWithUnits(REPO_A, 3), null);
+        subject.putRepository(REPO_B, repositoryWithUnits(REPO_B, 3), null);
+        assertEquals(6, subject.getTotalUnits());
+
+        subject.unpinRepository(REPO_A);
+        subject.unpinRepository(REPO_B);
+
+        assertNull(subject.getMetadataRepository(REPO_A));
+        assertNotNull(subject.getMetadataRepository(REPO_B));
+        assertEquals(3, subject.getTotalUnits());
+    }
+
+    @Test
+    public void testPermanentlyPinnedRepositoryIsNotEvicted() {
+        subject.pinRepositoryPermanently(REPO_A);
+        subject.putRepository(REPO_A, repositoryWithUnits(REPO_A, 3), null);
+        subject.pinRepository(REPO_A);
+        subject.unpinRepository(REPO_A);
+        subject.putRepository(REPO_B, repositoryWithUnits(REPO_B, 3), null);
+
+        assertTrue(subject.isCached(REPO_A));
+        assertFalse(subject.isCached(REPO_B));
+    }
+
+    @Test
+    public void testRepositoriesArePinnedWhileOwnerIsReachable() throws Exception {
+        Object owner = new Object();
+        subject.pinRepositories(owner, Arrays.asList(REPO_A));
+        subject.putRepository(REPO_A, repositoryWithUnits(REPO_A, 3), null);
+        subject.putRepository(REPO_B, repositoryWithUnits(REPO_B, 3), null);
+
+        assertTrue(subject.isCached(REPO_A));
+        assertFalse(subject.isCached(REPO_B));
+
+        owner = null;
+        for (int i = 0; i < 100 && subject.isCached(REPO_A); i++) {
+            System.gc();
+            Thread.sleep(10);
+            // triggers the eviction
+            subject.putRepository(REPO_B, repositoryWithUnits(REPO_B, 3), null);
+        }
+        assertFalse(subject.isCached(REPO_A));
+        assertTrue(subject.isCached(REPO_B));
+    }
+
+    @Test
+    public void testBudgetFromSessionProperties() {
+        Properties sessionProperties = new Properties();
+        sessionProperties.setProperty(P2RepositoryCacheImpl.MAX_UNITS_PROPERTY, "2");
+        subject = new P2RepositoryCacheImpl(new MavenLoggerStub(), sessionProperties);
+        subject.putRepository(REPO_A, repositoryWithUnits(REPO_A, 2), null);
+        subject.putRepository(REPO_B, repositoryWithUnits(REPO_B, 2), null);
+
+        assertFalse(subject.isCached(REPO_A));
+        assertTrue(subject.isCached(REPO_B));
+    }
+
+    @Test
+    public void testInvalidBudgetIsIgnored() {
+        Properties sessionProperties = new Properties();
+        sessionProperties.setProperty(P2RepositoryCacheImpl.MAX_UNITS_PROPERTY, "many");
+        MavenLoggerStub logger = new MavenLoggerStub();
+        subject = new P2RepositoryCacheImpl(logger, sessionProperties);
+        subject.putRepository(REPO_A, repositoryWithUnits(REPO_A, 2), null);
+        subject.putRepository(REPO_B, repositoryWithUnits(REPO_B, 2), null);
+
+        assertEquals(1, logger.getWarnings().size());
+        assertTrue(subject.isCached(REPO_A));
+        assertTrue(subject.isCached(REPO_B));
+    }
+
+    private static IMetadataRepository repositoryWithUnits(URI location, int count) {
+        Set<IInstallableUnit> units = new HashSet<IInstallableUnit>();
+        for (int i = 0; i < count; i++) {
+            units.add(InstallableUnitUtil.createIU("unit" + i, "1.0.0"));
+        }
+        return new SnapshotMetadataRepository(null, new File("snapshot"), location, units);
+    }
+}
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.p2.impl.resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IInstallableUnitFragment;
+import org.eclipse.equinox.p2.metadata.ILicense;
+import org.eclipse.equinox.p2.metadata.IProvidedCapability;
+import org.eclipse.equinox.p2.metadata.IRequirement;
+import org.eclipse.equinox.p2.metadata.ITouchpointData;
+import org.eclipse.equinox.p2.metadata.IUpdateDescriptor;
+import org.eclipse.equinox.p2.metadata.MetadataFactory;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitFragmentDescription;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.metadata.VersionRange;
+import org.eclipse.tycho.test.util.InstallableUnitUtil;
+import org.junit.Test;
+
+@SuppressWarnings("restriction")
+public class SnapshotFormatTest {
+
+    private static final Version VERSION = Version.create("1.2.3.qualifier");
+
+    @Test
+    public void testUnitIsRestored() throws Exception {
+        IInstallableUnit unit = createUnit(new InstallableUnitDescription());
+
+        IInstallableUnit restored = roundTrip(unit).iterator().next();
+
+        assertEquals(unit.getId(), restored.getId());
+        assertEquals(unit.getVersion(), restored.getVersion());
+        assertTrue(restored.isSingleton());
+        assertEquals(unit.getProperties(), restored.getProperties());
+        assertEquals(unit.getFilter(), restored.getFilter());
+        assertEquals(new ArrayList<IRequirement>(unit.getRequirements()),
+                new ArrayList<IRequirement>(restored.getRequirements()));
+        assertEquals(new ArrayList<IRequirement>(unit.getMetaRequirements()),
+                new ArrayList<IRequirement>(restored.getMetaRequirements()));
+        assertEquals(new ArrayList<IProvidedCapability>(unit.getProvidedCapabilities()),
+                new ArrayList<IProvidedCapability>(restored.getProvidedCapabilities()));
+        assertEquals(new ArrayList<IArtifactKey>(unit.getArtifacts()),
+                new ArrayList<IArtifactKey>(restored.getArtifacts()));
+        assertEquals(unit.getTouchpointType(), restored.getTouchpointType());
+        assertEquals(new ArrayList<ITouchpointData>(unit.getTouchpointData()),
+                new ArrayList<ITouchpointData>(restored.getTouchpointData()));
+
+        ILicense license = restored.getLicenses().iterator().next();
+        assertEquals(URI.create("http://example.org/license"), license.getLocation());
+        assertEquals("license text", license.getBody());
+        assertEquals("copyright text", restored.getCopyright().getBody());
+
+        IUpdateDescriptor updateDescriptor = restored.getUpdateDescriptor();
+        assertEquals(IUpdateDescriptor.NORMAL, updateDescriptor.getSeverity());
+        assertEquals("update", updateDescriptor.getDescription());
+        assertTrue(updateDescriptor.isUpdateOf(InstallableUnitUtil.createIU("unit", "1.0.0")));
+        assertFalse(updateDescriptor.isUpdateOf(InstallableUnitUtil.createIU("unit", "1.2.3.qualifier")));
+    }
+
+    @Test
+    public void testFragmentIsRestored() throws Exception {
+        InstallableUnitFragmentDescription description = new InstallableUnitFragmentDescription();
+        IRequirement host = MetadataFactory.createRequirement("osgi.bundle", "host", new VersionRange("[1.0,2.0)"),
+                null, false, false);
+        description.setHost(new IRequirement[] { host });
+        createDescription(description);
+        IInstallableUnit fragment = MetadataFactory.createInstallableUnitFragment(description);
+
+        IInstallableUnit restored = roundTrip(fragment).iterator().next();
+
+        assertTrue(restored instanceof IInstallableUnitFragment);
+        assertEquals(Arrays.asList(host),
+                new ArrayList<IRequirement>(((IInstallableUnitFragment) restored).getHost()));
+    }
+
+    @Test
+    public void testUnitsAndOrderAreRestored() throws Exception {
+        List<IInstallableUnit> units = new ArrayList<IInstallableUnit>();
+        for (int i = 0; i < 100; i++) {
+            units.add(InstallableUnitUtil.createIURequirement("unit" + (99 - i), "1.0." + i, "required",
+                    "[1.0,2.0)"));
+        }
+
+        Set<IInstallableUnit> restored = roundTrip(units.toArray(new IInstallableUnit[units.size()]));
+
+        assertEquals(units, new ArrayList<IInstallableUnit>(restored));
+    }
+
+    @Test
+    public void testRepeatedStringsAreStoredOnce() throws Exception {
+        IInstallableUnit unit = InstallableUnitUtil.createIURequirement("unit", "1.0.0", "required", "[1.0,2.0)");
+        int sizeOfOne = serialize(unit).length;
+
+        List<IInstallableUnit> units = new ArrayList<IInstallableUnit>();
+        for (int i = 0; i < 10; i++) {
+            units.add(InstallableUnitUtil.createIURequirement("unit", "1.0." + i, "required", "[1.0,2.0)"));
+        }
+        int sizeOfTen = serialize(units.toArray(new IInstallableUnit[units.size()])).length;
+
+        assertTrue(sizeOfTen < 5 * sizeOfOne);
+    }
+
+    private static IInstallableUnit createUnit(InstallableUnitDescription description) {
+        return MetadataFactory.createInstallableUnit(createDescription(description));
+    }
+
+    private static InstallableUnitDescription createDescription(InstallableUnitDescription description) {
+        description.setId("unit");
+        description.setVersion(VERSION);
+        description.setSingleton(true);
+        description.setProperty(IInstallableUnit.PROP_NAME, "Unit");
+        description.setProperty("df_LT.name", "Localized \u00fcnit");
+        description.setFilter(InstallableUnit.parseFilter("(osgi.os=linux)"));
+        description.setRequirements(new IRequirement[] {
+                MetadataFactory.createRequirement("osgi.bundle", "required", new VersionRange("[1.0,2.0)"),
+                        InstallableUnit.parseFilter("(osgi.ws=gtk)"), true, false),
+                MetadataFactory.createRequirement("java.package", "org.example", VersionRange.emptyRange, null, 0,
+                        Integer.MAX_VALUE, false) });
+        description.setMetaRequirements(new IRequirement[] { MetadataFactory.createRequirement(
+                IInstallableUnit.NAMESPACE_IU_ID, "touchpoint", VersionRange.emptyRange, null, false, false) });
+        description.setCapabilities(new IProvidedCapability[] {
+                MetadataFactory.createProvidedCapability(IInstallableUnit.NAMESPACE_IU_ID, "unit", VERSION),
+                MetadataFactory.createProvidedCapability("java.package", "org.example", Version.emptyVersion) });
+        description.setArtifacts(new IArtifactKey[] { new ArtifactKey("osgi.bundle", "unit", VERSION) });
+        description.setTouchpointType(MetadataFactory.createTouchpointType("org.eclipse.equinox.p2.osgi",
+                Version.create("1.0.0")));
+        Map<String, Object> instructions = new HashMap<String, Object>();
+        instructions.put("manifest", MetadataFactory.createTouchpointInstruction("Bundle-Version: 1.2.3", null));
+        description.addTouchpointData(MetadataFactory.createTouchpointData(instructions));
+        description.setUpdateDescriptor(MetadataFactory.createUpdateDescriptor("unit", new VersionRange(
+                Version.emptyVersion, true, VERSION, false), IUpdateDescriptor.NORMAL, "update"));
+        description.setLicenses(new ILicense[] { MetadataFactory.createLicense(
+                URI.create("http://example.org/license"), "license text") });
+        description.setCopyright(MetadataFactory.createCopyright(null, "copyright text"));
+        return description;
+    }
+
+    private static Set<IInstallableUnit> roundTrip(IInstallableUnit... units) throws Exception {
+        Set<IInstallableUnit> result = SnapshotFormat.read(new DataInputStream(new ByteArrayInputStream(
+                serialize(units))));
+        assertNotNull(result);
+        return result;
+    }
+
+    private static byte[] serialize(IInstallableUnit... units) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        SnapshotFormat.write(Arrays.asList(units), out);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.p2.target;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.VersionRange;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.tycho.test.util.InstallableUnitUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IndexedInstallableUnitsTest {
+
+    private IInstallableUnit bundle1;
+    private IInstallableUnit bundle2;
+    private IInstallableUnit other;
+    private IndexedInstallableUnits subject;
+
+    @Before
+    public void initSubject() {
+        bundle1 = InstallableUnitUtil.createIU("bundle", "1.0.0");
+        bundle2 = InstallableUnitUtil.createIU("bundle", "2.0.0");
+        other = InstallableUnitUtil.createIUCapability("other", "1.0.0", "capability", "1.5.0");
+        subject = new IndexedInstallableUnits(Arrays.asList(bundle1, bundle2, other));
+    }
+
+    @Test
+    public void testQueryAll() {
+        Set<IInstallableUnit> result = subject.query(QueryUtil.ALL_UNITS, null).toUnmodifiableSet();
+        assertEquals(3, result.size());
+    }
+
+    @Test
+    public void testQueryById() {
+        Set<IInstallableUnit> result = subject.query(QueryUtil.createIUQuery("bundle"), null).toUnmodifiableSet();
+        assertEquals(2, result.size());
+        assertTrue(result.contains(bundle1));
+        assertTrue(result.contains(bundle2));
+    }
+
+    @Test
+    public void testQueryByCapability() {
+        Set<IInstallableUnit> result = subject.query(
+                QueryUtil.createIUQuery("capability", new VersionRange("[1.0.0,2.0.0)")), null).toUnmodifiableSet();
+        // createIUQuery only matches on IU id; capability lookup goes through the capability index
+        assertEquals(0, result.size());
+
+        result = subject.query(
+                QueryUtil.createMatchQuery("providedCapabilities.exists(x | x.name == $0 && x.namespace == $1)",
+                        "capability", IInstallableUnit.NAMESPACE_IU_ID), null).toUnmodifiableSet();
+        assertEquals(1, result.size());
+        assertTrue(result.contains(other));
+    }
+}
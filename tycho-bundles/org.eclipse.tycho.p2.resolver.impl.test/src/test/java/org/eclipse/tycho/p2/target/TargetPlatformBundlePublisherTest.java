@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011 SAP AG and others.
+ * Copyright (c) 2011, 2012 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,20 +17,29 @@ import static org.eclipse.tycho.p2.test.matcher.InstallableUnitMatchers.hasId;
 import static org.eclipse.tycho.p2.test.matcher.InstallableUnitMatchers.hasVersion;
 import static org.eclipse.tycho.test.util.ResourceUtil.resourceFile;
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
 
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
 import org.eclipse.tycho.p2.impl.test.ArtifactMock;
 import org.eclipse.tycho.p2.impl.test.MavenLoggerStub;
 import org.eclipse.tycho.p2.metadata.IArtifactFacade;
 import org.eclipse.tycho.repository.test.util.LocalRepositoryStub;
+import org.eclipse.tycho.test.util.InstallableUnitUtil;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class TargetPlatformBundlePublisherTest {
 
@@ -38,13 +47,18 @@ public class TargetPlatformBundlePublisherTest {
     private static final String ARTIFACT_ID = "dummy-artifact";
     private static final String VERSION = "0.8.15-SNAPSHOT";
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     private TargetPlatformBundlePublisher subject;
     private LocalRepositoryStub localRepo;
 
     @Before
     public void initSubject() {
+        PublishedBundlesCache.clearEntriesInMemory();
         localRepo = new LocalRepositoryStub();
-        subject = new TargetPlatformBundlePublisher(localRepo.getArtifactProvider(), new MavenLoggerStub(true, true));
+        subject = new TargetPlatformBundlePublisher(localRepo.getArtifactProvider(), null, 1, new MavenLoggerStub(
+                true, true));
     }
 
     @Test
@@ -89,4 +103,78 @@ public class TargetPlatformBundlePublisherTest {
 
         assertNull(unit);
     }
+
+    @Test
+    public void testSeveralPomDependencies() throws Exception {
+        File bundleFile = resourceFile("pom-dependencies/org.eclipse.osgi_3.5.2.R35x_v20100126.jar");
+        IArtifactFacade bundleArtifact = new ArtifactMock(bundleFile, GROUP_ID, ARTIFACT_ID, VERSION, "jar");
+        localRepo.addArtifact(bundleArtifact);
+        File jarFile = resourceFile("pom-dependencies/non-bundle.jar");
+        IArtifactFacade jarArtifact = new ArtifactMock(jarFile, GROUP_ID, "other-artifact", VERSION, "jar");
+        subject = new TargetPlatformBundlePublisher(localRepo.getArtifactProvider(), null, 2, new MavenLoggerStub(
+                true, true));
+
+        List<IInstallableUnit> units = subject.attemptToPublishBundles(Arrays.asList(jarArtifact, bundleArtifact));
+
+        assertEquals(2, units.size());
+        assertNull(units.get(0));
+        assertThat(units.get(1), hasId("org.eclipse.osgi"));
+        assertThat(subject.getArtifactRepoOfPublishedBundles(), containsEntry(units.get(1).getArtifacts().iterator()
+                .next()));
+    }
+
+    @Test
+    public void testPublishedBundlesAreCached() throws Exception {
+        File bundleFile = resourceFile("pom-dependencies/org.eclipse.osgi_3.5.2.R35x_v20100126.jar");
+        IArtifactFacade bundleArtifact = new ArtifactMock(bundleFile, GROUP_ID, ARTIFACT_ID, VERSION, "jar");
+        localRepo.addArtifact(bundleArtifact);
+        File jarFile = resourceFile("pom-dependencies/non-bundle.jar");
+        IArtifactFacade jarArtifact = new ArtifactMock(jarFile, GROUP_ID, "other-artifact", VERSION, "jar");
+        List<IArtifactFacade> artifacts = Arrays.asList(bundleArtifact, jarArtifact);
+        File cacheRoot = tempFolder.newFolder("cache");
+
+        IInstallableUnit publishedUnit = new TargetPlatformBundlePublisher(localRepo.getArtifactProvider(),
+                cacheRoot, 2, new MavenLoggerStub(true, true)).attemptToPublishBundles(artifacts).get(0);
+        assertEquals(2, new File(cacheRoot, PublishedBundlesCache.CACHE_RELPATH).list().length);
+
+        // read the entries from disk
+        PublishedBundlesCache.clearEntriesInMemory();
+        subject = new TargetPlatformBundlePublisher(localRepo.getArtifactProvider(), cacheRoot, 2,
+                new MavenLoggerStub(true, true));
+        List<IInstallableUnit> units = subject.attemptToPublishBundles(artifacts);
+
+        assertNotSame(publishedUnit, units.get(0));
+        assertEquals(publishedUnit, units.get(0));
+        assertEquals(publishedUnit.getRequirements(), units.get(0).getRequirements());
+        assertEquals(publishedUnit.getProvidedCapabilities(), units.get(0).getProvidedCapabilities());
+        assertThat(units.get(0), hasId("org.eclipse.osgi"));
+        assertThat(units.get(0), hasGAV(GROUP_ID, ARTIFACT_ID, VERSION));
+        assertNull(units.get(1));
+        IArtifactKey artifactOfTheUnit = units.get(0).getArtifacts().iterator().next();
+        assertThat(subject.getArtifactRepoOfPublishedBundles(), entry(artifactOfTheUnit).hasContent(bundleFile));
+    }
+
+    @Test
+    public void testCachedBundlesAreNotPublishedAgain() throws Exception {
+        File bundleFile = resourceFile("pom-dependencies/org.eclipse.osgi_3.5.2.R35x_v20100126.jar");
+        IArtifactFacade bundleArtifact = new ArtifactMock(bundleFile, GROUP_ID, ARTIFACT_ID, VERSION, "jar");
+        localRepo.addArtifact(bundleArtifact);
+        File cacheRoot = tempFolder.newFolder("cache");
+
+        // a cache entry which differs from what the publisher would generate
+        IInstallableUnit cachedUnit = InstallableUnitUtil.createIUArtifact("cached.unit", "1.0.0", "cached.unit",
+                "1.0.0");
+        IArtifactDescriptor cachedDescriptor = new ArtifactDescriptor(cachedUnit.getArtifacts().iterator().next());
+        new PublishedBundlesCache(cacheRoot, new MavenLoggerStub()).put(bundleArtifact,
+                new PublishedBundlesCache.Result(cachedUnit, cachedDescriptor));
+        PublishedBundlesCache.clearEntriesInMemory();
+
+        subject = new TargetPlatformBundlePublisher(localRepo.getArtifactProvider(), cacheRoot, 1,
+                new MavenLoggerStub(true, true));
+        IInstallableUnit unit = subject.attemptToPublishBundle(bundleArtifact);
+
+        assertThat(unit, hasId("cached.unit"));
+        assertNotSame(cachedUnit, unit);
+        assertThat(subject.getArtifactRepoOfPublishedBundles(), containsEntry(unit.getArtifacts().iterator().next()));
+    }
 }
@@ -27,7 +27,7 @@ public class TargetPlatformDisableP2MirrorsTest {
     @Before
     public void setUp() {
         localRepo = new File("target/localrepo");
-        IProvisioningAgent agent = P2ResolverFactoryImpl.getProvisioningAgent(localRepo, false, new MavenLoggerStub());
+        IProvisioningAgent agent = P2ResolverFactoryImpl.getProvisioningAgent(createMavenContext());
         repositoryCache = (P2RepositoryCache) agent.getService(P2RepositoryCache.SERVICE_NAME);
         assertNotNull(repositoryCache);
     }
@@ -54,16 +54,21 @@ public class TargetPlatformDisableP2MirrorsTest {
 
     private TargetPlatformBuilderImpl createResolutionContext(boolean disableP2Mirrors) {
         P2ResolverFactoryImpl p2ResolverFactoryImpl = new P2ResolverFactoryImpl();
-        MavenContextImpl mavenContext = new MavenContextImpl();
-        mavenContext.setOffline(false);
-        mavenContext.setLocalRepositoryRoot(localRepo);
-        mavenContext.setLogger(new MavenLoggerStub());
+        MavenContextImpl mavenContext = createMavenContext();
         p2ResolverFactoryImpl.setMavenContext(mavenContext);
         p2ResolverFactoryImpl.setLocalRepositoryIndices(createLocalRepoIndices(mavenContext));
         TargetPlatformBuilderImpl context = p2ResolverFactoryImpl.createTargetPlatformBuilder(null, disableP2Mirrors);
         return context;
     }
 
+    private MavenContextImpl createMavenContext() {
+        MavenContextImpl mavenContext = new MavenContextImpl();
+        mavenContext.setOffline(false);
+        mavenContext.setLocalRepositoryRoot(localRepo);
+        mavenContext.setLogger(new MavenLoggerStub());
+        return mavenContext;
+    }
+
     private LocalRepositoryP2Indices createLocalRepoIndices(MavenContextImpl mavenContext) {
         LocalRepositoryP2IndicesImpl localRepoIndices = new LocalRepositoryP2IndicesImpl();
         localRepoIndices.setMavenContext(mavenContext);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011 SAP AG and others.
+ * Copyright (c) 2011, 2012 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,17 +15,23 @@ import static org.eclipse.tycho.artifacts.TargetPlatformFilter.restrictionFilter
 import static org.eclipse.tycho.artifacts.TargetPlatformFilter.CapabilityPattern.patternWithVersion;
 import static org.eclipse.tycho.artifacts.TargetPlatformFilter.CapabilityPattern.patternWithVersionRange;
 import static org.eclipse.tycho.artifacts.TargetPlatformFilter.CapabilityPattern.patternWithoutVersion;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.matchers.JUnitMatchers.hasItem;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IProvidedCapability;
 import org.eclipse.equinox.p2.query.QueryUtil;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
@@ -33,6 +39,8 @@ import org.eclipse.tycho.artifacts.TargetPlatformFilter;
 import org.eclipse.tycho.artifacts.TargetPlatformFilter.CapabilityPattern;
 import org.eclipse.tycho.artifacts.TargetPlatformFilter.CapabilityType;
 import org.eclipse.tycho.artifacts.TargetPlatformFilterSyntaxException;
+import org.eclipse.tycho.p2.target.filters.TargetPlatformFilterEvaluator.ParsedCapabilityPattern;
+import org.eclipse.tycho.p2.target.filters.TargetPlatformFilterEvaluator.UnitIndex;
 import org.eclipse.tycho.test.util.P2Context;
 import org.eclipse.tycho.test.util.ResourceUtil;
 import org.hamcrest.Description;
@@ -167,6 +175,51 @@ public class TargetPlatformFilterEvaluatorTest {
         assertThat(removedUnits(), hasSize(1));
     }
 
+    @Test
+    public void testSeveralFilters() throws Exception {
+        List<TargetPlatformFilter> filters = Arrays.asList(
+                restrictionFilter(ALL_MULTIVERSION_BUNDLES, patternWithVersion(null, null, "1.0.0")),
+                removeAllFilter(ALL_MULTIVERSION_BUNDLES));
+        subject = new TargetPlatformFilterEvaluator(filters);
+        List<IInstallableUnit> originalOrder = new ArrayList<IInstallableUnit>(workUnits);
+
+        subject.filterUnits(workUnits);
+
+        assertThat(removedUnits(), hasItem("trf.bundle.multiversion_1.0.0"));
+        assertThat(removedUnits(), hasItem("trf.bundle.multiversion_2.0.0"));
+        assertThat(removedUnits(), hasSize(2));
+        originalOrder.retainAll(workUnits);
+        assertEquals(originalOrder, new ArrayList<IInstallableUnit>(workUnits));
+    }
+
+    @Test
+    public void testUnitsMatchingAnyIdAreInTargetPlatformOrder() throws Exception {
+        List<IInstallableUnit> units = new ArrayList<IInstallableUnit>(workUnits);
+        assertUnitsMatchingAnyBundleAreInOrder(units);
+
+        Collections.reverse(units);
+        assertUnitsMatchingAnyBundleAreInOrder(units);
+    }
+
+    private static void assertUnitsMatchingAnyBundleAreInOrder(List<IInstallableUnit> units) {
+        UnitIndex index = new UnitIndex(units, EnumSet.of(CapabilityType.OSGI_BUNDLE));
+        List<IInstallableUnit> bundles = new ArrayList<IInstallableUnit>();
+        for (IInstallableUnit unit : units) {
+            for (IProvidedCapability capability : unit.getProvidedCapabilities()) {
+                if ("osgi.bundle".equals(capability.getNamespace())) {
+                    bundles.add(unit);
+                    break;
+                }
+            }
+        }
+
+        Collection<IInstallableUnit> matchingUnits = index.getMatchingUnits(new ParsedCapabilityPattern(
+                patternWithoutVersion(CapabilityType.OSGI_BUNDLE, null), null));
+
+        assertThat(bundles, hasSize(4));
+        assertEquals(bundles, new ArrayList<IInstallableUnit>(matchingUnits));
+    }
+
     @Ignore("TODO")
     @Test
     public void testWarningIfRestrictionRemovesAll() throws Exception {
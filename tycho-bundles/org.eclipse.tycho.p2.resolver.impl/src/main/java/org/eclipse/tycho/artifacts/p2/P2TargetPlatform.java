@@ -16,6 +16,7 @@ import java.util.LinkedHashSet;
 
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.IQueryable;
 import org.eclipse.tycho.artifacts.TargetPlatform;
 import org.eclipse.tycho.p2.metadata.IArtifactFacade;
 
@@ -27,6 +28,12 @@ public interface P2TargetPlatform extends TargetPlatform {
 
     Collection<IInstallableUnit> getInstallableUnits();
 
+    /**
+     * Returns an immutable, indexed view on the installable units of the target platform for
+     * querying. The view is created once and may be shared by concurrent resolver runs.
+     */
+    IQueryable<IInstallableUnit> getIndexedInstallableUnits();
+
     /**
      * Return IUs that represent packages provided by target JRE
      */
@@ -47,4 +54,12 @@ public interface P2TargetPlatform extends TargetPlatform {
 
     IArtifactFacade getMavenArtifact(IInstallableUnit iu);
 
+    /**
+     * Makes the artifacts which are only available in this target platform (e.g. bundles from POM
+     * dependencies) available to the p2 tools operating on behalf of the given project. This needs
+     * to be called for each project using the target platform because target platforms may be
+     * shared between projects with the same configuration.
+     */
+    void registerResolutionContextArtifacts(File projectLocation);
+
 }
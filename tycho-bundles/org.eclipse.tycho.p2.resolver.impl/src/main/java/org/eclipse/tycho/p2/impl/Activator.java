@@ -15,6 +15,7 @@ import java.net.URI;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.IProvisioningAgentProvider;
 import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.tycho.p2.impl.resolver.P2ResolverFactoryImpl;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
@@ -68,6 +69,8 @@ public class Activator implements BundleActivator {
     }
 
     public void stop(BundleContext context) throws Exception {
+        // the OSGi runtime is stopped at the end of the Maven session
+        P2ResolverFactoryImpl.logCacheStatistics();
     }
 
     public static BundleContext getContext() {
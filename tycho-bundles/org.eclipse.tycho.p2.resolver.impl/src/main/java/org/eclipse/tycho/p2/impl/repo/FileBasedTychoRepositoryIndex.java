@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,12 +10,18 @@
  *******************************************************************************/
 package org.eclipse.tycho.p2.impl.repo;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.UUID;
 
 import org.eclipse.tycho.locking.facade.FileLockService;
 import org.eclipse.tycho.locking.facade.FileLocker;
@@ -26,22 +32,46 @@ import org.eclipse.tycho.p2.repository.TychoRepositoryIndex;
 /**
  * Simplistic local Maven repository index to allow efficient lookup of all installed Tycho
  * projects. The content is persisted in a local file.
+ *
+ * <p>
+ * In journal mode, {@link #save()} only appends the changes to a journal file which is private to
+ * this index instance, so that no lock needs to be acquired. The journal is merged into the index
+ * file by {@link #compact()}, which happens when the journal gets large and at the end of the build.
+ * Journals of other processes are taken into account when reading the index, so that their changes
+ * are visible before they are compacted.
+ * </p>
  */
 public class FileBasedTychoRepositoryIndex extends DefaultTychoRepositoryIndex {
 
     public static final String ARTIFACTS_INDEX_RELPATH = ".meta/p2-artifacts.properties";
     public static final String METADATA_INDEX_RELPATH = ".meta/p2-local-metadata.properties";
 
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String ENCODING = "UTF8";
+
+    /** number of journal entries after which the journal is merged into the index file */
+    static final int COMPACTION_THRESHOLD = 1000;
+
+    /** age after which journals of other processes are considered orphaned, e.g. after a crash */
+    private static final long ORPHANED_JOURNAL_MILLIS = 24 * 60 * 60 * 1000L;
+
     private final File indexFile;
     private FileLocker fileLocker;
 
     private Set<GAV> addedGavs = new HashSet<GAV>();
     private Set<GAV> removedGavs = new HashSet<GAV>();
 
-    private FileBasedTychoRepositoryIndex(File indexFile, FileLockService fileLockService) {
+    private final File journalFile;
+    private Set<GAV> unjournaledAddedGavs = new HashSet<GAV>();
+    private Set<GAV> unjournaledRemovedGavs = new HashSet<GAV>();
+    private int journalEntries;
+
+    private FileBasedTychoRepositoryIndex(File indexFile, FileLockService fileLockService, boolean journalMode) {
         super();
         this.indexFile = indexFile;
         this.fileLocker = fileLockService.getFileLocker(indexFile);
+        this.journalFile = journalMode ? new File(indexFile.getPath() + "." + UUID.randomUUID() + JOURNAL_SUFFIX)
+                : null;
         if (indexFile.isFile()) {
             lock();
             try {
@@ -52,6 +82,7 @@ public class FileBasedTychoRepositoryIndex extends DefaultTychoRepositoryIndex {
                 unlock();
             }
         }
+        applyJournals();
     }
 
     private void lock() {
@@ -63,24 +94,67 @@ public class FileBasedTychoRepositoryIndex extends DefaultTychoRepositoryIndex {
     }
 
     @Override
-    public void addGav(GAV gav) {
+    public synchronized void addGav(GAV gav) {
         super.addGav(gav);
         this.addedGavs.add(gav);
         if (removedGavs.contains(gav)) {
             removedGavs.remove(gav);
         }
+        if (journalFile != null) {
+            unjournaledAddedGavs.add(gav);
+            unjournaledRemovedGavs.remove(gav);
+        }
     }
 
     @Override
-    public void removeGav(GAV gav) {
+    public synchronized void removeGav(GAV gav) {
         super.removeGav(gav);
         this.removedGavs.add(gav);
         if (addedGavs.contains(gav)) {
             addedGavs.remove(gav);
         }
+        if (journalFile != null) {
+            unjournaledRemovedGavs.add(gav);
+            unjournaledAddedGavs.remove(gav);
+        }
+    }
+
+    public synchronized void save() throws IOException {
+        if (journalFile == null) {
+            compact();
+            return;
+        }
+        if (unjournaledAddedGavs.isEmpty() && unjournaledRemovedGavs.isEmpty()) {
+            return;
+        }
+        appendToJournal();
+        if (journalEntries >= COMPACTION_THRESHOLD) {
+            compact();
+        }
+    }
+
+    private void appendToJournal() throws IOException {
+        journalFile.getParentFile().mkdirs();
+        Writer out = new OutputStreamWriter(new FileOutputStream(journalFile, true), ENCODING);
+        try {
+            for (GAV gav : unjournaledAddedGavs) {
+                out.write("+" + gav.toExternalForm() + "\n");
+            }
+            for (GAV gav : unjournaledRemovedGavs) {
+                out.write("-" + gav.toExternalForm() + "\n");
+            }
+        } finally {
+            out.close();
+        }
+        journalEntries += unjournaledAddedGavs.size() + unjournaledRemovedGavs.size();
+        unjournaledAddedGavs.clear();
+        unjournaledRemovedGavs.clear();
     }
 
-    public void save() throws IOException {
+    /**
+     * Writes all changes to the index file. This method acquires the lock on the index file once.
+     */
+    public synchronized void compact() throws IOException {
         File parentDir = indexFile.getParentFile();
         if (!parentDir.isDirectory()) {
             parentDir.mkdirs();
@@ -89,6 +163,13 @@ public class FileBasedTychoRepositoryIndex extends DefaultTychoRepositoryIndex {
         try {
             reconcile();
             write(new FileOutputStream(indexFile));
+            if (journalFile != null) {
+                journalFile.delete();
+                deleteOrphanedJournals();
+                journalEntries = 0;
+                unjournaledAddedGavs.clear();
+                unjournaledRemovedGavs.clear();
+            }
         } finally {
             unlock();
         }
@@ -99,23 +180,90 @@ public class FileBasedTychoRepositoryIndex extends DefaultTychoRepositoryIndex {
         // processes which happened in the meantime are not discarded
         if (indexFile.isFile()) {
             setGavs(read(new FileInputStream(indexFile)));
+            applyJournals();
             for (GAV addedGav : addedGavs) {
-                addGav(addedGav);
+                super.addGav(addedGav);
             }
             for (GAV removedGav : removedGavs) {
-                removeGav(removedGav);
+                super.removeGav(removedGav);
             }
         }
         addedGavs.clear();
         removedGavs.clear();
     }
 
+    /**
+     * Applies the changes from the journals of other processes which have not been compacted yet.
+     */
+    private void applyJournals() {
+        for (File journal : listJournals()) {
+            if (journal.equals(journalFile)) {
+                continue;
+            }
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal),
+                        ENCODING));
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        // a partially written last line doesn't parse and is ignored
+                        GAV gav = line.length() > 1 ? GAV.parse(line.substring(1)) : null;
+                        if (gav == null) {
+                            continue;
+                        }
+                        if (line.charAt(0) == '+') {
+                            super.addGav(gav);
+                        } else if (line.charAt(0) == '-') {
+                            super.removeGav(gav);
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                // journal has been compacted by its owner in the meantime
+            }
+        }
+    }
+
+    private void deleteOrphanedJournals() {
+        long orphanedBefore = System.currentTimeMillis() - ORPHANED_JOURNAL_MILLIS;
+        for (File journal : listJournals()) {
+            if (journal.lastModified() < orphanedBefore) {
+                // the content has been written to the index file by the preceding reconcile
+                journal.delete();
+            }
+        }
+    }
+
+    private File[] listJournals() {
+        final String prefix = indexFile.getName() + ".";
+        File[] journals = indexFile.getParentFile().listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith(prefix) && name.endsWith(JOURNAL_SUFFIX);
+            }
+        });
+        return journals != null ? journals : new File[0];
+    }
+
     public static TychoRepositoryIndex createMetadataIndex(File basedir, FileLockService fileLockService) {
-        return new FileBasedTychoRepositoryIndex(new File(basedir, METADATA_INDEX_RELPATH), fileLockService);
+        return createMetadataIndex(basedir, fileLockService, false);
     }
 
     public static TychoRepositoryIndex createArtifactsIndex(File basedir, FileLockService fileLockService) {
-        return new FileBasedTychoRepositoryIndex(new File(basedir, ARTIFACTS_INDEX_RELPATH), fileLockService);
+        return createArtifactsIndex(basedir, fileLockService, false);
+    }
+
+    public static FileBasedTychoRepositoryIndex createMetadataIndex(File basedir, FileLockService fileLockService,
+            boolean journalMode) {
+        return new FileBasedTychoRepositoryIndex(new File(basedir, METADATA_INDEX_RELPATH), fileLockService,
+                journalMode);
+    }
+
+    public static FileBasedTychoRepositoryIndex createArtifactsIndex(File basedir, FileLockService fileLockService,
+            boolean journalMode) {
+        return new FileBasedTychoRepositoryIndex(new File(basedir, ARTIFACTS_INDEX_RELPATH), fileLockService,
+                journalMode);
     }
 
 }
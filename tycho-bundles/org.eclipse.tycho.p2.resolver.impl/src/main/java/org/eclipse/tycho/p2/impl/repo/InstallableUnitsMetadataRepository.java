@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2012 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.p2.impl.repo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.IQuery;
+import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.repository.IRepositoryReference;
+import org.eclipse.equinox.p2.repository.metadata.spi.AbstractMetadataRepository;
+import org.eclipse.tycho.p2.target.IndexedInstallableUnits;
+
+/**
+ * Read-only metadata repository on a fixed set of installable units. Queries are answered from the
+ * indices of {@link IndexedInstallableUnits}.
+ */
+@SuppressWarnings("restriction")
+class InstallableUnitsMetadataRepository extends AbstractMetadataRepository {
+
+    // TODO check if we can really "reuse" LocalMetadataRepository or should we implement our own Repository
+    private static final String REPOSITORY_TYPE = LocalMetadataRepository.class.getName();
+
+    private final IndexedInstallableUnits units;
+
+    InstallableUnitsMetadataRepository(IProvisioningAgent agent, String name, Set<?> installableUnits) {
+        super(agent, name, REPOSITORY_TYPE, "0.0.1", null, null, null, null); //$NON-NLS-1$
+        this.units = new IndexedInstallableUnits(toInstallableUnits(installableUnits));
+    }
+
+    private static List<IInstallableUnit> toInstallableUnits(Set<?> installableUnits) {
+        ArrayList<IInstallableUnit> units = new ArrayList<IInstallableUnit>(installableUnits.size());
+
+        for (Object o : installableUnits) {
+            units.add((IInstallableUnit) o);
+        }
+
+        return units;
+    }
+
+    @Override
+    public void initialize(RepositoryState state) {
+
+    }
+
+    public Collection<IRepositoryReference> getReferences() {
+        return Collections.emptyList();
+    }
+
+    public IQueryResult<IInstallableUnit> query(IQuery<IInstallableUnit> query, IProgressMonitor monitor) {
+        return units.query(query, monitor);
+    }
+
+}
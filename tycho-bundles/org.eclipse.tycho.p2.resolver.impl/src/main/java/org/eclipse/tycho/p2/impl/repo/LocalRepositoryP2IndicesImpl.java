@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011 SAP AG and others.
+ * Copyright (c) 2011, 2012 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@
 package org.eclipse.tycho.p2.impl.repo;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.eclipse.tycho.core.facade.MavenContext;
 import org.eclipse.tycho.locking.facade.FileLockService;
@@ -20,25 +21,44 @@ import org.eclipse.tycho.p2.repository.TychoRepositoryIndex;
 
 public class LocalRepositoryP2IndicesImpl implements LocalRepositoryP2Indices {
 
+    /**
+     * If the session property is set to <code>true</code>, changes to the indices are journaled and
+     * only merged into the index files at the end of the build.
+     */
+    public static final String JOURNAL_PROPERTY = "tycho.localRepository.journal";
+
     private boolean initialized = false;
+    private boolean journalMode;
     private MavenContext mavenContext;
-    private TychoRepositoryIndex artifactsIndex;
-    private TychoRepositoryIndex metadataIndex;
+    private FileBasedTychoRepositoryIndex artifactsIndex;
+    private FileBasedTychoRepositoryIndex metadataIndex;
     private FileLockService fileLockService;
 
     public LocalRepositoryP2IndicesImpl() {
     }
 
-    private void checkInitialized() {
+    private synchronized void checkInitialized() {
         if (initialized) {
             return;
         }
         File localRepositoryRoot = mavenContext.getLocalRepositoryRoot();
-        this.artifactsIndex = FileBasedTychoRepositoryIndex.createArtifactsIndex(localRepositoryRoot, fileLockService);
-        this.metadataIndex = FileBasedTychoRepositoryIndex.createMetadataIndex(localRepositoryRoot, fileLockService);
+        this.journalMode = Boolean.parseBoolean(mavenContext.getSessionProperties().getProperty(JOURNAL_PROPERTY));
+        this.artifactsIndex = FileBasedTychoRepositoryIndex.createArtifactsIndex(localRepositoryRoot,
+                fileLockService, journalMode);
+        this.metadataIndex = FileBasedTychoRepositoryIndex.createMetadataIndex(localRepositoryRoot, fileLockService,
+                journalMode);
         initialized = true;
     }
 
+    // called by DS runtime, i.e. when the OSGi runtime is shut down at the end of the build
+    public synchronized void deactivate() throws IOException {
+        if (!initialized || !journalMode) {
+            return;
+        }
+        artifactsIndex.compact();
+        metadataIndex.compact();
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2012 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.p2.impl.repo;
+
+import java.util.Set;
+
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.tycho.p2.impl.Activator;
+import org.eclipse.tycho.repository.registry.MetadataRepositoryBlackboard;
+import org.eclipse.tycho.repository.registry.facade.MetadataRepositoryBlackboardFacade;
+import org.eclipse.tycho.repository.registry.facade.RepositoryBlackboardKey;
+
+public class MetadataRepositoryBlackboardFacadeImpl implements MetadataRepositoryBlackboardFacade {
+    private final IProvisioningAgent agent;
+
+    public MetadataRepositoryBlackboardFacadeImpl() throws ProvisionException {
+        this.agent = Activator.newProvisioningAgent();
+    }
+
+    public void putRepository(RepositoryBlackboardKey key, Set<?> installableUnits) {
+        MetadataRepositoryBlackboard.putRepository(key, new InstallableUnitsMetadataRepository(agent,
+                "TychoTargetPlatform", installableUnits));
+    }
+
+    public void removeRepository(RepositoryBlackboardKey key) {
+        MetadataRepositoryBlackboard.removeRepository(key);
+    }
+}
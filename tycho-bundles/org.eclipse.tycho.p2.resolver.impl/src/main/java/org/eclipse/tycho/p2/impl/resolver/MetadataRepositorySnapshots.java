@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.p2.impl.resolver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.URIUtil;
+import org.eclipse.equinox.internal.p2.metadata.repository.CompositeMetadataRepository;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+import org.eclipse.tycho.core.facade.MavenLogger;
+import org.eclipse.tycho.p2.util.DigestUtils;
+
+/**
+ * Persistent snapshots of the content of remote p2 metadata repositories. A snapshot contains the
+ * units of a (possibly composite) repository in a single file in a {@link SnapshotFormat binary
+ * format}, so that subsequent builds neither need to load the child repositories one by one nor
+ * parse their <tt>content.xml</tt> files.
+ *
+ * <p>
+ * A snapshot records the state of the files cached by the {@link TychoP2RepositoryCacheManager} for
+ * the repository and all its children. Before a snapshot is used, the cache manager brings these
+ * files up to date with the remote repositories, which only requires a check of the remote
+ * timestamps. The snapshot is only used if none of the files has changed.
+ * </p>
+ */
+@SuppressWarnings("restriction")
+public class MetadataRepositorySnapshots {
+
+    public static final String SERVICE_NAME = MetadataRepositorySnapshots.class.getName();
+
+    static final String SNAPSHOTS_RELPATH = TychoP2RepositoryCacheManager.CACHE_RELPATH + "/snapshots";
+
+    private static final int MAGIC = 0x54503253;
+
+    private static final int FORMAT_VERSION = 2;
+
+    private final File snapshotDir;
+
+    private final TychoP2RepositoryCacheManager cacheManager;
+
+    private final IProvisioningAgent agent;
+
+    private final MavenLogger logger;
+
+    public MetadataRepositorySnapshots(IProvisioningAgent agent, TychoP2RepositoryCacheManager cacheManager,
+            MavenLogger logger) {
+        this.snapshotDir = new File(cacheManager.getLocalRepositoryLocation(), SNAPSHOTS_RELPATH);
+        this.agent = agent;
+        this.cacheManager = cacheManager;
+        this.logger = logger;
+    }
+
+    /**
+     * Returns the given repository as loaded from the snapshot, or <code>null</code> if there is no
+     * snapshot or if the snapshot is outdated. The cached metadata files of the repository and its
+     * children are first brought up to date with the remote repositories (unless offline), so a
+     * snapshot of a repository which has been changed remotely is never used.
+     */
+    public IMetadataRepository load(URI location, IProgressMonitor monitor) {
+        File file = getSnapshotFile(location);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                        || !location.toString().equals(in.readUTF())) {
+                    return null;
+                }
+                int repositoryCount = in.readInt();
+                for (int i = 0; i < repositoryCount; i++) {
+                    URI repository = URI.create(in.readUTF());
+                    String token = in.readUTF();
+                    if (!isUpToDate(repository, token, monitor)) {
+                        logger.debug("Snapshot of p2 repository " + location + " is outdated");
+                        return null;
+                    }
+                }
+                Set<IInstallableUnit> units = SnapshotFormat.read(in);
+                return new SnapshotMetadataRepository(agent, file, location, units);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.debug("Could not read snapshot of p2 repository " + location + ": " + e.getMessage());
+            return null;
+        } catch (RuntimeException e) {
+            logger.debug("Could not read snapshot of p2 repository " + location + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Updates the cached metadata file of the given repository if it has changed remotely, and
+     * returns <code>true</code> if the cached file still has the given token.
+     */
+    private boolean isUpToDate(URI repository, String token, IProgressMonitor monitor) {
+        String prefix = token.substring(0, Math.max(0, token.indexOf(':')));
+        try {
+            cacheManager.createCache(repository, prefix, monitor);
+        } catch (IOException e) {
+            return false;
+        } catch (ProvisionException e) {
+            return false;
+        }
+        return token.equals(cacheManager.getMetadataCacheToken(repository));
+    }
+
+    /**
+     * Writes a snapshot of the given repository, which has just been loaded through the given
+     * repository manager. Failures are only logged because the snapshot is an optimization.
+     */
+    public void store(URI location, IMetadataRepository repository, IMetadataRepositoryManager repositoryManager,
+            IProgressMonitor monitor) {
+        Map<URI, String> tokens = new LinkedHashMap<URI, String>();
+        if (!collectCacheTokens(location, repository, repositoryManager, tokens, monitor)) {
+            // not all metadata is cached, e.g. for local or unusual repository types
+            return;
+        }
+
+        File file = getSnapshotFile(location);
+        try {
+            snapshotDir.mkdirs();
+            File tempFile = File.createTempFile(file.getName(), ".tmp", snapshotDir);
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+                try {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeUTF(location.toString());
+                    out.writeInt(tokens.size());
+                    for (Map.Entry<URI, String> entry : tokens.entrySet()) {
+                        out.writeUTF(entry.getKey().toString());
+                        out.writeUTF(entry.getValue());
+                    }
+                    SnapshotFormat.write(repository.query(QueryUtil.ALL_UNITS, monitor).toUnmodifiableSet(), out);
+                } finally {
+                    out.close();
+                }
+                // replace atomically, so that concurrent builds never see a partial snapshot
+                if (!tempFile.renameTo(file)) {
+                    file.delete();
+                    tempFile.renameTo(file);
+                }
+            } finally {
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            logger.debug("Could not write snapshot of p2 repository " + location + ": " + e.getMessage());
+        }
+    }
+
+    private boolean collectCacheTokens(URI location, IMetadataRepository repository,
+            IMetadataRepositoryManager repositoryManager, Map<URI, String> tokens, IProgressMonitor monitor) {
+        String token = cacheManager.getMetadataCacheToken(location);
+        if (token == null) {
+            return false;
+        }
+        tokens.put(location, token);
+
+        if (repository instanceof CompositeMetadataRepository) {
+            List<URI> children = new ArrayList<URI>(((CompositeMetadataRepository) repository).getChildren());
+            for (URI child : children) {
+                URI childLocation = URIUtil.makeAbsolute(child, location);
+                if (tokens.containsKey(childLocation)) {
+                    continue;
+                }
+                try {
+                    IMetadataRepository childRepository = repositoryManager.loadRepository(childLocation, monitor);
+                    if (!collectCacheTokens(childLocation, childRepository, repositoryManager, tokens, monitor)) {
+                        return false;
+                    }
+                } catch (ProvisionException e) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private File getSnapshotFile(URI location) {
+        return new File(snapshotDir, DigestUtils.digest(DigestUtils.MD5, location.toString()) + ".snapshot");
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,7 @@
 package org.eclipse.tycho.p2.impl.resolver;
 
 import java.net.URI;
+import java.util.Collection;
 
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
@@ -29,4 +30,24 @@ public interface P2RepositoryCache {
     public void putRepository(URI location, IMetadataRepository metadataRepository,
             IArtifactRepository artifactRepository);
 
+    /**
+     * Protects the repository at the given location from being evicted from the cache until it is
+     * unpinned again. Calls to this method may be nested.
+     */
+    public void pinRepository(URI location);
+
+    public void unpinRepository(URI location);
+
+    /**
+     * Protects the repositories at the given locations from being evicted from the cache as long
+     * as the given object is strongly reachable. This is used for target platforms, which keep
+     * references to the content of the repositories they were built from.
+     */
+    public void pinRepositories(Object owner, Collection<URI> locations);
+
+    /**
+     * Protects the repository at the given location from being evicted from the cache at all.
+     */
+    public void pinRepositoryPermanently(URI location);
+
 }
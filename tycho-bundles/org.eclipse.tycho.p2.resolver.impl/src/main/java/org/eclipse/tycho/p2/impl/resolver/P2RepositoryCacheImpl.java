@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,49 +10,264 @@
  *******************************************************************************/
 package org.eclipse.tycho.p2.impl.resolver;
 
-import java.lang.ref.SoftReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.QueryUtil;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.tycho.core.facade.MavenLogger;
 import org.eclipse.tycho.p2.repository.TychoRepositoryIndex;
 
+/**
+ * Thread-safe cache of loaded p2 repositories with a memory budget.
+ *
+ * <p>
+ * The size of a cached repository is estimated by the number of installable units in its metadata
+ * repository. When the total size exceeds the budget, the least recently used repositories are
+ * evicted, except for repositories which are pinned because they are in use by a target platform
+ * which is currently being computed or which is still referenced, e.g. by the cache of target
+ * platforms of the build session. (Evicting such repositories wouldn't free any memory, but would
+ * only cause the repository to be loaded a second time.) Repositories which must only exist once,
+ * like the p2 views of the local Maven repository, are never evicted.
+ * </p>
+ *
+ * <p>
+ * The budget can be configured with the session property {@value #MAX_UNITS_PROPERTY}. Since the
+ * cache is shared by the builds which use the same local repository, the value of the session which
+ * created the cache applies.
+ * </p>
+ */
 public class P2RepositoryCacheImpl implements P2RepositoryCache {
 
-    private HashMap<URI, SoftReference<IArtifactRepository>> artifactRepositories = new HashMap<URI, SoftReference<IArtifactRepository>>();
+    public static final String MAX_UNITS_PROPERTY = "tycho.p2.repositoryCache.maxUnits";
+
+    static final int DEFAULT_MAX_UNITS = 200000;
+
+    private final MavenLogger logger;
+
+    private final long maxUnits;
+
+    /** all cached repositories, in order of least recent use */
+    private final LinkedHashMap<URI, Entry> entries = new LinkedHashMap<URI, Entry>(16, 0.75f, true);
+
+    private final Map<URI, Integer> pins = new HashMap<URI, Integer>();
+
+    private final Set<URI> permanentPins = new HashSet<URI>();
+
+    /** pins which are released when their owner is garbage collected */
+    private final Set<OwnerPins> ownerPins = new HashSet<OwnerPins>();
+
+    private final ReferenceQueue<Object> collectedOwners = new ReferenceQueue<Object>();
+
+    /** start times of loads that follow a cache miss */
+    private final Map<URI, Long> pendingLoads = new HashMap<URI, Long>();
+
+    private final HashMap<String, TychoRepositoryIndex> indexes = new HashMap<String, TychoRepositoryIndex>();
+
+    private long totalUnits;
+
+    private int hits;
+    private int misses;
+    private int evictions;
+    private int loads;
+    private long loadMillis;
 
-    private HashMap<URI, SoftReference<IMetadataRepository>> metadataRepositories = new HashMap<URI, SoftReference<IMetadataRepository>>();
+    public P2RepositoryCacheImpl(MavenLogger logger, Properties sessionProperties) {
+        this(logger, getMaxUnits(sessionProperties, logger));
+    }
 
-    private HashMap<String, TychoRepositoryIndex> indexes = new HashMap<String, TychoRepositoryIndex>();
+    public P2RepositoryCacheImpl(MavenLogger logger, long maxUnits) {
+        this.logger = logger;
+        this.maxUnits = maxUnits;
+    }
 
-    public IArtifactRepository getArtifactRepository(URI uri) {
-        return dereference(artifactRepositories.get(uri));
+    private static long getMaxUnits(Properties sessionProperties, MavenLogger logger) {
+        String value = sessionProperties.getProperty(MAX_UNITS_PROPERTY);
+        if (value == null) {
+            return DEFAULT_MAX_UNITS;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring invalid value of property " + MAX_UNITS_PROPERTY + ": " + value);
+            return DEFAULT_MAX_UNITS;
+        }
     }
 
-    private <T> T dereference(SoftReference<T> reference) {
-        return reference != null ? reference.get() : null;
+    public synchronized IArtifactRepository getArtifactRepository(URI uri) {
+        Entry entry = entries.get(uri);
+        return entry != null ? entry.artifactRepository : null;
     }
 
-    public IMetadataRepository getMetadataRepository(URI uri) {
-        return dereference(metadataRepositories.get(uri));
+    public synchronized IMetadataRepository getMetadataRepository(URI uri) {
+        Entry entry = entries.get(uri);
+        if (entry != null && entry.metadataRepository != null) {
+            hits++;
+            return entry.metadataRepository;
+        }
+        misses++;
+        pendingLoads.put(uri, System.currentTimeMillis());
+        return null;
     }
 
     public void putRepository(URI uri, IMetadataRepository metadataRepository, IArtifactRepository artifactRepository) {
-        if (metadataRepository != null) {
-            metadataRepositories.put(uri, new SoftReference<IMetadataRepository>(metadataRepository));
+        // count outside of the lock; this may take some time for large repositories
+        long units = countUnits(metadataRepository);
+
+        synchronized (this) {
+            Long loadStart = pendingLoads.remove(uri);
+            if (loadStart != null) {
+                loads++;
+                loadMillis += System.currentTimeMillis() - loadStart;
+            }
+
+            Entry entry = entries.get(uri);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(uri, entry);
+            }
+            if (metadataRepository != null) {
+                totalUnits += units - entry.units;
+                entry.metadataRepository = metadataRepository;
+                entry.units = units;
+            }
+            if (artifactRepository != null) {
+                entry.artifactRepository = artifactRepository;
+            }
+            evictIfNecessary();
+        }
+    }
+
+    private static long countUnits(IMetadataRepository metadataRepository) {
+        if (metadataRepository == null) {
+            return 0;
+        }
+        long result = 0;
+        for (Iterator<IInstallableUnit> it = metadataRepository.query(QueryUtil.ALL_UNITS, null).iterator(); it
+                .hasNext(); it.next()) {
+            result++;
+        }
+        return result;
+    }
+
+    private void evictIfNecessary() {
+        releaseCollectedOwners();
+        for (Iterator<Map.Entry<URI, Entry>> it = entries.entrySet().iterator(); totalUnits > maxUnits
+                && it.hasNext();) {
+            Map.Entry<URI, Entry> candidate = it.next();
+            if (pins.containsKey(candidate.getKey()) || permanentPins.contains(candidate.getKey())) {
+                continue;
+            }
+            it.remove();
+            totalUnits -= candidate.getValue().units;
+            evictions++;
+            logger.debug("Evicted p2 repository " + candidate.getKey() + " (" + candidate.getValue().units
+                    + " units) from the repository cache");
         }
+    }
+
+    public synchronized void pinRepository(URI uri) {
+        Integer count = pins.get(uri);
+        pins.put(uri, count == null ? 1 : count + 1);
+    }
+
+    public synchronized void unpinRepository(URI uri) {
+        if (releasePin(uri)) {
+            evictIfNecessary();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the repository is no longer pinned
+     */
+    private boolean releasePin(URI uri) {
+        Integer count = pins.get(uri);
+        if (count == null) {
+            return false;
+        }
+        if (count > 1) {
+            pins.put(uri, count - 1);
+            return false;
+        }
+        pins.remove(uri);
+        return true;
+    }
 
-        if (artifactRepository != null) {
-            artifactRepositories.put(uri, new SoftReference<IArtifactRepository>(artifactRepository));
+    public synchronized void pinRepositories(Object owner, Collection<URI> uris) {
+        OwnerPins reference = new OwnerPins(owner, collectedOwners, uris);
+        for (URI uri : reference.uris) {
+            pinRepository(uri);
         }
+        ownerPins.add(reference);
+    }
+
+    private void releaseCollectedOwners() {
+        Reference<?> reference;
+        while ((reference = collectedOwners.poll()) != null) {
+            if (ownerPins.remove(reference)) {
+                for (URI uri : ((OwnerPins) reference).uris) {
+                    releasePin(uri);
+                }
+            }
+        }
+    }
+
+    public synchronized void pinRepositoryPermanently(URI uri) {
+        permanentPins.add(uri);
     }
 
-    public TychoRepositoryIndex getRepositoryIndex(String repositoryKey) {
+    public synchronized TychoRepositoryIndex getRepositoryIndex(String repositoryKey) {
         return indexes.get(repositoryKey);
     }
 
-    public void putRepositoryIndex(String repositoryKey, TychoRepositoryIndex index) {
+    public synchronized void putRepositoryIndex(String repositoryKey, TychoRepositoryIndex index) {
         indexes.put(repositoryKey, index);
     }
+
+    synchronized boolean isCached(URI uri) {
+        // doesn't count as use of the entry
+        return entries.containsKey(uri);
+    }
+
+    synchronized long getTotalUnits() {
+        return totalUnits;
+    }
+
+    public synchronized void logStatistics() {
+        if (hits + misses == 0) {
+            return;
+        }
+        logger.debug("p2 repository cache: " + hits + " hits, " + misses + " misses, " + loads + " loads in "
+                + loadMillis + " ms, " + evictions + " evictions, " + entries.size() + " repositories with "
+                + totalUnits + " units cached (budget: " + maxUnits + " units)");
+    }
+
+    private static class OwnerPins extends WeakReference<Object> {
+        final List<URI> uris;
+
+        OwnerPins(Object owner, ReferenceQueue<Object> queue, Collection<URI> uris) {
+            super(owner, queue);
+            this.uris = new ArrayList<URI>(uris);
+        }
+    }
+
+    private static class Entry {
+        IMetadataRepository metadataRepository;
+        IArtifactRepository artifactRepository;
+        long units;
+    }
 }
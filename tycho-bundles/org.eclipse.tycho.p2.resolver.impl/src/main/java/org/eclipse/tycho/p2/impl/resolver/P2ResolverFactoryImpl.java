@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -32,8 +32,7 @@ public class P2ResolverFactoryImpl implements P2ResolverFactory {
     private LocalRepositoryP2Indices localRepoIndices;
 
     public TargetPlatformBuilderImpl createTargetPlatformBuilder(String bree, boolean disableP2Mirrors) {
-        IProvisioningAgent agent = getProvisioningAgent(mavenContext.getLocalRepositoryRoot(),
-                mavenContext.isOffline(), mavenContext.getLogger());
+        IProvisioningAgent agent = getProvisioningAgent(mavenContext);
         return new TargetPlatformBuilderImpl(agent, mavenContext, bree, localRepoIndices, disableP2Mirrors);
     }
 
@@ -82,8 +81,10 @@ public class P2ResolverFactoryImpl implements P2ResolverFactory {
         }
     }
 
-    public static synchronized IProvisioningAgent getProvisioningAgent(File localMavenRepositoryRoot, boolean offline,
-            MavenLogger logger) {
+    public static synchronized IProvisioningAgent getProvisioningAgent(MavenContext mavenContext) {
+        File localMavenRepositoryRoot = mavenContext.getLocalRepositoryRoot();
+        boolean offline = mavenContext.isOffline();
+        MavenLogger logger = mavenContext.getLogger();
         AgentKey agentKey = new AgentKey(localMavenRepositoryRoot, offline);
         IProvisioningAgent agent = agents.get(agentKey);
         if (agent == null) {
@@ -102,8 +103,12 @@ public class P2ResolverFactoryImpl implements P2ResolverFactory {
                 cacheMgr.setLocalRepositoryLocation(localMavenRepositoryRoot);
                 agent.registerService(CacheManager.SERVICE_NAME, cacheMgr);
 
+                // setup persistent snapshots of remote metadata repositories
+                agent.registerService(MetadataRepositorySnapshots.SERVICE_NAME, new MetadataRepositorySnapshots(agent,
+                        cacheMgr, logger));
+
                 // setup tycho repo cache
-                P2RepositoryCache tychoCache = new P2RepositoryCacheImpl();
+                P2RepositoryCache tychoCache = new P2RepositoryCacheImpl(logger, mavenContext.getSessionProperties());
                 agent.registerService(P2RepositoryCache.SERVICE_NAME, tychoCache);
 
                 agents.put(agentKey, agent);
@@ -122,6 +127,18 @@ public class P2ResolverFactoryImpl implements P2ResolverFactory {
         this.localRepoIndices = localRepoIndices;
     }
 
+    /**
+     * Logs the statistics of the repository caches of all agents.
+     */
+    public static synchronized void logCacheStatistics() {
+        for (IProvisioningAgent agent : agents.values()) {
+            Object cache = agent.getService(P2RepositoryCache.SERVICE_NAME);
+            if (cache instanceof P2RepositoryCacheImpl) {
+                ((P2RepositoryCacheImpl) cache).logStatistics();
+            }
+        }
+    }
+
     /**
      * This method is meant for use by tests to purge any cache state between test invocations
      */
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -18,9 +18,9 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.equinox.internal.p2.director.QueryableArray;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.metadata.IProvidedCapability;
@@ -40,6 +40,7 @@ import org.eclipse.tycho.p2.metadata.IReactorArtifactFacade;
 import org.eclipse.tycho.p2.resolver.facade.P2ResolutionResult;
 import org.eclipse.tycho.p2.resolver.facade.P2Resolver;
 import org.eclipse.tycho.p2.target.facade.TargetPlatformBuilder;
+import org.eclipse.tycho.p2.util.WorkerPool;
 
 @SuppressWarnings("restriction")
 public class P2ResolverImpl implements P2Resolver {
@@ -68,12 +69,21 @@ public class P2ResolverImpl implements P2Resolver {
 
     public List<P2ResolutionResult> resolveProject(TargetPlatform targetPlatform, File projectLocation) {
         this.context = (P2TargetPlatform) targetPlatform;
+        context.registerResolutionContextArtifacts(projectLocation);
 
         ArrayList<P2ResolutionResult> results = new ArrayList<P2ResolutionResult>();
         usedTargetPlatformUnits = new LinkedHashSet<IInstallableUnit>();
 
-        for (Map<String, String> properties : environments) {
-            results.add(resolveProject(projectLocation, new ProjectorResolutionStrategy(properties, logger)));
+        if (environments.size() <= 1) {
+            for (Map<String, String> properties : environments) {
+                results.add(resolveProject(projectLocation, new ProjectorResolutionStrategy(properties, logger)));
+            }
+        } else {
+            // the solver runs are independent, but the post-processing (which downloads artifacts
+            // and collects the used units) is done in the order of the environments
+            for (Collection<IInstallableUnit> newState : resolveEnvironmentsConcurrently(projectLocation)) {
+                results.add(processResolvedState(newState));
+            }
         }
 
         context.reportUsedIUs(usedTargetPlatformUnits);
@@ -82,8 +92,21 @@ public class P2ResolverImpl implements P2Resolver {
         return results;
     }
 
+    private List<Collection<IInstallableUnit>> resolveEnvironmentsConcurrently(final File projectLocation) {
+        List<Callable<Collection<IInstallableUnit>>> tasks = new ArrayList<Callable<Collection<IInstallableUnit>>>();
+        for (final Map<String, String> properties : environments) {
+            tasks.add(new Callable<Collection<IInstallableUnit>>() {
+                public Collection<IInstallableUnit> call() {
+                    return resolveState(projectLocation, new ProjectorResolutionStrategy(properties, logger));
+                }
+            });
+        }
+        return WorkerPool.invokeAllUnchecked(tasks, Runtime.getRuntime().availableProcessors(), "tycho-p2-resolver");
+    }
+
     public P2ResolutionResult collectProjectDependencies(TargetPlatform context, File projectLocation) {
         this.context = (P2TargetPlatform) context;
+        this.context.registerResolutionContextArtifacts(projectLocation);
         return resolveProject(projectLocation, new DependencyCollector(logger));
     }
 
@@ -91,8 +114,7 @@ public class P2ResolverImpl implements P2Resolver {
         ProjectorResolutionStrategy strategy = new ProjectorResolutionStrategy(properties, logger);
         P2TargetPlatform contextImpl = (P2TargetPlatform) context;
         strategy.setJREUIs(contextImpl.getJREIUs());
-        strategy.setAvailableInstallableUnits(new QueryableArray(contextImpl.getInstallableUnits().toArray(
-                new IInstallableUnit[0])));
+        strategy.setAvailableInstallableUnits(contextImpl.getIndexedInstallableUnits());
         strategy.setRootInstallableUnits(new HashSet<IInstallableUnit>());
         strategy.setAdditionalRequirements(additionalRequirements);
 
@@ -103,12 +125,15 @@ public class P2ResolverImpl implements P2Resolver {
         return result;
     }
 
-    @SuppressWarnings("unchecked")
     protected P2ResolutionResult resolveProject(File projectLocation, ResolutionStrategy strategy) {
+        return processResolvedState(resolveState(projectLocation, strategy));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<IInstallableUnit> resolveState(File projectLocation, ResolutionStrategy strategy) {
         strategy.setRootInstallableUnits(context.getReactorProjectIUs(projectLocation, true));
         strategy.setAdditionalRequirements(additionalRequirements);
-        IQueryable<IInstallableUnit> availableUnits = new QueryableArray(context.getInstallableUnits().toArray(
-                new IInstallableUnit[0]));
+        IQueryable<IInstallableUnit> availableUnits = context.getIndexedInstallableUnits();
         LinkedHashSet<IInstallableUnit> projectSecondaryIUs = context.getReactorProjectIUs(projectLocation, false);
         if (!projectSecondaryIUs.isEmpty()) {
             availableUnits = new CompoundQueryable<IInstallableUnit>(toArray(availableUnits,
@@ -117,8 +142,10 @@ public class P2ResolverImpl implements P2Resolver {
         strategy.setAvailableInstallableUnits(availableUnits);
         strategy.setJREUIs(context.getJREIUs());
 
-        Collection<IInstallableUnit> newState = strategy.resolve(monitor);
+        return strategy.resolve(monitor);
+    }
 
+    private P2ResolutionResult processResolvedState(Collection<IInstallableUnit> newState) {
         if (usedTargetPlatformUnits != null) {
             usedTargetPlatformUnits.addAll(newState);
         }
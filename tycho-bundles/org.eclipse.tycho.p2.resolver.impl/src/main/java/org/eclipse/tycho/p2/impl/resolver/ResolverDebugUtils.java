@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,7 +13,6 @@ package org.eclipse.tycho.p2.impl.resolver;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Collection;
-import java.util.LinkedHashSet;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
@@ -39,7 +38,7 @@ public class ResolverDebugUtils {
             try {
                 ByteArrayOutputStream os = new ByteArrayOutputStream();
                 try {
-                    new MetadataIO().writeXML(new LinkedHashSet<IInstallableUnit>(ius), os);
+                    new MetadataIO().writeXML(ius, os);
                 } finally {
                     os.close();
                 }
@@ -0,0 +1,547 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.p2.impl.resolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.metadata.IRequiredCapability;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.ICopyright;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IInstallableUnitFragment;
+import org.eclipse.equinox.p2.metadata.IInstallableUnitPatch;
+import org.eclipse.equinox.p2.metadata.ILicense;
+import org.eclipse.equinox.p2.metadata.IProvidedCapability;
+import org.eclipse.equinox.p2.metadata.IRequirement;
+import org.eclipse.equinox.p2.metadata.ITouchpointData;
+import org.eclipse.equinox.p2.metadata.ITouchpointInstruction;
+import org.eclipse.equinox.p2.metadata.ITouchpointType;
+import org.eclipse.equinox.p2.metadata.IUpdateDescriptor;
+import org.eclipse.equinox.p2.metadata.MetadataFactory;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitFragmentDescription;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.metadata.VersionRange;
+import org.eclipse.equinox.p2.metadata.expression.ExpressionUtil;
+import org.eclipse.equinox.p2.metadata.expression.IExpression;
+import org.eclipse.equinox.p2.metadata.expression.IFilterExpression;
+import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
+import org.eclipse.tycho.p2.maven.repository.xmlio.MetadataIO;
+
+/**
+ * Binary format of the installable units in a {@link MetadataRepositorySnapshots snapshot}. Reading
+ * this format is much cheaper than parsing the p2 XML format: there is no XML parser involved, and
+ * strings, versions, and expressions which occur in many units (namespaces, version ranges, filters
+ * etc.) are stored and parsed only once.
+ *
+ * <p>
+ * Units which use features that are not covered by the binary format, e.g. installable unit
+ * patches, are embedded in the p2 XML format.
+ * </p>
+ */
+@SuppressWarnings("restriction")
+class SnapshotFormat {
+
+    private static final byte UNIT = 1;
+    private static final byte FRAGMENT = 2;
+    private static final byte XML_UNIT = 3;
+
+    private static final byte SIMPLE_REQUIREMENT = 1;
+    private static final byte MATCH_REQUIREMENT = 2;
+
+    private static final byte STRING_PARAMETER = 1;
+    private static final byte VERSION_PARAMETER = 2;
+    private static final byte VERSION_RANGE_PARAMETER = 3;
+    private static final byte FILTER_PARAMETER = 4;
+
+    private static final int NULL_STRING = -1;
+
+    static void write(Collection<IInstallableUnit> units, DataOutputStream out) throws IOException {
+        new Writer(out).writeUnits(units);
+    }
+
+    static Set<IInstallableUnit> read(DataInputStream in) throws IOException {
+        return new Reader(in).readUnits();
+    }
+
+    private static class Writer {
+        private final DataOutputStream out;
+
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeUnits(Collection<IInstallableUnit> units) throws IOException {
+            out.writeInt(units.size());
+            for (IInstallableUnit unit : units) {
+                if (!isSupported(unit)) {
+                    out.writeByte(XML_UNIT);
+                    ByteArrayOutputStream xml = new ByteArrayOutputStream();
+                    new MetadataIO().writeXML(Collections.singleton(unit), xml);
+                    out.writeInt(xml.size());
+                    xml.writeTo(out);
+                } else if (unit instanceof IInstallableUnitFragment) {
+                    out.writeByte(FRAGMENT);
+                    writeUnit(unit);
+                    writeRequirements(((IInstallableUnitFragment) unit).getHost());
+                } else {
+                    out.writeByte(UNIT);
+                    writeUnit(unit);
+                }
+            }
+        }
+
+        private void writeUnit(IInstallableUnit unit) throws IOException {
+            writeString(unit.getId());
+            writeString(unit.getVersion().toString());
+            out.writeBoolean(unit.isSingleton());
+
+            Map<String, String> properties = unit.getProperties();
+            out.writeInt(properties.size());
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                writeString(property.getKey());
+                writeString(property.getValue());
+            }
+
+            writeFilter(unit.getFilter());
+            writeRequirements(unit.getRequirements());
+            writeRequirements(unit.getMetaRequirements());
+
+            Collection<IProvidedCapability> capabilities = unit.getProvidedCapabilities();
+            out.writeInt(capabilities.size());
+            for (IProvidedCapability capability : capabilities) {
+                writeString(capability.getNamespace());
+                writeString(capability.getName());
+                writeString(capability.getVersion().toString());
+            }
+
+            Collection<IArtifactKey> artifacts = unit.getArtifacts();
+            out.writeInt(artifacts.size());
+            for (IArtifactKey artifact : artifacts) {
+                writeString(artifact.getClassifier());
+                writeString(artifact.getId());
+                writeString(artifact.getVersion().toString());
+            }
+
+            ITouchpointType touchpointType = unit.getTouchpointType();
+            writeString(touchpointType.getId());
+            writeString(touchpointType.getVersion().toString());
+
+            Collection<ITouchpointData> touchpointData = unit.getTouchpointData();
+            out.writeInt(touchpointData.size());
+            for (ITouchpointData data : touchpointData) {
+                Map<String, ITouchpointInstruction> instructions = data.getInstructions();
+                out.writeInt(instructions.size());
+                for (Map.Entry<String, ITouchpointInstruction> instruction : instructions.entrySet()) {
+                    writeString(instruction.getKey());
+                    writeString(instruction.getValue().getBody());
+                    writeString(instruction.getValue().getImportAttribute());
+                }
+            }
+
+            IUpdateDescriptor updateDescriptor = unit.getUpdateDescriptor();
+            out.writeBoolean(updateDescriptor != null);
+            if (updateDescriptor != null) {
+                Collection<IMatchExpression<IInstallableUnit>> updatedUnits = updateDescriptor.getIUsBeingUpdated();
+                out.writeInt(updatedUnits.size());
+                for (IMatchExpression<IInstallableUnit> updatedUnit : updatedUnits) {
+                    writeMatchExpression(updatedUnit);
+                }
+                out.writeInt(updateDescriptor.getSeverity());
+                writeString(updateDescriptor.getDescription());
+                writeURI(updateDescriptor.getLocation());
+            }
+
+            Collection<ILicense> licenses = unit.getLicenses();
+            out.writeInt(licenses.size());
+            for (ILicense license : licenses) {
+                writeURI(license.getLocation());
+                writeString(license.getBody());
+            }
+
+            ICopyright copyright = unit.getCopyright();
+            out.writeBoolean(copyright != null);
+            if (copyright != null) {
+                writeURI(copyright.getLocation());
+                writeString(copyright.getBody());
+            }
+        }
+
+        private void writeRequirements(Collection<IRequirement> requirements) throws IOException {
+            out.writeInt(requirements.size());
+            for (IRequirement requirement : requirements) {
+                if (requirement instanceof IRequiredCapability) {
+                    IRequiredCapability capability = (IRequiredCapability) requirement;
+                    out.writeByte(SIMPLE_REQUIREMENT);
+                    writeString(capability.getNamespace());
+                    writeString(capability.getName());
+                    writeString(capability.getRange().toString());
+                } else {
+                    out.writeByte(MATCH_REQUIREMENT);
+                    writeMatchExpression(requirement.getMatches());
+                }
+                writeFilter(requirement.getFilter());
+                out.writeInt(requirement.getMin());
+                out.writeInt(requirement.getMax());
+                out.writeBoolean(requirement.isGreedy());
+                writeString(requirement.getDescription());
+            }
+        }
+
+        /**
+         * Writes a filter as the LDAP filter string from which the p2 XML parser creates it.
+         */
+        private void writeFilter(IMatchExpression<IInstallableUnit> filter) throws IOException {
+            writeString(filter == null ? null : filter.getParameters()[0].toString());
+        }
+
+        /**
+         * Writes an expression in the same way as the p2 XML writer, i.e. as the expression string
+         * and the parameters.
+         */
+        private void writeMatchExpression(IMatchExpression<IInstallableUnit> expression) throws IOException {
+            writeString(ExpressionUtil.getOperand(expression).toString());
+            Object[] parameters = expression.getParameters();
+            out.writeInt(parameters.length);
+            for (Object parameter : parameters) {
+                if (parameter instanceof String) {
+                    out.writeByte(STRING_PARAMETER);
+                } else if (parameter instanceof Version) {
+                    out.writeByte(VERSION_PARAMETER);
+                } else if (parameter instanceof VersionRange) {
+                    out.writeByte(VERSION_RANGE_PARAMETER);
+                } else {
+                    out.writeByte(FILTER_PARAMETER);
+                }
+                writeString(parameter.toString());
+            }
+        }
+
+        private void writeURI(URI uri) throws IOException {
+            writeString(uri == null ? null : uri.toString());
+        }
+
+        /**
+         * Writes each distinct string only once; later occurrences refer to the first one.
+         */
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                out.writeInt(NULL_STRING);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                out.writeInt(index);
+                return;
+            }
+            index = strings.size();
+            strings.put(value, index);
+            out.writeInt(index);
+            byte[] bytes = value.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the unit can be stored in the binary format without loss.
+     */
+    static boolean isSupported(IInstallableUnit unit) {
+        if (unit instanceof IInstallableUnitPatch) {
+            return false;
+        }
+        if (!isFilterSupported(unit.getFilter()) || !areRequirementsSupported(unit.getRequirements())
+                || !areRequirementsSupported(unit.getMetaRequirements())) {
+            return false;
+        }
+        if (unit instanceof IInstallableUnitFragment
+                && !areRequirementsSupported(((IInstallableUnitFragment) unit).getHost())) {
+            return false;
+        }
+        IUpdateDescriptor updateDescriptor = unit.getUpdateDescriptor();
+        if (updateDescriptor != null) {
+            for (IMatchExpression<IInstallableUnit> updatedUnit : updateDescriptor.getIUsBeingUpdated()) {
+                if (!isMatchExpressionSupported(updatedUnit)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean areRequirementsSupported(Collection<IRequirement> requirements) {
+        for (IRequirement requirement : requirements) {
+            if (!isFilterSupported(requirement.getFilter())) {
+                return false;
+            }
+            if (!(requirement instanceof IRequiredCapability)
+                    && !isMatchExpressionSupported(requirement.getMatches())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isFilterSupported(IMatchExpression<IInstallableUnit> filter) {
+        if (filter == null) {
+            return true;
+        }
+        Object[] parameters = filter.getParameters();
+        return parameters.length == 1 && parameters[0] instanceof IFilterExpression;
+    }
+
+    private static boolean isMatchExpressionSupported(IMatchExpression<IInstallableUnit> expression) {
+        for (Object parameter : expression.getParameters()) {
+            if (!(parameter instanceof String || parameter instanceof Version || parameter instanceof VersionRange
+                    || parameter instanceof IFilterExpression)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Reader {
+        private final DataInputStream in;
+
+        private final List<String> strings = new ArrayList<String>();
+
+        private final Map<String, Version> versions = new HashMap<String, Version>();
+
+        private final Map<String, VersionRange> versionRanges = new HashMap<String, VersionRange>();
+
+        private final Map<String, IMatchExpression<IInstallableUnit>> filters = new HashMap<String, IMatchExpression<IInstallableUnit>>();
+
+        private final Map<String, IExpression> expressions = new HashMap<String, IExpression>();
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        Set<IInstallableUnit> readUnits() throws IOException {
+            int count = in.readInt();
+            Set<IInstallableUnit> units = new LinkedHashSet<IInstallableUnit>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                byte kind = in.readByte();
+                switch (kind) {
+                case UNIT:
+                    InstallableUnitDescription description = new InstallableUnitDescription();
+                    readUnit(description);
+                    units.add(MetadataFactory.createInstallableUnit(description));
+                    break;
+                case FRAGMENT:
+                    InstallableUnitFragmentDescription fragment = new InstallableUnitFragmentDescription();
+                    readUnit(fragment);
+                    fragment.setHost(readRequirements());
+                    units.add(MetadataFactory.createInstallableUnitFragment(fragment));
+                    break;
+                case XML_UNIT:
+                    byte[] xml = new byte[in.readInt()];
+                    in.readFully(xml);
+                    units.addAll(new MetadataIO().readXML(new ByteArrayInputStream(xml)));
+                    break;
+                default:
+                    throw new IOException("Invalid unit kind " + kind);
+                }
+            }
+            return units;
+        }
+
+        private void readUnit(InstallableUnitDescription description) throws IOException {
+            description.setId(readString());
+            description.setVersion(readVersion());
+            description.setSingleton(in.readBoolean());
+
+            int propertyCount = in.readInt();
+            for (int i = 0; i < propertyCount; i++) {
+                description.setProperty(readString(), readString());
+            }
+
+            description.setFilter(readFilter());
+            description.setRequirements(readRequirements());
+            description.setMetaRequirements(readRequirements());
+
+            IProvidedCapability[] capabilities = new IProvidedCapability[in.readInt()];
+            for (int i = 0; i < capabilities.length; i++) {
+                capabilities[i] = MetadataFactory.createProvidedCapability(readString(), readString(), readVersion());
+            }
+            description.setCapabilities(capabilities);
+
+            IArtifactKey[] artifacts = new IArtifactKey[in.readInt()];
+            for (int i = 0; i < artifacts.length; i++) {
+                artifacts[i] = new ArtifactKey(readString(), readString(), readVersion());
+            }
+            description.setArtifacts(artifacts);
+
+            description.setTouchpointType(MetadataFactory.createTouchpointType(readString(), readVersion()));
+
+            int touchpointDataCount = in.readInt();
+            for (int i = 0; i < touchpointDataCount; i++) {
+                int instructionCount = in.readInt();
+                Map<String, ITouchpointInstruction> instructions = new LinkedHashMap<String, ITouchpointInstruction>();
+                for (int j = 0; j < instructionCount; j++) {
+                    String key = readString();
+                    instructions.put(key, MetadataFactory.createTouchpointInstruction(readString(), readString()));
+                }
+                description.addTouchpointData(MetadataFactory.createTouchpointData(instructions));
+            }
+
+            if (in.readBoolean()) {
+                int updatedUnitCount = in.readInt();
+                List<IMatchExpression<IInstallableUnit>> updatedUnits = new ArrayList<IMatchExpression<IInstallableUnit>>(
+                        updatedUnitCount);
+                for (int i = 0; i < updatedUnitCount; i++) {
+                    updatedUnits.add(readMatchExpression());
+                }
+                int severity = in.readInt();
+                String updateDescription = readString();
+                description.setUpdateDescriptor(MetadataFactory.createUpdateDescriptor(updatedUnits, severity,
+                        updateDescription, readURI()));
+            }
+
+            ILicense[] licenses = new ILicense[in.readInt()];
+            for (int i = 0; i < licenses.length; i++) {
+                licenses[i] = MetadataFactory.createLicense(readURI(), readString());
+            }
+            description.setLicenses(licenses);
+
+            if (in.readBoolean()) {
+                description.setCopyright(MetadataFactory.createCopyright(readURI(), readString()));
+            }
+        }
+
+        private IRequirement[] readRequirements() throws IOException {
+            IRequirement[] requirements = new IRequirement[in.readInt()];
+            for (int i = 0; i < requirements.length; i++) {
+                byte kind = in.readByte();
+                if (kind == SIMPLE_REQUIREMENT) {
+                    String namespace = readString();
+                    String name = readString();
+                    VersionRange range = readVersionRange();
+                    IMatchExpression<IInstallableUnit> filter = readFilter();
+                    requirements[i] = MetadataFactory.createRequirement(namespace, name, range, filter, in.readInt(),
+                            in.readInt(), in.readBoolean(), readString());
+                } else if (kind == MATCH_REQUIREMENT) {
+                    IMatchExpression<IInstallableUnit> matches = readMatchExpression();
+                    IMatchExpression<IInstallableUnit> filter = readFilter();
+                    requirements[i] = MetadataFactory.createRequirement(matches, filter, in.readInt(), in.readInt(),
+                            in.readBoolean(), readString());
+                } else {
+                    throw new IOException("Invalid requirement kind " + kind);
+                }
+            }
+            return requirements;
+        }
+
+        private IMatchExpression<IInstallableUnit> readFilter() throws IOException {
+            String filter = readString();
+            if (filter == null) {
+                return null;
+            }
+            IMatchExpression<IInstallableUnit> result = filters.get(filter);
+            if (result == null) {
+                result = InstallableUnit.parseFilter(filter);
+                filters.put(filter, result);
+            }
+            return result;
+        }
+
+        private IMatchExpression<IInstallableUnit> readMatchExpression() throws IOException {
+            String operand = readString();
+            IExpression expression = expressions.get(operand);
+            if (expression == null) {
+                expression = ExpressionUtil.parse(operand);
+                expressions.put(operand, expression);
+            }
+            Object[] parameters = new Object[in.readInt()];
+            for (int i = 0; i < parameters.length; i++) {
+                byte type = in.readByte();
+                switch (type) {
+                case STRING_PARAMETER:
+                    parameters[i] = readString();
+                    break;
+                case VERSION_PARAMETER:
+                    parameters[i] = readVersion();
+                    break;
+                case VERSION_RANGE_PARAMETER:
+                    parameters[i] = readVersionRange();
+                    break;
+                case FILTER_PARAMETER:
+                    parameters[i] = ExpressionUtil.parseLDAP(readString());
+                    break;
+                default:
+                    throw new IOException("Invalid parameter type " + type);
+                }
+            }
+            return ExpressionUtil.getFactory().<IInstallableUnit> matchExpression(expression, parameters);
+        }
+
+        private Version readVersion() throws IOException {
+            String version = readString();
+            Version result = versions.get(version);
+            if (result == null) {
+                result = Version.create(version);
+                versions.put(version, result);
+            }
+            return result;
+        }
+
+        private VersionRange readVersionRange() throws IOException {
+            String range = readString();
+            VersionRange result = versionRanges.get(range);
+            if (result == null) {
+                result = new VersionRange(range);
+                versionRanges.put(range, result);
+            }
+            return result;
+        }
+
+        private URI readURI() throws IOException {
+            String uri = readString();
+            return uri == null ? null : URI.create(uri);
+        }
+
+        private String readString() throws IOException {
+            int index = in.readInt();
+            if (index == NULL_STRING) {
+                return null;
+            }
+            if (index < strings.size()) {
+                return strings.get(index);
+            }
+            if (index != strings.size()) {
+                throw new IOException("Invalid string reference " + index);
+            }
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            String value = new String(bytes, "UTF-8");
+            strings.add(value);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.p2.impl.resolver;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.IQuery;
+import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.tycho.p2.maven.repository.AbstractMetadataRepository2;
+
+/**
+ * Read-only metadata repository with the content of a remote repository loaded from a
+ * {@link MetadataRepositorySnapshots snapshot}.
+ */
+public class SnapshotMetadataRepository extends AbstractMetadataRepository2 {
+
+    private static final String REPOSITORY_TYPE = SnapshotMetadataRepository.class.getName();
+
+    private final Set<IInstallableUnit> units;
+
+    public SnapshotMetadataRepository(IProvisioningAgent agent, File snapshotFile, URI location,
+            Set<IInstallableUnit> units) {
+        super(agent, "snapshot@" + location, REPOSITORY_TYPE, snapshotFile);
+        setLocation(location);
+        this.units = Collections.unmodifiableSet(units);
+    }
+
+    public IQueryResult<IInstallableUnit> query(IQuery<IInstallableUnit> query, IProgressMonitor monitor) {
+        return query.perform(units.iterator());
+    }
+
+    public void addInstallableUnits(Collection<IInstallableUnit> installableUnits) {
+        throw new UnsupportedOperationException();
+    }
+
+    public boolean removeInstallableUnits(Collection<IInstallableUnit> installableUnits) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void removeAll() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -27,6 +27,9 @@ import org.eclipse.tycho.core.facade.MavenLogger;
 public class TychoP2RepositoryCacheManager extends CacheManager {
     public static final String CACHE_RELPATH = ".cache/tycho/p2-repository-metadata";
 
+    // prefixes of the cached files of simple and composite metadata repositories
+    private static final String[] METADATA_PREFIXES = new String[] { "content", "compositeContent" };
+
     private boolean offline;
 
     private File localRepositoryLocation;
@@ -76,6 +79,21 @@ public class TychoP2RepositoryCacheManager extends CacheManager {
         throw e;
     }
 
+    /**
+     * Returns a token which changes whenever the cached metadata file of the given repository
+     * changes, or <code>null</code> if there is no cached metadata for the repository. The remote
+     * repository is not accessed.
+     */
+    public String getMetadataCacheToken(URI repositoryLocation) {
+        for (String prefix : METADATA_PREFIXES) {
+            File cacheFile = getCache(repositoryLocation, prefix);
+            if (cacheFile != null) {
+                return prefix + ":" + cacheFile.lastModified() + ":" + cacheFile.length();
+            }
+        }
+        return null;
+    }
+
     @Override
     protected File getCacheDirectory() {
         return new File(localRepositoryLocation, CACHE_RELPATH);
@@ -88,4 +106,8 @@ public class TychoP2RepositoryCacheManager extends CacheManager {
     public void setLocalRepositoryLocation(File localRepositoryLocation) {
         this.localRepositoryLocation = localRepositoryLocation;
     }
+
+    public File getLocalRepositoryLocation() {
+        return localRepositoryLocation;
+    }
 }
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.p2.target;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.internal.p2.metadata.index.CapabilityIndex;
+import org.eclipse.equinox.internal.p2.metadata.index.IdIndex;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.index.IIndex;
+import org.eclipse.equinox.p2.query.IQueryable;
+import org.eclipse.equinox.p2.query.IndexProvider;
+
+/**
+ * Immutable, pre-indexed view on the installable units of a target platform. In contrast to
+ * {@link org.eclipse.equinox.internal.p2.director.QueryableArray}, which copies the units and
+ * lazily builds its indices on every instantiation, this view is built once per target platform
+ * and can be shared by all (possibly concurrent) resolver runs which use the target platform.
+ *
+ * <p>
+ * The view provides the standard p2 indices on the IU id and the provided capabilities, so that it
+ * can be used as {@link IQueryable} by the p2 slicer and projector.
+ * </p>
+ */
+@SuppressWarnings("restriction")
+public final class IndexedInstallableUnits extends IndexProvider<IInstallableUnit> {
+
+    private final List<IInstallableUnit> units;
+
+    private final IIndex<IInstallableUnit> idIndex;
+
+    private final IIndex<IInstallableUnit> capabilityIndex;
+
+    public IndexedInstallableUnits(Collection<IInstallableUnit> units) {
+        this.units = Collections.unmodifiableList(new ArrayList<IInstallableUnit>(units));
+        this.idIndex = new IdIndex(this.units.iterator());
+        this.capabilityIndex = new CapabilityIndex(this.units.iterator());
+    }
+
+    public int size() {
+        return units.size();
+    }
+
+    public Iterator<IInstallableUnit> everything() {
+        return units.iterator();
+    }
+
+    public IIndex<IInstallableUnit> getIndex(String memberName) {
+        if (InstallableUnit.MEMBER_PROVIDED_CAPABILITIES.equals(memberName)) {
+            return capabilityIndex;
+        }
+        if (InstallableUnit.MEMBER_ID.equals(memberName)) {
+            return idIndex;
+        }
+        return null;
+    }
+
+    public Object getManagedProperty(Object client, String memberName, Object key) {
+        // translated properties are not needed for dependency resolution
+        return null;
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,7 @@
  *******************************************************************************/
 package org.eclipse.tycho.p2.target;
 
+import java.io.File;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -32,32 +33,69 @@ import org.eclipse.tycho.p2.util.StatusTool;
 @SuppressWarnings("restriction")
 public class P2ArtifactDownloadTool {
 
+    /**
+     * Session property for the number of parallel downloads from each p2 artifact repository.
+     */
+    public static final String THREADS_PROPERTY = "tycho.p2.download.threads";
+
+    /**
+     * Session property for the number of times failed downloads are retried.
+     */
+    public static final String RETRIES_PROPERTY = "tycho.p2.download.retries";
+
+    static final int DEFAULT_THREADS = 1;
+
+    static final int DEFAULT_RETRIES = 2;
+
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+
     private static final IArtifactRequest[] ARTIFACT_REQUEST_ARRAY = new IArtifactRequest[0];
 
     private final IProvisioningAgent agent;
     private final MavenLogger logger;
+    private final int retries;
 
-    public P2ArtifactDownloadTool(IProvisioningAgent agent, MavenLogger logger) {
+    public P2ArtifactDownloadTool(IProvisioningAgent agent, MavenLogger logger, int retries) {
         this.agent = agent;
         this.logger = logger;
+        this.retries = retries;
     }
 
     public void downloadArtifactsToLocalMavenRepository(List<IArtifactKey> artifacts,
             List<URI> artifactRepositoryLocations, LocalArtifactRepository localMavenRepository) {
 
-        List<MavenMirrorRequest> requests = new ArrayList<MavenMirrorRequest>();
+        List<IArtifactKey> missingArtifacts = new ArrayList<IArtifactKey>();
         for (IArtifactKey key : artifacts) {
-            requests.add(new MavenMirrorRequest(key, localMavenRepository, getTransport()));
+            if (!localMavenRepository.contains(key)) {
+                missingArtifacts.add(key);
+            }
+        }
+        if (missingArtifacts.isEmpty()) {
+            return;
         }
 
+        long start = System.currentTimeMillis();
         IArtifactRepository repository = createCompositeRepository(artifactRepositoryLocations);
-        IStatus result = repository.getArtifacts(requests.toArray(ARTIFACT_REQUEST_ARRAY), new LoggingProgressMonitor(
-                logger));
-        if (!result.isOK()) {
-            // TODO find root exception - the MultiStatus probably doesn't have one
-            throw new RuntimeException(StatusTool.collectProblems(result), result.getException());
+        List<MavenMirrorRequest> requests = createRequests(missingArtifacts, localMavenRepository);
+        for (int attempt = 0;; attempt++) {
+            IStatus result = repository.getArtifacts(requests.toArray(ARTIFACT_REQUEST_ARRAY),
+                    new LoggingProgressMonitor(logger));
+            requests = filterCompletedRequests(requests);
+            if (result.isOK()) {
+                break;
+            }
+            if (attempt >= retries || requests.isEmpty()) {
+                localMavenRepository.save();
+                // TODO find root exception - the MultiStatus probably doesn't have one
+                throw new RuntimeException(StatusTool.collectProblems(result), result.getException());
+            }
+            long backoff = INITIAL_BACKOFF_MILLIS << attempt;
+            logger.warn("Download of " + requests.size() + " artifacts failed; retrying in " + backoff + " ms: "
+                    + StatusTool.collectProblems(result));
+            sleep(backoff);
+            // mirror requests can't be performed twice
+            requests = createRequests(getArtifactKeys(requests), localMavenRepository);
         }
-        requests = filterCompletedRequests(requests);
 
         localMavenRepository.save();
 
@@ -78,6 +116,48 @@ public class P2ArtifactDownloadTool {
 
             throw new RuntimeException(msg.toString());
         }
+
+        logSummary(missingArtifacts, localMavenRepository, System.currentTimeMillis() - start);
+    }
+
+    private List<MavenMirrorRequest> createRequests(List<IArtifactKey> keys,
+            LocalArtifactRepository localMavenRepository) {
+        List<MavenMirrorRequest> requests = new ArrayList<MavenMirrorRequest>();
+        for (IArtifactKey key : keys) {
+            requests.add(new MavenMirrorRequest(key, localMavenRepository, getTransport()));
+        }
+        return requests;
+    }
+
+    private static List<IArtifactKey> getArtifactKeys(List<MavenMirrorRequest> requests) {
+        List<IArtifactKey> keys = new ArrayList<IArtifactKey>();
+        for (MavenMirrorRequest request : requests) {
+            keys.add(request.getArtifactKey());
+        }
+        return keys;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to retry the artifact download", e);
+        }
+    }
+
+    private void logSummary(List<IArtifactKey> downloadedArtifacts, LocalArtifactRepository localMavenRepository,
+            long millis) {
+        long bytes = 0;
+        for (IArtifactKey key : downloadedArtifacts) {
+            File file = localMavenRepository.getArtifactFile(key);
+            if (file != null) {
+                bytes += file.length();
+            }
+        }
+        long kilobytesPerSecond = millis > 0 ? bytes * 1000 / 1024 / millis : 0;
+        logger.info("Downloaded " + downloadedArtifacts.size() + " artifacts (" + (bytes / 1024) + " kB) in "
+                + millis + " ms (" + kilobytesPerSecond + " kB/s)");
     }
 
     private Transport getTransport() {
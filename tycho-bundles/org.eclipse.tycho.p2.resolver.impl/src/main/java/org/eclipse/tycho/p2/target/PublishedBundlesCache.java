@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2012 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.p2.target;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.publisher.eclipse.BundlesAction;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.tycho.core.facade.MavenLogger;
+import org.eclipse.tycho.p2.maven.repository.xmlio.ArtifactsIO;
+import org.eclipse.tycho.p2.maven.repository.xmlio.MetadataIO;
+import org.eclipse.tycho.p2.metadata.IArtifactFacade;
+import org.eclipse.tycho.p2.util.DigestUtils;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * Persistent cache of the p2 data generated for POM dependencies by the
+ * {@link TargetPlatformBundlePublisher}. An entry is stored per artifact file, and is only used as
+ * long as the path, size, and modification time of the file, the GAV of the artifact, and the
+ * versions of Tycho and of the p2 publisher are unchanged. Artifacts which are no bundles are cached
+ * as well, so that they are not opened again.
+ *
+ * <p>
+ * Entries read in the current JVM are additionally kept in memory, so that the projects of a
+ * reactor don't need to read the same entries again.
+ * </p>
+ */
+class PublishedBundlesCache {
+
+    static final String CACHE_RELPATH = ".cache/tycho/published-bundles";
+
+    private static final int MAGIC = 0x54504243;
+
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * The versions of the code which generates the cached data. Entries written by other versions
+     * are not used, so that changes in the publisher take effect.
+     */
+    private static final String PUBLISHER_VERSION = getBundleVersion(PublishedBundlesCache.class) + "/"
+            + getBundleVersion(BundlesAction.class);
+
+    private static final int MAX_ENTRIES_IN_MEMORY = 2000;
+
+    private static final Map<String, Result> entriesInMemory = Collections
+            .synchronizedMap(new LinkedHashMap<String, Result>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                    return size() > MAX_ENTRIES_IN_MEMORY;
+                }
+            });
+
+    /**
+     * The result of publishing an artifact.
+     */
+    static class Result {
+        final IInstallableUnit unit;
+        final IArtifactDescriptor descriptor;
+
+        /**
+         * @param unit
+         *            the published unit, or <code>null</code> if the artifact is not a bundle
+         * @param descriptor
+         *            the artifact descriptor of the unit, or <code>null</code> if the artifact is
+         *            not a bundle
+         */
+        Result(IInstallableUnit unit, IArtifactDescriptor descriptor) {
+            this.unit = unit;
+            this.descriptor = descriptor;
+        }
+    }
+
+    private final File cacheDir;
+
+    private final MavenLogger logger;
+
+    PublishedBundlesCache(File localMavenRepositoryRoot, MavenLogger logger) {
+        this.cacheDir = new File(localMavenRepositoryRoot, CACHE_RELPATH);
+        this.logger = logger;
+    }
+
+    // for testing
+    static void clearEntriesInMemory() {
+        entriesInMemory.clear();
+    }
+
+    /**
+     * Returns the cached result of publishing the given artifact, or <code>null</code> if there is
+     * no up-to-date entry.
+     */
+    Result get(IArtifactFacade artifact) {
+        String key = getKey(artifact);
+        Result entry = entriesInMemory.get(key);
+        if (entry != null) {
+            return entry;
+        }
+
+        File file = getEntryFile(artifact);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !key.equals(in.readUTF())) {
+                    return null;
+                }
+                if (!in.readBoolean()) {
+                    entry = new Result(null, null);
+                } else {
+                    Set<IInstallableUnit> units = new MetadataIO().readXML(new ByteArrayInputStream(readBlock(in)));
+                    Set<IArtifactDescriptor> descriptors = new ArtifactsIO().readXML(new ByteArrayInputStream(
+                            readBlock(in)));
+                    if (units.size() != 1 || descriptors.size() != 1) {
+                        return null;
+                    }
+                    entry = new Result(units.iterator().next(), descriptors.iterator().next());
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.debug("Could not read cached p2 data of " + artifact.getLocation() + ": " + e.getMessage());
+            return null;
+        } catch (RuntimeException e) {
+            logger.debug("Could not read cached p2 data of " + artifact.getLocation() + ": " + e.getMessage());
+            return null;
+        }
+        entriesInMemory.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * Stores the result of publishing the given artifact. Failures are only logged because the
+     * cache is an optimization.
+     */
+    void put(IArtifactFacade artifact, Result entry) {
+        String key = getKey(artifact);
+        entriesInMemory.put(key, entry);
+
+        File file = getEntryFile(artifact);
+        try {
+            cacheDir.mkdirs();
+            File tempFile = File.createTempFile(file.getName(), ".tmp", cacheDir);
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+                try {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeUTF(key);
+                    out.writeBoolean(entry.unit != null);
+                    if (entry.unit != null) {
+                        ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+                        new MetadataIO().writeXML(Collections.singleton(entry.unit), metadata);
+                        writeBlock(out, metadata);
+
+                        ByteArrayOutputStream artifacts = new ByteArrayOutputStream();
+                        new ArtifactsIO().writeXML(Collections.singleton(entry.descriptor), artifacts);
+                        writeBlock(out, artifacts);
+                    }
+                } finally {
+                    out.close();
+                }
+                // replace atomically, so that concurrent builds never see a partial entry
+                if (!tempFile.renameTo(file)) {
+                    file.delete();
+                    tempFile.renameTo(file);
+                }
+            } finally {
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            logger.debug("Could not cache p2 data of " + artifact.getLocation() + ": " + e.getMessage());
+        }
+    }
+
+    private static String getKey(IArtifactFacade artifact) {
+        File file = artifact.getLocation();
+        return file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified() + "|"
+                + artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getVersion() + ":"
+                + artifact.getClassidier() + "|" + PUBLISHER_VERSION;
+    }
+
+    private static String getBundleVersion(Class<?> type) {
+        Bundle bundle = FrameworkUtil.getBundle(type);
+        return bundle != null ? bundle.getVersion().toString() : "unknown";
+    }
+
+    private File getEntryFile(IArtifactFacade artifact) {
+        String location = artifact.getLocation().getAbsolutePath();
+        return new File(cacheDir, DigestUtils.digest(DigestUtils.MD5, location) + ".entry");
+    }
+
+    private static byte[] readBlock(DataInputStream in) throws IOException {
+        byte[] block = new byte[in.readInt()];
+        in.readFully(block);
+        return block;
+    }
+
+    private static void writeBlock(DataOutputStream out, ByteArrayOutputStream block) throws IOException {
+        out.writeInt(block.size());
+        block.writeTo(out);
+    }
+}
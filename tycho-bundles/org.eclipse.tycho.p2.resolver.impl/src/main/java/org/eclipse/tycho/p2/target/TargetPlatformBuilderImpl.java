@@ -27,6 +27,7 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -62,6 +63,7 @@ import org.eclipse.tycho.core.facade.MavenLogger;
 import org.eclipse.tycho.p2.impl.resolver.ClassifiedLocation;
 import org.eclipse.tycho.p2.impl.resolver.DuplicateReactorIUsException;
 import org.eclipse.tycho.p2.impl.resolver.LoggingProgressMonitor;
+import org.eclipse.tycho.p2.impl.resolver.MetadataRepositorySnapshots;
 import org.eclipse.tycho.p2.impl.resolver.P2RepositoryCache;
 import org.eclipse.tycho.p2.maven.repository.LocalArtifactRepository;
 import org.eclipse.tycho.p2.maven.repository.LocalMetadataRepository;
@@ -95,6 +97,12 @@ public class TargetPlatformBuilderImpl implements TargetPlatformBuilder {
 
     private final boolean disableP2Mirrors;
 
+    /** number of parallel downloads from each p2 artifact repository */
+    private final int downloadThreads;
+
+    /** number of times failed downloads are retried */
+    private final int downloadRetries;
+
     /**
      * Target execution environment profile name or null to use system default profile name.
      */
@@ -129,29 +137,47 @@ public class TargetPlatformBuilderImpl implements TargetPlatformBuilder {
             throw new IllegalStateException("No Tycho p2 reposiutory cache found");
         }
 
+        // optional
+        this.repositorySnapshots = (MetadataRepositorySnapshots) agent
+                .getService(MetadataRepositorySnapshots.SERVICE_NAME);
+
         this.offline = mavenContext.isOffline();
 
         this.disableP2Mirrors = disableP2Mirrors;
 
+        Properties sessionProperties = mavenContext.getSessionProperties();
+        this.downloadThreads = getIntegerProperty(sessionProperties, P2ArtifactDownloadTool.THREADS_PROPERTY,
+                P2ArtifactDownloadTool.DEFAULT_THREADS);
+        this.downloadRetries = getIntegerProperty(sessionProperties, P2ArtifactDownloadTool.RETRIES_PROPERTY,
+                P2ArtifactDownloadTool.DEFAULT_RETRIES);
+
         // TODO 364134 make this a setter - this property is side-effect free (i.e. it has no effect before gatherAvailableUnits)
         this.executionEnvironment = executionEnvironment;
 
         File localRepositoryRoot = mavenContext.getLocalRepositoryRoot();
-        this.bundlesPublisher = new TargetPlatformBundlePublisher(localRepositoryRoot, logger);
+        int publisherThreads = getIntegerProperty(sessionProperties, TargetPlatformBundlePublisher.THREADS_PROPERTY,
+                TargetPlatformBundlePublisher.DEFAULT_THREADS);
+        this.bundlesPublisher = new TargetPlatformBundlePublisher(localRepositoryRoot, publisherThreads, logger);
 
         // setup p2 views of maven local repository
         URI uri = localRepositoryRoot.toURI();
-
-        LocalArtifactRepository localRepository = (LocalArtifactRepository) repositoryCache.getArtifactRepository(uri);
-        LocalMetadataRepository localMetadataRepository = (LocalMetadataRepository) repositoryCache
-                .getMetadataRepository(uri);
-
-        if (localRepository == null || localMetadataRepository == null) {
-            RepositoryReader contentLocator = new LocalRepositoryReader(localRepositoryRoot);
-            TychoRepositoryIndex metadataIndex = localRepositoryIndices.getMetadataIndex();
-            localRepository = new LocalArtifactRepository(localRepositoryIndices, contentLocator);
-            localMetadataRepository = new LocalMetadataRepository(uri, metadataIndex, contentLocator);
-            repositoryCache.putRepository(uri, localMetadataRepository, localRepository);
+        LocalArtifactRepository localRepository;
+        LocalMetadataRepository localMetadataRepository;
+
+        // the views are written to, so there must only be one instance of each, even if target
+        // platforms are built concurrently
+        synchronized (repositoryCache) {
+            localRepository = (LocalArtifactRepository) repositoryCache.getArtifactRepository(uri);
+            localMetadataRepository = (LocalMetadataRepository) repositoryCache.getMetadataRepository(uri);
+
+            if (localRepository == null || localMetadataRepository == null) {
+                RepositoryReader contentLocator = new LocalRepositoryReader(localRepositoryRoot);
+                TychoRepositoryIndex metadataIndex = localRepositoryIndices.getMetadataIndex();
+                localRepository = new LocalArtifactRepository(localRepositoryIndices, contentLocator);
+                localMetadataRepository = new LocalMetadataRepository(uri, metadataIndex, contentLocator);
+                repositoryCache.pinRepositoryPermanently(uri);
+                repositoryCache.putRepository(uri, localMetadataRepository, localRepository);
+            }
         }
 
         metadataRepositories.add(localMetadataRepository);
@@ -160,6 +186,19 @@ public class TargetPlatformBuilderImpl implements TargetPlatformBuilder {
         this.localArtifactRepository = localRepository;
     }
 
+    private int getIntegerProperty(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring invalid value of property " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
     // ---------------------------------------------------------------------
 
     private Map<ClassifiedLocation, Set<IInstallableUnit>> reactorProjectIUs = new HashMap<ClassifiedLocation, Set<IInstallableUnit>>();
@@ -239,10 +278,15 @@ public class TargetPlatformBuilderImpl implements TargetPlatformBuilder {
 
     private final TargetPlatformBundlePublisher bundlesPublisher;
 
-    public void publishAndAddArtifactIfBundleArtifact(IArtifactFacade artifact) {
-        IInstallableUnit bundleIU = bundlesPublisher.attemptToPublishBundle(artifact);
-        if (bundleIU != null)
-            addMavenArtifact(new ClassifiedLocation(artifact), artifact, Collections.singleton(bundleIU));
+    public void publishAndAddArtifactsIfBundleArtifacts(List<IArtifactFacade> artifacts) {
+        List<IInstallableUnit> bundleIUs = bundlesPublisher.attemptToPublishBundles(artifacts);
+        for (int i = 0; i < artifacts.size(); i++) {
+            IInstallableUnit bundleIU = bundleIUs.get(i);
+            if (bundleIU != null) {
+                IArtifactFacade artifact = artifacts.get(i);
+                addMavenArtifact(new ClassifiedLocation(artifact), artifact, Collections.singleton(bundleIU));
+            }
+        }
     }
 
     /**
@@ -271,6 +315,8 @@ public class TargetPlatformBuilderImpl implements TargetPlatformBuilder {
         IMetadataRepository metadataRepository = null;
         IArtifactRepository artifactRepository = null;
 
+        pinRepository(location);
+
         // check metadata cache, first
         metadataRepository = (IMetadataRepository) repositoryCache.getMetadataRepository(location);
         artifactRepository = (IArtifactRepository) repositoryCache.getArtifactRepository(location);
@@ -285,14 +331,14 @@ public class TargetPlatformBuilderImpl implements TargetPlatformBuilder {
         }
 
         try {
-            metadataRepository = metadataRepositoryManager.loadRepository(location, monitor);
+            metadataRepository = loadMetadataRepository(location);
             metadataRepositories.add(metadataRepository);
 
             if (!offline || URIUtil.isFileURI(location)) {
                 artifactRepository = artifactRepositoryManager.loadRepository(location, monitor);
                 artifactRepositories.add(artifactRepository);
 
-                forceSingleThreadedDownload(artifactRepository);
+                configureDownloadThreads(artifactRepository, downloadThreads);
                 if (disableP2Mirrors) {
                     forceMirrorsDisabled(artifactRepository);
                 }
@@ -306,16 +352,54 @@ public class TargetPlatformBuilderImpl implements TargetPlatformBuilder {
         }
     }
 
-    protected void forceSingleThreadedDownload(IArtifactRepository artifactRepository) {
+    /**
+     * Protects a repository used by this builder from being evicted from the repository cache. The
+     * repository is unpinned once the target platform has been built; from then on, it is pinned
+     * as long as the target platform is in use.
+     */
+    private void pinRepository(URI location) {
+        repositoryCache.pinRepository(location);
+        pinnedRepositories.add(location);
+    }
+
+    private void unpinRepositories() {
+        for (URI location : pinnedRepositories) {
+            repositoryCache.unpinRepository(location);
+        }
+        pinnedRepositories.clear();
+    }
+
+    private IMetadataRepository loadMetadataRepository(URI location) throws ProvisionException {
+        boolean useSnapshot = repositorySnapshots != null && !URIUtil.isFileURI(location);
+        if (useSnapshot) {
+            IMetadataRepository snapshot = repositorySnapshots.load(location, monitor);
+            if (snapshot != null) {
+                logger.debug("Loaded p2 repository " + location.toASCIIString() + " from snapshot");
+                return snapshot;
+            }
+        }
+
+        IMetadataRepository repository = metadataRepositoryManager.loadRepository(location, monitor);
+        if (useSnapshot) {
+            repositorySnapshots.store(location, repository, metadataRepositoryManager, monitor);
+        }
+        return repository;
+    }
+
+    /**
+     * Sets the number of parallel downloads from the given repository. For composite repositories,
+     * the limit applies to each child repository, i.e. typically to each host.
+     */
+    protected void configureDownloadThreads(IArtifactRepository artifactRepository, int threads) {
         try {
             if (artifactRepository instanceof SimpleArtifactRepository) {
                 OrderedProperties p = getProperties(artifactRepository);
                 p.put(org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository.PROP_MAX_THREADS,
-                        "1");
+                        Integer.toString(threads));
             } else if (artifactRepository instanceof CompositeArtifactRepository) {
                 List<URI> children = ((CompositeArtifactRepository) artifactRepository).getChildren();
                 for (URI child : children) {
-                    forceSingleThreadedDownload(artifactRepositoryManager.loadRepository(child, monitor));
+                    configureDownloadThreads(artifactRepositoryManager.loadRepository(child, monitor), threads);
                 }
             }
         } catch (Exception e) {
@@ -431,6 +515,17 @@ public class TargetPlatformBuilderImpl implements TargetPlatformBuilder {
     }
 
     public TargetPlatform buildTargetPlatform() {
+        try {
+            TargetPlatform targetPlatform = doBuildTargetPlatform();
+            // the target platform references the content of the repositories, and may be cached
+            repositoryCache.pinRepositories(targetPlatform, pinnedRepositories);
+            return targetPlatform;
+        } finally {
+            unpinRepositories();
+        }
+    }
+
+    private TargetPlatform doBuildTargetPlatform() {
         // TODO 364134 get rid of this special handling of pomDependency artifacts: there should be one p2 artifact repo view on the target platform
         IArtifactRepository resolutionContextArtifactRepo = getSupplementaryArtifactRepository();
         RepositoryBlackboardKey blackboardKey = RepositoryBlackboardKey.forResolutionContextArtifacts(projectLocation);
@@ -451,7 +546,8 @@ public class TargetPlatformBuilderImpl implements TargetPlatformBuilder {
 
         return new TargetPlatformImpl(targetPlatformIUs, mavenInstallableUnits, reactorProjectIUs,
                 reactorProjectSecondaryIUs, localMetadataRepository, executionEnvironment,
-                allRemoteArtifactRepositories, localArtifactRepository, agent, logger);
+                allRemoteArtifactRepositories, localArtifactRepository, resolutionContextArtifactRepo, downloadRetries,
+                agent, logger);
     }
 
     // -------------------------------------------------------------------------
@@ -563,7 +659,7 @@ public class TargetPlatformBuilderImpl implements TargetPlatformBuilder {
     }
 
     private void applyConfiguredFilters(LinkedHashSet<IInstallableUnit> units) {
-        new TargetPlatformFilterEvaluator(iuFilters).filterUnits(units);
+        new TargetPlatformFilterEvaluator(iuFilters, logger).filterUnits(units);
     }
 
     // -------------------------------------------------------------------------------
@@ -574,6 +670,10 @@ public class TargetPlatformBuilderImpl implements TargetPlatformBuilder {
 
     private final P2RepositoryCache repositoryCache;
 
+    private final List<URI> pinnedRepositories = new ArrayList<URI>();
+
+    private final MetadataRepositorySnapshots repositorySnapshots;
+
     // -------------------------------------------------------------------------------
 
     private void assertNoDuplicateReactorUIs() throws DuplicateReactorIUsException {
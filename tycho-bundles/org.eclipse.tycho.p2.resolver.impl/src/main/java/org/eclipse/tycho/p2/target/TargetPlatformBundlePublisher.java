@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011 SAP AG and others.
+ * Copyright (c) 2011, 2012 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,8 +13,12 @@ package org.eclipse.tycho.p2.target;
 import java.io.File;
 import java.io.OutputStream;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.eclipse.core.runtime.AssertionFailedException;
 import org.eclipse.core.runtime.IStatus;
@@ -40,21 +44,39 @@ import org.eclipse.tycho.p2.repository.LocalRepositoryReader;
 import org.eclipse.tycho.p2.repository.RepositoryLayoutHelper;
 import org.eclipse.tycho.p2.repository.RepositoryReader;
 import org.eclipse.tycho.p2.util.StatusTool;
+import org.eclipse.tycho.p2.util.WorkerPool;
 
 @SuppressWarnings("restriction")
 public class TargetPlatformBundlePublisher {
 
+    /**
+     * Session property for the maximum number of POM dependencies published in parallel. The
+     * default is to publish sequentially: each publisher run has its own publisher info and result,
+     * but p2 doesn't specify that the {@link BundlesAction} may be executed concurrently, so
+     * parallel publishing needs to be enabled explicitly.
+     */
+    public static final String THREADS_PROPERTY = "tycho.p2.publisher.threads";
+
+    static final int DEFAULT_THREADS = 1;
+
     private final MavenLogger logger;
     private final PublishedBundlesArtifactRepository publishedArtifacts;
+    private final PublishedBundlesCache cache;
+    private final int threads;
 
-    public TargetPlatformBundlePublisher(File localMavenRepositoryRoot, MavenLogger logger) {
+    public TargetPlatformBundlePublisher(File localMavenRepositoryRoot, int threads, MavenLogger logger) {
         this.publishedArtifacts = new PublishedBundlesArtifactRepository(localMavenRepositoryRoot);
+        this.cache = new PublishedBundlesCache(localMavenRepositoryRoot, logger);
+        this.threads = threads;
         this.logger = logger;
     }
 
     // for testing
-    TargetPlatformBundlePublisher(RepositoryReader localMavenRepoProvider, MavenLogger logger) {
+    TargetPlatformBundlePublisher(RepositoryReader localMavenRepoProvider, File cacheRoot, int threads,
+            MavenLogger logger) {
         this.publishedArtifacts = new PublishedBundlesArtifactRepository(localMavenRepoProvider);
+        this.cache = cacheRoot == null ? null : new PublishedBundlesCache(cacheRoot, logger);
+        this.threads = threads;
         this.logger = logger;
     }
 
@@ -83,14 +105,81 @@ public class TargetPlatformBundlePublisher {
      *         OSGi bundle.
      */
     IInstallableUnit attemptToPublishBundle(IArtifactFacade mavenArtifact) {
-        if (!isAvailableAsLocalFile(mavenArtifact)) {
-            // this should have been ensured by the caller
-            throw new IllegalArgumentException("Not an artifact file: " + mavenArtifact.getLocation());
+        return attemptToPublishBundles(Collections.singletonList(mavenArtifact)).get(0);
+    }
+
+    /**
+     * Generate p2 data for those of the given artifacts which are OSGi bundles, as described in
+     * {@link #attemptToPublishBundle(IArtifactFacade)}. Results of earlier builds are taken from
+     * the cache in the local Maven repository, and the remaining artifacts are published in
+     * parallel.
+     * 
+     * @param mavenArtifacts
+     *            Artifacts in local file system.
+     * @return the p2 metadata of the artifacts, in the order of the given artifacts, with
+     *         <code>null</code> elements for artifacts which aren't valid OSGi bundles.
+     */
+    List<IInstallableUnit> attemptToPublishBundles(List<IArtifactFacade> mavenArtifacts) {
+        long start = System.currentTimeMillis();
+        List<PublishedBundlesCache.Result> results = new ArrayList<PublishedBundlesCache.Result>(mavenArtifacts.size());
+        List<Integer> missingResults = new ArrayList<Integer>();
+        for (IArtifactFacade mavenArtifact : mavenArtifacts) {
+            if (!isAvailableAsLocalFile(mavenArtifact)) {
+                // this should have been ensured by the caller
+                throw new IllegalArgumentException("Not an artifact file: " + mavenArtifact.getLocation());
+            }
+            PublishedBundlesCache.Result result = null;
+            if (isCertainlyNoBundle(mavenArtifact)) {
+                result = new PublishedBundlesCache.Result(null, null);
+            } else if (cache != null) {
+                result = cache.get(mavenArtifact);
+            }
+            if (result == null) {
+                missingResults.add(Integer.valueOf(results.size()));
+            }
+            results.add(result);
         }
-        if (isCertainlyNoBundle(mavenArtifact)) {
-            return null;
+
+        publish(mavenArtifacts, missingResults, results);
+
+        // the repository of published artifacts is not thread-safe
+        List<IInstallableUnit> publishedUnits = new ArrayList<IInstallableUnit>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            PublishedBundlesCache.Result result = results.get(i);
+            if (result.unit != null) {
+                publishedArtifacts.addDescriptor(result.descriptor, mavenArtifacts.get(i));
+            }
+            publishedUnits.add(result.unit);
         }
 
+        if (logger.isDebugEnabled() && !mavenArtifacts.isEmpty()) {
+            logger.debug("Published " + mavenArtifacts.size() + " POM dependencies (" + missingResults.size()
+                    + " not cached) in " + (System.currentTimeMillis() - start) + " ms");
+        }
+        return publishedUnits;
+    }
+
+    private void publish(List<IArtifactFacade> mavenArtifacts, List<Integer> indices,
+            List<PublishedBundlesCache.Result> results) {
+        List<Callable<PublishedBundlesCache.Result>> tasks = new ArrayList<Callable<PublishedBundlesCache.Result>>(
+                indices.size());
+        for (Integer index : indices) {
+            final IArtifactFacade mavenArtifact = mavenArtifacts.get(index.intValue());
+            tasks.add(new Callable<PublishedBundlesCache.Result>() {
+                public PublishedBundlesCache.Result call() {
+                    return publish(mavenArtifact);
+                }
+            });
+        }
+        // the failure of the first artifact is reported
+        List<PublishedBundlesCache.Result> publishedResults = WorkerPool.invokeAllUnchecked(tasks, threads,
+                "tycho-publisher");
+        for (int i = 0; i < indices.size(); i++) {
+            results.set(indices.get(i).intValue(), publishedResults.get(i));
+        }
+    }
+
+    private PublishedBundlesCache.Result publish(IArtifactFacade mavenArtifact) {
         PublisherRun publisherRun = new PublisherRun(mavenArtifact);
         IStatus status = publisherRun.execute();
 
@@ -104,12 +193,17 @@ public class TargetPlatformBundlePublisher {
         }
 
         IInstallableUnit publishedIU = publisherRun.getPublishedUnitIfExists();
+        IArtifactDescriptor publishedArtifact = null;
         if (publishedIU != null) {
-            IArtifactDescriptor publishedArtifact = publisherRun.getPublishedArtifactDescriptor();
-            publishedArtifacts.addDescriptor(publishedArtifact, mavenArtifact);
+            publishedArtifact = publisherRun.getPublishedArtifactDescriptor();
         }
 
-        return publishedIU;
+        PublishedBundlesCache.Result result = new PublishedBundlesCache.Result(publishedIU, publishedArtifact);
+        // failures may be temporary, so only successful runs are cached
+        if (cache != null && status.isOK()) {
+            cache.put(mavenArtifact, result);
+        }
+        return result;
     }
 
     private boolean isAvailableAsLocalFile(IArtifactFacade artifact) {
@@ -28,17 +28,22 @@ import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.publisher.PublisherInfo;
 import org.eclipse.equinox.p2.publisher.PublisherResult;
 import org.eclipse.equinox.p2.publisher.actions.JREAction;
+import org.eclipse.equinox.p2.query.IQueryable;
 import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.eclipse.tycho.artifacts.p2.P2TargetPlatform;
 import org.eclipse.tycho.core.facade.MavenLogger;
 import org.eclipse.tycho.p2.impl.resolver.ClassifiedLocation;
 import org.eclipse.tycho.p2.maven.repository.LocalArtifactRepository;
 import org.eclipse.tycho.p2.maven.repository.LocalMetadataRepository;
 import org.eclipse.tycho.p2.metadata.IArtifactFacade;
+import org.eclipse.tycho.repository.registry.ArtifactRepositoryBlackboard;
+import org.eclipse.tycho.repository.registry.facade.RepositoryBlackboardKey;
 
 public class TargetPlatformImpl implements P2TargetPlatform {
 
     private final Collection<IInstallableUnit> allIUs;
+    private IndexedInstallableUnits indexedIUs;
     private final Map<IInstallableUnit, IArtifactFacade> mavenArtifactIUs;
     private final Map<ClassifiedLocation, Set<IInstallableUnit>> reactorProjectIUs;
     private final Map<ClassifiedLocation, Set<IInstallableUnit>> reactorProjectSecondaryIUs;
@@ -48,6 +53,9 @@ public class TargetPlatformImpl implements P2TargetPlatform {
     private final List<URI> remoteArtifactRepositories;
     private final LocalArtifactRepository localMavenRepository;
 
+    private final IArtifactRepository resolutionContextArtifactRepository;
+    private final int downloadRetries;
+
     private final IProvisioningAgent agent;
     private final MavenLogger logger;
 
@@ -57,7 +65,8 @@ public class TargetPlatformImpl implements P2TargetPlatform {
             Map<ClassifiedLocation, Set<IInstallableUnit>> reactorProjectSecondaryIUs,
             LocalMetadataRepository localMetadataRepository, String executionEnvironment,
             List<URI> allRemoteArtifactRepositories, LocalArtifactRepository localMavenRepository,
-            IProvisioningAgent agent, MavenLogger logger) {
+            IArtifactRepository resolutionContextArtifactRepository, int downloadRetries, IProvisioningAgent agent,
+            MavenLogger logger) {
         this.allIUs = allTargetPlatformIUs;
         this.mavenArtifactIUs = mavenArtifactIUs;
         this.reactorProjectIUs = reactorProjectIUs;
@@ -66,6 +75,8 @@ public class TargetPlatformImpl implements P2TargetPlatform {
         this.executionEnvironment = executionEnvironment;
         this.remoteArtifactRepositories = allRemoteArtifactRepositories;
         this.localMavenRepository = localMavenRepository;
+        this.resolutionContextArtifactRepository = resolutionContextArtifactRepository;
+        this.downloadRetries = downloadRetries;
 
         this.agent = agent;
         this.logger = logger;
@@ -75,6 +86,13 @@ public class TargetPlatformImpl implements P2TargetPlatform {
         return Collections.unmodifiableCollection(allIUs);
     }
 
+    public synchronized IQueryable<IInstallableUnit> getIndexedInstallableUnits() {
+        if (indexedIUs == null) {
+            indexedIUs = new IndexedInstallableUnits(allIUs);
+        }
+        return indexedIUs;
+    }
+
     @SuppressWarnings("restriction")
     public Collection<IInstallableUnit> getJREIUs() {
         PublisherResult results = new PublisherResult();
@@ -108,6 +126,11 @@ public class TargetPlatformImpl implements P2TargetPlatform {
         return localMavenRepository.getArtifactFile(key);
     }
 
+    public void registerResolutionContextArtifacts(File projectLocation) {
+        RepositoryBlackboardKey blackboardKey = RepositoryBlackboardKey.forResolutionContextArtifacts(projectLocation);
+        ArtifactRepositoryBlackboard.putRepository(blackboardKey, resolutionContextArtifactRepository);
+    }
+
     public void reportUsedIUs(Collection<IInstallableUnit> usedUnits) {
         warnAboutLocalIus(usedUnits);
     }
@@ -125,7 +148,7 @@ public class TargetPlatformImpl implements P2TargetPlatform {
 
     // TODO this method should not be necessary; instead download should happen on access
     public void downloadArtifacts(Collection<IInstallableUnit> usedUnits) {
-        P2ArtifactDownloadTool downloadTool = new P2ArtifactDownloadTool(agent, logger);
+        P2ArtifactDownloadTool downloadTool = new P2ArtifactDownloadTool(agent, logger, downloadRetries);
 
         List<IArtifactKey> remoteArtifacts = new ArrayList<IArtifactKey>();
         for (IInstallableUnit iu : usedUnits) {
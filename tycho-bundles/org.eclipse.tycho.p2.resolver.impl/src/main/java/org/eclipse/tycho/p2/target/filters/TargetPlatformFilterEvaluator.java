@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011 SAP AG and others.
+ * Copyright (c) 2011, 2012 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,9 +13,15 @@ package org.eclipse.tycho.p2.target.filters;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.metadata.IProvidedCapability;
@@ -26,14 +32,38 @@ import org.eclipse.equinox.spi.p2.publisher.PublisherHelper;
 import org.eclipse.tycho.artifacts.TargetPlatformFilter;
 import org.eclipse.tycho.artifacts.TargetPlatformFilter.CapabilityPattern;
 import org.eclipse.tycho.artifacts.TargetPlatformFilter.CapabilityType;
+import org.eclipse.tycho.artifacts.TargetPlatformFilter.FilterAction;
 import org.eclipse.tycho.artifacts.TargetPlatformFilterSyntaxException;
-
+import org.eclipse.tycho.core.facade.MavenLogger;
+
+/**
+ * Applies {@link TargetPlatformFilter}s to the installable units of a target platform.
+ * 
+ * <p>
+ * Each filter only looks at the properties of the individual units, so applying the filters one
+ * after the other is equivalent to removing every unit which is removed by any of the filters. The
+ * evaluator therefore indexes the units once by IU id, bundle symbolic name and exported packages,
+ * looks up the units in the scope of each filter in these indices, and finally removes all
+ * filtered units from the target platform in a single pass.
+ * </p>
+ */
 public class TargetPlatformFilterEvaluator {
 
     private final List<TargetPlatformFilter> filters;
 
+    private final MavenLogger logger;
+
     public TargetPlatformFilterEvaluator(List<TargetPlatformFilter> filters) {
+        this(filters, null);
+    }
+
+    /**
+     * @param logger
+     *            logger for debug output on the effect of the filters; may be <code>null</code>
+     */
+    public TargetPlatformFilterEvaluator(List<TargetPlatformFilter> filters, MavenLogger logger) {
         this.filters = filters;
+        this.logger = logger;
     }
 
     TargetPlatformFilterEvaluator(TargetPlatformFilter filter) {
@@ -48,96 +78,210 @@ public class TargetPlatformFilterEvaluator {
      */
     public void filterUnits(LinkedHashSet<IInstallableUnit> targetPlatformUnits)
             throws TargetPlatformFilterSyntaxException {
-        // TODO 356579 log
-
+        if (filters.isEmpty()) {
+            return;
+        }
+        // parse all patterns before modifying the target platform
+        List<ParsedFilter> parsedFilters = new ArrayList<ParsedFilter>(filters.size());
+        EnumSet<CapabilityType> indexedTypes = EnumSet.noneOf(CapabilityType.class);
         for (TargetPlatformFilter filter : filters) {
-            applyFilter(filter, targetPlatformUnits);
+            ParsedFilter parsedFilter = new ParsedFilter(filter);
+            parsedFilters.add(parsedFilter);
+            indexedTypes.add(parsedFilter.scopePattern.getType());
+            if (parsedFilter.restrictionPattern != null) {
+                indexedTypes.add(parsedFilter.restrictionPattern.getType());
+            }
         }
-    }
 
-    private void applyFilter(TargetPlatformFilter filter, LinkedHashSet<IInstallableUnit> targetPlatformUnits) {
-        switch (filter.getAction()) {
-        case REMOVE_ALL:
-            applyRemoveAllFilter(filter, targetPlatformUnits);
-            return;
+        long start = System.currentTimeMillis();
+        UnitIndex index = new UnitIndex(targetPlatformUnits, indexedTypes);
+        boolean debug = logger != null && logger.isDebugEnabled();
+        if (debug) {
+            logger.debug("Indexed " + targetPlatformUnits.size() + " target platform units for filtering in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
 
-        case RESTRICT:
-            applyRestrictionFilter(filter, targetPlatformUnits);
-            return;
+        Set<IInstallableUnit> removedUnits = new HashSet<IInstallableUnit>();
+        for (ParsedFilter filter : parsedFilters) {
+            long filterStart = System.currentTimeMillis();
+            int unitsInScope = 0;
+            int unitsRemoved = 0;
+            for (IInstallableUnit unit : index.getMatchingUnits(filter.scopePattern)) {
+                // units removed by a previous filter are not seen by this filter
+                if (removedUnits.contains(unit)) {
+                    continue;
+                }
+                unitsInScope++;
+                if (filter.removes(unit, index)) {
+                    removedUnits.add(unit);
+                    unitsRemoved++;
+                }
+            }
+            if (debug) {
+                logger.debug(filter.filter + ": " + unitsInScope + " units in scope, " + unitsRemoved
+                        + " units removed (" + (System.currentTimeMillis() - filterStart) + " ms)");
+            }
+        }
+
+        if (!removedUnits.isEmpty()) {
+            targetPlatformUnits.removeAll(removedUnits);
+        }
+        if (debug) {
+            logger.debug("Applied " + parsedFilters.size() + " target platform filters in "
+                    + (System.currentTimeMillis() - start) + " ms; removed " + removedUnits.size() + " units");
         }
     }
 
-    private void applyRemoveAllFilter(TargetPlatformFilter filter, Collection<IInstallableUnit> targetPlatformUnits) {
-        ParsedCapabilityPattern scopePattern = parsePattern(filter.getScopePattern(), null);
+    private static class ParsedFilter {
+        final TargetPlatformFilter filter;
+        final ParsedCapabilityPattern scopePattern;
+        final ParsedCapabilityPattern restrictionPattern;
+
+        ParsedFilter(TargetPlatformFilter filter) {
+            this.filter = filter;
+            this.scopePattern = parsePattern(filter.getScopePattern(), null);
+            if (filter.getAction() == FilterAction.RESTRICT) {
+                this.restrictionPattern = parsePattern(filter.getActionPattern(), scopePattern);
+            } else {
+                this.restrictionPattern = null;
+            }
+        }
 
-        for (Iterator<IInstallableUnit> unitIterator = targetPlatformUnits.iterator(); unitIterator.hasNext();) {
-            IInstallableUnit unit = unitIterator.next();
+        /**
+         * Returns <code>true</code> if the given unit, which is in the scope of the filter, shall be
+         * removed.
+         */
+        boolean removes(IInstallableUnit unit, UnitIndex index) {
+            switch (filter.getAction()) {
+            case REMOVE_ALL:
+                return true;
 
-            if (matches(unit, scopePattern)) {
-                unitIterator.remove();
+            case RESTRICT:
+                return !index.matches(unit, restrictionPattern);
             }
+            return false;
         }
     }
 
-    private void applyRestrictionFilter(TargetPlatformFilter filter, LinkedHashSet<IInstallableUnit> targetPlatformUnits) {
-        ParsedCapabilityPattern scopePattern = parsePattern(filter.getScopePattern(), null);
-        ParsedCapabilityPattern restrictionPattern = parsePattern(filter.getActionPattern(), scopePattern);
+    /**
+     * A capability of a unit which can be referenced by a {@link CapabilityPattern}.
+     */
+    private static class UnitCapability {
+        final IInstallableUnit unit;
+        final String name;
+        final Version version;
+
+        UnitCapability(IInstallableUnit unit, String name, Version version) {
+            this.unit = unit;
+            this.name = name;
+            this.version = version;
+        }
+    }
 
-        for (Iterator<IInstallableUnit> unitIterator = targetPlatformUnits.iterator(); unitIterator.hasNext();) {
-            IInstallableUnit unit = unitIterator.next();
+    /**
+     * Index of the capabilities of each {@link CapabilityType}, by unit and by capability name. Both
+     * the units and the capabilities of each name are kept in the order of the target platform.
+     */
+    static class UnitIndex {
 
-            if (matches(unit, scopePattern)) {
-                if (!matches(unit, restrictionPattern)) {
-                    unitIterator.remove();
+        @SuppressWarnings("restriction")
+        private static final String CAPABILITY_NS_OSGI_BUNDLE = BundlesAction.CAPABILITY_NS_OSGI_BUNDLE;
+
+        @SuppressWarnings("restriction")
+        private static final String CAPABILITY_NS_JAVA_PACKAGE = PublisherHelper.CAPABILITY_NS_JAVA_PACKAGE;
+
+        private final Map<CapabilityType, Map<String, List<UnitCapability>>> capabilitiesByName;
+
+        private final Map<CapabilityType, Map<IInstallableUnit, List<UnitCapability>>> capabilitiesByUnit;
+
+        UnitIndex(Collection<IInstallableUnit> units, Set<CapabilityType> types) {
+            capabilitiesByName = new EnumMap<CapabilityType, Map<String, List<UnitCapability>>>(CapabilityType.class);
+            capabilitiesByUnit = new EnumMap<CapabilityType, Map<IInstallableUnit, List<UnitCapability>>>(
+                    CapabilityType.class);
+            for (CapabilityType type : types) {
+                capabilitiesByName.put(type, new HashMap<String, List<UnitCapability>>());
+                capabilitiesByUnit.put(type, new LinkedHashMap<IInstallableUnit, List<UnitCapability>>());
+            }
+            boolean indexIds = types.contains(CapabilityType.P2_INSTALLABLE_UNIT);
+            boolean indexBundles = types.contains(CapabilityType.OSGI_BUNDLE);
+            boolean indexPackages = types.contains(CapabilityType.JAVA_PACKAGE);
+
+            for (IInstallableUnit unit : units) {
+                if (indexIds) {
+                    add(CapabilityType.P2_INSTALLABLE_UNIT, new UnitCapability(unit, unit.getId(), unit.getVersion()));
+                }
+                if (indexBundles || indexPackages) {
+                    boolean bundleFound = false;
+                    for (IProvidedCapability capability : unit.getProvidedCapabilities()) {
+                        String namespace = capability.getNamespace();
+                        if (indexBundles && !bundleFound && CAPABILITY_NS_OSGI_BUNDLE.equals(namespace)) {
+                            add(CapabilityType.OSGI_BUNDLE, toUnitCapability(unit, capability));
+                            bundleFound = true;
+                        } else if (indexPackages && CAPABILITY_NS_JAVA_PACKAGE.equals(namespace)) {
+                            add(CapabilityType.JAVA_PACKAGE, toUnitCapability(unit, capability));
+                        }
+                    }
                 }
             }
         }
-    }
 
-    private boolean matches(IInstallableUnit unit, ParsedCapabilityPattern pattern) {
-        switch (pattern.getType()) {
-        case P2_INSTALLABLE_UNIT:
-            return pattern.matchesId(unit.getId()) && pattern.matchesVersion(unit.getVersion());
+        private static UnitCapability toUnitCapability(IInstallableUnit unit, IProvidedCapability capability) {
+            return new UnitCapability(unit, capability.getName(), capability.getVersion());
+        }
 
-        case OSGI_BUNDLE:
-            IProvidedCapability bundle = getBundleCapability(unit);
-            if (bundle == null)
-                return false;
-            return pattern.matchesId(bundle.getName()) && pattern.matchesVersion(bundle.getVersion());
+        private void add(CapabilityType type, UnitCapability capability) {
+            addToMultiMap(capabilitiesByName.get(type), capability.name, capability);
+            addToMultiMap(capabilitiesByUnit.get(type), capability.unit, capability);
+        }
 
-        case JAVA_PACKAGE:
-            for (IProvidedCapability exportedPackage : getPackageCapabilities(unit)) {
-                if (pattern.matchesId(exportedPackage.getName())
-                        && pattern.matchesVersion(exportedPackage.getVersion())) {
-                    return true;
-                }
+        private static <K> void addToMultiMap(Map<K, List<UnitCapability>> map, K key, UnitCapability value) {
+            List<UnitCapability> values = map.get(key);
+            if (values == null) {
+                values = new ArrayList<UnitCapability>(1);
+                map.put(key, values);
             }
-            return false;
+            values.add(value);
         }
-        return false;
-    }
 
-    @SuppressWarnings("restriction")
-    private IProvidedCapability getBundleCapability(IInstallableUnit unit) {
-        for (IProvidedCapability capability : unit.getProvidedCapabilities()) {
-            if (BundlesAction.CAPABILITY_NS_OSGI_BUNDLE.equals(capability.getNamespace())) {
-                return capability;
+        /**
+         * Returns the units which match the given pattern, in the order of the target platform.
+         */
+        Collection<IInstallableUnit> getMatchingUnits(ParsedCapabilityPattern pattern) {
+            Collection<List<UnitCapability>> candidates;
+            if (pattern.getId() != null) {
+                List<UnitCapability> capabilities = capabilitiesByName.get(pattern.getType()).get(pattern.getId());
+                if (capabilities == null) {
+                    return Collections.emptyList();
+                }
+                candidates = Collections.singletonList(capabilities);
+            } else {
+                candidates = capabilitiesByUnit.get(pattern.getType()).values();
             }
-        }
-        return null;
-    }
 
-    @SuppressWarnings("restriction")
-    private List<IProvidedCapability> getPackageCapabilities(IInstallableUnit unit) {
-        Collection<IProvidedCapability> allCapabilities = unit.getProvidedCapabilities();
-        List<IProvidedCapability> packageCapabilities = new ArrayList<IProvidedCapability>(allCapabilities.size());
+            // a unit may provide several matching packages
+            Set<IInstallableUnit> result = new LinkedHashSet<IInstallableUnit>();
+            for (List<UnitCapability> capabilities : candidates) {
+                for (UnitCapability capability : capabilities) {
+                    if (pattern.matchesVersion(capability.version)) {
+                        result.add(capability.unit);
+                    }
+                }
+            }
+            return result;
+        }
 
-        for (IProvidedCapability capability : allCapabilities) {
-            if (PublisherHelper.CAPABILITY_NS_JAVA_PACKAGE.equals(capability.getNamespace())) {
-                packageCapabilities.add(capability);
+        boolean matches(IInstallableUnit unit, ParsedCapabilityPattern pattern) {
+            List<UnitCapability> capabilities = capabilitiesByUnit.get(pattern.getType()).get(unit);
+            if (capabilities == null) {
+                return false;
+            }
+            for (UnitCapability capability : capabilities) {
+                if (pattern.matchesId(capability.name) && pattern.matchesVersion(capability.version)) {
+                    return true;
+                }
             }
+            return false;
         }
-        return packageCapabilities;
     }
 
     /**
@@ -207,6 +351,10 @@ public class TargetPlatformFilterEvaluator {
             return type;
         }
 
+        String getId() {
+            return idRequirement;
+        }
+
         boolean matchesId(String id) {
             if (idRequirement == null)
                 return true;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -29,7 +29,13 @@ public interface TargetPlatformBuilder {
 
     public void addReactorArtifact(IReactorArtifactFacade project);
 
-    public void publishAndAddArtifactIfBundleArtifact(IArtifactFacade artifact);
+    /**
+     * Generates p2 metadata for those of the given artifacts which are OSGi bundles, and adds them
+     * to the target platform. The results are cached in the local Maven repository. The artifacts
+     * are published sequentially unless the session property <tt>tycho.p2.publisher.threads</tt>
+     * allows more threads.
+     */
+    public void publishAndAddArtifactsIfBundleArtifacts(List<IArtifactFacade> artifacts);
 
     public void addArtifactWithExistingMetadata(IArtifactFacade artifact, IArtifactFacade p2MetadataFile);
 
@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2012 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.repository.registry.facade;
+
+import java.util.Set;
+
+/**
+ * Registers sets of installable units as in-memory p2 metadata repositories, so that p2 operations
+ * running in the same OSGi runtime can load them by their {@link RepositoryBlackboardKey#toURI()
+ * blackboard key URI} without a serialization to disk.
+ */
+public interface MetadataRepositoryBlackboardFacade {
+
+    /**
+     * Makes the given installable units available as metadata repository under the given key. A
+     * repository previously registered under the same key is replaced, unless it was created from
+     * the same set instance.
+     * 
+     * @param key
+     *            the key under which the repository can be loaded
+     * @param installableUnits
+     *            the installable units of the repository; instances of
+     *            <code>IInstallableUnit</code>. The set must not be modified afterwards.
+     */
+    void putRepository(RepositoryBlackboardKey key, Set<?> installableUnits);
+
+    /**
+     * Removes the repository registered under the given key, so that its installable units can be
+     * garbage collected. Does nothing if there is no such repository.
+     */
+    void removeRepository(RepositoryBlackboardKey key);
+}
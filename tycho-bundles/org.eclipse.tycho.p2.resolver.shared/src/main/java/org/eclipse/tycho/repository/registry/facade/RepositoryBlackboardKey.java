@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011 SAP AG and others.
+ * Copyright (c) 2011, 2012 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -44,6 +44,18 @@ public class RepositoryBlackboardKey {
         }
     }
 
+    /**
+     * Creates a key under which the non-reactor installable units of the target platform of a
+     * project are available as p2 metadata repository.
+     */
+    public static RepositoryBlackboardKey forTargetPlatformMetadata(File projectLocation) {
+        try {
+            return new RepositoryBlackboardKey(new URI(SCHEME, "/target-platform-metadata@" + projectLocation, null));
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public String toString() {
         return getClass().getName() + "(uri=" + uri + ")";
@@ -48,6 +48,16 @@ public final class RepositoryReferences {
         metadataRepos.add(metadataRepository);
     }
 
+    /**
+     * Adds the metadata repository which is stored in memory under the given key.
+     * 
+     * @param blackboardKey
+     *            A key identifying a repository registered on the metadata repository blackboard.
+     */
+    public void addMetadataRepository(RepositoryBlackboardKey blackboardKey) {
+        metadataRepos.add(blackboardKey.toURI());
+    }
+
     /**
      * Adds the artifact repository at the given location.
      * 
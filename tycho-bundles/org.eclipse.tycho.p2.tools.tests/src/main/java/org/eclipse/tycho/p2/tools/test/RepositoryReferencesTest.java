@@ -62,6 +62,19 @@ public class RepositoryReferencesTest {
         assertEquals(LOCATION_C, repositories.get(2));
     }
 
+    @Test
+    public void testMetadataReposWithBlackboardKey() {
+        RepositoryBlackboardKey targetPlatformKey = RepositoryBlackboardKey.forTargetPlatformMetadata(new File("."));
+        subject.addMetadataRepository(LOCATION_A);
+        subject.addMetadataRepository(targetPlatformKey);
+
+        List<URI> repositories = subject.getMetadataRepositories();
+
+        assertEquals(2, repositories.size());
+        assertEquals(LOCATION_A.toURI(), repositories.get(0));
+        assertEquals(targetPlatformKey.toURI(), repositories.get(1));
+    }
+
     @Test
     public void testArtifactReposWithOrder() {
         subject.addArtifactRepository(LOCATION_D);
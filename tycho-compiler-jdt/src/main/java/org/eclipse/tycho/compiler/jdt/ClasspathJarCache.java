@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.compiler.jdt;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.internal.compiler.batch.ClasspathJar;
+import org.eclipse.jdt.internal.compiler.batch.ClasspathLocation;
+import org.eclipse.jdt.internal.compiler.batch.FileSystem;
+import org.eclipse.jdt.internal.compiler.env.NameEnvironmentAnswer;
+
+/**
+ * Cache of opened and indexed classpath jars which are shared between subsequent and concurrent
+ * compilations. Without the cache, the JDT batch compiler opens every jar on the classpath and
+ * reads its list of packages once per compilation, which is a significant part of the compile time
+ * of small modules with large classpaths.
+ *
+ * Jars are identified by their path, last modification time and size, so a jar which is replaced
+ * in the course of the build (e.g. by the build of a reactor module) is opened again. Jars which are
+ * not used by any running compilation are closed when the cache exceeds its maximum size, and all
+ * jars are closed by {@link #close()}.
+ */
+class ClasspathJarCache {
+
+    private static class Entry {
+        final ClasspathJar jar;
+        final long lastModified;
+        final long length;
+        int users;
+        boolean obsolete;
+
+        Entry(ClasspathJar jar, long lastModified, long length) {
+            this.jar = jar;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+
+    /** entries by canonical path, in access order */
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /** replaced entries which are still in use */
+    private final List<Entry> obsoleteEntries = new ArrayList<Entry>();
+
+    private int maxSize;
+
+    ClasspathJarCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    /**
+     * Returns a classpath entry which is equivalent to the given jar entry of a compilation, but
+     * which uses a shared instance of the jar. The returned entry needs to be released after the
+     * compilation. If the jar can't be opened, <code>null</code> is returned so that the compiler
+     * can handle the error in its usual way.
+     */
+    SharedClasspathJar acquire(ClasspathJar original) {
+        File file = new File(original.getPath());
+        long lastModified = file.lastModified();
+        long length = file.length();
+        String key;
+        try {
+            key = file.getCanonicalPath();
+        } catch (IOException e) {
+            return null;
+        }
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && (entry.lastModified != lastModified || entry.length != length)) {
+                entries.remove(key);
+                retire(entry);
+                entry = null;
+            }
+            if (entry == null) {
+                // the shared jar is only reset (and hence closed) by the cache, see SharedClasspathJar#reset()
+                ClasspathJar jar = new ClasspathJar(file, true, null, null);
+                try {
+                    jar.initialize();
+                } catch (IOException e) {
+                    return null;
+                }
+                // builds the package index, after which the jar is only read
+                jar.isPackage("");
+                entry = new Entry(jar, lastModified, length);
+                entries.put(key, entry);
+            }
+            entry.users++;
+            evict();
+            return new SharedClasspathJar(original, entry);
+        }
+    }
+
+    synchronized void release(SharedClasspathJar classpath) {
+        Entry entry = classpath.entry;
+        entry.users--;
+        if (entry.obsolete && entry.users == 0) {
+            obsoleteEntries.remove(entry);
+            close(entry);
+        }
+        evict();
+    }
+
+    /**
+     * Closes all jars. Jars which are still used by a compilation are closed when they are released.
+     */
+    synchronized void close() {
+        for (Entry entry : entries.values()) {
+            retire(entry);
+        }
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void retire(Entry entry) {
+        if (entry.users == 0) {
+            close(entry);
+        } else {
+            entry.obsolete = true;
+            obsoleteEntries.add(entry);
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxSize && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.users == 0) {
+                iterator.remove();
+                close(entry);
+            }
+        }
+    }
+
+    private static void close(Entry entry) {
+        entry.jar.reset();
+    }
+
+    /**
+     * Classpath entry of a single compilation which delegates to a shared jar. The access rules
+     * are specific to the compilation, so they are applied here and not in the shared jar.
+     */
+    @SuppressWarnings("rawtypes")
+    static class SharedClasspathJar extends ClasspathLocation {
+
+        private final ClasspathJar original;
+
+        final Entry entry;
+
+        SharedClasspathJar(ClasspathJar original, Entry entry) {
+            super(original.accessRuleSet, original.destinationPath);
+            this.original = original;
+            this.entry = entry;
+        }
+
+        public char[][][] findTypeNames(String qualifiedPackageName) {
+            return entry.jar.findTypeNames(qualifiedPackageName);
+        }
+
+        public NameEnvironmentAnswer findClass(char[] typeName, String qualifiedPackageName,
+                String qualifiedBinaryFileName) {
+            return findClass(typeName, qualifiedPackageName, qualifiedBinaryFileName, false);
+        }
+
+        public NameEnvironmentAnswer findClass(char[] typeName, String qualifiedPackageName,
+                String qualifiedBinaryFileName, boolean asBinaryOnly) {
+            NameEnvironmentAnswer answer = entry.jar.findClass(typeName, qualifiedPackageName,
+                    qualifiedBinaryFileName, asBinaryOnly);
+            if (answer == null) {
+                return null;
+            }
+            return new NameEnvironmentAnswer(answer.getBinaryType(), fetchAccessRestriction(qualifiedBinaryFileName));
+        }
+
+        public boolean isPackage(String qualifiedPackageName) {
+            return entry.jar.isPackage(qualifiedPackageName);
+        }
+
+        public List fetchLinkedJars(FileSystem.ClasspathSectionProblemReporter problemReporter) {
+            return original.fetchLinkedJars(problemReporter);
+        }
+
+        public void initialize() throws IOException {
+            // the shared jar is already initialized
+        }
+
+        public void reset() {
+            // the shared jar is closed by the cache
+        }
+
+        public char[] normalizedPath() {
+            return original.normalizedPath();
+        }
+
+        public String getPath() {
+            return original.getPath();
+        }
+
+        @Override
+        public String toString() {
+            return "Shared classpath for jar file " + getPath();
+        }
+    }
+}
@@ -14,7 +14,9 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.List;
 
+import org.eclipse.jdt.internal.compiler.batch.ClasspathJar;
 import org.eclipse.jdt.internal.compiler.batch.FileSystem;
 import org.eclipse.jdt.internal.compiler.batch.Main;
 import org.eclipse.jdt.internal.compiler.util.Util;
@@ -36,6 +38,9 @@ class CompilerMain extends Main {
     private File javaHome;
     private org.codehaus.plexus.logging.Logger mavenLogger;
     private String bootclasspathAccessRules;
+    private ClasspathJarCache classpathJarCache;
+    private final List<ClasspathJarCache.SharedClasspathJar> sharedClasspathJars =
+            new ArrayList<ClasspathJarCache.SharedClasspathJar>();
 
     public CompilerMain(PrintWriter outWriter, PrintWriter errWriter, boolean systemExitWhenFinished,
             org.codehaus.plexus.logging.Logger logger) {
@@ -52,6 +57,39 @@ class CompilerMain extends Main {
         bootclasspathAccessRules = accessRules;
     }
 
+    /**
+     * Lets the compiler use the jars of the given cache instead of opening the jars on the
+     * classpath. {@link #releaseSharedClasspathJars()} needs to be invoked after the compilation.
+     */
+    public void setClasspathJarCache(ClasspathJarCache classpathJarCache) {
+        this.classpathJarCache = classpathJarCache;
+    }
+
+    public void releaseSharedClasspathJars() {
+        for (ClasspathJarCache.SharedClasspathJar classpath : sharedClasspathJars) {
+            classpathJarCache.release(classpath);
+        }
+        sharedClasspathJars.clear();
+    }
+
+    @Override
+    public FileSystem getLibraryAccess() {
+        if (classpathJarCache != null && sharedClasspathJars.isEmpty()) {
+            for (int i = 0; i < checkedClasspaths.length; i++) {
+                // subclasses, e.g. for source jars, are not shared
+                if (checkedClasspaths[i].getClass() == ClasspathJar.class) {
+                    ClasspathJarCache.SharedClasspathJar shared = classpathJarCache
+                            .acquire((ClasspathJar) checkedClasspaths[i]);
+                    if (shared != null) {
+                        sharedClasspathJars.add(shared);
+                        checkedClasspaths[i] = shared;
+                    }
+                }
+            }
+        }
+        return super.getLibraryAccess();
+    }
+
     @Override
     public File getJavaHome() {
         if (javaHome == null) {
@@ -31,6 +31,7 @@ import org.codehaus.plexus.compiler.CompilerError;
 import org.codehaus.plexus.compiler.CompilerException;
 import org.codehaus.plexus.compiler.CompilerOutputStyle;
 import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.cli.CommandLineException;
 import org.codehaus.plexus.util.cli.CommandLineUtils;
@@ -45,7 +46,7 @@ import org.eclipse.jdt.internal.compiler.util.Util;
  */
 
 @Component(role = org.codehaus.plexus.compiler.Compiler.class, hint = "jdt")
-public class JDTCompiler extends AbstractCompiler {
+public class JDTCompiler extends AbstractCompiler implements Disposable {
 
     private static final String SEPARATOR = "----------";
 
@@ -57,6 +58,12 @@ public class JDTCompiler extends AbstractCompiler {
 
     private static final char[] ADAPTER_ACCESS = "ACCESS#".toCharArray(); //$NON-NLS-1$
 
+    /**
+     * Custom compiler argument with the maximum number of classpath jars which are kept open and
+     * shared between the compilations of this component. Disabled if not set.
+     */
+    public static final String SHARED_CLASSPATH_JARS = "use.shared.classpath.jars";
+
     static final Pattern LINE_PATTERN = Pattern
             .compile("(?:(\\d*)\\. )?(ERROR|WARNING) in (.*?)( \\(at line (\\d+)\\))?\\s*");
 
@@ -74,6 +81,8 @@ public class JDTCompiler extends AbstractCompiler {
 
     private String bootclasspathAccessRules = null;
 
+    private ClasspathJarCache classpathJarCache;
+
     public JDTCompiler() {
         super(CompilerOutputStyle.ONE_OUTPUT_FILE_PER_INPUT_FILE, ".java", ".class", null);
     }
@@ -101,9 +110,24 @@ public class JDTCompiler extends AbstractCompiler {
 
         @SuppressWarnings("unchecked")
         Map<String, String> customCompilerArguments = config.getCustomCompilerArguments();
-        checkCompilerArgs(customCompilerArguments);
 
-        String[] args = buildCompilerArguments(config, sourceFiles);
+        String[] args;
+        String javaHome;
+        String bootclasspathAccessRules;
+        // this component is shared by the modules of a parallel build, so the state derived from the
+        // compiler configuration must not leak into concurrent or subsequent compilations
+        synchronized (this) {
+            this.fileEncodings = null;
+            this.dirEncodings = null;
+            this.accessRules = null;
+            this.javaHome = null;
+            this.bootclasspathAccessRules = null;
+
+            checkCompilerArgs(customCompilerArguments);
+            args = buildCompilerArguments(config, sourceFiles);
+            javaHome = this.javaHome;
+            bootclasspathAccessRules = this.bootclasspathAccessRules;
+        }
 
         List<CompilerError> messages;
 
@@ -116,7 +140,8 @@ public class JDTCompiler extends AbstractCompiler {
 
             messages = compileOutOfProcess(config.getWorkingDirectory(), executable, args);
         } else {
-            messages = compileInProcess(args);
+            messages = compileInProcess(args, javaHome, bootclasspathAccessRules,
+                    getSharedClasspathJars(customCompilerArguments));
         }
 
         return messages;
@@ -240,6 +265,10 @@ public class JDTCompiler extends AbstractCompiler {
                 continue;
             }
 
+            if (SHARED_CLASSPATH_JARS.equals(key)) {
+                continue;
+            }
+
             args.add(key);
 
             String value = (String) entry.getValue();
@@ -324,7 +353,8 @@ public class JDTCompiler extends AbstractCompiler {
      * @return List of CompilerError objects with the errors encountered.
      * @throws CompilerException
      */
-    List<CompilerError> compileInProcess(String[] args) throws CompilerException {
+    List<CompilerError> compileInProcess(String[] args, String javaHome, String bootclasspathAccessRules,
+            int sharedClasspathJars) throws CompilerException {
 
         List<CompilerError> messages;
 
@@ -337,7 +367,14 @@ public class JDTCompiler extends AbstractCompiler {
             compiler.setJavaHome(new File(javaHome));
         }
         compiler.setBootclasspathAccessRules(bootclasspathAccessRules);
-        compiler.compile(args);
+        if (sharedClasspathJars > 0) {
+            compiler.setClasspathJarCache(getClasspathJarCache(sharedClasspathJars));
+        }
+        try {
+            compiler.compile(args);
+        } finally {
+            compiler.releaseSharedClasspathJars();
+        }
 
         try {
             String output = err.toString();
@@ -349,6 +386,35 @@ public class JDTCompiler extends AbstractCompiler {
         return messages;
     }
 
+    private int getSharedClasspathJars(Map<String, String> customCompilerArguments) {
+        String value = customCompilerArguments.get(SHARED_CLASSPATH_JARS);
+        if (StringUtils.isEmpty(value)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            getLogger().warn("Ignoring invalid value of " + SHARED_CLASSPATH_JARS + ": " + value);
+            return 0;
+        }
+    }
+
+    private synchronized ClasspathJarCache getClasspathJarCache(int maxSize) {
+        if (classpathJarCache == null) {
+            classpathJarCache = new ClasspathJarCache(maxSize);
+        } else {
+            classpathJarCache.setMaxSize(maxSize);
+        }
+        return classpathJarCache;
+    }
+
+    public synchronized void dispose() {
+        if (classpathJarCache != null) {
+            classpathJarCache.close();
+            classpathJarCache = null;
+        }
+    }
+
     /**
      * Parse the output from the compiler into a list of CompilerError objects
      * 
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.compiler.jdt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.eclipse.jdt.internal.compiler.batch.ClasspathJar;
+import org.eclipse.tycho.compiler.jdt.ClasspathJarCache.SharedClasspathJar;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClasspathJarCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testJarIsShared() throws Exception {
+        File jar = createJar("a.jar", "p/A.class");
+        ClasspathJarCache cache = new ClasspathJarCache(10);
+
+        SharedClasspathJar first = cache.acquire(classpathJar(jar));
+        SharedClasspathJar second = cache.acquire(classpathJar(jar));
+
+        assertEquals(1, cache.size());
+        assertTrue(first.isPackage("p"));
+        assertFalse(second.isPackage("q"));
+        assertEquals(jar.getCanonicalPath(), second.getPath());
+        cache.release(first);
+        cache.release(second);
+    }
+
+    @Test
+    public void testJarIsIdentifiedByCanonicalPath() throws Exception {
+        File jar = createJar("a.jar", "p/A.class");
+        new File(tempFolder.getRoot(), "sub").mkdir();
+        ClasspathJarCache cache = new ClasspathJarCache(10);
+
+        SharedClasspathJar first = cache.acquire(classpathJar(jar));
+        SharedClasspathJar second = cache.acquire(classpathJar(new File(tempFolder.getRoot(), "sub/../a.jar")));
+
+        assertEquals(1, cache.size());
+        assertSame(first.entry, second.entry);
+        cache.release(first);
+        cache.release(second);
+    }
+
+    @Test
+    public void testModifiedJarIsOpenedAgain() throws Exception {
+        File jar = createJar("a.jar", "p/A.class");
+        ClasspathJarCache cache = new ClasspathJarCache(10);
+        SharedClasspathJar first = cache.acquire(classpathJar(jar));
+
+        // replace the file instead of overwriting it so that the first jar remains readable
+        File modified = createJar("modified.jar", "q/other/B.class");
+        modified.setLastModified(jar.lastModified() + 2000);
+        assertTrue(modified.renameTo(jar));
+        SharedClasspathJar second = cache.acquire(classpathJar(jar));
+
+        assertEquals(1, cache.size());
+        assertTrue(second.isPackage("q/other"));
+        // the running compilation still sees the old jar
+        assertTrue(first.isPackage("p"));
+        cache.release(first);
+        cache.release(second);
+    }
+
+    @Test
+    public void testUnusedJarsAreEvicted() throws Exception {
+        ClasspathJarCache cache = new ClasspathJarCache(1);
+        SharedClasspathJar a = cache.acquire(classpathJar(createJar("a.jar", "a/A.class")));
+        SharedClasspathJar b = cache.acquire(classpathJar(createJar("b.jar", "b/B.class")));
+
+        // jars in use are not closed
+        assertEquals(2, cache.size());
+        assertTrue(a.isPackage("a"));
+
+        cache.release(a);
+        assertEquals(1, cache.size());
+        assertTrue(b.isPackage("b"));
+        cache.release(b);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCloseKeepsJarsInUseUntilReleased() throws Exception {
+        ClasspathJarCache cache = new ClasspathJarCache(10);
+        cache.release(cache.acquire(classpathJar(createJar("a.jar", "a/A.class"))));
+        SharedClasspathJar b = cache.acquire(classpathJar(createJar("b.jar", "b/B.class")));
+
+        cache.close();
+
+        assertEquals(0, cache.size());
+        assertTrue(b.isPackage("b"));
+        cache.release(b);
+    }
+
+    @Test
+    public void testMissingJar() throws Exception {
+        ClasspathJarCache cache = new ClasspathJarCache(10);
+
+        assertNull(cache.acquire(classpathJar(new File(tempFolder.getRoot(), "missing.jar"))));
+        assertEquals(0, cache.size());
+    }
+
+    private static ClasspathJar classpathJar(File jar) {
+        return new ClasspathJar(jar, true, null, null);
+    }
+
+    private File createJar(String name, String entry) throws IOException {
+        File jar = new File(tempFolder.getRoot(), name);
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            out.putNextEntry(new ZipEntry(entry));
+            out.write(new byte[] { (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE });
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        return jar;
+    }
+}
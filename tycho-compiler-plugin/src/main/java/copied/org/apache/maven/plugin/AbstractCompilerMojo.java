@@ -299,34 +299,38 @@ public abstract class AbstractCompilerMojo extends AbstractMojo {
 		CompilerConfiguration compilerConfiguration = getCompilerConfiguration(compileSourceRoots);
 
 		// TODO: have an option to always compile (without need to clean)
-		Set staleSources;
+		Set staleSources = getIncrementalSources(compilerConfiguration);
 
 		boolean canUpdateTarget;
 
-		try {
-			staleSources = computeStaleSources(compilerConfiguration, compiler,
-					getSourceInclusionScanner(staleMillis));
+		if (staleSources != null) {
+			compilerConfiguration.setSourceFiles(staleSources);
+		} else {
+			try {
+				staleSources = computeStaleSources(compilerConfiguration, compiler,
+						getSourceInclusionScanner(staleMillis));
 
-			canUpdateTarget = compiler.canUpdateTarget(compilerConfiguration);
+				canUpdateTarget = compiler.canUpdateTarget(compilerConfiguration);
 
-			if (compiler.getCompilerOutputStyle().equals(
-					CompilerOutputStyle.ONE_OUTPUT_FILE_FOR_ALL_INPUT_FILES)
-					&& !canUpdateTarget) {
-				getLog().info("RESCANNING!");
-				// TODO: This second scan for source files is sub-optimal
-				String inputFileEnding = compiler
-						.getInputFileEnding(compilerConfiguration);
+				if (compiler.getCompilerOutputStyle().equals(
+						CompilerOutputStyle.ONE_OUTPUT_FILE_FOR_ALL_INPUT_FILES)
+						&& !canUpdateTarget) {
+					getLog().info("RESCANNING!");
+					// TODO: This second scan for source files is sub-optimal
+					String inputFileEnding = compiler
+							.getInputFileEnding(compilerConfiguration);
 
-				Set sources = computeStaleSources(compilerConfiguration,
-						compiler, getSourceInclusionScanner(inputFileEnding));
+					Set sources = computeStaleSources(compilerConfiguration,
+							compiler, getSourceInclusionScanner(inputFileEnding));
 
-				compilerConfiguration.setSourceFiles(sources);
-			} else {
-				compilerConfiguration.setSourceFiles(staleSources);
+					compilerConfiguration.setSourceFiles(sources);
+				} else {
+					compilerConfiguration.setSourceFiles(staleSources);
+				}
+			} catch (CompilerException e) {
+				throw new MojoExecutionException(
+						"Error while computing stale sources.", e);
 			}
-		} catch (CompilerException e) {
-			throw new MojoExecutionException(
-					"Error while computing stale sources.", e);
 		}
 
 		if (staleSources.isEmpty()) {
@@ -388,6 +392,8 @@ public abstract class AbstractCompilerMojo extends AbstractMojo {
 
 		List messages;
 
+		long startTime = System.currentTimeMillis();
+
 		try {
 			messages = compiler.compile(compilerConfiguration);
 		} catch (Exception e) {
@@ -414,6 +420,30 @@ public abstract class AbstractCompilerMojo extends AbstractMojo {
 				getLog().warn(message.toString());
 			}
 		}
+
+		compilationSucceeded(compilerConfiguration, startTime);
+	}
+
+	/**
+	 * Returns the source files to compile if the sources are selected
+	 * incrementally, or <code>null</code> to compile the sources which are
+	 * newer than their class files.
+	 */
+	protected Set getIncrementalSources(
+			CompilerConfiguration compilerConfiguration)
+			throws MojoExecutionException {
+		return null;
+	}
+
+	/**
+	 * Called after the compiler has run without errors.
+	 * 
+	 * @param startTime
+	 *            the time at which the compiler was started
+	 */
+	protected void compilationSucceeded(
+			CompilerConfiguration compilerConfiguration, long startTime)
+			throws MojoExecutionException {
 	}
 
 	protected CompilerConfiguration getCompilerConfiguration(List<String> compileSourceRoots) throws MojoExecutionException {
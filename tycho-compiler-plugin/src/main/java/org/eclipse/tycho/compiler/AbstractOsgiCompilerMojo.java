@@ -25,6 +25,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.repository.ArtifactRepository;
@@ -44,11 +45,13 @@ import org.codehaus.plexus.compiler.util.scan.InclusionScanException;
 import org.codehaus.plexus.compiler.util.scan.SimpleSourceInclusionScanner;
 import org.codehaus.plexus.compiler.util.scan.SourceInclusionScanner;
 import org.codehaus.plexus.compiler.util.scan.StaleSourceScanner;
+import org.codehaus.plexus.util.DirectoryScanner;
 import org.codehaus.plexus.util.FileUtils;
 import org.eclipse.tycho.classpath.ClasspathEntry;
 import org.eclipse.tycho.classpath.ClasspathEntry.AccessRule;
 import org.eclipse.tycho.classpath.JavaCompilerConfiguration;
 import org.eclipse.tycho.classpath.SourcepathEntry;
+import org.eclipse.tycho.compiler.jdt.JDTCompiler;
 import org.eclipse.tycho.core.BundleProject;
 import org.eclipse.tycho.core.TychoProject;
 import org.eclipse.tycho.core.osgitools.DefaultClasspathEntry;
@@ -170,6 +173,33 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo impl
      */
     private Set<String> excludeResources = new HashSet<String>();
 
+    /**
+     * If set to true, only the source files which changed since the last build, and the source
+     * files which depend on classes compiled from them, are compiled. If nothing changed, the
+     * compiler is not invoked at all. All sources are compiled if the compile classpath (including
+     * the access rules) or the compiler configuration changed, or if a changed source file declared
+     * compile-time constants.
+     * 
+     * The build state is stored next to the output directory of each output jar.
+     * 
+     * @parameter expression="${tycho.compiler.incremental}" default-value="false"
+     */
+    private boolean incremental;
+
+    private IncrementalCompilation incrementalCompilation;
+
+    /**
+     * The maximum number of classpath jars which the in-process JDT compiler keeps open and indexed
+     * for the compilation of the subsequent modules of the build. This avoids that the jars on the
+     * classpath are opened and scanned again for every module, and is most effective for builds
+     * with many modules which share a large classpath. The jars stay open until the end of the
+     * build, so the limit should be well below the maximum number of open files of the build JVM.
+     * The cache is disabled if set to 0.
+     * 
+     * @parameter expression="${tycho.compiler.sharedClasspathJars}" default-value="0"
+     */
+    private int sharedClasspathJars;
+
     /**
      * Current build output jar
      */
@@ -235,6 +265,54 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo impl
         }
     }
 
+    @Override
+    protected Set<File> getIncrementalSources(CompilerConfiguration compilerConfiguration)
+            throws MojoExecutionException {
+        if (!incremental) {
+            return null;
+        }
+        File outputDirectory = getOutputDirectory();
+        File stateFile = new File(outputDirectory.getParentFile(), outputDirectory.getName() + ".incremental");
+        incrementalCompilation = new IncrementalCompilation(stateFile, outputDirectory, getLog());
+        try {
+            @SuppressWarnings("unchecked")
+            List<String> sourceRoots = compilerConfiguration.getSourceLocations();
+            return incrementalCompilation.getSourcesToCompile(getSourceFiles(sourceRoots),
+                    IncrementalCompilation.getFingerprint(compilerConfiguration, outputDirectory));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Error while computing the sources to compile", e);
+        }
+    }
+
+    private Map<String, File> getSourceFiles(List<String> sourceRoots) {
+        Map<String, File> sourceFiles = new TreeMap<String, File>();
+        for (String sourceRoot : sourceRoots) {
+            DirectoryScanner scanner = new DirectoryScanner();
+            scanner.setBasedir(sourceRoot);
+            scanner.setIncludes(includes.isEmpty() ? new String[] { "**/*.java" } : includes
+                    .toArray(new String[includes.size()]));
+            scanner.setExcludes(excludes.toArray(new String[excludes.size()]));
+            scanner.scan();
+            for (String path : scanner.getIncludedFiles()) {
+                sourceFiles.put(path.replace(File.separatorChar, '/'), new File(sourceRoot, path));
+            }
+        }
+        return sourceFiles;
+    }
+
+    @Override
+    protected void compilationSucceeded(CompilerConfiguration compilerConfiguration, long startTime)
+            throws MojoExecutionException {
+        if (incrementalCompilation != null) {
+            try {
+                incrementalCompilation.compilationSucceeded(startTime);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Error while storing the incremental build state", e);
+            }
+            incrementalCompilation = null;
+        }
+    }
+
     /** public for testing purposes */
     public EclipsePluginProject getEclipsePluginProject() throws MojoExecutionException {
         return ((OsgiBundleProject) getBundleProject()).getEclipsePluginProject(DefaultReactorProject.adapt(project));
@@ -374,6 +452,10 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo impl
         configureSourceAndTargetLevel(compilerConfiguration);
         configureJavaHome(compilerConfiguration);
         configureBootclasspathAccessRules(compilerConfiguration);
+        if (sharedClasspathJars > 0) {
+            compilerConfiguration.addCompilerCustomArgument(JDTCompiler.SHARED_CLASSPATH_JARS,
+                    String.valueOf(sharedClasspathJars));
+        }
         return compilerConfiguration;
     }
 
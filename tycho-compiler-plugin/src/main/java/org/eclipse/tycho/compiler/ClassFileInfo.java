@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The information of a class file which is relevant for incremental compilation: the name of the
+ * class, the source file it was compiled from, the classes it references, and whether it declares
+ * compile-time constants which other classes can use. References to constants are inlined by the
+ * compiler and hence don't appear in the class files of the referencing classes. Private constants
+ * and <code>serialVersionUID</code> fields are not considered because they are not referenced from
+ * other classes.
+ */
+class ClassFileInfo {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+
+    private static final int ACC_PRIVATE = 0x0002;
+
+    /** class names in field and method descriptors and generic signatures */
+    private static final Pattern DESCRIPTOR_TYPE = Pattern.compile("L([\\w/$]+)[;<]");
+
+    final String className;
+
+    /** the source file name, without path, or <code>null</code> if unknown */
+    final String sourceFile;
+
+    final Set<String> references;
+
+    final boolean declaresConstants;
+
+    private ClassFileInfo(String className, String sourceFile, Set<String> references, boolean declaresConstants) {
+        this.className = className;
+        this.sourceFile = sourceFile;
+        this.references = references;
+        this.declaresConstants = declaresConstants;
+    }
+
+    /**
+     * Returns the path of the source file relative to the source root, e.g.
+     * <code>org/example/Foo.java</code>, or <code>null</code> if the class file doesn't contain
+     * the source file name.
+     */
+    String getSourcePath() {
+        if (sourceFile == null) {
+            return null;
+        }
+        int packageEnd = className.lastIndexOf('/');
+        return packageEnd < 0 ? sourceFile : className.substring(0, packageEnd + 1) + sourceFile;
+    }
+
+    static ClassFileInfo read(File classFile) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(classFile));
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    static ClassFileInfo read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        int constantCount = in.readUnsignedShort();
+        String[] utf8 = new String[constantCount];
+        // name indexes of the CONSTANT_Class entries
+        int[] classNames = new int[constantCount];
+        for (int i = 1; i < constantCount; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+            case CONSTANT_UTF8:
+                utf8[i] = in.readUTF();
+                break;
+            case CONSTANT_CLASS:
+                classNames[i] = in.readUnsignedShort();
+                break;
+            case CONSTANT_STRING:
+            case CONSTANT_METHOD_TYPE:
+                in.readUnsignedShort();
+                break;
+            case CONSTANT_METHOD_HANDLE:
+                in.readUnsignedByte();
+                in.readUnsignedShort();
+                break;
+            case CONSTANT_INTEGER:
+            case CONSTANT_FLOAT:
+            case CONSTANT_FIELDREF:
+            case CONSTANT_METHODREF:
+            case CONSTANT_INTERFACE_METHODREF:
+            case CONSTANT_NAME_AND_TYPE:
+            case CONSTANT_INVOKE_DYNAMIC:
+                in.readInt();
+                break;
+            case CONSTANT_LONG:
+            case CONSTANT_DOUBLE:
+                in.readLong();
+                // 8-byte constants take two entries
+                i++;
+                break;
+            default:
+                throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        in.readUnsignedShort(); // access flags
+        String className = utf8[classNames[in.readUnsignedShort()]];
+
+        Set<String> references = new TreeSet<String>();
+        for (int i = 1; i < constantCount; i++) {
+            if (classNames[i] != 0) {
+                addReference(references, utf8[classNames[i]]);
+            }
+        }
+        for (String value : utf8) {
+            if (value != null && value.indexOf(';') > 0) {
+                Matcher matcher = DESCRIPTOR_TYPE.matcher(value);
+                while (matcher.find()) {
+                    addReference(references, matcher.group(1));
+                }
+            }
+        }
+        references.remove(className);
+
+        in.readUnsignedShort(); // super class
+        skip(in, 2 * in.readUnsignedShort()); // interfaces
+
+        boolean declaresConstants = false;
+        int fieldCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            int accessFlags = in.readUnsignedShort();
+            String fieldName = utf8[in.readUnsignedShort()];
+            in.readUnsignedShort(); // descriptor
+            boolean visibleToOtherClasses = (accessFlags & ACC_PRIVATE) == 0 && !"serialVersionUID".equals(fieldName);
+            int attributeCount = in.readUnsignedShort();
+            for (int j = 0; j < attributeCount; j++) {
+                String attributeName = utf8[in.readUnsignedShort()];
+                skip(in, in.readInt());
+                if (visibleToOtherClasses && "ConstantValue".equals(attributeName)) {
+                    declaresConstants = true;
+                }
+            }
+        }
+
+        int methodCount = in.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            skip(in, 6); // access, name, descriptor
+            int attributeCount = in.readUnsignedShort();
+            for (int j = 0; j < attributeCount; j++) {
+                in.readUnsignedShort();
+                skip(in, in.readInt());
+            }
+        }
+
+        String sourceFile = null;
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            String attributeName = utf8[in.readUnsignedShort()];
+            int length = in.readInt();
+            if ("SourceFile".equals(attributeName)) {
+                sourceFile = utf8[in.readUnsignedShort()];
+                skip(in, length - 2);
+            } else {
+                skip(in, length);
+            }
+        }
+        return new ClassFileInfo(className, sourceFile, references, declaresConstants);
+    }
+
+    private static void addReference(Set<String> references, String className) {
+        if (className == null) {
+            return;
+        }
+        if (className.startsWith("[")) {
+            // array class
+            Matcher matcher = DESCRIPTOR_TYPE.matcher(className);
+            if (matcher.find()) {
+                addReference(references, matcher.group(1));
+            }
+        } else if (!className.startsWith("java/")) {
+            // JDK classes are never compiled with the project
+            references.add(className);
+        }
+    }
+
+    private static void skip(DataInputStream in, int bytes) throws IOException {
+        int remaining = bytes;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new IOException("Unexpected end of class file");
+            }
+            remaining -= skipped;
+        }
+    }
+}
@@ -0,0 +1,429 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.compiler.CompilerConfiguration;
+import org.eclipse.tycho.core.utils.DigestUtils;
+
+/**
+ * Build state for incremental compilation of one output folder. The state consists of a
+ * fingerprint of the compile classpath (including access rules) and the compiler configuration,
+ * and, for each source file, its content hash, the classes compiled from it and the classes these
+ * reference. Sources are recompiled if they changed, or if they (transitively) reference a class
+ * compiled from a changed or deleted source. All sources are recompiled if the fingerprint changed
+ * or if a changed source declared compile-time constants.
+ */
+class IncrementalCompilation {
+
+    private static final int MAGIC = 0x7963636F;
+
+    private static final int FORMAT_VERSION = 1;
+
+    /** tolerance for the modification time of class files written by the compiler */
+    private static final long TIMESTAMP_GRANULARITY = 2000L;
+
+    private final File stateFile;
+
+    private final File outputDirectory;
+
+    private final Log log;
+
+    private String fingerprint;
+
+    /** by source path relative to the source root, e.g. <code>org/example/Foo.java</code> */
+    private Map<String, SourceState> sources;
+
+    IncrementalCompilation(File stateFile, File outputDirectory, Log log) {
+        this.stateFile = stateFile;
+        this.outputDirectory = outputDirectory;
+        this.log = log;
+    }
+
+    /**
+     * Determines the sources which need to be compiled, and removes the class files of changed
+     * and deleted sources.
+     *
+     * @param currentSources
+     *            all source files, by path relative to their source root
+     * @param currentFingerprint
+     *            the fingerprint of the compile classpath and the compiler configuration
+     * @return the sources to compile; empty if all classes are up to date
+     */
+    Set<File> getSourcesToCompile(Map<String, File> currentSources, String currentFingerprint) throws IOException {
+        boolean loaded = load();
+        if (!loaded || !fingerprint.equals(currentFingerprint)) {
+            log.info("Compiling all sources: "
+                    + (loaded ? "compile classpath or compiler configuration changed" : "no previous build state"));
+            return compileAll(currentSources, currentFingerprint);
+        }
+
+        Set<String> changed = new TreeSet<String>();
+        for (Map.Entry<String, File> source : currentSources.entrySet()) {
+            SourceState state = sources.get(source.getKey());
+            if (state == null || !classFilesExist(state) || !state.isUpToDate(source.getValue())) {
+                changed.add(source.getKey());
+            }
+        }
+        Set<String> deleted = new TreeSet<String>(sources.keySet());
+        deleted.removeAll(currentSources.keySet());
+
+        Set<String> affectedClasses = new TreeSet<String>();
+        for (String path : union(changed, deleted)) {
+            SourceState state = sources.get(path);
+            if (state != null) {
+                if (state.declaresConstants) {
+                    // constants are inlined, so the dependents are unknown
+                    log.info("Compiling all sources: " + path + " declared compile-time constants");
+                    return compileAll(currentSources, currentFingerprint);
+                }
+                affectedClasses.addAll(state.classes);
+            }
+        }
+
+        for (String path : union(changed, deleted)) {
+            SourceState state = sources.get(path);
+            if (state != null) {
+                deleteClassFiles(state);
+            }
+        }
+        sources.keySet().removeAll(deleted);
+
+        Set<String> toCompile = new TreeSet<String>(changed);
+        toCompile.addAll(getDependents(affectedClasses, toCompile));
+
+        Set<File> result = new LinkedHashSet<File>();
+        for (String path : toCompile) {
+            File file = currentSources.get(path);
+            sources.put(path, new SourceState(file));
+            result.add(file);
+        }
+        if (result.isEmpty()) {
+            // there may still be updated timestamps or removed sources
+            save();
+        } else {
+            log.info(changed.size() + " changed and " + deleted.size() + " deleted source file(s), compiling "
+                    + (toCompile.size() - changed.size()) + " dependent source file(s)");
+        }
+        return result;
+    }
+
+    private Set<File> compileAll(Map<String, File> currentSources, String currentFingerprint) throws IOException {
+        if (sources != null) {
+            for (SourceState state : sources.values()) {
+                deleteClassFiles(state);
+            }
+        }
+        fingerprint = currentFingerprint;
+        sources = new TreeMap<String, SourceState>();
+        for (Map.Entry<String, File> source : currentSources.entrySet()) {
+            sources.put(source.getKey(), new SourceState(source.getValue()));
+        }
+        return new LinkedHashSet<File>(currentSources.values());
+    }
+
+    /**
+     * Returns the sources which transitively reference one of the given classes.
+     */
+    private Set<String> getDependents(Set<String> affectedClasses, Set<String> toCompile) {
+        Set<String> dependents = new TreeSet<String>();
+        boolean added;
+        do {
+            added = false;
+            for (Map.Entry<String, SourceState> source : sources.entrySet()) {
+                String path = source.getKey();
+                if (toCompile.contains(path) || dependents.contains(path)) {
+                    continue;
+                }
+                if (intersects(source.getValue().references, affectedClasses)) {
+                    dependents.add(path);
+                    affectedClasses.addAll(source.getValue().classes);
+                    added = true;
+                }
+            }
+        } while (added);
+        return dependents;
+    }
+
+    /**
+     * Records the classes compiled from each source after a successful compilation, and saves the
+     * build state.
+     *
+     * @param startTime
+     *            the time at which the compilation was started
+     */
+    void compilationSucceeded(long startTime) throws IOException {
+        List<File> classFiles = new ArrayList<File>();
+        collectClassFiles(outputDirectory, startTime - TIMESTAMP_GRANULARITY, classFiles);
+        for (File classFile : classFiles) {
+            ClassFileInfo info = ClassFileInfo.read(classFile);
+            SourceState state = sources.get(getSourcePath(info));
+            if (state != null) {
+                state.classes.add(info.className);
+                state.references.addAll(info.references);
+                state.declaresConstants |= info.declaresConstants;
+            }
+        }
+        save();
+    }
+
+    private static String getSourcePath(ClassFileInfo info) {
+        String path = info.getSourcePath();
+        if (path == null) {
+            // without debug information, assume that the class is nested in a primary type
+            int nested = info.className.indexOf('$');
+            path = (nested < 0 ? info.className : info.className.substring(0, nested)) + ".java";
+        }
+        return path;
+    }
+
+    private static void collectClassFiles(File directory, long modifiedSince, List<File> result) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectClassFiles(file, modifiedSince, result);
+            } else if (file.getName().endsWith(".class") && file.lastModified() >= modifiedSince) {
+                result.add(file);
+            }
+        }
+    }
+
+    private void deleteClassFiles(SourceState state) {
+        for (String className : state.classes) {
+            new File(outputDirectory, className + ".class").delete();
+        }
+    }
+
+    private boolean classFilesExist(SourceState state) {
+        for (String className : state.classes) {
+            if (!new File(outputDirectory, className + ".class").isFile()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean load() {
+        if (!stateFile.isFile()) {
+            return false;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(stateFile)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                    return false;
+                }
+                String storedFingerprint = in.readUTF();
+                Map<String, SourceState> storedSources = new TreeMap<String, SourceState>();
+                int sourceCount = in.readInt();
+                for (int i = 0; i < sourceCount; i++) {
+                    String path = in.readUTF();
+                    storedSources.put(path, SourceState.read(in));
+                }
+                fingerprint = storedFingerprint;
+                sources = storedSources;
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            log.debug("Could not read incremental build state " + stateFile, e);
+            return false;
+        }
+    }
+
+    private void save() throws IOException {
+        File tempFile = new File(stateFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(fingerprint);
+            out.writeInt(sources.size());
+            for (Map.Entry<String, SourceState> source : sources.entrySet()) {
+                out.writeUTF(source.getKey());
+                source.getValue().write(out);
+            }
+        } finally {
+            out.close();
+        }
+        stateFile.delete();
+        if (!tempFile.renameTo(stateFile)) {
+            throw new IOException("Could not write incremental build state " + stateFile);
+        }
+    }
+
+    /**
+     * Computes the fingerprint of the compile classpath, including the access rules and the
+     * contents of the classpath entries, and of the compiler configuration. The given output
+     * directory, which is also on the classpath, is excluded.
+     */
+    static String getFingerprint(CompilerConfiguration config, File outputDirectory) throws IOException {
+        MessageDigest digest = DigestUtils.newDigest(DigestUtils.SHA1);
+        update(digest, "format " + FORMAT_VERSION);
+        for (Object entry : config.getClasspathEntries()) {
+            String classpathEntry = (String) entry;
+            update(digest, classpathEntry);
+            File location = new File(getLocation(classpathEntry));
+            if (!location.getCanonicalFile().equals(outputDirectory.getCanonicalFile())) {
+                updateWithContent(digest, location, "");
+            }
+        }
+        for (Object sourceLocation : config.getSourceLocations()) {
+            update(digest, (String) sourceLocation);
+        }
+        update(digest, config.getSourceVersion());
+        update(digest, config.getTargetVersion());
+        update(digest, config.getSourceEncoding());
+        update(digest, config.getCompilerVersion());
+        update(digest, config.isDebug() + " " + config.isOptimize() + " " + config.isShowWarnings() + " "
+                + config.isShowDeprecation());
+        update(digest, String.valueOf(config.getCustomCompilerArguments()));
+        return DigestUtils.toHex(digest.digest());
+    }
+
+    private static String getLocation(String classpathEntry) {
+        // strip the access rules, e.g. "/path/to/bundle.jar[+org/example/*:?**/*]"
+        int rules = classpathEntry.lastIndexOf('[');
+        if (rules > 0 && classpathEntry.endsWith("]")) {
+            return classpathEntry.substring(0, rules);
+        }
+        return classpathEntry;
+    }
+
+    private static void updateWithContent(MessageDigest digest, File location, String relativePath) {
+        if (location.isDirectory()) {
+            File[] files = location.listFiles();
+            if (files != null) {
+                // the order of listFiles is unspecified
+                Map<String, File> sorted = new TreeMap<String, File>();
+                for (File file : files) {
+                    sorted.put(file.getName(), file);
+                }
+                for (Map.Entry<String, File> file : sorted.entrySet()) {
+                    updateWithContent(digest, file.getValue(), relativePath + "/" + file.getKey());
+                }
+            }
+        } else {
+            update(digest, relativePath + " " + location.length() + " " + location.lastModified());
+        }
+    }
+
+    static String computeHash(File file) throws IOException {
+        return DigestUtils.digest(DigestUtils.SHA1, file);
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        DigestUtils.update(digest, String.valueOf(value));
+        digest.update((byte) 0);
+    }
+
+    private static Set<String> union(Set<String> first, Set<String> second) {
+        Set<String> result = new TreeSet<String>(first);
+        result.addAll(second);
+        return result;
+    }
+
+    private static boolean intersects(Set<String> first, Set<String> second) {
+        for (Iterator<String> it = first.iterator(); it.hasNext();) {
+            if (second.contains(it.next())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class SourceState {
+        long length;
+        long lastModified;
+        String hash;
+        boolean declaresConstants;
+        final Set<String> classes = new TreeSet<String>();
+        final Set<String> references = new TreeSet<String>();
+
+        SourceState() {
+        }
+
+        SourceState(File file) throws IOException {
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+            this.hash = computeHash(file);
+        }
+
+        boolean isUpToDate(File file) throws IOException {
+            if (length == file.length() && lastModified == file.lastModified()) {
+                return true;
+            }
+            if (hash.equals(computeHash(file))) {
+                // only touched
+                length = file.length();
+                lastModified = file.lastModified();
+                return true;
+            }
+            return false;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(length);
+            out.writeLong(lastModified);
+            out.writeUTF(hash);
+            out.writeBoolean(declaresConstants);
+            writeSet(out, classes);
+            writeSet(out, references);
+        }
+
+        static SourceState read(DataInputStream in) throws IOException {
+            SourceState state = new SourceState();
+            state.length = in.readLong();
+            state.lastModified = in.readLong();
+            state.hash = in.readUTF();
+            state.declaresConstants = in.readBoolean();
+            readSet(in, state.classes);
+            readSet(in, state.references);
+            return state;
+        }
+    }
+
+    private static void writeSet(DataOutputStream out, Set<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static void readSet(DataInputStream in, Set<String> values) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            values.add(in.readUTF());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.compiler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+
+import junit.framework.TestCase;
+
+public class ClassFileInfoTest extends TestCase {
+
+    public static class PublicConstant {
+        public static final String VALUE = "value";
+    }
+
+    public static class PackageConstant {
+        static final int VALUE = 1;
+    }
+
+    public static class PrivateConstant {
+        private static final int VALUE = 1;
+
+        int get() {
+            return VALUE;
+        }
+    }
+
+    public static class SerializableClass implements Serializable {
+        static final long serialVersionUID = 1L;
+    }
+
+    public static class NoConstant {
+        public static final Object VALUE = new Object();
+    }
+
+    public void testClassNameAndSource() throws Exception {
+        ClassFileInfo info = read(PublicConstant.class);
+
+        assertEquals("org/eclipse/tycho/compiler/ClassFileInfoTest$PublicConstant", info.className);
+        assertEquals("org/eclipse/tycho/compiler/ClassFileInfoTest.java", info.getSourcePath());
+    }
+
+    public void testVisibleConstants() throws Exception {
+        assertTrue(read(PublicConstant.class).declaresConstants);
+        assertTrue(read(PackageConstant.class).declaresConstants);
+    }
+
+    public void testPrivateConstantIsIgnored() throws Exception {
+        assertFalse(read(PrivateConstant.class).declaresConstants);
+    }
+
+    public void testSerialVersionUIDIsIgnored() throws Exception {
+        assertFalse(read(SerializableClass.class).declaresConstants);
+    }
+
+    public void testNonConstantField() throws Exception {
+        assertFalse(read(NoConstant.class).declaresConstants);
+    }
+
+    private static ClassFileInfo read(Class<?> type) throws IOException {
+        String name = type.getName();
+        InputStream in = type.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class");
+        try {
+            return ClassFileInfo.read(in);
+        } finally {
+            in.close();
+        }
+    }
+}
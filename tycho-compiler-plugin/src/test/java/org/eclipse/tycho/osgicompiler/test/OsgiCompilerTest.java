@@ -311,6 +311,36 @@ public class OsgiCompilerTest extends AbstractTychoMojoTestCase {
         getMojo(projects, project).execute();
     }
 
+    public void testIncrementalCompilation() throws Exception {
+        File basedir = getBasedir("projects/incremental/p001");
+        List<MavenProject> projects = getSortedProjects(basedir, null);
+        MavenProject project = projects.get(0);
+        getMojo(projects, project).execute();
+
+        File classes = new File(project.getBasedir(), "target/classes/incremental");
+        File baseClass = new File(classes, "Base.class");
+        File userClass = new File(classes, "User.class");
+        File unrelatedClass = new File(classes, "Unrelated.class");
+        long past = System.currentTimeMillis() - 60000L;
+        for (File classFile : new File[] { baseClass, userClass, unrelatedClass }) {
+            assertTrue(classFile.canRead());
+            classFile.setLastModified(past);
+        }
+
+        // nothing changed
+        getMojo(projects, project).execute();
+        assertEquals(past, baseClass.lastModified());
+
+        // changed source and its dependent are recompiled
+        File baseSource = new File(project.getBasedir(), "src/incremental/Base.java");
+        String source = FileUtils.fileRead(baseSource);
+        FileUtils.fileWrite(baseSource.getAbsolutePath(), source.replace("\"base\"", "\"changed\""));
+        getMojo(projects, project).execute();
+        assertTrue(baseClass.lastModified() > past);
+        assertTrue(userClass.lastModified() > past);
+        assertEquals(past, unrelatedClass.lastModified());
+    }
+
     public void testWarningAndErrorMessages() throws Exception {
         File basedir = getBasedir("projects/compilermessages");
         List<MavenProject> projects = getSortedProjects(basedir, null);
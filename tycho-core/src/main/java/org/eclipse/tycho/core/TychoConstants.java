@@ -22,6 +22,7 @@ public interface TychoConstants {
     static final String CTX_EXPANDED_VERSION = CTX_BASENAME + "/expandedVersion";
     static final String CTX_MERGED_PROPERTIES = CTX_BASENAME + "/mergedProperties";
     static final String CTX_TARGET_PLATFORM_CONFIGURATION = CTX_BASENAME + "/targetPlatformConfiguration";
+    static final String CTX_TARGET_PLATFORM = CTX_BASENAME + "/targetPlatform";
     static final String CTX_DEPENDENCY_WALKER = CTX_BASENAME + "/dependencyWalker";
     static final String CTX_PUBLISHED_ROOT_IUS = CTX_BASENAME + "/publishedRootIUs";
 }
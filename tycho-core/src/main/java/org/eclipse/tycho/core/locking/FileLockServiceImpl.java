@@ -12,29 +12,101 @@
 package org.eclipse.tycho.core.locking;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import org.codehaus.plexus.component.annotations.Component;
-import org.eclipse.core.runtime.internal.adaptor.BasicLocation;
-import org.eclipse.osgi.service.datalocation.Location;
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.tycho.core.utils.DaemonThreadFactory;
 import org.eclipse.tycho.locking.facade.FileLockService;
 import org.eclipse.tycho.locking.facade.FileLocker;
 
 @Component(role = FileLockService.class)
 public class FileLockServiceImpl implements FileLockService {
 
-    private Location anyLocation;
+    /**
+     * In-process locks by lock marker file. These are shared between all instances because file
+     * locks are held on behalf of the whole JVM.
+     */
+    private static final Map<File, Semaphore> processLocks = new HashMap<File, Semaphore>();
 
-    public FileLockServiceImpl() {
-        anyLocation = new BasicLocation(null, null, false, null);
-    }
+    private static final ExecutorService lockThreads = Executors
+            .newCachedThreadPool(new DaemonThreadFactory("tycho-file-lock"));
+
+    private final Map<File, WaitStatistics> waitStatistics = new HashMap<File, WaitStatistics>();
 
     /*
      * (non-Javadoc)
      * 
      * @see org.eclipse.tycho.p2.repository.FileLockService#getFileLocker(java.io.File)
      */
-    public synchronized FileLocker getFileLocker(File file) {
-        return new FileLockerImpl(file, anyLocation);
+    public FileLocker getFileLocker(File file) {
+        return new FileLockerImpl(file, this);
+    }
+
+    Semaphore getProcessLock(File lockMarkerFile) {
+        synchronized (processLocks) {
+            Semaphore result = processLocks.get(lockMarkerFile);
+            if (result == null) {
+                result = new Semaphore(1);
+                processLocks.put(lockMarkerFile, result);
+            }
+            return result;
+        }
+    }
+
+    <T> Future<T> submit(Callable<T> task) {
+        return lockThreads.submit(task);
+    }
+
+    synchronized void recordWaitTime(File lockMarkerFile, long millis) {
+        WaitStatistics statistics = waitStatistics.get(lockMarkerFile);
+        if (statistics == null) {
+            statistics = new WaitStatistics(lockMarkerFile);
+            waitStatistics.put(lockMarkerFile, statistics);
+        }
+        statistics.count++;
+        statistics.totalMillis += millis;
+        statistics.maxMillis = Math.max(statistics.maxMillis, millis);
+    }
+
+    /**
+     * Logs the lock paths with the longest total wait times.
+     */
+    public synchronized void logWaitStatistics(Logger logger, int maxEntries) {
+        List<WaitStatistics> entries = new ArrayList<WaitStatistics>(waitStatistics.values());
+        Collections.sort(entries, new Comparator<WaitStatistics>() {
+            public int compare(WaitStatistics left, WaitStatistics right) {
+                return left.totalMillis > right.totalMillis ? -1 : (left.totalMillis < right.totalMillis ? 1 : 0);
+            }
+        });
+        for (WaitStatistics entry : entries.subList(0, Math.min(maxEntries, entries.size()))) {
+            if (entry.totalMillis == 0) {
+                break;
+            }
+            logger.debug("Waited " + entry.totalMillis + " ms (max. " + entry.maxMillis + " ms) for " + entry.count
+                    + " locks on " + entry.lockMarkerFile);
+        }
+    }
+
+    private static class WaitStatistics {
+        final File lockMarkerFile;
+        int count;
+        long totalMillis;
+        long maxMillis;
+
+        WaitStatistics(File lockMarkerFile) {
+            this.lockMarkerFile = lockMarkerFile;
+        }
     }
 
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011 SAP AG and others.
+ * Copyright (c) 2011, 2012 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,20 +13,44 @@ package org.eclipse.tycho.core.locking;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import org.eclipse.osgi.service.datalocation.Location;
 import org.eclipse.tycho.locking.facade.FileLocker;
 import org.eclipse.tycho.locking.facade.LockTimeoutException;
 
+/**
+ * File locker based on NIO file locks on a marker file. Threads of the same process are serialized
+ * by an in-process lock, so that only one thread at a time waits for the file lock. That thread
+ * blocks in {@link FileChannel#lock(long, long, boolean)} on a helper thread instead of polling.
+ *
+ * <p>
+ * The first byte of the marker file is locked, which is compatible with the locking of the Equinox
+ * <code>Location</code> used by previous versions.
+ * </p>
+ */
 public class FileLockerImpl implements FileLocker {
 
     private static final String LOCKFILE_SUFFIX = ".tycholock";
 
-    private final Location lockFileLocation;
+    private static final long IO_ERROR_RETRY_INTERVAL = 50L;
+
+    private final FileLockServiceImpl lockService;
     final File lockMarkerFile;
+    private final Semaphore processLock;
+
+    private RandomAccessFile lockedFile;
+    private FileLock fileLock;
 
-    public FileLockerImpl(File file, Location anyLocation) {
+    FileLockerImpl(File file, FileLockServiceImpl lockService) {
         try {
             if (file.isDirectory()) {
                 this.lockMarkerFile = new File(file, LOCKFILE_SUFFIX).getCanonicalFile();
@@ -41,13 +65,11 @@ public class FileLockerImpl implements FileLocker {
             if (!parentDir.isDirectory() && !parentDir.mkdirs()) {
                 throw new RuntimeException("Could not create parent directory " + parentDir + " of lock marker file");
             }
-            this.lockFileLocation = anyLocation.createLocation(null, null, false);
-            this.lockFileLocation.set(lockMarkerFile.toURL(), false, lockMarkerFile.getAbsolutePath());
-        } catch (MalformedURLException e) {
-            throw new RuntimeException(e);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        this.lockService = lockService;
+        this.processLock = lockService.getProcessLock(lockMarkerFile);
     }
 
     public void lock() {
@@ -58,59 +80,169 @@ public class FileLockerImpl implements FileLocker {
         if (timeout < 0) {
             throw new IllegalArgumentException("timeout must not be negative");
         }
+        long start = System.currentTimeMillis();
+        long deadline = start + timeout;
+        try {
+            if (!processLock.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw newTimeoutException(timeout, null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw newTimeoutException(timeout, e);
+        }
+
         boolean success = false;
-        final long waitInterval = 50L;
-        long maxTries = (timeout / waitInterval) + 1;
+        try {
+            acquireFileLock(timeout, deadline);
+            success = true;
+        } finally {
+            if (!success) {
+                processLock.release();
+            }
+            lockService.recordWaitTime(lockMarkerFile, System.currentTimeMillis() - start);
+        }
+    }
+
+    private void acquireFileLock(long timeout, long deadline) {
         IOException ioException = null;
-        for (long i = 0; i < maxTries; i++) {
-            ioException = null;
+        do {
+            RandomAccessFile file = null;
+            FileLock lock = null;
             try {
-                success = lockFileLocation.lock();
-            } catch (IOException ioe) {
+                file = new RandomAccessFile(lockMarkerFile, "rw");
+                lock = lockFileChannel(file.getChannel(), deadline - System.currentTimeMillis());
+                if (lock != null && file.length() <= 1) {
+                    this.lockedFile = file;
+                    this.fileLock = lock;
+                    return;
+                }
+                // the marker file has been deleted by the previous owner while we were waiting for it
+            } catch (IOException e) {
                 // keep trying (and re-throw eventually)
-                ioException = ioe;
+                ioException = e;
             }
-            if (success) {
-                return;
+            close(file);
+            if (ioException != null) {
+                pause(IO_ERROR_RETRY_INTERVAL);
             }
-            try {
-                Thread.sleep(waitInterval);
-            } catch (InterruptedException e) {
-                // ignore
+        } while (System.currentTimeMillis() < deadline && !Thread.currentThread().isInterrupted());
+        throw newTimeoutException(timeout, ioException);
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private FileLock lockFileChannel(final FileChannel channel, long timeout) throws IOException {
+        FileLock lock = channel.tryLock(0, 1, false);
+        if (lock != null || timeout <= 0) {
+            return lock;
+        }
+        Future<FileLock> blockingLock = lockService.submit(new Callable<FileLock>() {
+            public FileLock call() throws IOException {
+                return channel.lock(0, 1, false);
             }
+        });
+        try {
+            return blockingLock.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // closing the channel aborts the blocking lock call, or releases the lock if it has just been acquired
+            blockingLock.cancel(true);
+            return null;
+        } catch (InterruptedException e) {
+            blockingLock.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for lock on " + lockMarkerFile);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
         }
-        String message = "lock timeout: Could not acquire lock on file " + lockFileLocation.getURL() + " for "
-                + timeout + " msec";
-        if (ioException != null) {
-            throw new LockTimeoutException(message, ioException);
+    }
+
+    private LockTimeoutException newTimeoutException(long timeout, Throwable cause) {
+        String message = "lock timeout: Could not acquire lock on file " + lockMarkerFile + " for " + timeout
+                + " msec";
+        if (cause != null) {
+            return new LockTimeoutException(message, cause);
         } else {
-            throw new LockTimeoutException(message);
+            return new LockTimeoutException(message);
         }
     }
 
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see org.eclipse.tycho.p2.repository.IFileLocker#release()
      */
     public void release() {
-        lockFileLocation.release();
-        if (lockMarkerFile.isFile() && !lockMarkerFile.delete()) {
-            // this can happen if another process already holds the lock again
-            lockMarkerFile.deleteOnExit();
+        if (fileLock == null) {
+            return;
+        }
+        try {
+            if (lockMarkerFile.delete()) {
+                // processes waiting on the deleted file must not use it; mark it as stale
+                lockedFile.getChannel().write(ByteBuffer.wrap(new byte[] { 0, 1 }), 0);
+            } else {
+                // this can happen if the file system doesn't allow to delete locked files
+                lockMarkerFile.deleteOnExit();
+            }
+        } catch (IOException e) {
+            // closing the file releases the lock anyway
+        } finally {
+            close(lockedFile);
+            lockedFile = null;
+            fileLock = null;
+            processLock.release();
         }
     }
 
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see org.eclipse.tycho.p2.repository.IFileLocker#isLocked()
      */
     public boolean isLocked() {
+        // the marker file is only opened while holding the process lock: closing a channel releases
+        // all locks the process holds on the file, including those acquired through other channels
+        if (!processLock.tryAcquire()) {
+            return true;
+        }
         try {
-            return lockFileLocation.isLocked();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            if (!lockMarkerFile.isFile()) {
+                return false;
+            }
+            RandomAccessFile file = null;
+            try {
+                file = new RandomAccessFile(lockMarkerFile, "rw");
+                FileLock lock = file.getChannel().tryLock(0, 1, false);
+                if (lock == null) {
+                    return true;
+                }
+                lock.release();
+                return false;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                close(file);
+            }
+        } finally {
+            processLock.release();
+        }
+    }
+
+    private static void close(RandomAccessFile file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                // ignore
+            }
         }
     }
 
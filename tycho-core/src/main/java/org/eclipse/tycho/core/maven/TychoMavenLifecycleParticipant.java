@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@ package org.eclipse.tycho.core.maven;
 
 import java.io.File;
 import java.util.List;
+import java.util.Properties;
 
 import org.apache.maven.AbstractMavenLifecycleParticipant;
 import org.apache.maven.MavenExecutionException;
@@ -25,11 +26,16 @@ import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.component.repository.exception.ComponentLifecycleException;
 import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
+import org.codehaus.plexus.logging.Logger;
 import org.eclipse.sisu.equinox.EquinoxServiceFactory;
 import org.eclipse.tycho.ReactorProject;
+import org.eclipse.tycho.core.locking.FileLockServiceImpl;
 import org.eclipse.tycho.core.osgitools.BundleReader;
 import org.eclipse.tycho.core.osgitools.DefaultBundleReader;
 import org.eclipse.tycho.core.osgitools.DefaultReactorProject;
+import org.eclipse.tycho.core.resolver.DefaultTychoDependencyResolver;
+import org.eclipse.tycho.core.resolver.ReactorResolutionScheduler;
+import org.eclipse.tycho.locking.facade.FileLockService;
 import org.eclipse.tycho.resolver.TychoDependencyResolver;
 
 @Component(role = AbstractMavenLifecycleParticipant.class, hint = "TychoMavenLifecycleListener")
@@ -43,6 +49,12 @@ public class TychoMavenLifecycleParticipant extends AbstractMavenLifecyclePartic
     @Requirement
     private PlexusContainer plexus;
 
+    @Requirement
+    private Logger logger;
+
+    @Requirement
+    private FileLockService fileLockService;
+
     @Override
     public void afterProjectsRead(MavenSession session) throws MavenExecutionException {
         if (disableLifecycleParticipation(session)) {
@@ -57,8 +69,14 @@ public class TychoMavenLifecycleParticipant extends AbstractMavenLifecyclePartic
         }
 
         List<ReactorProject> reactorProjects = DefaultReactorProject.adapt(session);
-        for (MavenProject project : projects) {
-            resolver.resolveProject(session, project, reactorProjects);
+        if (ReactorResolutionScheduler.isParallelResolutionEnabled(session)) {
+            new ReactorResolutionScheduler((DefaultTychoDependencyResolver) resolver, logger,
+                    ReactorResolutionScheduler.getThreadCount(session)).resolveProjects(session, projects,
+                    reactorProjects);
+        } else {
+            for (MavenProject project : projects) {
+                resolver.resolveProject(session, project, reactorProjects);
+            }
         }
     }
 
@@ -71,6 +89,10 @@ public class TychoMavenLifecycleParticipant extends AbstractMavenLifecyclePartic
 
             @Override
             public void sessionEnded(ExecutionEvent event) {
+                ((DefaultBundleReader) bundleReader).saveManifestCache();
+                if (logger.isDebugEnabled() && fileLockService instanceof FileLockServiceImpl) {
+                    ((FileLockServiceImpl) fileLockService).logWaitStatistics(logger, 10);
+                }
                 try {
                     EquinoxServiceFactory equinoxServiceFactory = plexus.lookup(EquinoxServiceFactory.class);
                     if (equinoxServiceFactory != null) {
@@ -101,7 +123,24 @@ public class TychoMavenLifecycleParticipant extends AbstractMavenLifecyclePartic
     private void configureComponents(MavenSession session) {
         // TODO why does the bundle reader need to cache stuff in the local maven repository?
         File localRepository = new File(session.getLocalRepository().getBasedir());
-        ((DefaultBundleReader) bundleReader).setLocationRepository(localRepository);
+        DefaultBundleReader defaultBundleReader = (DefaultBundleReader) bundleReader;
+        defaultBundleReader.setLocationRepository(localRepository);
+
+        Properties properties = session.getUserProperties();
+        int manifestCacheSize = DefaultBundleReader.DEFAULT_MANIFEST_CACHE_SIZE;
+        String manifestCacheSizeValue = properties.getProperty(DefaultBundleReader.MANIFEST_CACHE_SIZE_PROPERTY);
+        if (manifestCacheSizeValue != null) {
+            try {
+                manifestCacheSize = Integer.parseInt(manifestCacheSizeValue.trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring invalid value '" + manifestCacheSizeValue + "' of property "
+                        + DefaultBundleReader.MANIFEST_CACHE_SIZE_PROPERTY + ", using the default "
+                        + DefaultBundleReader.DEFAULT_MANIFEST_CACHE_SIZE);
+            }
+        }
+        boolean persistentManifestCache = Boolean.parseBoolean(properties
+                .getProperty(DefaultBundleReader.PERSISTENT_MANIFEST_CACHE_PROPERTY));
+        defaultBundleReader.configureManifestCache(manifestCacheSize, persistentManifestCache);
     }
 
 }
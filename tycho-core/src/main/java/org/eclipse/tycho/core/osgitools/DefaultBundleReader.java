@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,11 +10,13 @@
  *******************************************************************************/
 package org.eclipse.tycho.core.osgitools;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Set;
@@ -28,7 +30,6 @@ import org.codehaus.plexus.logging.AbstractLogEnabled;
 import org.codehaus.plexus.util.IOUtil;
 import org.eclipse.osgi.service.pluginconversion.PluginConversionException;
 import org.eclipse.osgi.service.pluginconversion.PluginConverter;
-import org.eclipse.tycho.core.facade.LRUCache;
 import org.eclipse.tycho.locking.facade.FileLockService;
 import org.eclipse.tycho.locking.facade.FileLocker;
 
@@ -36,25 +37,29 @@ import org.eclipse.tycho.locking.facade.FileLocker;
 public class DefaultBundleReader extends AbstractLogEnabled implements BundleReader {
 
     public static final String CACHE_PATH = ".cache/tycho";
-    private final LRUCache<String, OsgiManifest> manifestCache = new LRUCache<String, OsgiManifest>(50);
+
+    /** maximum number of manifests kept in memory */
+    public static final String MANIFEST_CACHE_SIZE_PROPERTY = "tycho.bundleReader.manifestCacheSize";
+
+    /** if <code>true</code>, manifests of jar bundles are also cached on disk across builds */
+    public static final String PERSISTENT_MANIFEST_CACHE_PROPERTY = "tycho.bundleReader.persistentManifestCache";
+
+    public static final int DEFAULT_MANIFEST_CACHE_SIZE = 5000;
+
+    private static final String MANIFEST_INDEX_NAME = "manifests.index";
+
+    private ManifestCache manifestCache = new ManifestCache(DEFAULT_MANIFEST_CACHE_SIZE);
 
     private File cacheDir;
-    private Set<String> extractedFiles = new HashSet<String>();
+    private Set<String> extractedFiles = Collections.synchronizedSet(new HashSet<String>());
 
     @Requirement
     private FileLockService fileLockService;
 
     public OsgiManifest loadManifest(File bundleLocation) {
-        String locationPath;
-        try {
-            locationPath = bundleLocation.getCanonicalPath();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        OsgiManifest manifest = manifestCache.get(locationPath);
+        OsgiManifest manifest = manifestCache.get(bundleLocation);
         if (manifest == null) {
             manifest = doLoadManifest(bundleLocation);
-            manifestCache.put(locationPath, manifest);
         }
         return manifest;
     }
@@ -75,37 +80,53 @@ public class DefaultBundleReader extends AbstractLogEnabled implements BundleRea
         }
     }
 
+    private OsgiManifest cache(File bundleLocation, ManifestCache.Stamp stamp, OsgiManifest manifest,
+            byte[] rawJarManifest) {
+        manifestCache.put(bundleLocation, stamp, manifest, rawJarManifest);
+        return manifest;
+    }
+
     private OsgiManifest loadManifestFromFile(File bundleLocation) throws IOException {
+        ManifestCache.Stamp stamp = new ManifestCache.Stamp(bundleLocation);
         if (!bundleLocation.getName().toLowerCase().endsWith(".jar")) {
             // file but not a jar, assume it is MANIFEST.MF
-            return loadManifestFile(bundleLocation);
+            return cache(bundleLocation, stamp, loadManifestFile(bundleLocation), null);
         }
         // it is a jar, let's see if it has OSGi bundle manifest
+        byte[] rawManifest = null;
         ZipFile jar = new ZipFile(bundleLocation, ZipFile.OPEN_READ);
         try {
             ZipEntry manifestEntry = jar.getEntry(JarFile.MANIFEST_NAME);
             if (manifestEntry != null) {
-                try {
-                    InputStream stream = jar.getInputStream(manifestEntry);
-                    return OsgiManifest.parse(stream, bundleLocation.getAbsolutePath() + "!/" + JarFile.MANIFEST_NAME);
-                } catch (InvalidOSGiManifestException e) {
-                    // jar with a non-OSGi MANIFEST - fall through
-                }
+                rawManifest = IOUtil.toByteArray(jar.getInputStream(manifestEntry));
             }
         } finally {
             jar.close();
         }
+        if (rawManifest != null) {
+            try {
+                OsgiManifest manifest = OsgiManifest.parse(new ByteArrayInputStream(rawManifest),
+                        bundleLocation.getAbsolutePath() + "!/" + JarFile.MANIFEST_NAME);
+                return cache(bundleLocation, stamp, manifest, rawManifest);
+            } catch (InvalidOSGiManifestException e) {
+                // jar with a non-OSGi MANIFEST - fall through
+            }
+        }
         // it is a jar, does not have OSGi bundle manifest, let's try plugin.xml/fragment.xml
         File generatedManifest = convertPluginManifest(bundleLocation);
-        return loadManifestFile(generatedManifest);
+        return cache(bundleLocation, stamp, loadManifestFile(generatedManifest), null);
     }
 
     private OsgiManifest loadManifestFromDirectory(File directory) throws IOException {
         File manifestFile = new File(directory, JarFile.MANIFEST_NAME);
-        if (!manifestFile.isFile()) {
-            manifestFile = convertPluginManifest(directory);
+        if (manifestFile.isFile()) {
+            ManifestCache.Stamp stamp = new ManifestCache.Stamp(manifestFile);
+            return cache(directory, stamp, loadManifestFile(manifestFile), null);
         }
-        return loadManifestFile(manifestFile);
+        // the manifest is generated from plugin.xml or fragment.xml until a MANIFEST.MF is added
+        ManifestCache.Stamp stamp = new ManifestCache.Stamp(manifestFile, new File(directory, "plugin.xml"),
+                new File(directory, "fragment.xml"));
+        return cache(directory, stamp, loadManifestFile(convertPluginManifest(directory)), null);
     }
 
     private OsgiManifest loadManifestFile(File manifestFile) throws IOException, OsgiManifestParserException {
@@ -144,6 +165,34 @@ public class DefaultBundleReader extends AbstractLogEnabled implements BundleRea
         this.cacheDir = new File(basedir, CACHE_PATH);
     }
 
+    /**
+     * Replaces the manifest cache by one with the given settings. Must be called before the first
+     * manifest is loaded, and after {@link #setLocationRepository(File)} if the persistent cache is
+     * enabled.
+     */
+    public void configureManifestCache(int maxSize, boolean persistent) {
+        ManifestCache newCache = new ManifestCache(maxSize);
+        if (persistent) {
+            newCache.loadIndex(new File(cacheDir, MANIFEST_INDEX_NAME));
+        }
+        this.manifestCache = newCache;
+    }
+
+    /**
+     * Writes the persistent manifest cache, if enabled. Failures are only logged because the cache
+     * is an optimization.
+     */
+    public void saveManifestCache() {
+        if (cacheDir == null) {
+            return;
+        }
+        try {
+            manifestCache.saveIndex(new File(cacheDir, MANIFEST_INDEX_NAME));
+        } catch (IOException e) {
+            getLogger().warn("Could not write manifest cache: " + e.getMessage());
+        }
+    }
+
     public File getEntry(File bundleLocation, String path) {
         final File result;
         if (bundleLocation.isDirectory()) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,6 +16,8 @@ import java.util.ArrayList;
 import java.util.Dictionary;
 import java.util.Hashtable;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -36,6 +38,7 @@ import org.eclipse.tycho.artifacts.DependencyArtifacts;
 import org.eclipse.tycho.core.TargetEnvironment;
 import org.eclipse.tycho.core.TargetPlatformConfiguration;
 import org.eclipse.tycho.core.TychoConstants;
+import org.eclipse.tycho.core.facade.LRUCache;
 import org.eclipse.tycho.core.utils.ExecutionEnvironmentUtils;
 import org.eclipse.tycho.core.utils.PlatformPropertiesUtils;
 import org.eclipse.tycho.core.utils.TychoProjectUtils;
@@ -47,6 +50,13 @@ public class EquinoxResolver {
 
     private static StateObjectFactory factory = StateObjectFactory.defaultFactory;
 
+    /**
+     * Unresolved states with the system bundle and the target platform bundles, which are shared by
+     * all projects with the same target platform bundles, target environment and execution
+     * environment. Never modified once cached; projects work on copies.
+     */
+    private final Map<BaseStateKey, BaseState> baseStates = new LRUCache<BaseStateKey, BaseState>(10);
+
     @Requirement
     private BundleReader manifestReader;
 
@@ -128,7 +138,44 @@ public class EquinoxResolver {
     }
 
     protected State newState(DependencyArtifacts artifacts, Properties properties) throws BundleException {
+        // make sure reactor projects override anything from target platform
+        // that has the same bundle symbolic name
+        List<File> targetPlatformBundles = new ArrayList<File>();
+        List<File> projects = new ArrayList<File>();
+        for (ArtifactDescriptor artifact : artifacts.getArtifacts(ArtifactKey.TYPE_ECLIPSE_PLUGIN)) {
+            if (artifact.getMavenProject() != null) {
+                projects.add(artifact.getLocation());
+            } else {
+                targetPlatformBundles.add(artifact.getLocation());
+            }
+        }
+
+        BaseState baseState = getBaseState(targetPlatformBundles, properties);
+
+        // copying the descriptions is much cheaper than creating them from the manifests again
         State state = factory.createState(true);
+        state.setPlatformProperties(properties);
+        for (BundleDescription bundle : baseState.state.getBundles()) {
+            state.addBundle(factory.createBundleDescription(bundle));
+        }
+
+        long id = baseState.nextId;
+        for (File project : projects) {
+            addBundle(state, id++, project, true);
+        }
+        return state;
+    }
+
+    private BaseState getBaseState(List<File> targetPlatformBundles, Properties properties) throws BundleException {
+        BaseStateKey key = new BaseStateKey(targetPlatformBundles, properties);
+        synchronized (baseStates) {
+            BaseState cached = baseStates.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        State state = factory.createState(false);
 
         state.setPlatformProperties(properties);
 
@@ -136,21 +183,16 @@ public class EquinoxResolver {
         state.addBundle(factory.createBundleDescription(state, getSystemBundleManifest(properties), "", 0));
 
         long id = 1;
-
-        // make sure reactor projects override anything from target platform
-        // that has the same bundle symbolic name
-        ArrayList<ArtifactDescriptor> projects = new ArrayList<ArtifactDescriptor>();
-        for (ArtifactDescriptor artifact : artifacts.getArtifacts(ArtifactKey.TYPE_ECLIPSE_PLUGIN)) {
-            if (artifact.getMavenProject() != null) {
-                projects.add(artifact);
-            } else {
-                addBundle(state, id++, artifact.getLocation(), false);
-            }
+        for (File bundle : targetPlatformBundles) {
+            addBundle(state, id++, bundle, false);
         }
-        for (ArtifactDescriptor artifact : projects) {
-            addBundle(state, id++, artifact.getLocation(), true);
+        BaseState baseState = new BaseState(state, id);
+
+        synchronized (baseStates) {
+            // another thread may have created the same state in the meantime; either one is fine
+            baseStates.put(key, baseState);
         }
-        return state;
+        return baseState;
     }
 
     public void addBundle(State state, long id, File bundleLocation, boolean override) throws BundleException {
@@ -249,4 +291,56 @@ public class EquinoxResolver {
         }
     }
 
+    private static class BaseState {
+        final State state;
+        final long nextId;
+
+        BaseState(State state, long nextId) {
+            this.state = state;
+            this.nextId = nextId;
+        }
+    }
+
+    private static class BaseStateKey {
+        /**
+         * The platform properties which the base state depends on. Other properties, like the
+         * build's user and system properties, are only set on the project states.
+         */
+        private static final String[] PROPERTY_KEYS = { PlatformPropertiesUtils.OSGI_OS,
+                PlatformPropertiesUtils.OSGI_WS, PlatformPropertiesUtils.OSGI_ARCH,
+                org.osgi.framework.Constants.FRAMEWORK_EXECUTIONENVIRONMENT,
+                org.osgi.framework.Constants.FRAMEWORK_SYSTEMPACKAGES };
+
+        private final List<File> bundles;
+        private final List<String> propertyValues;
+        private final int hashCode;
+
+        BaseStateKey(List<File> bundles, Properties properties) {
+            this.bundles = bundles;
+            this.propertyValues = new ArrayList<String>(PROPERTY_KEYS.length);
+            for (String key : PROPERTY_KEYS) {
+                propertyValues.add(properties.getProperty(key));
+            }
+            this.hashCode = bundles.hashCode() * 31 + propertyValues.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof BaseStateKey)) {
+                return false;
+            }
+            BaseStateKey other = (BaseStateKey) obj;
+            return hashCode == other.hashCode && bundles.equals(other.bundles)
+                    && propertyValues.equals(other.propertyValues);
+        }
+    }
+
 }
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.core.osgitools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.jar.JarFile;
+
+import org.eclipse.tycho.core.facade.LRUCache;
+
+/**
+ * Cache of parsed bundle manifests. Entries are keyed by the absolute path of the bundle and are
+ * only valid as long as the modification times of the files from which the manifest was read are
+ * unchanged, see {@link Stamp}.
+ *
+ * <p>
+ * Optionally, the raw manifests of jar bundles are also persisted in an index file, so that
+ * subsequent builds don't need to open the jars.
+ * </p>
+ */
+class ManifestCache {
+
+    private static final int INDEX_MAGIC = 0x544d4349;
+
+    private static final int INDEX_FORMAT_VERSION = 2;
+
+    private final Map<String, CachedManifest> manifests;
+
+    /** raw manifests for the persistent index, or <code>null</code> if there is no index */
+    private Map<String, PersistentManifest> persistentManifests;
+
+    private boolean persistentManifestsChanged;
+
+    ManifestCache(int maxSize) {
+        this.manifests = new LRUCache<String, CachedManifest>(maxSize);
+    }
+
+    /**
+     * Returns the cached manifest of the given bundle, or <code>null</code> if there is no
+     * up-to-date manifest in the cache.
+     */
+    synchronized OsgiManifest get(File bundleLocation) {
+        String path = bundleLocation.getAbsolutePath();
+
+        CachedManifest cached = manifests.get(path);
+        if (cached != null && cached.stamp.isCurrent()) {
+            return cached.manifest;
+        }
+
+        if (persistentManifests != null) {
+            PersistentManifest persistent = persistentManifests.get(path);
+            if (persistent != null) {
+                Stamp stamp = new Stamp(bundleLocation);
+                if (stamp.lastModified[0] == persistent.lastModified) {
+                    OsgiManifest manifest = OsgiManifest.parse(new ByteArrayInputStream(persistent.content), path
+                            + "!/" + JarFile.MANIFEST_NAME);
+                    manifests.put(path, new CachedManifest(stamp, manifest));
+                    return manifest;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a manifest to the cache.
+     *
+     * @param stamp
+     *            the stamp of the files from which the manifest was read, taken before reading
+     *            them
+     * @param rawJarManifest
+     *            the content of the manifest if it was read from a jar file; <code>null</code>
+     *            otherwise. In this case, the stamp must only consist of the jar file.
+     */
+    synchronized void put(File bundleLocation, Stamp stamp, OsgiManifest manifest, byte[] rawJarManifest) {
+        String path = bundleLocation.getAbsolutePath();
+        manifests.put(path, new CachedManifest(stamp, manifest));
+
+        if (persistentManifests != null && rawJarManifest != null) {
+            persistentManifests.put(path, new PersistentManifest(stamp.lastModified[0], rawJarManifest));
+            persistentManifestsChanged = true;
+        }
+    }
+
+    /**
+     * Enables the persistent index and loads its content from the given file, if it exists. A
+     * corrupt index file is ignored.
+     */
+    synchronized void loadIndex(File indexFile) {
+        persistentManifests = new HashMap<String, PersistentManifest>();
+        persistentManifestsChanged = false;
+        if (!indexFile.isFile()) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_FORMAT_VERSION) {
+                    return;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String path = in.readUTF();
+                    long lastModified = in.readLong();
+                    byte[] content = new byte[in.readInt()];
+                    in.readFully(content);
+                    persistentManifests.put(path, new PersistentManifest(lastModified, content));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            persistentManifests.clear();
+        }
+    }
+
+    /**
+     * Writes the persistent index, if it has changed. Entries of bundles which no longer exist are
+     * dropped.
+     */
+    synchronized void saveIndex(File indexFile) throws IOException {
+        if (persistentManifests == null || !persistentManifestsChanged) {
+            return;
+        }
+        for (Iterator<String> it = persistentManifests.keySet().iterator(); it.hasNext();) {
+            if (!new File(it.next()).isFile()) {
+                it.remove();
+            }
+        }
+
+        indexFile.getParentFile().mkdirs();
+        File tempFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getParentFile());
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(INDEX_FORMAT_VERSION);
+                out.writeInt(persistentManifests.size());
+                for (Map.Entry<String, PersistentManifest> entry : persistentManifests.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().lastModified);
+                    out.writeInt(entry.getValue().content.length);
+                    out.write(entry.getValue().content);
+                }
+            } finally {
+                out.close();
+            }
+            // concurrent builds may overwrite each other's index, which is fine for a cache
+            if (!tempFile.renameTo(indexFile)) {
+                indexFile.delete();
+                tempFile.renameTo(indexFile);
+            }
+        } finally {
+            tempFile.delete();
+        }
+        persistentManifestsChanged = false;
+    }
+
+    /**
+     * Modification times of the files from which a manifest was read. Each check only needs one
+     * file system access per file. A file which does not exist has the modification time 0, so
+     * creating it also invalidates the stamp.
+     */
+    static class Stamp {
+        final File[] files;
+        final long[] lastModified;
+
+        Stamp(File... files) {
+            this.files = files;
+            this.lastModified = new long[files.length];
+            for (int i = 0; i < files.length; i++) {
+                lastModified[i] = files[i].lastModified();
+            }
+        }
+
+        boolean isCurrent() {
+            for (int i = 0; i < files.length; i++) {
+                if (files[i].lastModified() != lastModified[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class CachedManifest {
+        final Stamp stamp;
+        final OsgiManifest manifest;
+
+        CachedManifest(Stamp stamp, OsgiManifest manifest) {
+            this.stamp = stamp;
+            this.manifest = manifest;
+        }
+    }
+
+    private static class PersistentManifest {
+        final long lastModified;
+        final byte[] content;
+
+        PersistentManifest(long lastModified, byte[] content) {
+            this.lastModified = lastModified;
+            this.content = content;
+        }
+    }
+}
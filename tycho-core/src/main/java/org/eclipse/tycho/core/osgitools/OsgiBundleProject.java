@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -21,6 +21,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -77,6 +78,13 @@ public class OsgiBundleProject extends AbstractTychoProject implements BundlePro
     @Requirement
     private DependencyComputer dependencyComputer;
 
+    /**
+     * The PDE models of the reactor projects, by base directory. The model of a project is also
+     * needed for the resolution of other projects, which may run concurrently, so it is looked up
+     * here instead of in the (not thread-safe) context of the other project.
+     */
+    private final Map<File, EclipsePluginProjectImpl> eclipsePluginProjects = new ConcurrentHashMap<File, EclipsePluginProjectImpl>();
+
     public ArtifactDependencyWalker getDependencyWalker(MavenProject project, TargetEnvironment environment) {
         return getDependencyWalker(project);
     }
@@ -134,6 +142,12 @@ public class OsgiBundleProject extends AbstractTychoProject implements BundlePro
         }
 
         project.setContextValue(CTX_ARTIFACT_KEY, key);
+
+        // create the PDE model before the (possibly parallel) dependency resolution starts
+        ReactorProject reactorProject = DefaultReactorProject.adapt(project);
+        EclipsePluginProjectImpl pdeProject = newEclipsePluginProject(reactorProject);
+        project.setContextValue(TychoConstants.CTX_ECLIPSE_PLUGIN_PROJECT, pdeProject);
+        eclipsePluginProjects.put(project.getBasedir(), pdeProject);
     }
 
     public ArtifactKey readArtifactKey(File location) {
@@ -234,19 +248,29 @@ public class OsgiBundleProject extends AbstractTychoProject implements BundlePro
     }
 
     public EclipsePluginProjectImpl getEclipsePluginProject(ReactorProject otherProject) {
-        EclipsePluginProjectImpl pdeProject = (EclipsePluginProjectImpl) otherProject
-                .getContextValue(TychoConstants.CTX_ECLIPSE_PLUGIN_PROJECT);
+        EclipsePluginProjectImpl pdeProject = eclipsePluginProjects.get(otherProject.getBasedir());
         if (pdeProject == null) {
-            try {
-                pdeProject = new EclipsePluginProjectImpl(otherProject, buildPropertiesParser);
-                otherProject.setContextValue(TychoConstants.CTX_ECLIPSE_PLUGIN_PROJECT, pdeProject);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+            // project has not been set up by this instance
+            synchronized (this) {
+                pdeProject = (EclipsePluginProjectImpl) otherProject
+                        .getContextValue(TychoConstants.CTX_ECLIPSE_PLUGIN_PROJECT);
+                if (pdeProject == null) {
+                    pdeProject = newEclipsePluginProject(otherProject);
+                    otherProject.setContextValue(TychoConstants.CTX_ECLIPSE_PLUGIN_PROJECT, pdeProject);
+                }
             }
         }
         return pdeProject;
     }
 
+    private EclipsePluginProjectImpl newEclipsePluginProject(ReactorProject project) {
+        try {
+            return new EclipsePluginProjectImpl(project, buildPropertiesParser);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public List<ClasspathEntry> getClasspath(MavenProject project) {
         @SuppressWarnings("unchecked")
         List<ClasspathEntry> classpath = (List<ClasspathEntry>) project
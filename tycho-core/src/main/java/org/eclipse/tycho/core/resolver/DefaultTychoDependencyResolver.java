@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -79,15 +79,30 @@ public class DefaultTychoDependencyResolver implements TychoDependencyResolver {
     }
 
     public void resolveProject(MavenSession session, MavenProject project, List<ReactorProject> reactorProjects) {
+        ResolvedProject resolvedProject = computeDependencies(session, project, reactorProjects);
+        if (resolvedProject != null) {
+            applyDependencies(session, project, resolvedProject);
+        }
+    }
+
+    /**
+     * Computes the target platform and the dependency artifacts of the project. This only reads the
+     * metadata that has been set up for the reactor projects, so it may be called for different
+     * projects concurrently.
+     * 
+     * @return the result to be passed to
+     *         {@link #applyDependencies(MavenSession, MavenProject, ResolvedProject)}, or
+     *         <code>null</code> if the project is not a Tycho project
+     */
+    public ResolvedProject computeDependencies(MavenSession session, MavenProject project,
+            List<ReactorProject> reactorProjects) {
         AbstractTychoProject dr = (AbstractTychoProject) projectTypes.get(project.getPackaging());
         if (dr == null) {
-            return;
+            return null;
         }
 
         TargetPlatformResolver resolver = targetPlatformResolverLocator.lookupPlatformResolver(project);
 
-        // TODO attach target platform to project for use in mojos (e.g. to fix bug 359902)
-        // TODO 364134 cache target platform (e.g. by checking if there is already an attached target platform)
         logger.info("Computing target platform for " + project);
         TargetPlatform targetPlatform = resolver.computeTargetPlatform(session, project, reactorProjects);
 
@@ -104,6 +119,22 @@ public class DefaultTychoDependencyResolver implements TychoDependencyResolver {
             logger.debug(sb.toString());
         }
 
+        return new ResolvedProject(targetPlatform, dependencyArtifacts);
+    }
+
+    /**
+     * Stores the result of
+     * {@link #computeDependencies(MavenSession, MavenProject, List)} in the project and resolves
+     * the class path of the project. This modifies the context of the project, so it must not be
+     * called while dependencies of other projects are computed.
+     */
+    public void applyDependencies(MavenSession session, MavenProject project, ResolvedProject resolvedProject) {
+        AbstractTychoProject dr = (AbstractTychoProject) projectTypes.get(project.getPackaging());
+        TargetPlatformResolver resolver = targetPlatformResolverLocator.lookupPlatformResolver(project);
+
+        project.setContextValue(TychoConstants.CTX_TARGET_PLATFORM, resolvedProject.targetPlatform);
+
+        DependencyArtifacts dependencyArtifacts = resolvedProject.dependencyArtifacts;
         dr.setDependencyArtifacts(session, project, dependencyArtifacts);
 
         logger.info("Resolving class path of " + project);
@@ -138,4 +169,17 @@ public class DefaultTychoDependencyResolver implements TychoDependencyResolver {
         }
     }
 
+    /**
+     * The target platform and dependency artifacts computed for a project.
+     */
+    public static class ResolvedProject {
+        final TargetPlatform targetPlatform;
+
+        final DependencyArtifacts dependencyArtifacts;
+
+        ResolvedProject(TargetPlatform targetPlatform, DependencyArtifacts dependencyArtifacts) {
+            this.targetPlatform = targetPlatform;
+            this.dependencyArtifacts = dependencyArtifacts;
+        }
+    }
 }
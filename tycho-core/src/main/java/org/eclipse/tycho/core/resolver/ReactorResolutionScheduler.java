@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.core.resolver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.tycho.ReactorProject;
+import org.eclipse.tycho.core.resolver.DefaultTychoDependencyResolver.ResolvedProject;
+import org.eclipse.tycho.core.utils.WorkerPool;
+import org.eclipse.tycho.resolver.TychoDependencyResolver;
+
+/**
+ * Resolves the dependencies of all reactor projects on a bounded pool of worker threads.
+ *
+ * <p>
+ * Projects are grouped by their {@link TargetPlatformConfigurationFingerprint}. The first project
+ * of each group is resolved before the other projects of that group so that state which is shared
+ * between projects with the same configuration (e.g. loaded p2 repositories) is computed only once.
+ * The resolution of a project only depends on the metadata set up for the reactor projects in
+ * {@link TychoDependencyResolver#setupProject(MavenSession, MavenProject, ReactorProject)}, so the
+ * order of resolution does not affect the result.
+ * </p>
+ * <p>
+ * The worker threads read the context of all reactor projects, which is not thread-safe. Therefore
+ * they only compute the dependencies of the projects. The results are stored in the projects by the
+ * calling thread in reactor order after all worker threads have completed, so that no project
+ * context is modified while it may be read by another thread.
+ * </p>
+ */
+public class ReactorResolutionScheduler {
+
+    /**
+     * User property to enable the parallel dependency resolution. The degree of parallelism is
+     * taken from Maven's <tt>-T</tt> option, or defaults to the number of available processors.
+     */
+    public static final String PARALLEL_RESOLUTION_PROPERTY = "tycho.resolver.parallel";
+
+    private final DefaultTychoDependencyResolver resolver;
+
+    private final Logger logger;
+
+    private final int threadCount;
+
+    public ReactorResolutionScheduler(DefaultTychoDependencyResolver resolver, Logger logger, int threadCount) {
+        this.resolver = resolver;
+        this.logger = logger;
+        this.threadCount = threadCount;
+    }
+
+    public static boolean isParallelResolutionEnabled(MavenSession session) {
+        return Boolean.parseBoolean(session.getUserProperties().getProperty(PARALLEL_RESOLUTION_PROPERTY));
+    }
+
+    /**
+     * Returns the number of threads to use, derived from Maven's <tt>-T</tt> option (e.g.
+     * <tt>-T 4</tt> or <tt>-T 1.5C</tt>).
+     */
+    public static int getThreadCount(MavenSession session) {
+        MavenExecutionRequest request = session.getRequest();
+        int cores = Runtime.getRuntime().availableProcessors();
+        String threadConfiguration = request.getThreadCount();
+        if (threadConfiguration == null || threadConfiguration.trim().length() == 0) {
+            return cores;
+        }
+        threadConfiguration = threadConfiguration.trim();
+        boolean perCore = request.isPerCoreThreadCount();
+        if (threadConfiguration.endsWith("C")) {
+            perCore = true;
+            threadConfiguration = threadConfiguration.substring(0, threadConfiguration.length() - 1);
+        }
+        try {
+            float threads = Float.parseFloat(threadConfiguration);
+            int result = (int) (perCore ? threads * cores : threads);
+            return Math.max(1, result);
+        } catch (NumberFormatException e) {
+            return cores;
+        }
+    }
+
+    public void resolveProjects(final MavenSession session, List<MavenProject> projects,
+            final List<ReactorProject> reactorProjects) {
+        if (threadCount <= 1 || projects.size() <= 1) {
+            for (MavenProject project : projects) {
+                resolver.resolveProject(session, project, reactorProjects);
+            }
+            return;
+        }
+
+        List<MavenProject> firstOfGroup = new ArrayList<MavenProject>();
+        List<MavenProject> others = new ArrayList<MavenProject>();
+        groupProjects(projects, firstOfGroup, others);
+
+        logger.info("Resolving dependencies of " + projects.size() + " projects using " + threadCount + " threads ("
+                + firstOfGroup.size() + " distinct target platform configurations)");
+
+        Map<MavenProject, ResolvedProject> resolvedProjects = new HashMap<MavenProject, ResolvedProject>();
+        computeConcurrently(session, firstOfGroup, reactorProjects, resolvedProjects);
+        computeConcurrently(session, others, reactorProjects, resolvedProjects);
+
+        for (MavenProject project : projects) {
+            ResolvedProject resolvedProject = resolvedProjects.get(project);
+            if (resolvedProject != null) {
+                resolver.applyDependencies(session, project, resolvedProject);
+            }
+        }
+    }
+
+    private void groupProjects(List<MavenProject> projects, List<MavenProject> firstOfGroup,
+            List<MavenProject> others) {
+        Map<TargetPlatformConfigurationFingerprint, MavenProject> groups = new LinkedHashMap<TargetPlatformConfigurationFingerprint, MavenProject>();
+        for (MavenProject project : projects) {
+            TargetPlatformConfigurationFingerprint fingerprint = getFingerprint(project);
+            if (fingerprint == null || groups.containsKey(fingerprint)) {
+                others.add(project);
+            } else {
+                groups.put(fingerprint, project);
+                firstOfGroup.add(project);
+            }
+        }
+    }
+
+    private TargetPlatformConfigurationFingerprint getFingerprint(MavenProject project) {
+        try {
+            return TargetPlatformConfigurationFingerprint.compute(project, null);
+        } catch (IllegalStateException e) {
+            // not a Tycho project
+            return null;
+        }
+    }
+
+    private void computeConcurrently(final MavenSession session, List<MavenProject> projects,
+            final List<ReactorProject> reactorProjects, Map<MavenProject, ResolvedProject> resolvedProjects) {
+        List<Callable<ResolvedProject>> tasks = new ArrayList<Callable<ResolvedProject>>(projects.size());
+        for (final MavenProject project : projects) {
+            tasks.add(new Callable<ResolvedProject>() {
+                public ResolvedProject call() {
+                    return resolver.computeDependencies(session, project, reactorProjects);
+                }
+            });
+        }
+
+        // the failure of the first project in reactor order is reported
+        List<ResolvedProject> results = WorkerPool.invokeAllUnchecked(tasks, threadCount, "tycho-resolver");
+        for (int i = 0; i < projects.size(); i++) {
+            resolvedProjects.put(projects.get(i), results.get(i));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.core.resolver;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.tycho.artifacts.TargetPlatformFilter;
+import org.eclipse.tycho.core.TargetEnvironment;
+import org.eclipse.tycho.core.TargetPlatformConfiguration;
+import org.eclipse.tycho.core.utils.DigestUtils;
+import org.eclipse.tycho.core.utils.TychoProjectUtils;
+
+/**
+ * Value object identifying the inputs of a project's target platform computation. Two projects
+ * with equal fingerprints have the same repositories, target file content, environments,
+ * execution environment, filters and POM dependency handling, and hence the same target platform
+ * (apart from the reactor projects, which are identical for all projects of a build).
+ */
+public final class TargetPlatformConfigurationFingerprint {
+
+    private final String key;
+
+    private TargetPlatformConfigurationFingerprint(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Computes the fingerprint of the target platform configuration of the given project.
+     *
+     * @param project
+     *            a Tycho project which has already been set up
+     * @param executionEnvironment
+     *            the name of the effective execution environment profile of the project, or
+     *            <code>null</code> if it is not known (yet)
+     */
+    public static TargetPlatformConfigurationFingerprint compute(MavenProject project, String executionEnvironment) {
+        TargetPlatformConfiguration configuration = TychoProjectUtils.getTargetPlatformConfiguration(project);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("resolver=").append(configuration.getTargetPlatformResolver()).append('\n');
+        sb.append("ee=").append(executionEnvironment).append('\n');
+        sb.append("configuredEE=").append(configuration.getExecutionEnvironment()).append('\n');
+        sb.append("disableP2Mirrors=").append(configuration.isDisableP2Mirrors()).append('\n');
+
+        for (TargetEnvironment environment : configuration.getEnvironments()) {
+            sb.append("environment=").append(environment.toString()).append('\n');
+        }
+
+        for (ArtifactRepository repository : project.getRemoteArtifactRepositories()) {
+            sb.append("repository=").append(repository.getId()).append('|').append(repository.getUrl());
+            if (repository.getLayout() != null) {
+                sb.append('|').append(repository.getLayout().getId());
+            }
+            sb.append('\n');
+        }
+
+        File target = configuration.getTarget();
+        if (target != null) {
+            sb.append("target=").append(target.getAbsolutePath()).append('|').append(digest(target)).append('\n');
+        }
+
+        String pomDependencies = configuration.getPomDependencies();
+        sb.append("pomDependencies=").append(pomDependencies).append('\n');
+        if (TargetPlatformConfiguration.POM_DEPENDENCIES_CONSIDER.equals(pomDependencies)) {
+            for (Dependency dependency : project.getDependencies()) {
+                sb.append("dependency=").append(dependency.getManagementKey()).append(':')
+                        .append(dependency.getVersion()).append(':').append(dependency.getScope()).append('\n');
+            }
+            if (project.getDependencyManagement() != null) {
+                for (Dependency dependency : project.getDependencyManagement().getDependencies()) {
+                    sb.append("managedDependency=").append(dependency.getManagementKey()).append(':')
+                            .append(dependency.getVersion()).append('\n');
+                }
+            }
+        }
+
+        for (TargetPlatformFilter filter : configuration.getFilters()) {
+            sb.append("filter=").append(filter.toString()).append('\n');
+        }
+
+        return new TargetPlatformConfigurationFingerprint(sb.toString());
+    }
+
+    private static String digest(File file) {
+        if (!file.isFile()) {
+            return "missing";
+        }
+        try {
+            return DigestUtils.digest(DigestUtils.MD5, file);
+        } catch (IOException e) {
+            // unreadable files are reported later by the target platform computation
+            return "unreadable@" + file.lastModified();
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof TargetPlatformConfigurationFingerprint))
+            return false;
+        return key.equals(((TargetPlatformConfigurationFingerprint) obj).key);
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.core.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes hex encoded message digests, e.g. for the keys of the caches of the build.
+ */
+public class DigestUtils {
+
+    public static final String MD5 = "MD5";
+
+    public static final String SHA1 = "SHA-1";
+
+    private DigestUtils() {
+    }
+
+    /**
+     * Returns a new digest for the given algorithm. {@link #MD5} and {@link #SHA1} are supported
+     * by every Java platform.
+     */
+    public static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Updates the digest with the content of the given file.
+     */
+    public static void update(MessageDigest digest, File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Updates the digest with the UTF-8 encoding of the given string.
+     */
+    public static void update(MessageDigest digest, String value) {
+        try {
+            digest.update(value.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the hex encoded digest of the content of the given file.
+     */
+    public static String digest(String algorithm, File file) throws IOException {
+        MessageDigest digest = newDigest(algorithm);
+        update(digest, file);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns the hex encoded digest of the UTF-8 encoding of the given string.
+     */
+    public static String digest(String algorithm, String value) {
+        MessageDigest digest = newDigest(algorithm);
+        update(digest, value);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns the lower case hex encoding of the given bytes.
+     */
+    public static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+        }
+        return result.toString();
+    }
+}
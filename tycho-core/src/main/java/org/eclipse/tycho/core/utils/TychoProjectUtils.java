@@ -12,6 +12,7 @@ package org.eclipse.tycho.core.utils;
 
 import org.apache.maven.project.MavenProject;
 import org.eclipse.tycho.artifacts.DependencyArtifacts;
+import org.eclipse.tycho.artifacts.TargetPlatform;
 import org.eclipse.tycho.core.TargetPlatformConfiguration;
 import org.eclipse.tycho.core.TychoConstants;
 
@@ -54,4 +55,17 @@ public class TychoProjectUtils {
         }
         return targetPlatformConfiguration;
     }
+
+    /**
+     * Returns the {@link TargetPlatform} instance computed for the given project during the
+     * dependency resolution.
+     * 
+     * @param project
+     *            a Tycho project
+     * @return the target platform of the given project, or <code>null</code> if the project has
+     *         not been resolved by a target platform resolver
+     */
+    public static TargetPlatform getTargetPlatformIfAvailable(MavenProject project) {
+        return (TargetPlatform) project.getContextValue(TychoConstants.CTX_TARGET_PLATFORM);
+    }
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011 SAP AG and others.
+ * Copyright (c) 2011, 2012 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,7 @@
 package org.eclipse.tycho.osgi.configuration;
 
 import java.io.File;
+import java.util.Properties;
 
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.LegacySupport;
@@ -38,6 +39,10 @@ public class MavenContextConfigurator extends EquinoxLifecycleListener {
         MavenContextImpl mavenContext = new MavenContextImpl();
         mavenContext.setLocalRepositoryRoot(new File(session.getLocalRepository().getBasedir()));
         mavenContext.setOffline(session.isOffline());
+        Properties sessionProperties = new Properties();
+        sessionProperties.putAll(session.getSystemProperties());
+        sessionProperties.putAll(session.getUserProperties());
+        mavenContext.setSessionProperties(sessionProperties);
         boolean extendedDebug = session.getUserProperties().getProperty("tycho.debug.resolver") != null;
         mavenContext.setLogger(new MavenLoggerAdapter(logger, extendedDebug));
         framework.registerService(MavenContext.class, mavenContext);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011 SAP AG and others.
+ * Copyright (c) 2011, 2012 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -121,6 +121,44 @@ public class FileLockServiceTest {
         }
     }
 
+    @Test
+    public void testIsLockedKeepsLockOfOtherLocker() throws Exception {
+        File testFile = newTestFile();
+        FileLocker fileLocker1 = subject.getFileLocker(testFile);
+        FileLocker fileLocker2 = subject.getFileLocker(testFile);
+        fileLocker1.lock();
+        try {
+            assertTrue(fileLocker2.isLocked());
+            // the lock must still be effective for other processes
+            assertTrue(new LockProcess(testFile, 0L).isLockedForForkedProcess());
+        } finally {
+            fileLocker1.release();
+        }
+    }
+
+    @Test
+    public void testWaitForLockOfOtherThread() throws Exception {
+        final File testFile = newTestFile();
+        FileLocker fileLocker1 = subject.getFileLocker(testFile);
+        final FileLocker fileLocker2 = subject.getFileLocker(testFile);
+        final long[] acquiredAt = new long[1];
+        fileLocker1.lock();
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                fileLocker2.lock(20000L);
+                acquiredAt[0] = System.currentTimeMillis();
+                fileLocker2.release();
+            }
+        };
+        waiter.start();
+        Thread.sleep(200L);
+        long releasedAt = System.currentTimeMillis();
+        fileLocker1.release();
+        waiter.join();
+        assertTrue(acquiredAt[0] >= releasedAt);
+    }
+
     @Test
     public void testLockedByOtherProcess() throws Exception {
         File testFile = newTestFile();
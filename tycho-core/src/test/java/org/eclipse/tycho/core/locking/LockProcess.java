@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011 SAP AG and others.
+ * Copyright (c) 2011, 2012 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -29,6 +29,7 @@ import java.util.Arrays;
 public class LockProcess {
 
     private static final String LOCK_ACQUIRED_MSG = "##lock acquired##";
+    private static final String LOCK_NOT_ACQUIRED_MSG = "##lock not acquired##";
     private File lockMarkerFile;
     private long waitTime;
     private Process process;
@@ -43,6 +44,13 @@ public class LockProcess {
         File file = new File(args[0]);
         long wait = Long.valueOf(args[1]);
         RandomAccessFile raFile = new RandomAccessFile(file, "rw");
+        if (wait < 0) {
+            // only try to lock
+            FileLock lock = raFile.getChannel().tryLock(0, 1, false);
+            System.out.println(lock != null ? LOCK_ACQUIRED_MSG : LOCK_NOT_ACQUIRED_MSG);
+            raFile.close();
+            return;
+        }
         FileLock lock = raFile.getChannel().lock(0, 1, false);
         System.out.println(LOCK_ACQUIRED_MSG);
         Thread.sleep(wait);
@@ -51,20 +59,44 @@ public class LockProcess {
     }
 
     public void lockFileInForkedProcess() {
+        BufferedReader reader = startProcess(waitTime);
+        try {
+            // wait until file lock is acquired
+            while (!LOCK_ACQUIRED_MSG.equals(reader.readLine())) {
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if a spawned JVM process can't lock the file, i.e. if the lock is
+     * held by another process.
+     */
+    public boolean isLockedForForkedProcess() throws IOException, InterruptedException {
+        BufferedReader reader = startProcess(-1);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (LOCK_ACQUIRED_MSG.equals(line) || LOCK_NOT_ACQUIRED_MSG.equals(line)) {
+                cleanup();
+                return LOCK_NOT_ACQUIRED_MSG.equals(line);
+            }
+        }
+        throw new IllegalStateException("process terminated unexpectedly");
+    }
+
+    private BufferedReader startProcess(long wait) {
         copyClassFile();
         try {
             File javaExecutable = new File(System.getProperty("java.home"), "bin/java"
                     + (File.separatorChar == '\\' ? ".exe" : ""));
             String[] commandLine = new String[] { javaExecutable.getAbsolutePath(), "-cp",
                     tmpClassDir.getAbsolutePath(), LockProcess.class.getName(), lockMarkerFile.getAbsolutePath(),
-                    String.valueOf(waitTime) };
+                    String.valueOf(wait) };
             ProcessBuilder processBuilder = new ProcessBuilder(Arrays.asList(commandLine));
             processBuilder.redirectErrorStream(true);
             process = processBuilder.start();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            // wait until file lock is acquired
-            while (!LOCK_ACQUIRED_MSG.equals(reader.readLine())) {
-            }
+            return new BufferedReader(new InputStreamReader(process.getInputStream()));
         } catch (UnsupportedEncodingException e) {
             throw new RuntimeException(e);
         } catch (IOException e) {
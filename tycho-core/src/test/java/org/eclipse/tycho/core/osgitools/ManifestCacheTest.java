@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.core.osgitools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ManifestCacheTest {
+
+    private static final String MANIFEST = "Manifest-Version: 1.0\n" + "Bundle-ManifestVersion: 2\n"
+            + "Bundle-SymbolicName: test.bundle\n" + "Bundle-Version: 1.0.0\n";
+
+    private File tempDir;
+    private File bundle;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDir = File.createTempFile("manifestCache", "");
+        tempDir.delete();
+        tempDir.mkdirs();
+        bundle = new File(tempDir, "test.bundle.jar");
+        writeFile(bundle, "content");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Test
+    public void testCachedManifestIsReturned() {
+        ManifestCache subject = new ManifestCache(10);
+        OsgiManifest manifest = parse();
+        subject.put(bundle, new ManifestCache.Stamp(bundle), manifest, null);
+
+        assertSame(manifest, subject.get(bundle));
+    }
+
+    @Test
+    public void testModifiedBundleIsNotServedFromCache() throws IOException {
+        ManifestCache subject = new ManifestCache(10);
+        subject.put(bundle, new ManifestCache.Stamp(bundle), parse(), null);
+
+        writeFile(bundle, "changed content");
+        bundle.setLastModified(bundle.lastModified() + 2000);
+
+        assertNull(subject.get(bundle));
+    }
+
+    @Test
+    public void testCreatedFileInvalidatesStamp() throws IOException {
+        File directoryBundle = new File(tempDir, "directory.bundle");
+        File manifestFile = new File(directoryBundle, "META-INF/MANIFEST.MF");
+        File pluginXml = new File(directoryBundle, "plugin.xml");
+        writeFile(pluginXml, "<plugin/>");
+        ManifestCache subject = new ManifestCache(10);
+        subject.put(directoryBundle, new ManifestCache.Stamp(manifestFile, pluginXml), parse(), null);
+        assertNotNull(subject.get(directoryBundle));
+
+        writeFile(manifestFile, MANIFEST);
+
+        assertNull(subject.get(directoryBundle));
+    }
+
+    @Test
+    public void testPersistentIndex() throws IOException {
+        File indexFile = new File(tempDir, "cache/manifests.index");
+        ManifestCache subject = new ManifestCache(10);
+        subject.loadIndex(indexFile);
+        subject.put(bundle, new ManifestCache.Stamp(bundle), parse(), MANIFEST.getBytes("UTF-8"));
+        subject.saveIndex(indexFile);
+
+        ManifestCache nextBuildCache = new ManifestCache(10);
+        nextBuildCache.loadIndex(indexFile);
+        OsgiManifest manifest = nextBuildCache.get(bundle);
+
+        assertNotNull(manifest);
+        assertEquals("test.bundle", manifest.getBundleSymbolicName());
+    }
+
+    @Test
+    public void testCorruptIndexIsIgnored() throws IOException {
+        File indexFile = new File(tempDir, "manifests.index");
+        writeFile(indexFile, "garbage");
+        ManifestCache subject = new ManifestCache(10);
+        subject.loadIndex(indexFile);
+
+        assertNull(subject.get(bundle));
+    }
+
+    private OsgiManifest parse() {
+        return OsgiManifest.parse(new ByteArrayInputStream(MANIFEST.getBytes()), "testLocation");
+    }
+
+    private static void writeFile(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
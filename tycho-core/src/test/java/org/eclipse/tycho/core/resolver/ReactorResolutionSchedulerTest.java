@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.core.resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.eclipse.tycho.ReactorProject;
+import org.eclipse.tycho.core.TargetPlatformConfiguration;
+import org.eclipse.tycho.core.TychoConstants;
+import org.eclipse.tycho.core.osgitools.DefaultReactorProject;
+import org.eclipse.tycho.core.utils.TychoProjectUtils;
+import org.eclipse.tycho.resolver.DependencyVisitor;
+import org.eclipse.tycho.resolver.TychoDependencyResolver;
+import org.junit.Test;
+
+public class ReactorResolutionSchedulerTest {
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    @Test
+    public void testParallelResolutionDisabledByDefault() {
+        assertFalse(ReactorResolutionScheduler.isParallelResolutionEnabled(newSession(null, false)));
+    }
+
+    @Test
+    public void testParallelResolutionEnabled() {
+        MavenSession session = newSession(null, false);
+        session.getUserProperties().setProperty(ReactorResolutionScheduler.PARALLEL_RESOLUTION_PROPERTY, "true");
+        assertTrue(ReactorResolutionScheduler.isParallelResolutionEnabled(session));
+    }
+
+    @Test
+    public void testDefaultThreadCount() {
+        assertEquals(CORES, ReactorResolutionScheduler.getThreadCount(newSession(null, false)));
+    }
+
+    @Test
+    public void testFixedThreadCount() {
+        assertEquals(3, ReactorResolutionScheduler.getThreadCount(newSession("3", false)));
+    }
+
+    @Test
+    public void testPerCoreThreadCount() {
+        assertEquals(2 * CORES, ReactorResolutionScheduler.getThreadCount(newSession("2C", false)));
+        assertEquals(2 * CORES, ReactorResolutionScheduler.getThreadCount(newSession("2", true)));
+    }
+
+    @Test
+    public void testParallelResolutionResultEqualsSerialResolutionResult() {
+        Map<String, List<String>> serialResult = resolveReactor(1);
+        Map<String, List<String>> parallelResult = resolveReactor(4);
+
+        assertEquals(12, serialResult.size());
+        assertEquals(serialResult, parallelResult);
+        // results are stored in the projects in reactor order
+        assertEquals(new ArrayList<String>(serialResult.keySet()), new ArrayList<String>(parallelResult.keySet()));
+    }
+
+    private static Map<String, List<String>> resolveReactor(int threadCount) {
+        List<MavenProject> projects = new ArrayList<MavenProject>();
+        List<ReactorProject> reactorProjects = new ArrayList<ReactorProject>();
+        for (int i = 0; i < 12; i++) {
+            // two distinct target platform configurations
+            MavenProject project = newProject("project" + i, i % 2 == 0 ? "p2" : "local");
+            projects.add(project);
+            reactorProjects.add(DefaultReactorProject.adapt(project));
+        }
+
+        RecordingResolver resolver = new RecordingResolver();
+        for (MavenProject project : projects) {
+            resolver.setupProject(null, project, DefaultReactorProject.adapt(project));
+        }
+        new ReactorResolutionScheduler(resolver, new ConsoleLogger(Logger.LEVEL_DISABLED, "test"), threadCount)
+                .resolveProjects(newSession(null, false), projects, reactorProjects);
+        return resolver.results;
+    }
+
+    private static MavenProject newProject(String artifactId, String targetPlatformResolver) {
+        MavenProject project = new MavenProject();
+        project.setGroupId("test");
+        project.setArtifactId(artifactId);
+        project.setVersion("1.0.0");
+        project.setRemoteArtifactRepositories(new ArrayList<ArtifactRepository>());
+
+        TargetPlatformConfiguration configuration = new TargetPlatformConfiguration();
+        configuration.setResolver(targetPlatformResolver);
+        project.setContextValue(TychoConstants.CTX_TARGET_PLATFORM_CONFIGURATION, configuration);
+        return project;
+    }
+
+    /**
+     * Resolves a project to the setup data of the other reactor projects with the same target
+     * platform resolver, like a real resolver reads the data of other reactor projects.
+     */
+    private static class RecordingResolver extends DefaultTychoDependencyResolver {
+
+        private static final String CTX_SETUP = "test/setup";
+
+        private final Map<MavenProject, List<String>> computed = new ConcurrentHashMap<MavenProject, List<String>>();
+
+        final Map<String, List<String>> results = new LinkedHashMap<String, List<String>>();
+
+        private final AtomicInteger computations = new AtomicInteger();
+
+        @Override
+        public void setupProject(MavenSession session, MavenProject project, ReactorProject reactorProject) {
+            project.setContextValue(CTX_SETUP, project.getArtifactId() + "@"
+                    + TychoProjectUtils.getTargetPlatformConfiguration(project).getTargetPlatformResolver());
+        }
+
+        @Override
+        public ResolvedProject computeDependencies(MavenSession session, MavenProject project,
+                List<ReactorProject> reactorProjects) {
+            computations.incrementAndGet();
+            try {
+                return doComputeDependencies(project, reactorProjects);
+            } finally {
+                computations.decrementAndGet();
+            }
+        }
+
+        private ResolvedProject doComputeDependencies(MavenProject project, List<ReactorProject> reactorProjects) {
+            String resolver = TychoProjectUtils.getTargetPlatformConfiguration(project).getTargetPlatformResolver();
+            List<String> result = new ArrayList<String>();
+            for (ReactorProject otherProject : reactorProjects) {
+                String setup = (String) otherProject.getContextValue(CTX_SETUP);
+                if (setup.endsWith("@" + resolver)) {
+                    result.add(setup);
+                }
+                Thread.yield();
+            }
+            if (computed.put(project, result) != null) {
+                throw new IllegalStateException("Project resolved twice: " + project);
+            }
+            return new ResolvedProject(null, null);
+        }
+
+        @Override
+        public void applyDependencies(MavenSession session, MavenProject project, ResolvedProject resolvedProject) {
+            if (computations.get() != 0) {
+                throw new IllegalStateException("Project context modified while other projects are resolved");
+            }
+            results.put(project.getArtifactId(), computed.get(project));
+        }
+
+        @Override
+        public void traverse(MavenProject project, DependencyVisitor visitor) {
+        }
+    }
+
+    private static MavenSession newSession(String threadCount, boolean perCore) {
+        MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+        request.setThreadCount(threadCount);
+        request.setPerCoreThreadCount(perCore);
+        return new MavenSession(null, null, request, new DefaultMavenExecutionResult());
+    }
+}
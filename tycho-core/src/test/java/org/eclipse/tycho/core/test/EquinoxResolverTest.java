@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.core.test;
+
+import java.io.File;
+import java.util.Map;
+
+import org.apache.maven.project.MavenProject;
+import org.eclipse.osgi.service.resolver.BundleDescription;
+import org.eclipse.osgi.service.resolver.State;
+import org.eclipse.tycho.artifacts.DependencyArtifacts;
+import org.eclipse.tycho.core.TychoConstants;
+import org.eclipse.tycho.core.osgitools.EquinoxResolver;
+import org.eclipse.tycho.core.utils.MavenSessionUtils;
+import org.eclipse.tycho.testing.AbstractTychoMojoTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EquinoxResolverTest extends AbstractTychoMojoTestCase {
+
+    @Test
+    public void testResolvedStatesAreIndependent() throws Exception {
+        File basedir = getBasedir("projects/exportpackage");
+        EquinoxResolver resolver = lookup(EquinoxResolver.class);
+
+        Map<File, MavenProject> basedirMap = MavenSessionUtils.getBasedirMap(getSortedProjects(basedir, null));
+        MavenProject project = basedirMap.get(new File(basedir, "bundle"));
+        DependencyArtifacts platform = (DependencyArtifacts) project
+                .getContextValue(TychoConstants.CTX_DEPENDENCY_ARTIFACTS);
+        String location = project.getBasedir().getCanonicalPath();
+
+        State first = resolver.newResolvedState(project, platform);
+        // the system bundle comes from the shared base state
+        first.removeBundle(first.getBundle(0));
+
+        State second = resolver.newResolvedState(project, platform);
+        BundleDescription bundle = second.getBundleByLocation(location);
+
+        Assert.assertNotSame(first, second);
+        Assert.assertNotNull(bundle);
+        Assert.assertTrue(bundle.isResolved());
+        Assert.assertNotNull(second.getBundle(0));
+    }
+}
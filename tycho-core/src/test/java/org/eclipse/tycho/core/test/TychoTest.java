@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,7 +14,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.maven.execution.MavenExecutionRequest;
@@ -32,6 +34,7 @@ import org.eclipse.tycho.core.TychoProject;
 import org.eclipse.tycho.core.osgitools.DefaultBundleReader;
 import org.eclipse.tycho.core.osgitools.OsgiBundleProject;
 import org.eclipse.tycho.core.resolver.DefaultTargetPlatformConfigurationReader;
+import org.eclipse.tycho.core.resolver.ReactorResolutionScheduler;
 import org.eclipse.tycho.core.utils.TychoVersion;
 import org.eclipse.tycho.testing.AbstractTychoMojoTestCase;
 
@@ -39,6 +42,8 @@ public class TychoTest extends AbstractTychoMojoTestCase {
 
     protected Logger logger;
 
+    private String threadCount;
+
     @Override
     protected void setUp() throws Exception {
         super.setUp();
@@ -51,6 +56,13 @@ public class TychoTest extends AbstractTychoMojoTestCase {
         super.tearDown();
     }
 
+    @Override
+    protected MavenExecutionRequest newMavenExecutionRequest(File pom) throws Exception {
+        MavenExecutionRequest request = super.newMavenExecutionRequest(pom);
+        request.setThreadCount(threadCount);
+        return request;
+    }
+
     private List<MavenProject> getSortedProjects(File basedir) throws Exception {
         return getSortedProjects(basedir, null);
     }
@@ -164,6 +176,42 @@ public class TychoTest extends AbstractTychoMojoTestCase {
         assertEquals("fragment2", clientDependencies.get(3).getArtifactId());
     }
 
+    public void testParallelResolutionOfReactorDependencies() throws Exception {
+        File basedir = getBasedir("projects/fragment");
+
+        Map<String, List<String>> serialResult = getDependenciesAndClasspath(getSortedProjects(basedir));
+
+        Properties properties = new Properties();
+        properties.put(ReactorResolutionScheduler.PARALLEL_RESOLUTION_PROPERTY, "true");
+        threadCount = "4";
+        Map<String, List<String>> parallelResult = getDependenciesAndClasspath(getSortedProjects(basedir,
+                properties, null));
+
+        assertEquals(Arrays.asList("host", "fragment", "dep", "fragment2"), serialResult.get("client/dependencies"));
+        assertEquals(serialResult, parallelResult);
+    }
+
+    private Map<String, List<String>> getDependenciesAndClasspath(List<MavenProject> projects) throws Exception {
+        Map<String, List<String>> result = new LinkedHashMap<String, List<String>>();
+        for (MavenProject project : projects) {
+            List<String> dependencies = new ArrayList<String>();
+            for (Dependency dependency : project.getModel().getDependencies()) {
+                dependencies.add(dependency.getArtifactId());
+            }
+            result.put(project.getArtifactId() + "/dependencies", dependencies);
+
+            TychoProject projectType = lookup(TychoProject.class, project.getPackaging());
+            if (projectType instanceof OsgiBundleProject) {
+                List<String> classpath = new ArrayList<String>();
+                for (ClasspathEntry entry : ((OsgiBundleProject) projectType).getClasspath(project)) {
+                    classpath.add(entry.getArtifactKey().toString() + "=" + entry.getLocations());
+                }
+                result.put(project.getArtifactId() + "/classpath", classpath);
+            }
+        }
+        return result;
+    }
+
     public void testPre30() throws Exception {
         File basedir = getBasedir("projects/dummy");
 
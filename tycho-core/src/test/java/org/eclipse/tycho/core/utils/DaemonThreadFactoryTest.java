@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.core.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.ThreadFactory;
+
+import org.junit.Test;
+
+public class DaemonThreadFactoryTest {
+
+    private static final Runnable NOOP = new Runnable() {
+        public void run() {
+        }
+    };
+
+    @Test
+    public void testThreadsAreNumberedDaemons() {
+        ThreadFactory factory = new DaemonThreadFactory("test");
+
+        Thread first = factory.newThread(NOOP);
+        Thread second = factory.newThread(NOOP);
+
+        assertEquals("test-1", first.getName());
+        assertEquals("test-2", second.getName());
+        assertTrue(first.isDaemon());
+    }
+
+    @Test
+    public void testContextClassLoaderOfCreatingThread() {
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        ClassLoader contextClassLoader = new URLClassLoader(new URL[0]);
+        ThreadFactory factory;
+        Thread.currentThread().setContextClassLoader(contextClassLoader);
+        try {
+            factory = new DaemonThreadFactory("test");
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+
+        assertSame(contextClassLoader, factory.newThread(NOOP).getContextClassLoader());
+    }
+}
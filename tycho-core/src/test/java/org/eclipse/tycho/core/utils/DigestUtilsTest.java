@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.core.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+public class DigestUtilsTest {
+
+    @Test
+    public void testDigestOfString() {
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", DigestUtils.digest(DigestUtils.MD5, "abc"));
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", DigestUtils.digest(DigestUtils.SHA1, "abc"));
+    }
+
+    @Test
+    public void testDigestOfFile() throws Exception {
+        File file = File.createTempFile("digest", ".txt");
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write("abc".getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+
+            assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", DigestUtils.digest(DigestUtils.SHA1, file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testToHexKeepsLeadingZeros() {
+        assertEquals("000fff", DigestUtils.toHex(new byte[] { 0x00, 0x0f, (byte) 0xff }));
+    }
+}
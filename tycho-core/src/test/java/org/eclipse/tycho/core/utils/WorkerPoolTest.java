@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.core.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class WorkerPoolTest {
+
+    @Test
+    public void testResultsAreInTaskOrder() throws Exception {
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < 10; i++) {
+            // later tasks finish first
+            tasks.add(new Task(i, 10 - i));
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), WorkerPool.invokeAll(tasks, 4, "test"));
+    }
+
+    @Test
+    public void testTasksRunInParallel() throws Exception {
+        final CountDownLatch started = new CountDownLatch(2);
+        Callable<Boolean> task = new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                started.countDown();
+                // only returns true if the other task runs at the same time
+                return started.await(10, TimeUnit.SECONDS);
+            }
+        };
+
+        assertEquals(Arrays.asList(true, true), WorkerPool.invokeAll(Arrays.asList(task, task), 2, "test"));
+    }
+
+    @Test
+    public void testWorkerThreads() throws Exception {
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        Callable<Thread> task = new Callable<Thread>() {
+            public Thread call() {
+                return Thread.currentThread();
+            }
+        };
+
+        List<Thread> threads = WorkerPool.invokeAll(Arrays.asList(task, task), 2, "test");
+
+        for (Thread thread : threads) {
+            assertNotSame(Thread.currentThread(), thread);
+            assertTrue(thread.getName().startsWith("test-"));
+            assertTrue(thread.isDaemon());
+            assertSame(contextClassLoader, thread.getContextClassLoader());
+        }
+    }
+
+    @Test
+    public void testSingleThreadRunsTasksInCallingThread() throws Exception {
+        Callable<Thread> task = new Callable<Thread>() {
+            public Thread call() {
+                return Thread.currentThread();
+            }
+        };
+
+        assertEquals(Arrays.asList(Thread.currentThread(), Thread.currentThread()),
+                WorkerPool.invokeAll(Arrays.asList(task, task), 1, "test"));
+    }
+
+    @Test
+    public void testFirstFailureInTaskOrderIsReported() throws Exception {
+        Task second = new Task(2, 0);
+        List<Callable<Integer>> tasks = Arrays.<Callable<Integer>> asList(new Failure("first", 200), second,
+                new Failure("third", 0));
+
+        try {
+            WorkerPool.invokeAll(tasks, 3, "test");
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("first", e.getCause().getMessage());
+        }
+        assertTrue(second.called);
+    }
+
+    @Test
+    public void testSequentialExecutionStopsAtFirstFailure() throws Exception {
+        Task second = new Task(2, 0);
+        List<Callable<Integer>> tasks = Arrays.<Callable<Integer>> asList(new Failure("first", 0), second);
+
+        try {
+            WorkerPool.invokeAll(tasks, 1, "test");
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("first", e.getCause().getMessage());
+        }
+        assertFalse(second.called);
+    }
+
+    @Test
+    public void testNoTasks() throws Exception {
+        assertEquals(Collections.emptyList(), WorkerPool.invokeAll(new ArrayList<Callable<Object>>(), 4, "test"));
+    }
+
+    @Test
+    public void testUncheckedExceptionIsRethrown() throws Exception {
+        final IllegalStateException exception = new IllegalStateException();
+        Callable<Integer> failure = new Callable<Integer>() {
+            public Integer call() {
+                throw exception;
+            }
+        };
+
+        for (int threads = 1; threads <= 2; threads++) {
+            try {
+                WorkerPool.invokeAllUnchecked(Arrays.asList(failure, new Task(2, 0)), threads, "test");
+                fail();
+            } catch (IllegalStateException e) {
+                assertSame(exception, e);
+            }
+        }
+    }
+
+    @Test
+    public void testCheckedExceptionIsWrapped() throws Exception {
+        List<Callable<Integer>> tasks = Arrays.<Callable<Integer>> asList(new Task(1, 0), new Failure("second", 0));
+
+        try {
+            WorkerPool.invokeAllUnchecked(tasks, 2, "test");
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals("second", e.getCause().getMessage());
+        }
+    }
+
+    private static class Task implements Callable<Integer> {
+        private final int result;
+
+        private final long delay;
+
+        volatile boolean called;
+
+        Task(int result, long delay) {
+            this.result = result;
+            this.delay = delay;
+        }
+
+        public Integer call() throws Exception {
+            called = true;
+            Thread.sleep(delay);
+            return result;
+        }
+    }
+
+    private static class Failure implements Callable<Integer> {
+        private final String message;
+
+        private final long delay;
+
+        Failure(String message, long delay) {
+            this.message = message;
+            this.delay = delay;
+        }
+
+        public Integer call() throws Exception {
+            Thread.sleep(delay);
+            throw new Exception(message);
+        }
+    }
+}
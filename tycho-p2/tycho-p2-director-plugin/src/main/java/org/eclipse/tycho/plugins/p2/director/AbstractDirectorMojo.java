@@ -14,9 +14,31 @@ import java.io.File;
 import java.net.URI;
 import java.util.List;
 
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
 import org.eclipse.tycho.core.TargetEnvironment;
 
 public abstract class AbstractDirectorMojo extends AbstractProductMojo {
+
+    /**
+     * The maximum number of product installations (i.e. products times environments) which are
+     * materialized in parallel. Note that the <code>materialize-products</code> goal runs the
+     * director in the OSGi runtime of the build, which is shared by the parallel calls, whereas the
+     * <code>materialize-products-metarequirements</code> goal starts one director process per
+     * installation.
+     * 
+     * @parameter expression="${tycho.director.threads}" default-value="1"
+     */
+    private int directorThreads;
+
+    int getDirectorThreads() {
+        return directorThreads;
+    }
+
+    void executeDirectorCalls(DirectorCalls calls) throws MojoExecutionException, MojoFailureException {
+        calls.execute(directorThreads);
+    }
+
     protected String toCommaSeparatedList(List<URI> repositories) {
         if (repositories.size() == 0) {
             return "";
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2012 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.plugins.p2.director;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.tycho.core.utils.WorkerPool;
+import org.eclipse.tycho.p2.tools.director.facade.DirectorApplicationWrapper;
+
+/**
+ * List of director invocations, e.g. one per product and environment, which are independent of
+ * each other and can hence be executed concurrently.
+ */
+@SuppressWarnings("nls")
+class DirectorCalls {
+
+    private class Call implements Callable<Object> {
+        final String description;
+        final DirectorApplicationWrapper director;
+        final String[] args;
+        long duration;
+
+        Call(String description, DirectorApplicationWrapper director, String[] args) {
+            this.description = description;
+            this.director = director;
+            this.args = args;
+        }
+
+        public Object call() throws MojoFailureException {
+            log.info("Calling director with arguments: " + Arrays.toString(args));
+            long start = System.currentTimeMillis();
+            try {
+                Object result = director.run(args);
+                if (!DirectorApplicationWrapper.EXIT_OK.equals(result)) {
+                    throw new MojoFailureException("P2 director return code was " + result);
+                }
+                return result;
+            } finally {
+                duration = System.currentTimeMillis() - start;
+            }
+        }
+    }
+
+    private final List<Call> calls = new ArrayList<Call>();
+
+    private final Log log;
+
+    DirectorCalls(Log log) {
+        this.log = log;
+    }
+
+    void add(String description, DirectorApplicationWrapper director, String[] args) {
+        calls.add(new Call(description, director, args));
+    }
+
+    int size() {
+        return calls.size();
+    }
+
+    /**
+     * Executes the director calls with at most the given number of calls running at the same time.
+     * If calls fail, the remaining calls are still completed, and the failure of the first call in
+     * the order of {@link #add(String, DirectorApplicationWrapper, String[])} is reported.
+     */
+    void execute(int threads) throws MojoExecutionException, MojoFailureException {
+        if (calls.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            WorkerPool.invokeAll(calls, threads, "tycho-director");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while waiting for the p2 director", e);
+        } catch (ExecutionException e) {
+            Throwable failure = e.getCause();
+            if (failure instanceof MojoFailureException) {
+                throw (MojoFailureException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            throw new MojoExecutionException(failure.getMessage(), failure);
+        }
+        logTimes(System.currentTimeMillis() - start);
+    }
+
+    private void logTimes(long totalTime) {
+        long sum = 0;
+        for (Call call : calls) {
+            log.info("  " + call.description + ": " + call.duration + " ms");
+            sum += call.duration;
+        }
+        log.info("Materialized " + calls.size() + " product installation(s) in " + totalTime + " ms (" + sum
+                + " ms director time)");
+    }
+}
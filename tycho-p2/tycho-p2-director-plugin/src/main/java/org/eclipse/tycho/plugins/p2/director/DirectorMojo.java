@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2011 SAP AG and others.
+ * Copyright (c) 2010, 2012 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,7 +12,6 @@
 package org.eclipse.tycho.plugins.p2.director;
 
 import java.io.File;
-import java.util.Arrays;
 import java.util.List;
 
 import org.apache.maven.plugin.MojoExecutionException;
@@ -48,31 +47,36 @@ public final class DirectorMojo extends AbstractDirectorMojo {
         List<Product> products = getProductConfig().getProducts();
         if (products.isEmpty()) {
             getLog().info("No product definitions found. Nothing to do.");
+            return;
         }
-        for (Product product : products) {
-            for (TargetEnvironment env : getEnvironments()) {
-                final DirectorApplicationWrapper director = p2.getService(DirectorApplicationWrapper.class);
-                int flags = RepositoryReferenceTool.REPOSITORIES_INCLUDE_CURRENT_MODULE;
-                RepositoryReferences sources = repositoryReferenceTool.getVisibleRepositories(getProject(),
-                        getSession(), flags);
+        // the visible repositories are the same for all products and environments
+        int flags = RepositoryReferenceTool.REPOSITORIES_INCLUDE_CURRENT_MODULE;
+        RepositoryReferences sources = repositoryReferenceTool.getVisibleRepositories(getProject(), getSession(),
+                flags);
+        try {
+            String metadataRepositoryURLs = toCommaSeparatedList(sources.getMetadataRepositories());
+            String artifactRepositoryURLs = toCommaSeparatedList(sources.getArtifactRepositories());
 
-                File destination = getProductMaterializeDirectory(product, env);
-                String rootFolder = product.getRootFolder();
-                if (rootFolder != null && rootFolder.length() > 0) {
-                    destination = new File(destination, rootFolder);
-                }
+            DirectorCalls calls = new DirectorCalls(getLog());
+            for (Product product : products) {
+                for (TargetEnvironment env : getEnvironments()) {
+                    DirectorApplicationWrapper director = p2.getService(DirectorApplicationWrapper.class);
+
+                    File destination = getProductMaterializeDirectory(product, env);
+                    String rootFolder = product.getRootFolder();
+                    if (rootFolder != null && rootFolder.length() > 0) {
+                        destination = new File(destination, rootFolder);
+                    }
 
-                String metadataRepositoryURLs = toCommaSeparatedList(sources.getMetadataRepositories());
-                String artifactRepositoryURLs = toCommaSeparatedList(sources.getArtifactRepositories());
-                String nameForEnvironment = ProfileName.getNameForEnvironment(env, profileNames, profile);
-                String[] args = getArgsForDirectorCall(product, env, destination, metadataRepositoryURLs,
-                        artifactRepositoryURLs, nameForEnvironment, installFeatures);
-                getLog().info("Calling director with arguments: " + Arrays.toString(args));
-                final Object result = director.run(args);
-                if (!DirectorApplicationWrapper.EXIT_OK.equals(result)) {
-                    throw new MojoFailureException("P2 director return code was " + result);
+                    String nameForEnvironment = ProfileName.getNameForEnvironment(env, profileNames, profile);
+                    String[] args = getArgsForDirectorCall(product, env, destination, metadataRepositoryURLs,
+                            artifactRepositoryURLs, nameForEnvironment, installFeatures);
+                    calls.add(product.getId() + " (" + getOsWsArch(env, '.') + ")", director, args);
                 }
             }
+            executeDirectorCalls(calls);
+        } finally {
+            repositoryReferenceTool.releaseVisibleRepositories(getProject());
         }
     }
 
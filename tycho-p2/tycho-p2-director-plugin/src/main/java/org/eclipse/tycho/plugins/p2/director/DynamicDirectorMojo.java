@@ -93,11 +93,16 @@ public final class DynamicDirectorMojo extends AbstractDirectorMojo {
         //getting the tycho-bundles-external-dynamic product definition  (.product)      
         final File directorApplicationDir = materializeLocalDirector(version);
 
+        DirectorCalls calls = new DirectorCalls(getLog());
         for (Product product : products) {
             for (TargetEnvironment env : getEnvironments()) {
-
+                // concurrently running director processes must not share their configuration area
+                File configurationArea = null;
+                if (getDirectorThreads() > 1) {
+                    configurationArea = new File(directorApplicationDir, "configuration-" + (calls.size() + 1));
+                }
                 final DirectorApplicationWrapper director = new DynamicDirectorApplicationWrapper(
-                        directorApplicationDir);
+                        directorApplicationDir, configurationArea);
 
                 File destination = getProductMaterializeDirectory(product, env);
                 String rootFolder = product.getRootFolder();
@@ -118,13 +123,10 @@ public final class DynamicDirectorMojo extends AbstractDirectorMojo {
                 String nameForEnvironment = ProfileName.getNameForEnvironment(env, profileNames, profile);
                 String[] args = getArgsForDirectorCall(product, env, destination, localP2Repository, localP2Repository,
                         nameForEnvironment, installFeatures);
-                getLog().info("Calling director with arguments: " + Arrays.toString(args));
-                final Object result = director.run(args);
-                if (!DirectorApplicationWrapper.EXIT_OK.equals(result)) {
-                    throw new MojoFailureException("P2 director return code was " + result);
-                }
+                calls.add(product.getId() + " (" + getOsWsArch(env, '.') + ")", director, args);
             }
         }
+        executeDirectorCalls(calls);
     }
 
     /**
@@ -168,10 +170,6 @@ public final class DynamicDirectorMojo extends AbstractDirectorMojo {
         //materializing the director from the tycho-bundles-external-dynamic product definition
         Product directorProduct = new Product("tycho-bundles-external-dynamic");
         final DirectorApplicationWrapper director = p2.getService(DirectorApplicationWrapper.class);
-        int flags = RepositoryReferenceTool.REPOSITORIES_INCLUDE_CURRENT_MODULE;
-        RepositoryReferences sources = repositoryReferenceTool
-                .getVisibleRepositories(getProject(), getSession(), flags);
-
         // the environment is the local environment since we're going to run the director from this env.
         Properties properties = (Properties) getProject().getContextValue(TychoConstants.CTX_MERGED_PROPERTIES);
         String os = PlatformPropertiesUtils.getOS(properties);
@@ -191,15 +189,23 @@ public final class DynamicDirectorMojo extends AbstractDirectorMojo {
                     "Impossible to determine tycho-bundles-external-dynamic p2 repository location " + e.getMessage());
         }
 
-        String metadataRepositoryURLs = toCommaSeparatedList(sources.getMetadataRepositories()) + ","
-                + productRepository;
-        String artifactRepositoryURLs = toCommaSeparatedList(sources.getArtifactRepositories()) + ","
-                + productRepository;
-        String nameForEnvironment = ProfileName.getNameForEnvironment(env, profileNames, profile);
-        String[] args = getArgsForDirectorCall(directorProduct, env, directorApplicationDir, metadataRepositoryURLs,
-                artifactRepositoryURLs, nameForEnvironment, true);
-        getLog().info("Calling director with arguments: " + Arrays.toString(args));
-        final Object result = director.run(args);
+        int flags = RepositoryReferenceTool.REPOSITORIES_INCLUDE_CURRENT_MODULE;
+        RepositoryReferences sources = repositoryReferenceTool
+                .getVisibleRepositories(getProject(), getSession(), flags);
+        final Object result;
+        try {
+            String metadataRepositoryURLs = toCommaSeparatedList(sources.getMetadataRepositories()) + ","
+                    + productRepository;
+            String artifactRepositoryURLs = toCommaSeparatedList(sources.getArtifactRepositories()) + ","
+                    + productRepository;
+            String nameForEnvironment = ProfileName.getNameForEnvironment(env, profileNames, profile);
+            String[] args = getArgsForDirectorCall(directorProduct, env, directorApplicationDir,
+                    metadataRepositoryURLs, artifactRepositoryURLs, nameForEnvironment, true);
+            getLog().info("Calling director with arguments: " + Arrays.toString(args));
+            result = director.run(args);
+        } finally {
+            repositoryReferenceTool.releaseVisibleRepositories(getProject());
+        }
         if (!DirectorApplicationWrapper.EXIT_OK.equals(result)) {
             throw new MojoFailureException("P2 director return code was " + result);
         }
@@ -215,8 +221,11 @@ public final class DynamicDirectorMojo extends AbstractDirectorMojo {
 
         private File directorApplicationDir;
 
-        public DynamicDirectorApplicationWrapper(File directorApplicationDir) {
+        private File configurationArea;
+
+        public DynamicDirectorApplicationWrapper(File directorApplicationDir, File configurationArea) {
             this.directorApplicationDir = directorApplicationDir;
+            this.configurationArea = configurationArea;
         }
 
         public Object run(String[] args) {
@@ -242,6 +251,13 @@ public final class DynamicDirectorMojo extends AbstractDirectorMojo {
                     return null;
                 }
             };
+            if (configurationArea != null) {
+                // the private configuration area inherits the config.ini of the installation
+                File sharedConfigurationArea = new File(directorApplicationDir, "configuration");
+                cli.addVMArguments("-Dosgi.sharedConfiguration.area=" + sharedConfigurationArea.getAbsolutePath(),
+                        "-Dosgi.configuration.cascaded=true");
+                cli.addProgramArguments("-configuration", configurationArea.getAbsolutePath());
+            }
             cli.addProgramArguments(args);
             return launcher.execute(cli, 0);
         }
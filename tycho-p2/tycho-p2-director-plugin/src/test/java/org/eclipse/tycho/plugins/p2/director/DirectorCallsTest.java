@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2012 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.plugins.p2.director;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.eclipse.tycho.p2.tools.director.facade.DirectorApplicationWrapper;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DirectorCallsTest {
+
+    private DirectorCalls subject;
+
+    @Before
+    public void initSubject() {
+        subject = new DirectorCalls(new SystemStreamLog());
+    }
+
+    @Test
+    public void testSequentialCalls() throws Exception {
+        DirectorStub director = new DirectorStub(DirectorApplicationWrapper.EXIT_OK);
+        subject.add("a", director, new String[0]);
+        subject.add("b", director, new String[0]);
+
+        subject.execute(1);
+
+        assertEquals(2, director.calls.get());
+        assertEquals(1, director.maxConcurrentCalls.get());
+    }
+
+    @Test
+    public void testConcurrentCalls() throws Exception {
+        DirectorStub director = new DirectorStub(DirectorApplicationWrapper.EXIT_OK);
+        for (int i = 0; i < 6; i++) {
+            subject.add("call" + i, director, new String[0]);
+        }
+
+        subject.execute(3);
+
+        assertEquals(6, director.calls.get());
+        assertTrue(director.maxConcurrentCalls.get() <= 3);
+    }
+
+    @Test
+    public void testFailedCallIsReported() throws Exception {
+        subject.add("ok", new DirectorStub(DirectorApplicationWrapper.EXIT_OK), new String[0]);
+        subject.add("failed", new DirectorStub(Integer.valueOf(13)), new String[0]);
+        DirectorStub remaining = new DirectorStub(DirectorApplicationWrapper.EXIT_OK);
+        subject.add("remaining", remaining, new String[0]);
+
+        try {
+            subject.execute(2);
+            fail();
+        } catch (MojoFailureException e) {
+            assertEquals("P2 director return code was 13", e.getMessage());
+        }
+        // running calls are completed
+        assertEquals(1, remaining.calls.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExceptionInCall() throws Exception {
+        subject.add("ok", new DirectorStub(DirectorApplicationWrapper.EXIT_OK), new String[0]);
+        subject.add("exception", new DirectorApplicationWrapper() {
+            public Object run(String[] args) {
+                throw new IllegalStateException();
+            }
+        }, new String[0]);
+
+        subject.execute(2);
+    }
+
+    private static class DirectorStub implements DirectorApplicationWrapper {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger runningCalls = new AtomicInteger();
+        final AtomicInteger maxConcurrentCalls = new AtomicInteger();
+        private final Object result;
+
+        DirectorStub(Object result) {
+            this.result = result;
+        }
+
+        public Object run(String[] args) {
+            calls.incrementAndGet();
+            int running = runningCalls.incrementAndGet();
+            try {
+                int max;
+                do {
+                    max = maxConcurrentCalls.get();
+                } while (running > max && !maxConcurrentCalls.compareAndSet(max, running));
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                runningCalls.decrementAndGet();
+            }
+            return result;
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2011 SAP AG and others.
+ * Copyright (c) 2010, 2012 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -28,6 +28,7 @@ import org.eclipse.tycho.core.utils.TychoProjectUtils;
 import org.eclipse.tycho.p2.metadata.MetadataSerializable;
 import org.eclipse.tycho.p2.repository.RepositoryLayoutHelper;
 import org.eclipse.tycho.p2.tools.RepositoryReferences;
+import org.eclipse.tycho.repository.registry.facade.MetadataRepositoryBlackboardFacade;
 import org.eclipse.tycho.repository.registry.facade.RepositoryBlackboardKey;
 
 /**
@@ -41,6 +42,13 @@ public class RepositoryReferenceTool {
      */
     public static int REPOSITORIES_INCLUDE_CURRENT_MODULE = 1;
 
+    /**
+     * Option to indicate that the repositories are passed to a process outside of Tycho's OSGi
+     * runtime. Without this flag, the target platform metadata is only registered as in-memory
+     * repository, which cannot be loaded by other processes.
+     */
+    public static int REPOSITORIES_FOR_EXTERNAL_PROCESS = 2;
+
     public static String PUBLISHER_REPOSITORY_PATH = "publisherRepository";
 
     @Requirement
@@ -58,6 +66,8 @@ public class RepositoryReferenceTool {
      * <li>The results of the referenced reactor modules,
      * <li>The non-reactor content of the module's target platform.
      * </ol>
+     * Unless the flag {@link #REPOSITORIES_FOR_EXTERNAL_PROCESS} is set, the repositories need to be
+     * released with {@link #releaseVisibleRepositories(MavenProject)} after use.
      * 
      * @param module
      *            The current Maven project
@@ -65,6 +75,7 @@ public class RepositoryReferenceTool {
      *            The current Maven session
      * @param flags
      *            Options flags; supported flags are {@link #REPOSITORIES_INCLUDE_CURRENT_MODULE}
+     *            and {@link #REPOSITORIES_FOR_EXTERNAL_PROCESS}
      * @return a {@link RepositoryReferences} instance with the repositories.
      * @throws MojoExecutionException
      *             in case of internal errors
@@ -86,12 +97,31 @@ public class RepositoryReferenceTool {
         repositories.addArtifactRepository(RepositoryBlackboardKey.forResolutionContextArtifacts(module.getBasedir()));
 
         // metadata and artifacts of target platform
-        File targetPlatform = materializeTargetPlatformRepository(module);
-        repositories.addMetadataRepository(targetPlatform);
+        if ((flags & REPOSITORIES_FOR_EXTERNAL_PROCESS) != 0) {
+            File targetPlatform = materializeTargetPlatformRepository(module);
+            repositories.addMetadataRepository(targetPlatform);
+        } else {
+            repositories.addMetadataRepository(registerTargetPlatformRepository(module));
+        }
         repositories.addArtifactRepository(new File(session.getLocalRepository().getBasedir()));
         return repositories;
     }
 
+    /**
+     * Releases the in-memory repositories which have been registered by
+     * {@link #getVisibleRepositories(MavenProject, MavenSession, int)} for the given module. Callers
+     * must call this method once the p2 operation which uses the repositories has returned (e.g. in
+     * a <code>finally</code> block), so that the target platform of the module isn't kept in memory
+     * for the rest of the build.
+     * 
+     * @param module
+     *            The Maven project that was passed to <code>getVisibleRepositories</code>
+     */
+    public void releaseVisibleRepositories(MavenProject module) {
+        RepositoryBlackboardKey key = RepositoryBlackboardKey.forTargetPlatformMetadata(module.getBasedir());
+        osgiServices.getService(MetadataRepositoryBlackboardFacade.class).removeRepository(key);
+    }
+
     private static void addRepositoriesOfReferencedModules(RepositoryReferences sources, MavenProject currentProject)
             throws MojoExecutionException, MojoFailureException {
         for (MavenProject referencedProject : currentProject.getProjectReferences().values()) {
@@ -125,6 +155,19 @@ public class RepositoryReferenceTool {
         throw new MojoFailureException("Missing required artifact '" + classifier + "' in module " + project.getId());
     }
 
+    /**
+     * Registers the p2 metadata view on the module's build target platform (without reactor
+     * projects) as in-memory repository, so that p2 operations in Tycho's OSGi runtime can read it
+     * without serializing it to disk.
+     */
+    private RepositoryBlackboardKey registerTargetPlatformRepository(MavenProject module) {
+        RepositoryBlackboardKey key = RepositoryBlackboardKey.forTargetPlatformMetadata(module.getBasedir());
+        Set<?> targetPlatformInstallableUnits = TychoProjectUtils.getDependencyArtifacts(module).getNonReactorUnits();
+        osgiServices.getService(MetadataRepositoryBlackboardFacade.class).putRepository(key,
+                targetPlatformInstallableUnits);
+        return key;
+    }
+
     /**
      * Restores the p2 metadata view on the module's build target platform (without reactor
      * projects) that was calculated during the initial dependency resolution (see
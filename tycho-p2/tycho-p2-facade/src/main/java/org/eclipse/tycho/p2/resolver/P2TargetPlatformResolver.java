@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.apache.maven.MavenExecutionException;
 import org.apache.maven.ProjectDependenciesResolver;
@@ -75,6 +76,7 @@ import org.eclipse.tycho.core.osgitools.targetplatform.MultiEnvironmentTargetPla
 import org.eclipse.tycho.core.p2.P2ArtifactRepositoryLayout;
 import org.eclipse.tycho.core.resolver.CompilerOptions;
 import org.eclipse.tycho.core.resolver.CompilerOptionsManager;
+import org.eclipse.tycho.core.resolver.TargetPlatformConfigurationFingerprint;
 import org.eclipse.tycho.core.utils.ExecutionEnvironment;
 import org.eclipse.tycho.core.utils.ExecutionEnvironmentUtils;
 import org.eclipse.tycho.core.utils.PlatformPropertiesUtils;
@@ -127,6 +129,9 @@ public class P2TargetPlatformResolver extends AbstractTargetPlatformResolver imp
     @Requirement
     private PluginRealmHelper pluginRealmHelper;
 
+    @Requirement
+    private TargetPlatformCache targetPlatformCache;
+
     private P2ResolverFactory resolverFactory;
 
     private DependencyMetadataGenerator generator;
@@ -182,11 +187,23 @@ public class P2TargetPlatformResolver extends AbstractTargetPlatformResolver imp
         return false;
     }
 
-    public TargetPlatform computeTargetPlatform(MavenSession session, MavenProject project,
-            List<ReactorProject> reactorProjects) {
-        TargetPlatformConfiguration configuration = TychoProjectUtils.getTargetPlatformConfiguration(project);
+    public TargetPlatform computeTargetPlatform(final MavenSession session, final MavenProject project,
+            final List<ReactorProject> reactorProjects) {
+        final ExecutionEnvironment ee = projectTypes.get(project.getPackaging()).getExecutionEnvironment(project);
 
-        ExecutionEnvironment ee = projectTypes.get(project.getPackaging()).getExecutionEnvironment(project);
+        TargetPlatformConfigurationFingerprint fingerprint = TargetPlatformConfigurationFingerprint.compute(project,
+                ee != null ? ee.getProfileName() : null);
+        return targetPlatformCache.getTargetPlatform(session, fingerprint, reactorProjects,
+                new Callable<TargetPlatform>() {
+                    public TargetPlatform call() {
+                        return doComputeTargetPlatform(session, project, reactorProjects, ee);
+                    }
+                });
+    }
+
+    private TargetPlatform doComputeTargetPlatform(MavenSession session, MavenProject project,
+            List<ReactorProject> reactorProjects, ExecutionEnvironment ee) {
+        TargetPlatformConfiguration configuration = TychoProjectUtils.getTargetPlatformConfiguration(project);
 
         TargetPlatformBuilder tpBuilder = resolverFactory.createTargetPlatformBuilder(//
                 ee != null ? ee.getProfileName() : null, configuration.isDisableP2Mirrors());
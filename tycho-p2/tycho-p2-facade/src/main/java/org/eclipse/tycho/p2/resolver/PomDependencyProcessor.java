@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011 SAP AG and others.
+ * Copyright (c) 2011, 2012 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipse.tycho.p2.resolver;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -20,6 +21,7 @@ import org.apache.maven.project.MavenProject;
 import org.apache.maven.repository.RepositorySystem;
 import org.codehaus.plexus.logging.Logger;
 import org.eclipse.tycho.p2.facade.internal.ArtifactFacade;
+import org.eclipse.tycho.p2.metadata.IArtifactFacade;
 import org.eclipse.tycho.p2.repository.GAV;
 import org.eclipse.tycho.p2.repository.LocalRepositoryP2Indices;
 import org.eclipse.tycho.p2.repository.RepositoryLayoutHelper;
@@ -44,6 +46,7 @@ public class PomDependencyProcessor {
     void addPomDependenciesToResolutionContext(MavenProject project, Collection<Artifact> transitivePomDependencies,
             TargetPlatformBuilder resolutionContext) {
         final TychoRepositoryIndex p2ArtifactsInLocalRepo = localRepoIndices.getArtifactsIndex();
+        List<IArtifactFacade> artifactsToPublish = new ArrayList<IArtifactFacade>();
 
         for (Artifact artifact : transitivePomDependencies) {
             P2DataArtifacts p2Data = new P2DataArtifacts(artifact);
@@ -76,17 +79,23 @@ public class PomDependencyProcessor {
                 /*
                  * The POM dependency has not been built by Tycho. If the dependency is a bundle,
                  * run the p2 bundle publisher on it and add the result to the resolution context.
+                 * This is done for all such dependencies at once, so that they can be published in
+                 * parallel.
                  */
                 if (logger.isDebugEnabled()) {
                     logger.debug("P2resolver.addMavenArtifact " + artifact.toString());
                 }
 
-                resolutionContext.publishAndAddArtifactIfBundleArtifact(new ArtifactFacade(artifact));
+                artifactsToPublish.add(new ArtifactFacade(artifact));
 
             } else {
                 failDueToPartialP2Data(artifact, p2Data);
             }
         }
+
+        if (!artifactsToPublish.isEmpty()) {
+            resolutionContext.publishAndAddArtifactsIfBundleArtifacts(artifactsToPublish);
+        }
     }
 
     private void failDueToPartialP2Data(Artifact artifact, P2DataArtifacts p2Data) {
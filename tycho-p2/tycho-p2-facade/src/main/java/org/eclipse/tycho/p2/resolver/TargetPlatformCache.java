@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.p2.resolver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.codehaus.plexus.component.annotations.Component;
+import org.eclipse.tycho.ReactorProject;
+import org.eclipse.tycho.artifacts.TargetPlatform;
+import org.eclipse.tycho.core.resolver.TargetPlatformConfigurationFingerprint;
+
+/**
+ * Session scoped cache of computed target platforms. Projects with the same
+ * {@link TargetPlatformConfigurationFingerprint} share one target platform instance.
+ */
+@Component(role = TargetPlatformCache.class)
+public class TargetPlatformCache {
+
+    /**
+     * User property to disable the sharing of target platforms between projects.
+     */
+    public static final String DISABLE_CACHE_PROPERTY = "tycho.targetPlatformCache.disabled";
+
+    // keyed by the request because the session object may be cloned for each project
+    private final Map<MavenExecutionRequest, Map<CacheKey, FutureTask<TargetPlatform>>> sessionCaches = new WeakHashMap<MavenExecutionRequest, Map<CacheKey, FutureTask<TargetPlatform>>>();
+
+    /**
+     * Returns the target platform for the given fingerprint, computing it with the given callable
+     * if it is not yet known in the session. Concurrent requests for the same fingerprint wait
+     * for the first computation to complete.
+     */
+    public TargetPlatform getTargetPlatform(MavenSession session, TargetPlatformConfigurationFingerprint fingerprint,
+            List<ReactorProject> reactorProjects, Callable<TargetPlatform> computation) {
+        if (Boolean.parseBoolean(session.getUserProperties().getProperty(DISABLE_CACHE_PROPERTY))) {
+            return call(computation);
+        }
+
+        CacheKey key = new CacheKey(fingerprint, reactorProjects);
+        FutureTask<TargetPlatform> task;
+        boolean owner = false;
+        synchronized (sessionCaches) {
+            Map<CacheKey, FutureTask<TargetPlatform>> cache = sessionCaches.get(session.getRequest());
+            if (cache == null) {
+                cache = new HashMap<CacheKey, FutureTask<TargetPlatform>>();
+                sessionCaches.put(session.getRequest(), cache);
+            }
+            task = cache.get(key);
+            if (task == null) {
+                task = new FutureTask<TargetPlatform>(computation);
+                cache.put(key, task);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (owner) {
+                // don't cache failures; the next project shall report its own error
+                evict(session, key);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private void evict(MavenSession session, CacheKey key) {
+        synchronized (sessionCaches) {
+            Map<CacheKey, FutureTask<TargetPlatform>> cache = sessionCaches.get(session.getRequest());
+            if (cache != null) {
+                cache.remove(key);
+            }
+        }
+    }
+
+    private static TargetPlatform call(Callable<TargetPlatform> computation) {
+        try {
+            return computation.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final class CacheKey {
+        private final TargetPlatformConfigurationFingerprint fingerprint;
+
+        private final List<String> reactorProjectIds;
+
+        CacheKey(TargetPlatformConfigurationFingerprint fingerprint, List<ReactorProject> reactorProjects) {
+            this.fingerprint = fingerprint;
+            this.reactorProjectIds = new ArrayList<String>(reactorProjects.size());
+            for (ReactorProject project : reactorProjects) {
+                reactorProjectIds.add(project.getId());
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * fingerprint.hashCode() + reactorProjectIds.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof CacheKey))
+                return false;
+            CacheKey other = (CacheKey) obj;
+            return fingerprint.equals(other.fingerprint) && reactorProjectIds.equals(other.reactorProjectIds);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.p2.resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.tycho.ReactorProject;
+import org.eclipse.tycho.artifacts.TargetPlatform;
+import org.eclipse.tycho.core.TargetEnvironment;
+import org.eclipse.tycho.core.TargetPlatformConfiguration;
+import org.eclipse.tycho.core.TychoConstants;
+import org.eclipse.tycho.core.resolver.TargetPlatformConfigurationFingerprint;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TargetPlatformCacheTest {
+
+    private static final List<ReactorProject> NO_REACTOR_PROJECTS = Collections.emptyList();
+
+    private TargetPlatformCache subject;
+
+    private MavenSession session;
+
+    @Before
+    public void initSubject() {
+        subject = new TargetPlatformCache();
+        session = newSession();
+    }
+
+    @Test
+    public void testSameConfigurationIsComputedOnce() {
+        CountingComputation computation = new CountingComputation();
+
+        TargetPlatform first = subject.getTargetPlatform(session, fingerprint("linux"), NO_REACTOR_PROJECTS,
+                computation);
+        TargetPlatform second = subject.getTargetPlatform(session, fingerprint("linux"), NO_REACTOR_PROJECTS,
+                computation);
+
+        assertSame(first, second);
+        assertEquals(1, computation.count);
+    }
+
+    @Test
+    public void testDifferentConfigurationIsComputedAgain() {
+        CountingComputation computation = new CountingComputation();
+
+        TargetPlatform first = subject.getTargetPlatform(session, fingerprint("linux"), NO_REACTOR_PROJECTS,
+                computation);
+        TargetPlatform second = subject.getTargetPlatform(session, fingerprint("win32"), NO_REACTOR_PROJECTS,
+                computation);
+
+        assertNotSame(first, second);
+        assertEquals(2, computation.count);
+    }
+
+    @Test
+    public void testCacheIsSessionScoped() {
+        CountingComputation computation = new CountingComputation();
+
+        subject.getTargetPlatform(session, fingerprint("linux"), NO_REACTOR_PROJECTS, computation);
+        subject.getTargetPlatform(newSession(), fingerprint("linux"), NO_REACTOR_PROJECTS, computation);
+
+        assertEquals(2, computation.count);
+    }
+
+    @Test
+    public void testFailureIsNotCached() {
+        Callable<TargetPlatform> failingComputation = new Callable<TargetPlatform>() {
+            public TargetPlatform call() {
+                throw new IllegalStateException("expected");
+            }
+        };
+        try {
+            subject.getTargetPlatform(session, fingerprint("linux"), NO_REACTOR_PROJECTS, failingComputation);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        CountingComputation computation = new CountingComputation();
+        subject.getTargetPlatform(session, fingerprint("linux"), NO_REACTOR_PROJECTS, computation);
+        assertEquals(1, computation.count);
+    }
+
+    private static TargetPlatformConfigurationFingerprint fingerprint(String os) {
+        TargetPlatformConfiguration configuration = new TargetPlatformConfiguration();
+        configuration.addEnvironment(new TargetEnvironment(os, "gtk", "x86_64", null));
+
+        MavenProject project = new MavenProject();
+        project.setRemoteArtifactRepositories(new ArrayList<ArtifactRepository>());
+        project.setContextValue(TychoConstants.CTX_TARGET_PLATFORM_CONFIGURATION, configuration);
+        return TargetPlatformConfigurationFingerprint.compute(project, "J2SE-1.5");
+    }
+
+    private static MavenSession newSession() {
+        return new MavenSession(null, null, new DefaultMavenExecutionRequest(), new DefaultMavenExecutionResult());
+    }
+
+    private static class CountingComputation implements Callable<TargetPlatform> {
+        int count;
+
+        public TargetPlatform call() {
+            count++;
+            return new TargetPlatform() {
+            };
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2011 SAP AG and others.
+ * Copyright (c) 2010, 2012 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -35,12 +35,16 @@ public abstract class AbstractPublishMojo extends AbstractP2Mojo {
     private EquinoxServiceFactory osgiServices;
 
     public final void execute() throws MojoExecutionException, MojoFailureException {
-        PublisherService publisherService = createPublisherService();
         try {
-            Collection<?> units = publishContent(publisherService);
-            postPublishedIUs(units);
+            PublisherService publisherService = createPublisherService();
+            try {
+                Collection<?> units = publishContent(publisherService);
+                postPublishedIUs(units);
+            } finally {
+                publisherService.stop();
+            }
         } finally {
-            publisherService.stop();
+            repositoryReferenceTool.releaseVisibleRepositories(getProject());
         }
     }
 
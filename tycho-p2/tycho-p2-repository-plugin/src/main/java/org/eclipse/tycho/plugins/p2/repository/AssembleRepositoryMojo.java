@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2011 SAP AG and others.
+ * Copyright (c) 2010, 2012 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -81,12 +81,15 @@ public class AssembleRepositoryMojo extends AbstractRepositoryMojo implements Lo
             }
 
             RepositoryReferences sources = getVisibleRepositories();
-
-            MirrorApplicationService mirrorApp = p2.getService(MirrorApplicationService.class);
-            DestinationRepositoryDescriptor destinationRepoDescriptor = new DestinationRepositoryDescriptor(
-                    destination, repositoryName, compress, !createArtifactRepository, true);
-            mirrorApp.mirrorReactor(sources, destinationRepoDescriptor, rootIUs, getBuildContext(),
-                    includeAllDependencies);
+            try {
+                MirrorApplicationService mirrorApp = p2.getService(MirrorApplicationService.class);
+                DestinationRepositoryDescriptor destinationRepoDescriptor = new DestinationRepositoryDescriptor(
+                        destination, repositoryName, compress, !createArtifactRepository, true);
+                mirrorApp.mirrorReactor(sources, destinationRepoDescriptor, rootIUs, getBuildContext(),
+                        includeAllDependencies);
+            } finally {
+                repositoryReferenceTool.releaseVisibleRepositories(getProject());
+            }
         } catch (FacadeException e) {
             throw new MojoExecutionException("Could not assemble p2 repository", e);
         }
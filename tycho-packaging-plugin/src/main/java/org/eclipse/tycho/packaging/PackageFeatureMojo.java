@@ -289,6 +289,7 @@ public class PackageFeatureMojo extends AbstractTychoPackagingMojo {
     private void assembleDeployableFeature(Feature feature) throws MojoExecutionException {
         UpdateSiteAssembler assembler = new UpdateSiteAssembler(session, target);
         getDependencyWalker().walk(assembler);
+        assembler.assemble();
     }
 
     private Feature expandVersionQualifiers(Feature feature) throws MojoExecutionException, IOException {
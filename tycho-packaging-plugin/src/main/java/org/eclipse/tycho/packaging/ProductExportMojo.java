@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -31,6 +32,8 @@ import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -56,6 +59,7 @@ import org.eclipse.tycho.core.TargetEnvironment;
 import org.eclipse.tycho.core.osgitools.BundleReader;
 import org.eclipse.tycho.core.utils.PlatformPropertiesUtils;
 import org.eclipse.tycho.core.utils.TychoProjectUtils;
+import org.eclipse.tycho.core.utils.WorkerPool;
 import org.eclipse.tycho.locking.facade.FileLockService;
 import org.eclipse.tycho.locking.facade.FileLocker;
 import org.eclipse.tycho.model.BundleConfiguration;
@@ -123,6 +127,24 @@ public class ProductExportMojo extends AbstractTychoPackagingMojo {
      */
     private boolean forcePackedDependencies;
 
+    /**
+     * If true, the products for the different runtime environments are exported in parallel. Only
+     * applies if {@link #separateEnvironments} is true.
+     * 
+     * @parameter expression="${tycho.product.parallelEnvironments}" default-value="false"
+     */
+    private boolean parallelEnvironments;
+
+    /**
+     * If true, plug-in and feature jars are written into the product archive directly from their
+     * source location, and are not copied into the product directory. The product directory is then
+     * incomplete, so this should only be used if just the archive is needed. Only applies if
+     * {@link #createProductArchive} is true.
+     * 
+     * @parameter expression="${tycho.product.archiveJarsOnly}" default-value="false"
+     */
+    private boolean archiveJarsOnly;
+
     /**
      * @component
      */
@@ -159,25 +181,53 @@ public class ProductExportMojo extends AbstractTychoPackagingMojo {
         }
 
         if (separateEnvironments) {
-            for (TargetEnvironment environment : getEnvironments()) {
+            List<TargetEnvironment> targetEnvironments = getEnvironments();
+            boolean parallel = parallelEnvironments && targetEnvironments.size() > 1;
+            List<Callable<File>> exports = new ArrayList<Callable<File>>();
+            for (final TargetEnvironment environment : targetEnvironments) {
                 File target = getTarget(environment);
-                File targetEclipse = new File(target, "eclipse");
+                final File targetEclipse = new File(target, "eclipse");
                 targetEclipse.mkdirs();
 
                 generateDotEclipseProduct(targetEclipse);
                 generateConfigIni(environment, targetEclipse);
                 includeRootFiles(environment, targetEclipse);
 
-                ProductAssembler assembler = new ProductAssembler(session, manifestReader, targetEclipse, environment);
+                // the dependency walk and all component lookups need to happen in the thread of the mojo
+                final ProductAssembler assembler = new ProductAssembler(session, manifestReader, targetEclipse,
+                        environment);
                 assembler.setIncludeSources(includeSources);
+                assembler.setLog(getLog());
+                assembler.setArchiveJarsOnly(createProductArchive && archiveJarsOnly);
+                if (parallel) {
+                    // the environments share the processors
+                    assembler.setThreads(Math.max(1, Runtime.getRuntime().availableProcessors()
+                            / targetEnvironments.size()));
+                }
                 getDependencyWalker(environment).walk(assembler);
 
-                if (productConfiguration.includeLaunchers()) {
-                    copyExecutable(environment, targetEclipse);
-                }
+                final ProductArchive archive = createProductArchive ? newProductArchive(target,
+                        toString(environment)) : null;
+                exports.add(new Callable<File>() {
+                    public File call() throws Exception {
+                        assembler.assemble();
+
+                        if (productConfiguration.includeLaunchers()) {
+                            copyExecutable(environment, targetEclipse);
+                        }
+
+                        if (archive != null) {
+                            return archive.create(assembler.getArchivedJars());
+                        }
+                        return null;
+                    }
+                });
+            }
 
-                if (createProductArchive) {
-                    createProductArchive(target, toString(environment));
+            List<File> archives = export(exports, parallel);
+            for (int i = 0; i < archives.size(); i++) {
+                if (archives.get(i) != null) {
+                    projectHelper.attachArtifact(project, archives.get(i), toString(targetEnvironments.get(i)));
                 }
             }
         } else {
@@ -194,11 +244,14 @@ public class ProductExportMojo extends AbstractTychoPackagingMojo {
 
             ProductAssembler assembler = new ProductAssembler(session, manifestReader, targetEclipse, null);
             assembler.setIncludeSources(includeSources);
+            assembler.setLog(getLog());
+            assembler.setArchiveJarsOnly(createProductArchive && archiveJarsOnly);
             if (forcePackedDependencies) {
                 assembler.setUnpackFeatures(false);
                 assembler.setUnpackPlugins(false);
             }
             getDependencyWalker().walk(assembler);
+            assembler.assemble();
 
             if (productConfiguration.includeLaunchers()) {
                 for (TargetEnvironment environment : getEnvironments()) {
@@ -207,7 +260,8 @@ public class ProductExportMojo extends AbstractTychoPackagingMojo {
             }
 
             if (createProductArchive) {
-                createProductArchive(target, null);
+                // main artifact
+                project.getArtifact().setFile(newProductArchive(target, null).create(assembler.getArchivedJars()));
             }
         }
 
@@ -393,7 +447,44 @@ public class ProductExportMojo extends AbstractTychoPackagingMojo {
         return config.toString();
     }
 
-    private void createProductArchive(File target, String classifier) throws MojoExecutionException {
+    /**
+     * Runs the exports of the environments, and returns the created archives in the order of the
+     * exports. If exports fail, the failure of the first export is reported.
+     */
+    private List<File> export(List<Callable<File>> exports, boolean parallel) throws MojoExecutionException,
+            MojoFailureException {
+        long start = System.currentTimeMillis();
+        List<File> archives;
+        try {
+            archives = WorkerPool.invokeAll(exports, parallel ? exports.size() : 1, "tycho-product-export");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while exporting the product", e);
+        } catch (ExecutionException e) {
+            rethrow(e.getCause());
+            return null;
+        }
+        if (parallel) {
+            getLog().info("Exported product for " + exports.size() + " environments in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+        return archives;
+    }
+
+    private static void rethrow(Throwable e) throws MojoExecutionException, MojoFailureException {
+        if (e instanceof MojoExecutionException) {
+            throw (MojoExecutionException) e;
+        } else if (e instanceof MojoFailureException) {
+            throw (MojoFailureException) e;
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new MojoExecutionException("Error exporting product", e);
+    }
+
+    private ProductArchive newProductArchive(File target, String classifier) throws MojoExecutionException {
         ZipArchiver zipper;
         try {
             zipper = (ZipArchiver) plexus.lookup(ZipArchiver.ROLE, "zip");
@@ -408,20 +499,36 @@ public class ProductExportMojo extends AbstractTychoPackagingMojo {
         filename.append(".zip");
 
         File destFile = new File(project.getBuild().getDirectory(), filename.toString());
+        return new ProductArchive(zipper, target, destFile);
+    }
 
-        try {
-            zipper.addDirectory(target);
-            zipper.setDestFile(destFile);
-            zipper.createArchive();
-        } catch (Exception e) {
-            throw new MojoExecutionException("Error packing product", e);
+    /**
+     * Zip archive of the product directory. Jars which were not copied into the product directory
+     * are added to the archive directly from their source location.
+     */
+    private static class ProductArchive {
+        private final ZipArchiver zipper;
+        private final File target;
+        private final File destFile;
+
+        ProductArchive(ZipArchiver zipper, File target, File destFile) {
+            this.zipper = zipper;
+            this.target = target;
+            this.destFile = destFile;
         }
 
-        if (separateEnvironments) {
-            projectHelper.attachArtifact(project, destFile, classifier);
-        } else {
-            // main artifact
-            project.getArtifact().setFile(destFile);
+        File create(Map<String, File> archivedJars) throws MojoExecutionException {
+            try {
+                zipper.addDirectory(target);
+                for (Entry<String, File> jar : archivedJars.entrySet()) {
+                    zipper.addFile(jar.getValue(), "eclipse/" + jar.getKey());
+                }
+                zipper.setDestFile(destFile);
+                zipper.createArchive();
+            } catch (Exception e) {
+                throw new MojoExecutionException("Error packing product", e);
+            }
+            return destFile;
         }
     }
 
@@ -634,7 +741,10 @@ public class ProductExportMojo extends AbstractTychoPackagingMojo {
                             pos++;
                         }
 
-                        IconExe.main(args);
+                        // IconExe is not known to be thread-safe, and environments may be exported in parallel
+                        synchronized (IconExe.class) {
+                            IconExe.main(args);
+                        }
                     } catch (Exception e) {
                         throw new MojoExecutionException("Unable to replace icons", e);
                     }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,16 +12,28 @@ package org.eclipse.tycho.packaging;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
 import org.codehaus.plexus.archiver.ArchiverException;
-import org.codehaus.plexus.archiver.gzip.GZipCompressor;
 import org.codehaus.plexus.archiver.zip.ZipArchiver;
 import org.codehaus.plexus.archiver.zip.ZipUnArchiver;
 import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
@@ -31,14 +43,20 @@ import org.eclipse.tycho.ReactorProject;
 import org.eclipse.tycho.core.ArtifactDependencyVisitor;
 import org.eclipse.tycho.core.FeatureDescription;
 import org.eclipse.tycho.core.PluginDescription;
+import org.eclipse.tycho.core.utils.WorkerPool;
 import org.eclipse.tycho.locking.facade.FileLockService;
 import org.eclipse.tycho.locking.facade.FileLocker;
 import org.eclipse.tycho.model.PluginRef;
-import org.eclipse.tycho.packaging.pack200.Pack200Archiver;
+import org.eclipse.tycho.packaging.pack200.Pack200Packer;
 
 /**
  * Assembles standard eclipse update site directory structure on local filesystem.
  * 
+ * The visitor methods only determine what needs to be copied, unpacked or packed. The actual file
+ * operations are executed on a bounded pool of worker threads by {@link #assemble()}, which needs to
+ * be called after the dependency walk. Jar files which already exist in the target with the size
+ * and timestamp of the source are not copied again.
+ * 
  * @author igor
  */
 public class UpdateSiteAssembler extends ArtifactDependencyVisitor {
@@ -47,6 +65,15 @@ public class UpdateSiteAssembler extends ArtifactDependencyVisitor {
 
     public static final String FEATURES_DIR = "features/";
 
+    /**
+     * Maximum number of archives kept in the shared cache of pack200 archives.
+     */
+    public static final String PACK200_CACHE_MAX_ENTRIES_PROPERTY = "tycho.pack200.cache.maxEntries";
+
+    private static final int DEFAULT_PACK200_CACHE_MAX_ENTRIES = 1000;
+
+    private static final String PACK200_CACHE_PATH = ".cache/tycho/pack200";
+
     private final MavenSession session;
 
     private final File target;
@@ -54,7 +81,8 @@ public class UpdateSiteAssembler extends ArtifactDependencyVisitor {
     private Map<String, String> archives;
 
     /**
-     * If true, will copy/generate pack200 archives in additional to plugin jar files.
+     * If true, will generate pack200 archives in addition to plugin jar files. Signed jars are only
+     * packed if they have been pack200 conditioned.
      */
     private boolean pack200;
 
@@ -70,6 +98,24 @@ public class UpdateSiteAssembler extends ArtifactDependencyVisitor {
      */
     private boolean unpackFeatures;
 
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+
+    private final Set<File> outputs = new HashSet<File>();
+
+    /** plugin jars for which pack200 archives are created; a plugin may be visited more than once */
+    private final Set<File> packedJars = new LinkedHashSet<File>();
+
+    private Log log;
+
+    /**
+     * Jars which are not copied into the target directory, but directly added to an archive of the
+     * target directory, by path relative to the target directory. <code>null</code> if all jars
+     * are copied.
+     */
+    private Map<String, File> archivedJars;
+
     public UpdateSiteAssembler(MavenSession session, File target) {
         this.session = session;
         this.target = target;
@@ -134,7 +180,14 @@ public class UpdateSiteAssembler extends ArtifactDependencyVisitor {
 
         String relPath = PLUGINS_DIR + bundleId + "_" + version + ".jar";
         if (archives != null && archives.containsKey(relPath)) {
-            copyUrl(archives.get(relPath), new File(target, relPath));
+            final String url = archives.get(relPath);
+            final File destination = new File(target, relPath);
+            schedule(destination, new Callable<Object>() {
+                public Object call() throws Exception {
+                    copyUrl(url, destination);
+                    return null;
+                }
+            });
             return;
         }
 
@@ -178,10 +231,10 @@ public class UpdateSiteAssembler extends ArtifactDependencyVisitor {
                 copyFile(location, outputJar);
             }
 
-            // if ( pack200 )
-            // {
-            // shipPack200( outputJar );
-            // }
+            if (pack200) {
+                // signed jars which haven't been conditioned are skipped by the packer
+                packedJars.add(outputJar);
+            }
         }
     }
 
@@ -190,9 +243,53 @@ public class UpdateSiteAssembler extends ArtifactDependencyVisitor {
         return ((pluginRef != null && pluginRef.isUnpack()) || location.isDirectory());
     }
 
-    private void unpackJar(File location, File outputJar) {
-        ZipUnArchiver unzip;
-        FileLockService fileLockService;
+    /**
+     * Executes the file operations collected by the visitor methods, and creates the pack200
+     * archives of the plugin jars if requested. Failures are reported for the first failed operation
+     * in visiting order.
+     */
+    public void assemble() {
+        try {
+            WorkerPool.invokeAll(tasks, threads, "tycho-assembler");
+            if (!packedJars.isEmpty()) {
+                File cacheDir = new File(session.getLocalRepository().getBasedir(), PACK200_CACHE_PATH);
+                new Pack200Packer(cacheDir, getPack200CacheMaxEntries(), new HashMap<String, String>(), threads, log)
+                        .pack(packedJars);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while assembling " + target, e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        } finally {
+            tasks.clear();
+            packedJars.clear();
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new RuntimeException(cause.getMessage(), cause);
+    }
+
+    private void schedule(File output, Callable<Object> task) {
+        // the same artifact may be visited more than once
+        if (outputs.add(output)) {
+            tasks.add(task);
+        }
+    }
+
+    private void unpackJar(final File location, final File outputJar) {
+        final ZipUnArchiver unzip;
+        final FileLockService fileLockService;
+        // components need to be looked up by the thread of the mojo
         try {
             unzip = (ZipUnArchiver) session.lookup(ZipUnArchiver.ROLE, "zip");
             fileLockService = (FileLockService) session.lookup(FileLockService.class.getName());
@@ -200,6 +297,16 @@ public class UpdateSiteAssembler extends ArtifactDependencyVisitor {
             throw new RuntimeException("Could not lookup required component", e);
         }
 
+        schedule(outputJar, new Callable<Object>() {
+            public Object call() {
+                unpackJar(location, outputJar, unzip, fileLockService);
+                return null;
+            }
+        });
+    }
+
+    private static void unpackJar(File location, File outputJar, ZipUnArchiver unzip,
+            FileLockService fileLockService) {
         outputJar.mkdirs();
 
         if (!outputJar.isDirectory()) {
@@ -219,15 +326,20 @@ public class UpdateSiteAssembler extends ArtifactDependencyVisitor {
         }
     }
 
-    private void copyDir(File location, File outputJar) {
-        try {
-            FileUtils.copyDirectoryStructure(location, outputJar);
-        } catch (IOException e) {
-            throw new RuntimeException("Could not copy directory", e);
-        }
+    private void copyDir(final File location, final File outputJar) {
+        schedule(outputJar, new Callable<Object>() {
+            public Object call() {
+                try {
+                    FileUtils.copyDirectoryStructure(location, outputJar);
+                } catch (IOException e) {
+                    throw new RuntimeException("Could not copy directory", e);
+                }
+                return null;
+            }
+        });
     }
 
-    private void copyUrl(String source, File destination) {
+    private static void copyUrl(String source, File destination) {
         try {
             URL url = new URL(source);
             InputStream is = url.openStream();
@@ -246,49 +358,75 @@ public class UpdateSiteAssembler extends ArtifactDependencyVisitor {
         }
     }
 
-    private void copyFile(File source, File destination) {
-        try {
-            FileUtils.copyFile(source, destination);
-        } catch (IOException e) {
-            throw new RuntimeException("Could not copy file", e);
+    private void copyFile(final File source, final File destination) {
+        if (archivedJars != null && !pack200) {
+            if (outputs.add(destination)) {
+                archivedJars.put(getRelativePath(destination), source);
+            }
+            return;
         }
+        schedule(destination, new Callable<Object>() {
+            public Object call() {
+                try {
+                    copyFileIfChanged(source, destination);
+                } catch (IOException e) {
+                    throw new RuntimeException("Could not copy file", e);
+                }
+                return null;
+            }
+        });
     }
 
-    private void shipPack200(File jar) {
-        // TODO validate if the jar has been pack200 pre-conditioned
-
-        File outputPack = new File(jar.getParentFile(), jar.getName() + ".pack");
+    private String getRelativePath(File file) {
+        return file.getAbsolutePath().substring(target.getAbsolutePath().length() + 1).replace('\\', '/');
+    }
 
-        Pack200Archiver packArchiver = new Pack200Archiver();
-        packArchiver.setSourceJar(jar);
-        packArchiver.setDestFile(outputPack);
-        try {
-            packArchiver.createArchive();
-        } catch (IOException e) {
-            throw new RuntimeException("Could not create pack200 archive", e);
+    static boolean copyFileIfChanged(File source, File destination) throws IOException {
+        long lastModified = source.lastModified();
+        if (destination.isFile() && destination.length() == source.length()
+                && destination.lastModified() == lastModified) {
+            return false;
         }
-
-        GZipCompressor gzCompressor = new GZipCompressor();
-        gzCompressor.setDestFile(new File(jar.getParentFile(), jar.getName() + ".pack.gz"));
-        gzCompressor.setSourceFile(outputPack);
+        destination.getParentFile().mkdirs();
+        FileChannel in = new FileInputStream(source).getChannel();
         try {
-            gzCompressor.execute();
-        } catch (ArchiverException e) {
-            throw new RuntimeException(e.getMessage(), e);
+            FileChannel out = new FileOutputStream(destination).getChannel();
+            try {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
         }
-
-        outputPack.delete();
+        destination.setLastModified(lastModified);
+        return true;
     }
 
-    private void packDir(File sourceDir, File targetZip) {
-        ZipArchiver archiver;
+    private void packDir(final File sourceDir, final File targetZip) {
+        final ZipArchiver archiver;
         try {
             archiver = (ZipArchiver) session.lookup(ZipArchiver.ROLE, "zip");
         } catch (ComponentLookupException e) {
             throw new RuntimeException("Unable to resolve ZipArchiver", e);
         }
 
+        schedule(targetZip, new Callable<Object>() {
+            public Object call() {
+                packDir(sourceDir, targetZip, archiver);
+                return null;
+            }
+        });
+    }
+
+    private static void packDir(File sourceDir, File targetZip, ZipArchiver archiver) {
         archiver.setDestFile(targetZip);
+        // an up-to-date check would keep entries of files which have been removed from the directory
+        archiver.setForced(true);
         try {
             archiver.addDirectory(sourceDir);
             archiver.createArchive();
@@ -314,4 +452,54 @@ public class UpdateSiteAssembler extends ArtifactDependencyVisitor {
     public void setUnpackFeatures(boolean unpack) {
         this.unpackFeatures = unpack;
     }
+
+    /**
+     * Sets the maximum number of threads used by {@link #assemble()}. Defaults to the number of
+     * available processors.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    private int getPack200CacheMaxEntries() {
+        String maxEntriesValue = session.getUserProperties().getProperty(PACK200_CACHE_MAX_ENTRIES_PROPERTY);
+        if (maxEntriesValue != null) {
+            try {
+                return Integer.parseInt(maxEntriesValue.trim());
+            } catch (NumberFormatException e) {
+                if (log != null) {
+                    log.warn("Ignoring invalid value of " + PACK200_CACHE_MAX_ENTRIES_PROPERTY + ": "
+                            + maxEntriesValue);
+                }
+            }
+        }
+        return DEFAULT_PACK200_CACHE_MAX_ENTRIES;
+    }
+
+    /**
+     * Sets the log for progress information. Nothing is logged if no log is set.
+     */
+    public void setLog(Log log) {
+        this.log = log;
+    }
+
+    /**
+     * If set to <code>true</code>, jars which would only be copied are not written to the target
+     * directory. Instead, they are returned by {@link #getArchivedJars()} so that they can be added
+     * to an archive of the target directory directly from their source location.
+     */
+    public void setArchiveJarsOnly(boolean archiveJarsOnly) {
+        this.archivedJars = archiveJarsOnly ? new LinkedHashMap<String, File>() : null;
+    }
+
+    /**
+     * Returns the source files of the jars which were not copied because of
+     * {@link #setArchiveJarsOnly(boolean)}, by path relative to the target directory.
+     */
+    public Map<String, File> getArchivedJars() {
+        if (archivedJars == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(archivedJars);
+    }
 }
@@ -53,11 +53,13 @@ public class UpdateSiteMojo extends AbstractTychoPackagingMojo {
 
             UpdateSiteAssembler assembler = new UpdateSiteAssembler(session, target);
             assembler.setPack200(site.isPack200());
+            assembler.setLog(getLog());
             if (inlineArchives) {
                 assembler.setArchives(site.getArchives());
             }
 
             getDependencyWalker().walk(assembler);
+            assembler.assemble();
             getDependencyWalker().traverseUpdateSite(site, new ArtifactDependencyVisitor() {
                 @Override
                 public boolean visitFeature(FeatureDescription feature) {
@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.packaging.pack200;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Pack200;
+import java.util.jar.Pack200.Packer;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.tycho.core.utils.DigestUtils;
+import org.eclipse.tycho.core.utils.WorkerPool;
+
+/**
+ * Creates the <code>.pack.gz</code> files for a set of jars. Packing is CPU-bound, so the jars are
+ * packed concurrently. Results are cached by the SHA-1 checksum of the jar and the packer
+ * configuration, so that jars which were packed by an earlier build, e.g. for another update site,
+ * are only copied. The cache keeps the most recently used archives up to a maximum number of
+ * entries; the modification time of a cached archive records its last use.
+ * 
+ * <p>
+ * Packing changes the byte code of the classes, so the signature of a signed jar would no longer
+ * match the unpacked jar. Signed jars are therefore only packed if they have been pack200
+ * conditioned before signing, i.e. if their <code>META-INF/eclipse.inf</code> contains
+ * <code>pack200.conditioned = true</code>. Jars excluded from packing in their
+ * <code>eclipse.inf</code> are skipped as well.
+ * </p>
+ */
+public class Pack200Packer {
+
+    private static final String PACKED_EXTENSION = ".pack.gz";
+
+    private static final String ECLIPSE_INF = "META-INF/eclipse.inf";
+
+    private enum Outcome {
+        PACKED, CACHED, SKIPPED
+    }
+
+    private final File cacheDir;
+
+    private final int maxCacheEntries;
+
+    /** names of the cached archives used by this packer, which must not be removed */
+    private final Set<String> usedCacheEntries = Collections.synchronizedSet(new HashSet<String>());
+
+    private final Map<String, String> properties;
+
+    private final int threads;
+
+    private final Log log;
+
+    /**
+     * @param cacheDir
+     *            directory for the cached <code>.pack.gz</code> files, or <code>null</code> to
+     *            disable the cache
+     * @param maxCacheEntries
+     *            the maximum number of archives kept in the cache; archives used by this packer
+     *            are kept even if there are more
+     * @param properties
+     *            the {@link Packer#properties() properties} of the packer
+     * @param threads
+     *            the maximum number of jars packed in parallel
+     * @param log
+     *            the log for timing information, or <code>null</code>
+     */
+    public Pack200Packer(File cacheDir, int maxCacheEntries, Map<String, String> properties, int threads, Log log) {
+        this.cacheDir = cacheDir;
+        this.maxCacheEntries = maxCacheEntries;
+        this.properties = new TreeMap<String, String>(properties);
+        this.threads = Math.max(1, threads);
+        this.log = log;
+    }
+
+    /**
+     * Creates the file <code>&lt;jar&gt;.pack.gz</code> next to each of the given jars, unless the
+     * jar must not be packed.
+     */
+    public void pack(Collection<File> jars) throws IOException {
+        // each jar must only be packed once, otherwise the threads would write the same file
+        Set<File> uniqueJars = new LinkedHashSet<File>();
+        for (File jar : jars) {
+            uniqueJars.add(jar.getCanonicalFile());
+        }
+        if (uniqueJars.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        final Map<Outcome, AtomicInteger> outcomes = new EnumMap<Outcome, AtomicInteger>(Outcome.class);
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, new AtomicInteger());
+        }
+
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(uniqueJars.size());
+        for (final File jar : uniqueJars) {
+            tasks.add(new Callable<Object>() {
+                public Object call() throws IOException {
+                    outcomes.get(pack(jar)).incrementAndGet();
+                    return null;
+                }
+            });
+        }
+        try {
+            WorkerPool.invokeAll(tasks, threads, "tycho-pack200");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while packing jars", e);
+        } catch (ExecutionException e) {
+            // the failure of the first jar
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+        if (cacheDir != null) {
+            removeLeastRecentlyUsedCacheEntries();
+        }
+
+        if (log != null) {
+            log.info("Packed " + (uniqueJars.size() - outcomes.get(Outcome.SKIPPED).get()) + " jars ("
+                    + outcomes.get(Outcome.CACHED).get() + " from cache, " + outcomes.get(Outcome.SKIPPED).get()
+                    + " skipped) in " + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    private Outcome pack(File jar) throws IOException {
+        long start = System.currentTimeMillis();
+        File packedJar = new File(jar.getParentFile(), jar.getName() + PACKED_EXTENSION);
+
+        String skipReason = getSkipReason(jar);
+        if (skipReason != null) {
+            // don't leave the archive of an earlier build
+            packedJar.delete();
+            if (log != null) {
+                log.info("Not packing " + jar.getName() + ": " + skipReason);
+            }
+            return Outcome.SKIPPED;
+        }
+
+        if (cacheDir == null) {
+            packAndCompress(jar, packedJar);
+            logTime(jar, "Packed", start);
+            return Outcome.PACKED;
+        }
+
+        File cachedJar = new File(cacheDir, getCacheKey(jar) + PACKED_EXTENSION);
+        usedCacheEntries.add(cachedJar.getName());
+        boolean fromCache = cachedJar.isFile();
+        if (fromCache) {
+            cachedJar.setLastModified(System.currentTimeMillis());
+        } else {
+            cacheDir.mkdirs();
+            // a concurrent build may pack the same jar, so only complete files are renamed into place
+            File tempFile = File.createTempFile("pack", ".tmp", cacheDir);
+            try {
+                packAndCompress(jar, tempFile);
+                if (!tempFile.renameTo(cachedJar) && !cachedJar.isFile()) {
+                    throw new IOException("Could not move packed jar to " + cachedJar);
+                }
+            } finally {
+                tempFile.delete();
+            }
+        }
+        try {
+            FileUtils.copyFile(cachedJar, packedJar);
+        } catch (IOException e) {
+            if (cachedJar.isFile()) {
+                throw e;
+            }
+            // removed from the cache by a concurrent build
+            packAndCompress(jar, packedJar);
+            fromCache = false;
+        }
+        logTime(jar, fromCache ? "Copied cached pack200 archive of" : "Packed", start);
+        return fromCache ? Outcome.CACHED : Outcome.PACKED;
+    }
+
+    /**
+     * Removes the least recently used archives from the cache until it has at most the maximum
+     * number of entries. Archives used by this packer are kept.
+     */
+    private void removeLeastRecentlyUsedCacheEntries() {
+        File[] cachedJars = cacheDir.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.getName().endsWith(PACKED_EXTENSION);
+            }
+        });
+        if (cachedJars == null || cachedJars.length <= maxCacheEntries) {
+            return;
+        }
+        final Map<File, Long> lastUse = new HashMap<File, Long>();
+        for (File cachedJar : cachedJars) {
+            lastUse.put(cachedJar, cachedJar.lastModified());
+        }
+        Arrays.sort(cachedJars, new Comparator<File>() {
+            public int compare(File o1, File o2) {
+                return lastUse.get(o1).compareTo(lastUse.get(o2));
+            }
+        });
+        int entriesToRemove = cachedJars.length - maxCacheEntries;
+        for (int i = 0; i < cachedJars.length && entriesToRemove > 0; i++) {
+            if (usedCacheEntries.contains(cachedJars[i].getName())) {
+                continue;
+            }
+            // another build may have removed the archive already
+            cachedJars[i].delete();
+            entriesToRemove--;
+        }
+    }
+
+    /**
+     * Returns why the given jar must not be packed, or <code>null</code> if it can be packed.
+     */
+    static String getSkipReason(File jar) throws IOException {
+        JarFile jarFile = new JarFile(jar, false);
+        try {
+            Properties eclipseInf = new Properties();
+            ZipEntry eclipseInfEntry = jarFile.getEntry(ECLIPSE_INF);
+            if (eclipseInfEntry != null) {
+                InputStream in = jarFile.getInputStream(eclipseInfEntry);
+                try {
+                    eclipseInf.load(in);
+                } finally {
+                    in.close();
+                }
+            }
+            if (isTrue(eclipseInf, "jarprocessor.exclude") || isTrue(eclipseInf, "jarprocessor.exclude.pack")) {
+                return "excluded in " + ECLIPSE_INF;
+            }
+            if (isSigned(jarFile) && !isTrue(eclipseInf, "pack200.conditioned")) {
+                return "jar is signed, but has not been pack200 conditioned";
+            }
+            return null;
+        } finally {
+            jarFile.close();
+        }
+    }
+
+    private static boolean isTrue(Properties properties, String key) {
+        return Boolean.parseBoolean(properties.getProperty(key, "").trim());
+    }
+
+    private static boolean isSigned(JarFile jarFile) {
+        for (Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements();) {
+            String name = entries.nextElement().getName().toUpperCase(Locale.ENGLISH);
+            if (name.startsWith("META-INF/") && name.indexOf('/', "META-INF/".length()) < 0
+                    && name.endsWith(".SF")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void packAndCompress(File jar, File destination) throws IOException {
+        // packers are not thread-safe
+        Packer packer = Pack200.newPacker();
+        packer.properties().putAll(properties);
+
+        JarFile jarFile = new JarFile(jar);
+        try {
+            OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(destination)));
+            try {
+                packer.pack(jarFile, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            jarFile.close();
+        }
+    }
+
+    private String getCacheKey(File jar) throws IOException {
+        MessageDigest digest = DigestUtils.newDigest(DigestUtils.SHA1);
+        DigestUtils.update(digest, jar);
+        // the packed format depends on the packer implementation
+        DigestUtils.update(digest, System.getProperty("java.version"));
+        DigestUtils.update(digest, properties.toString());
+        return DigestUtils.toHex(digest.digest());
+    }
+
+    private void logTime(File jar, String action, long start) {
+        if (log != null && log.isDebugEnabled()) {
+            log.debug(action + " " + jar.getName() + " in " + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+}
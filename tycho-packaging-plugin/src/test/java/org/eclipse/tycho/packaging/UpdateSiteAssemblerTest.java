@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.packaging;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.tycho.ArtifactKey;
+import org.eclipse.tycho.core.PluginDescription;
+import org.eclipse.tycho.core.osgitools.DefaultArtifactKey;
+import org.eclipse.tycho.core.osgitools.DefaultPluginDescription;
+import org.eclipse.tycho.model.PluginRef;
+import org.eclipse.tycho.testing.AbstractTychoMojoTestCase;
+import org.sonatype.aether.util.DefaultRepositorySystemSession;
+
+public class UpdateSiteAssemblerTest extends AbstractTychoMojoTestCase {
+
+    private File basedir;
+
+    private File target;
+
+    private MavenSession session;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        basedir = new File("target/update-site-assembler-test/" + getName()).getAbsoluteFile();
+        FileUtils.deleteDirectory(basedir);
+        basedir.mkdirs();
+        target = new File(basedir, "site");
+        session = new MavenSession(getContainer(), new DefaultRepositorySystemSession(),
+                newMavenExecutionRequest(new File(basedir, "pom.xml")), new DefaultMavenExecutionResult());
+    }
+
+    public void testFilesAreWrittenByAssemble() throws Exception {
+        File jar = createJar(new File(basedir, "a.jar"), "a.txt");
+        UpdateSiteAssembler assembler = newAssembler();
+
+        assembler.visitPlugin(plugin("a", jar, null));
+        File outputJar = new File(target, "plugins/a_1.0.0.jar");
+        assertFalse(outputJar.exists());
+
+        assembler.assemble();
+        assertTrue(outputJar.isFile());
+        assertEquals(jar.length(), outputJar.length());
+        assertEquals(jar.lastModified(), outputJar.lastModified());
+    }
+
+    public void testPluginsAreAssembledConcurrently() throws Exception {
+        UpdateSiteAssembler assembler = newAssembler();
+        assembler.setThreads(4);
+
+        for (int i = 0; i < 10; i++) {
+            File jar = createJar(new File(basedir, "p" + i + ".jar"), "p" + i + ".txt");
+            assembler.visitPlugin(plugin("p" + i, jar, null));
+        }
+        assembler.assemble();
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(new File(target, "plugins/p" + i + "_1.0.0.jar").isFile());
+        }
+    }
+
+    public void testUnchangedFileIsNotCopiedAgain() throws Exception {
+        File source = createJar(new File(basedir, "a.jar"), "a.txt");
+        File destination = new File(target, "a.jar");
+
+        assertTrue(UpdateSiteAssembler.copyFileIfChanged(source, destination));
+        assertFalse(UpdateSiteAssembler.copyFileIfChanged(source, destination));
+
+        createJar(source, "a.txt", "b.txt");
+        source.setLastModified(destination.lastModified() + 2000);
+        assertTrue(UpdateSiteAssembler.copyFileIfChanged(source, destination));
+        assertEquals(source.length(), destination.length());
+    }
+
+    public void testDirectoryPluginIsPacked() throws Exception {
+        File dir = new File(basedir, "a");
+        FileUtils.fileWrite(new File(dir, "a.txt").getAbsolutePath(), "a");
+        FileUtils.fileWrite(new File(dir, "b.txt").getAbsolutePath(), "b");
+        assemble(plugin("a", dir, null));
+
+        File outputJar = new File(target, "plugins/a_1.0.0.jar");
+        assertZipEntries(outputJar, "a.txt", "b.txt");
+
+        // the zip of a previous build must not keep removed files
+        new File(dir, "b.txt").delete();
+        assemble(plugin("a", dir, null));
+
+        assertZipEntries(outputJar, "a.txt");
+    }
+
+    public void testJarIsUnpacked() throws Exception {
+        File jar = createJar(new File(basedir, "a.jar"), "a.txt");
+        PluginRef pluginRef = new PluginRef("plugin");
+        pluginRef.setUnpack(true);
+
+        UpdateSiteAssembler assembler = newAssembler();
+        assembler.setUnpackPlugins(true);
+        assembler.visitPlugin(plugin("a", jar, pluginRef));
+        assembler.assemble();
+
+        assertTrue(new File(target, "plugins/a_1.0.0/a.txt").isFile());
+    }
+
+    public void testFirstFailureInVisitingOrderIsReported() throws Exception {
+        UpdateSiteAssembler assembler = newAssembler();
+        assembler.setThreads(2);
+        assembler.visitPlugin(plugin("a", new File(basedir, "missing1.jar"), null));
+        assembler.visitPlugin(plugin("b", new File(basedir, "missing2.jar"), null));
+
+        try {
+            assembler.assemble();
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause().getMessage().contains("missing1.jar"));
+        }
+    }
+
+    public void testArchiveJarsOnly() throws Exception {
+        File jar = createJar(new File(basedir, "a.jar"), "a.txt");
+        UpdateSiteAssembler assembler = newAssembler();
+        assembler.setArchiveJarsOnly(true);
+
+        assembler.visitPlugin(plugin("a", jar, null));
+        assembler.assemble();
+
+        assertEquals(Collections.singletonMap("plugins/a_1.0.0.jar", jar), assembler.getArchivedJars());
+        assertFalse(new File(target, "plugins/a_1.0.0.jar").exists());
+    }
+
+    private UpdateSiteAssembler newAssembler() {
+        return new UpdateSiteAssembler(session, target);
+    }
+
+    private void assemble(PluginDescription plugin) {
+        UpdateSiteAssembler assembler = newAssembler();
+        assembler.visitPlugin(plugin);
+        assembler.assemble();
+    }
+
+    private static PluginDescription plugin(String id, File location, PluginRef pluginRef) {
+        DefaultArtifactKey key = new DefaultArtifactKey(ArtifactKey.TYPE_ECLIPSE_PLUGIN, id, "1.0.0");
+        return new DefaultPluginDescription(key, location, null, null, pluginRef, null);
+    }
+
+    private static File createJar(File file, String... entries) throws IOException {
+        file.getParentFile().mkdirs();
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (String entry : entries) {
+                out.putNextEntry(new ZipEntry(entry));
+                out.write(entry.getBytes("UTF-8"));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static void assertZipEntries(File file, String... entries) throws IOException {
+        ZipFile zip = new ZipFile(file);
+        try {
+            assertEquals(entries.length, zip.size());
+            for (String entry : entries) {
+                assertNotNull(zip.getEntry(entry));
+            }
+        } finally {
+            zip.close();
+        }
+    }
+}
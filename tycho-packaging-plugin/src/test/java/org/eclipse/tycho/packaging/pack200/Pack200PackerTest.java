@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.packaging.pack200;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Pack200;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+public class Pack200PackerTest extends TestCase {
+
+    private File basedir;
+
+    private File cacheDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        basedir = new File("target/pack200-test/" + getName()).getAbsoluteFile();
+        FileUtils.deleteDirectory(basedir);
+        basedir.mkdirs();
+        cacheDir = new File(basedir, "cache");
+    }
+
+    public void testPack() throws Exception {
+        File jar = createJar(new File(basedir, "a.jar"), "a.txt", "a");
+
+        newPacker(cacheDir).pack(Arrays.asList(jar));
+
+        File unpackedJar = unpack(new File(basedir, "a.jar.pack.gz"));
+        JarFile jarFile = new JarFile(unpackedJar);
+        try {
+            assertNotNull(jarFile.getEntry("a.txt"));
+        } finally {
+            jarFile.close();
+        }
+    }
+
+    public void testPackWithoutCache() throws Exception {
+        File jar = createJar(new File(basedir, "a.jar"), "a.txt", "a");
+
+        newPacker(null).pack(Arrays.asList(jar));
+
+        assertTrue(new File(basedir, "a.jar.pack.gz").isFile());
+        assertFalse(cacheDir.exists());
+    }
+
+    public void testPackedJarIsTakenFromCache() throws Exception {
+        File jar = createJar(new File(basedir, "site1/a.jar"), "a.txt", "a");
+        newPacker(cacheDir).pack(Arrays.asList(jar));
+        File[] cacheEntries = cacheDir.listFiles();
+        assertEquals(1, cacheEntries.length);
+
+        // replace the cache entry to see if it is used for a jar with the same content
+        FileUtils.fileWrite(cacheEntries[0].getAbsolutePath(), "cached");
+        File otherJar = new File(basedir, "site2/a.jar");
+        FileUtils.copyFile(jar, otherJar);
+        newPacker(cacheDir).pack(Arrays.asList(otherJar));
+
+        assertEquals("cached", FileUtils.fileRead(new File(basedir, "site2/a.jar.pack.gz")));
+    }
+
+    public void testCacheKeyDependsOnProperties() throws Exception {
+        File jar = createJar(new File(basedir, "a.jar"), "a.txt", "a");
+        newPacker(cacheDir).pack(Arrays.asList(jar));
+
+        HashMap<String, String> properties = new HashMap<String, String>();
+        properties.put(Pack200.Packer.EFFORT, "9");
+        new Pack200Packer(cacheDir, 10, properties, 1, null).pack(Arrays.asList(jar));
+
+        assertEquals(2, cacheDir.listFiles().length);
+    }
+
+    public void testLeastRecentlyUsedArchivesAreRemoved() throws Exception {
+        File jarA = createJar(new File(basedir, "a.jar"), "a.txt", "a");
+        File jarB = createJar(new File(basedir, "b.jar"), "b.txt", "b");
+        File jarC = createJar(new File(basedir, "c.jar"), "c.txt", "c");
+        newPacker(cacheDir, 2).pack(Arrays.asList(jarA));
+        newPacker(cacheDir, 2).pack(Arrays.asList(jarB));
+        File cachedA = getCacheEntryFor(new File(basedir, "a.jar.pack.gz"));
+        File cachedB = getCacheEntryFor(new File(basedir, "b.jar.pack.gz"));
+        cachedA.setLastModified(System.currentTimeMillis() - 20000);
+        cachedB.setLastModified(System.currentTimeMillis() - 10000);
+
+        // using a refreshes its last use, so b is the least recently used archive
+        newPacker(cacheDir, 2).pack(Arrays.asList(jarA, jarC));
+
+        assertEquals(2, cacheDir.listFiles().length);
+        assertTrue(cachedA.isFile());
+        assertFalse(cachedB.exists());
+    }
+
+    public void testArchivesUsedByPackerAreKept() throws Exception {
+        File jarA = createJar(new File(basedir, "a.jar"), "a.txt", "a");
+        File jarB = createJar(new File(basedir, "b.jar"), "b.txt", "b");
+
+        newPacker(cacheDir, 1).pack(Arrays.asList(jarA, jarB));
+
+        assertEquals(2, cacheDir.listFiles().length);
+    }
+
+    public void testJarsListedTwiceArePackedOnce() throws Exception {
+        File jar = createJar(new File(basedir, "a.jar"), "a.txt", "a");
+        File otherJar = createJar(new File(basedir, "b.jar"), "b.txt", "b");
+
+        newPacker(cacheDir).pack(Arrays.asList(jar, otherJar, new File(basedir, "./a.jar"), jar));
+
+        assertTrue(new File(basedir, "a.jar.pack.gz").isFile());
+        assertTrue(new File(basedir, "b.jar.pack.gz").isFile());
+        assertEquals(2, cacheDir.listFiles().length);
+    }
+
+    public void testSignedJarIsSkipped() throws Exception {
+        File jar = createJar(new File(basedir, "a.jar"), "META-INF/SIGNER.SF", "Signature-Version: 1.0");
+        File staleArchive = new File(basedir, "a.jar.pack.gz");
+        FileUtils.fileWrite(staleArchive.getAbsolutePath(), "stale");
+
+        assertNotNull(Pack200Packer.getSkipReason(jar));
+        newPacker(cacheDir).pack(Arrays.asList(jar));
+
+        assertFalse(staleArchive.exists());
+    }
+
+    public void testConditionedSignedJarIsPacked() throws Exception {
+        File jar = createJar(new File(basedir, "a.jar"), "META-INF/SIGNER.SF", "Signature-Version: 1.0",
+                "META-INF/eclipse.inf", "pack200.conditioned = true");
+
+        assertNull(Pack200Packer.getSkipReason(jar));
+        newPacker(cacheDir).pack(Arrays.asList(jar));
+
+        assertTrue(new File(basedir, "a.jar.pack.gz").isFile());
+    }
+
+    public void testExcludedJarIsSkipped() throws Exception {
+        File jar = createJar(new File(basedir, "a.jar"), "META-INF/eclipse.inf", "jarprocessor.exclude.pack=true");
+
+        newPacker(cacheDir).pack(Arrays.asList(jar));
+
+        assertFalse(new File(basedir, "a.jar.pack.gz").exists());
+    }
+
+    public void testSignatureFileInSubdirectoryIsNoSignature() throws Exception {
+        File jar = createJar(new File(basedir, "a.jar"), "META-INF/sub/SIGNER.SF", "");
+
+        assertNull(Pack200Packer.getSkipReason(jar));
+    }
+
+    private static Pack200Packer newPacker(File cacheDir) {
+        return newPacker(cacheDir, 10);
+    }
+
+    private static Pack200Packer newPacker(File cacheDir, int maxCacheEntries) {
+        return new Pack200Packer(cacheDir, maxCacheEntries, Collections.<String, String> emptyMap(), 2, null);
+    }
+
+    private File getCacheEntryFor(File packedJar) throws IOException {
+        for (File cacheEntry : cacheDir.listFiles()) {
+            if (FileUtils.contentEquals(cacheEntry, packedJar)) {
+                return cacheEntry;
+            }
+        }
+        throw new AssertionError("No cache entry for " + packedJar);
+    }
+
+    /**
+     * Creates a jar with the given entries, given as name followed by content.
+     */
+    private static File createJar(File file, String... entries) throws IOException {
+        file.getParentFile().mkdirs();
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        try {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry(entries[i]));
+                out.write(entries[i + 1].getBytes("UTF-8"));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static File unpack(File packedJar) throws IOException {
+        File unpackedJar = new File(packedJar.getParentFile(), "unpacked.jar");
+        GZIPInputStream in = new GZIPInputStream(new FileInputStream(packedJar));
+        try {
+            JarOutputStream out = new JarOutputStream(new FileOutputStream(unpackedJar));
+            try {
+                Pack200.newUnpacker().unpack(in, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        return unpackedJar;
+    }
+}
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.versions.engine;
+
+import java.util.Set;
+
+/**
+ * Optional interface for {@link MetadataManipulator}s. If all manipulators implement it, the
+ * {@link VersionsEngine} only passes version changes to the projects which reference the changed
+ * artifact. Otherwise, all changes are passed to all projects.
+ */
+public interface ReferencedIdsProvider {
+    /**
+     * Adds the ids of the artifacts referenced by the metadata of the project which this
+     * manipulator may update. Version changes of other artifacts are not passed to
+     * {@link MetadataManipulator#applyChange(ProjectMetadata, VersionChange, Set)} and
+     * {@link MetadataManipulator#addMoreChanges(ProjectMetadata, VersionChange, Set)} for the
+     * project.
+     */
+    public void addReferencedIds(ProjectMetadata project, Set<String> ids);
+}
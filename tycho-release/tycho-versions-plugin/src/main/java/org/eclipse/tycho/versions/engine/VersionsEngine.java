@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,14 +13,21 @@ package org.eclipse.tycho.versions.engine;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.logging.Logger;
+import org.eclipse.tycho.core.utils.WorkerPool;
 import org.eclipse.tycho.versions.manipulation.PomManipulator;
 import org.eclipse.tycho.versions.pom.GAV;
 import org.eclipse.tycho.versions.pom.MutablePomFile;
@@ -41,7 +48,7 @@ public class VersionsEngine {
 
     private Collection<ProjectMetadata> projects;
 
-    private Set<VersionChange> changes = new LinkedHashSet<VersionChange>();
+    private PendingChanges changes = new PendingChanges();
 
     public void setProjects(Collection<ProjectMetadata> projects) {
         this.projects = projects;
@@ -67,21 +74,39 @@ public class VersionsEngine {
     }
 
     public void apply() throws IOException {
-        // collecting secondary changes
-        boolean newChanges = true;
-        while (newChanges) {
-            newChanges = false;
-            for (VersionChange change : new ArrayList<VersionChange>(changes)) {
-                for (ProjectMetadata project : projects) {
-                    for (MetadataManipulator manipulator : manipulators) {
-                        newChanges |= manipulator.addMoreChanges(project, change, changes);
-                    }
+        Map<String, List<ProjectMetadata>> index = indexProjects();
+
+        // collecting secondary changes; only projects which reference the changed artifact can be affected
+        VersionChange change;
+        while ((change = changes.nextPending()) != null) {
+            for (ProjectMetadata project : getReferencingProjects(index, change)) {
+                for (MetadataManipulator manipulator : manipulators) {
+                    manipulator.addMoreChanges(project, change, changes);
                 }
             }
         }
 
+        // assign the changes to the referencing projects, in the order of the changes
+        Map<ProjectMetadata, List<VersionChange>> projectChanges = new HashMap<ProjectMetadata, List<VersionChange>>();
+        for (VersionChange versionChange : changes) {
+            for (ProjectMetadata project : getReferencingProjects(index, versionChange)) {
+                List<VersionChange> list = projectChanges.get(project);
+                if (list == null) {
+                    list = new ArrayList<VersionChange>();
+                    projectChanges.put(project, list);
+                }
+                list.add(versionChange);
+            }
+        }
+
         // make changes to the metadata
+        List<ProjectMetadata> changedProjects = new ArrayList<ProjectMetadata>();
         for (ProjectMetadata project : projects) {
+            List<VersionChange> candidates = projectChanges.get(project);
+            if (candidates == null) {
+                continue;
+            }
+            changedProjects.add(project);
             logger.info("Making changes in " + project.getBasedir().getCanonicalPath());
             Set<VersionChange> applied = new HashSet<VersionChange>();
 
@@ -89,29 +114,98 @@ public class VersionsEngine {
             GAV parent = pom != null ? pom.getParent() : null;
 
             // apply change to pom <parent> first, this will avoid unnecessary addition of project/version element
-            for (VersionChange change : changes) {
-                if (parent != null && PomManipulator.isGavEquals(parent, change)) {
-                    applied.add(change);
-                    applyChange(project, change);
+            for (VersionChange versionChange : candidates) {
+                if (parent != null && PomManipulator.isGavEquals(parent, versionChange)) {
+                    applied.add(versionChange);
+                    applyChange(project, versionChange);
                 }
             }
 
             // apply all other changes
-            for (VersionChange change : changes) {
-                if (!applied.contains(change)) {
-                    applyChange(project, change);
+            for (VersionChange versionChange : candidates) {
+                if (!applied.contains(versionChange)) {
+                    applyChange(project, versionChange);
                 }
             }
 
         }
 
         // write changes to the disk
+        writeMetadata(changedProjects);
+    }
+
+    /**
+     * Returns the projects by the ids of the artifacts they reference, or <code>null</code> if not
+     * all manipulators provide the referenced ids.
+     */
+    private Map<String, List<ProjectMetadata>> indexProjects() {
+        for (MetadataManipulator manipulator : manipulators) {
+            if (!(manipulator instanceof ReferencedIdsProvider)) {
+                return null;
+            }
+        }
+        Map<String, List<ProjectMetadata>> index = new HashMap<String, List<ProjectMetadata>>();
         for (ProjectMetadata project : projects) {
+            Set<String> ids = new HashSet<String>();
             for (MetadataManipulator manipulator : manipulators) {
-                manipulator.writeMetadata(project);
+                ((ReferencedIdsProvider) manipulator).addReferencedIds(project, ids);
+            }
+            for (String id : ids) {
+                List<ProjectMetadata> referencingProjects = index.get(id);
+                if (referencingProjects == null) {
+                    referencingProjects = new ArrayList<ProjectMetadata>();
+                    index.put(id, referencingProjects);
+                }
+                referencingProjects.add(project);
             }
         }
+        return index;
+    }
 
+    private Collection<ProjectMetadata> getReferencingProjects(Map<String, List<ProjectMetadata>> index,
+            VersionChange change) {
+        if (index == null) {
+            return projects;
+        }
+        List<ProjectMetadata> referencingProjects = index.get(change.getArtifactId());
+        if (referencingProjects == null) {
+            return Collections.emptyList();
+        }
+        return referencingProjects;
+    }
+
+    private void writeMetadata(List<ProjectMetadata> changedProjects) throws IOException {
+        if (changedProjects.isEmpty()) {
+            return;
+        }
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(changedProjects.size());
+        for (final ProjectMetadata project : changedProjects) {
+            tasks.add(new Callable<Object>() {
+                public Object call() throws IOException {
+                    for (MetadataManipulator manipulator : manipulators) {
+                        manipulator.writeMetadata(project);
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            WorkerPool.invokeAll(tasks, Runtime.getRuntime().availableProcessors(), "tycho-versions-writer");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing project metadata");
+        } catch (ExecutionException e) {
+            // report the failure of the first project
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
     }
 
     private void applyChange(ProjectMetadata project, VersionChange change) {
@@ -131,4 +225,26 @@ public class VersionsEngine {
         return null;
     }
 
+    /**
+     * Set of version changes which keeps track of the changes which have not been propagated yet.
+     * Changes added by the manipulators are automatically scheduled for propagation.
+     */
+    private static class PendingChanges extends LinkedHashSet<VersionChange> {
+        private static final long serialVersionUID = 1L;
+
+        private final LinkedList<VersionChange> pending = new LinkedList<VersionChange>();
+
+        @Override
+        public boolean add(VersionChange change) {
+            if (super.add(change)) {
+                pending.add(change);
+                return true;
+            }
+            return false;
+        }
+
+        VersionChange nextPending() {
+            return pending.poll();
+        }
+    }
 }
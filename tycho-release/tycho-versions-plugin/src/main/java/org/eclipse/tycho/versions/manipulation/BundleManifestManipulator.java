@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -18,10 +18,20 @@ import org.codehaus.plexus.component.annotations.Component;
 import org.eclipse.tycho.versions.bundle.MutableBundleManifest;
 import org.eclipse.tycho.versions.engine.MetadataManipulator;
 import org.eclipse.tycho.versions.engine.ProjectMetadata;
+import org.eclipse.tycho.versions.engine.ReferencedIdsProvider;
 import org.eclipse.tycho.versions.engine.VersionChange;
 
 @Component(role = MetadataManipulator.class, hint = "bundle-manifest")
-public class BundleManifestManipulator extends AbstractMetadataManipulator {
+public class BundleManifestManipulator extends AbstractMetadataManipulator implements ReferencedIdsProvider {
+
+    public void addReferencedIds(ProjectMetadata project, Set<String> ids) {
+        if (isBundle(project)) {
+            String symbolicName = getBundleManifest(project).getSymbolicName();
+            if (symbolicName != null) {
+                ids.add(symbolicName);
+            }
+        }
+    }
 
     public void applyChange(ProjectMetadata project, VersionChange change, Set<VersionChange> allChanges) {
         if (isBundle(project)) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -19,11 +19,19 @@ import org.eclipse.tycho.ArtifactKey;
 import org.eclipse.tycho.model.ProductConfiguration;
 import org.eclipse.tycho.versions.engine.MetadataManipulator;
 import org.eclipse.tycho.versions.engine.ProjectMetadata;
+import org.eclipse.tycho.versions.engine.ReferencedIdsProvider;
 import org.eclipse.tycho.versions.engine.VersionChange;
 import org.eclipse.tycho.versions.pom.MutablePomFile;
 
 @Component(role = MetadataManipulator.class, hint = "eclipse-application")
-public class EclipseApplicationProductFileManipulator extends ProductFileManipulator {
+public class EclipseApplicationProductFileManipulator extends ProductFileManipulator implements
+        ReferencedIdsProvider {
+
+    public void addReferencedIds(ProjectMetadata project, Set<String> ids) {
+        if (isEclipseApplication(project)) {
+            addReferencedIds(project, getProductFile(project), ids);
+        }
+    }
 
     public void applyChange(ProjectMetadata project, VersionChange change, Set<VersionChange> allChanges) {
         if (isEclipseApplication(project)) {
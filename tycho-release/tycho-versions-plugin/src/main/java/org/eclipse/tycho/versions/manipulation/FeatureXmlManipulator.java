@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,10 +20,24 @@ import org.eclipse.tycho.model.FeatureRef;
 import org.eclipse.tycho.model.PluginRef;
 import org.eclipse.tycho.versions.engine.MetadataManipulator;
 import org.eclipse.tycho.versions.engine.ProjectMetadata;
+import org.eclipse.tycho.versions.engine.ReferencedIdsProvider;
 import org.eclipse.tycho.versions.engine.VersionChange;
 
 @Component(role = MetadataManipulator.class, hint = "eclipse-feature")
-public class FeatureXmlManipulator extends AbstractMetadataManipulator {
+public class FeatureXmlManipulator extends AbstractMetadataManipulator implements ReferencedIdsProvider {
+    public void addReferencedIds(ProjectMetadata project, Set<String> ids) {
+        if (isFeature(project)) {
+            Feature feature = getFeatureXml(project);
+            ids.add(feature.getId());
+            for (FeatureRef ref : feature.getIncludedFeatures()) {
+                ids.add(ref.getId());
+            }
+            for (PluginRef plugin : feature.getPlugins()) {
+                ids.add(plugin.getId());
+            }
+        }
+    }
+
     public void applyChange(ProjectMetadata project, VersionChange change, Set<VersionChange> allChanges) {
         if (isFeature(project)) {
             Feature feature = getFeatureXml(project);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -19,6 +19,7 @@ import java.util.Set;
 import org.codehaus.plexus.component.annotations.Component;
 import org.eclipse.tycho.versions.engine.MetadataManipulator;
 import org.eclipse.tycho.versions.engine.ProjectMetadata;
+import org.eclipse.tycho.versions.engine.ReferencedIdsProvider;
 import org.eclipse.tycho.versions.engine.VersionChange;
 import org.eclipse.tycho.versions.engine.Versions;
 import org.eclipse.tycho.versions.pom.DependencyManagement;
@@ -26,7 +27,25 @@ import org.eclipse.tycho.versions.pom.GAV;
 import org.eclipse.tycho.versions.pom.MutablePomFile;
 
 @Component(role = MetadataManipulator.class, hint = "pom")
-public class PomManipulator extends AbstractMetadataManipulator {
+public class PomManipulator extends AbstractMetadataManipulator implements ReferencedIdsProvider {
+    public void addReferencedIds(ProjectMetadata project, Set<String> ids) {
+        MutablePomFile pom = project.getMetadata(MutablePomFile.class);
+        ids.add(pom.getArtifactId());
+        GAV parent = pom.getParent();
+        if (parent != null) {
+            ids.add(parent.getArtifactId());
+        }
+        for (GAV dependency : pom.getDependencies()) {
+            ids.add(dependency.getArtifactId());
+        }
+        DependencyManagement dependencyManagment = pom.getDependencyManagement();
+        if (dependencyManagment != null) {
+            for (GAV dependency : dependencyManagment.getDependencies()) {
+                ids.add(dependency.getArtifactId());
+            }
+        }
+    }
+
     @Override
     public boolean addMoreChanges(ProjectMetadata project, VersionChange change, Set<VersionChange> allChanges) {
         MutablePomFile pom = project.getMetadata(MutablePomFile.class);
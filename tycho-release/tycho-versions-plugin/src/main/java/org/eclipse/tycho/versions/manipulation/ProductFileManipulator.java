@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.tycho.versions.manipulation;
 
+import java.util.Set;
+
 import org.eclipse.tycho.model.FeatureRef;
 import org.eclipse.tycho.model.PluginRef;
 import org.eclipse.tycho.model.ProductConfiguration;
@@ -19,6 +21,17 @@ import org.eclipse.tycho.versions.pom.MutablePomFile;
 
 public abstract class ProductFileManipulator extends AbstractMetadataManipulator {
 
+    protected void addReferencedIds(ProjectMetadata project, ProductConfiguration product, Set<String> ids) {
+        // the product version changes with the version of the project
+        ids.add(project.getMetadata(MutablePomFile.class).getArtifactId());
+        for (PluginRef plugin : product.getPlugins()) {
+            ids.add(plugin.getId());
+        }
+        for (FeatureRef feature : product.getFeatures()) {
+            ids.add(feature.getId());
+        }
+    }
+
     protected void applyChangeToProduct(ProjectMetadata project, ProductConfiguration product, String productFileName,
             VersionChange change) {
         if (isSameProject(project, change.getProject())) {
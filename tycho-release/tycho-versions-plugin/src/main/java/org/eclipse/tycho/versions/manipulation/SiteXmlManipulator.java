@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,11 +22,20 @@ import org.eclipse.tycho.model.UpdateSite;
 import org.eclipse.tycho.model.UpdateSite.SiteFeatureRef;
 import org.eclipse.tycho.versions.engine.MetadataManipulator;
 import org.eclipse.tycho.versions.engine.ProjectMetadata;
+import org.eclipse.tycho.versions.engine.ReferencedIdsProvider;
 import org.eclipse.tycho.versions.engine.VersionChange;
 import org.eclipse.tycho.versions.pom.MutablePomFile;
 
 @Component(role = MetadataManipulator.class, hint = "eclipse-update-site")
-public class SiteXmlManipulator extends AbstractMetadataManipulator {
+public class SiteXmlManipulator extends AbstractMetadataManipulator implements ReferencedIdsProvider {
+
+    public void addReferencedIds(ProjectMetadata project, Set<String> ids) {
+        if (isSite(project)) {
+            for (FeatureRef feature : getSiteXml(project).getFeatures()) {
+                ids.add(feature.getId());
+            }
+        }
+    }
 
     public void applyChange(ProjectMetadata project, VersionChange change, Set<VersionChange> allChanges) {
         if (isSite(project)) {
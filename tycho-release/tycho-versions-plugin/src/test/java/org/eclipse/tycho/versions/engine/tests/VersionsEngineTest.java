@@ -233,6 +233,45 @@ public class VersionsEngineTest extends AbstractVersionChangeTest {
         assertBundleManifest(new File(basedir, "bundle"));
     }
 
+    public void testOnlyReferencingProjectsAreChanged() throws Exception {
+        File basedir = TestUtil.getBasedir("projects/referencingprojects");
+        // whole seconds, because some file systems don't store milliseconds
+        long timestamp = (System.currentTimeMillis() - 60000) / 1000 * 1000;
+        File unrelatedPom = new File(basedir, "bundle02/pom.xml");
+        File unrelatedManifest = new File(basedir, "bundle02/META-INF/MANIFEST.MF");
+        unrelatedPom.setLastModified(timestamp);
+        unrelatedManifest.setLastModified(timestamp);
+
+        VersionsEngine engine = newEngine(basedir);
+        engine.addVersionChange("bundle01", "1.0.1.qualifier");
+        engine.apply();
+
+        assertPom(basedir);
+
+        assertPom(new File(basedir, "bundle01"));
+        assertBundleManifest(new File(basedir, "bundle01"));
+
+        assertPom(new File(basedir, "feature"));
+        assertFeatureXml(new File(basedir, "feature"));
+
+        // projects which don't reference the changed artifact are not written
+        assertEquals(timestamp, unrelatedPom.lastModified());
+        assertEquals(timestamp, unrelatedManifest.lastModified());
+    }
+
+    public void testRepeatedChangeIsAppliedOnce() throws Exception {
+        File basedir = TestUtil.getBasedir("projects/referencingprojects");
+
+        VersionsEngine engine = newEngine(basedir);
+        engine.addVersionChange("bundle01", "1.0.1.qualifier");
+        engine.addVersionChange("bundle01", "1.0.1.qualifier");
+        engine.apply();
+
+        assertPom(new File(basedir, "bundle01"));
+        assertBundleManifest(new File(basedir, "bundle01"));
+        assertFeatureXml(new File(basedir, "feature"));
+    }
+
     public void testWrongSnapshotVersion() throws Exception {
         try {
             Versions.assertIsOsgiVersion("1.2.3_SNAPSHOT");
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -30,11 +30,13 @@ public class Activator implements BundleActivator {
 
     public static final String PLUGIN_ID = "org.eclipse.tycho.surefire.osgibooter";
     private static PlatformAdmin platformAdmin;
+    private static BundleContext context;
 
     public Activator() {
     }
 
     public void start(BundleContext context) throws Exception {
+        Activator.context = context;
         ServiceReference platformAdminRef = context.getServiceReference(PlatformAdmin.class.getName());
         if (platformAdminRef != null) {
             platformAdmin = (PlatformAdmin) context.getService(platformAdminRef);
@@ -42,6 +44,11 @@ public class Activator implements BundleActivator {
     }
 
     public void stop(BundleContext context) throws Exception {
+        Activator.context = null;
+    }
+
+    public static BundleContext getContext() {
+        return context;
     }
 
     public static Bundle getBundle(String symbolicName) {
@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.surefire.osgibooter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.packageadmin.PackageAdmin;
+
+/**
+ * Runs tests on request of a client. The protocol is line based:
+ * 
+ * <pre>
+ * client: BUNDLE &lt;location&gt;         (any number of times)
+ * client: RUN &lt;timeout in seconds&gt; &lt;test properties file&gt;
+ * daemon: RESULT &lt;result code&gt; &lt;msec for bundle update&gt; &lt;msec for test run&gt; &lt;reusable&gt;
+ *   or
+ * daemon: TRACE &lt;stack trace line&gt;   (any number of times)
+ * daemon: ERROR &lt;message&gt;
+ * </pre>
+ * 
+ * Before running the tests, the daemon makes sure that exactly the given bundles are installed in
+ * addition to the bundles of the initial installation. After the tests, the workspace is cleared
+ * like for a new test runtime. If the workspace is still in use by the
+ * <code>org.eclipse.core.resources</code> bundle, this is not possible, and the daemon reports
+ * that it can't be reused. If the tests don't finish within the timeout, the daemon reports an
+ * error and terminates.
+ */
+class TestDaemon {
+
+    static final String BUNDLE_COMMAND = "BUNDLE ";
+    static final String RUN_COMMAND = "RUN ";
+    static final String RESULT_RESPONSE = "RESULT ";
+    static final String TRACE_RESPONSE = "TRACE ";
+    static final String ERROR_RESPONSE = "ERROR ";
+
+    /** exit code of the daemon if tests didn't finish within the timeout */
+    private static final int TIMEOUT_EXIT_CODE = 13;
+
+    private static final long REFRESH_TIMEOUT_SECONDS = 60;
+
+    private static final String RESOURCES_BUNDLE = "org.eclipse.core.resources";
+
+    private final BundleContext context;
+
+    private final File workspace;
+
+    /** bundles installed on request of the client, by location */
+    private final Map<String, Bundle> installedBundles = new HashMap<String, Bundle>();
+
+    /**
+     * @param workspace
+     *            the instance location of the daemon, or <code>null</code> if there is none
+     */
+    TestDaemon(BundleContext context, File workspace) {
+        this.context = context;
+        this.workspace = workspace;
+    }
+
+    void serve(BufferedReader in, PrintWriter out) throws IOException {
+        Set<String> requestedBundles = new LinkedHashSet<String>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith(BUNDLE_COMMAND)) {
+                requestedBundles.add(line.substring(BUNDLE_COMMAND.length()));
+            } else if (line.startsWith(RUN_COMMAND)) {
+                String[] arguments = line.substring(RUN_COMMAND.length()).split(" ", 2);
+                try {
+                    long start = System.currentTimeMillis();
+                    updateBundles(requestedBundles);
+                    long updated = System.currentTimeMillis();
+                    int result = runTests(arguments[1], Integer.parseInt(arguments[0]), out);
+                    long finished = System.currentTimeMillis();
+                    boolean reusable = resetWorkspace();
+                    out.println(RESULT_RESPONSE + result + " " + (updated - start) + " " + (finished - updated) + " "
+                            + reusable);
+                } catch (Throwable t) {
+                    reportError(t, out);
+                }
+                out.flush();
+                requestedBundles.clear();
+            }
+        }
+    }
+
+    private int runTests(final String testProperties, int timeoutInSeconds, PrintWriter out) throws Throwable {
+        final int[] result = new int[1];
+        final Throwable[] failure = new Throwable[1];
+        Thread testRun = new Thread("tycho-test-run") {
+            @Override
+            public void run() {
+                try {
+                    result[0] = OsgiSurefireBooter.run(new String[] { "-testproperties", testProperties });
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        };
+        testRun.setContextClassLoader(Thread.currentThread().getContextClassLoader());
+        testRun.start();
+        testRun.join(timeoutInSeconds * 1000L);
+        if (testRun.isAlive()) {
+            // the tests can't be stopped, so this runtime can't be used anymore
+            out.println(ERROR_RESPONSE + "Tests did not finish within " + timeoutInSeconds + " seconds");
+            out.flush();
+            Runtime.getRuntime().halt(TIMEOUT_EXIT_CODE);
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return result[0];
+    }
+
+    private static void reportError(Throwable t, PrintWriter out) {
+        StringWriter trace = new StringWriter();
+        t.printStackTrace(new PrintWriter(trace));
+        BufferedReader lines = new BufferedReader(new StringReader(trace.toString()));
+        try {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                out.println(TRACE_RESPONSE + line);
+            }
+        } catch (IOException e) {
+            // not possible for a StringReader
+        }
+        out.println(ERROR_RESPONSE + String.valueOf(t).replace('\n', ' '));
+    }
+
+    /**
+     * Clears the workspace for the next test bundle, like it is done for a new test runtime.
+     * 
+     * @return <code>false</code> if the workspace is in use and can't be cleared
+     */
+    private boolean resetWorkspace() {
+        for (Bundle bundle : context.getBundles()) {
+            if (RESOURCES_BUNDLE.equals(bundle.getSymbolicName())
+                    && (bundle.getState() & (Bundle.STARTING | Bundle.ACTIVE)) != 0) {
+                return false;
+            }
+        }
+        if (workspace != null) {
+            File[] files = workspace.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (!delete(file)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        return file.delete();
+    }
+
+    private void updateBundles(Set<String> requestedBundles) throws BundleException, InterruptedException {
+        boolean changed = false;
+        for (Iterator<Map.Entry<String, Bundle>> it = installedBundles.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Bundle> entry = it.next();
+            if (!requestedBundles.contains(entry.getKey())) {
+                entry.getValue().uninstall();
+                it.remove();
+                changed = true;
+            }
+        }
+        for (String location : requestedBundles) {
+            if (!installedBundles.containsKey(location)) {
+                installedBundles.put(location, context.installBundle(location));
+                changed = true;
+            }
+        }
+        if (changed) {
+            refreshPackages();
+        }
+    }
+
+    private void refreshPackages() throws InterruptedException {
+        ServiceReference reference = context.getServiceReference(PackageAdmin.class.getName());
+        if (reference == null) {
+            return;
+        }
+        PackageAdmin packageAdmin = (PackageAdmin) context.getService(reference);
+        try {
+            final CountDownLatch refreshed = new CountDownLatch(1);
+            FrameworkListener listener = new FrameworkListener() {
+                public void frameworkEvent(FrameworkEvent event) {
+                    if (event.getType() == FrameworkEvent.PACKAGES_REFRESHED) {
+                        refreshed.countDown();
+                    }
+                }
+            };
+            context.addFrameworkListener(listener);
+            try {
+                packageAdmin.refreshPackages(null);
+                refreshed.await(REFRESH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } finally {
+                context.removeFrameworkListener(listener);
+            }
+            packageAdmin.resolveBundles(null);
+        } finally {
+            context.ungetService(reference);
+        }
+    }
+}
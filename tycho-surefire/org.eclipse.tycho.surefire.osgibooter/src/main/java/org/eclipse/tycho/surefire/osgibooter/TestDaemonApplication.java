@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.surefire.osgibooter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPlatformRunnable;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.osgi.service.datalocation.Location;
+
+/**
+ * Test runtime which stays up to run the tests of several test bundles. The port on which the
+ * daemon accepts its single client is written to the file given by
+ * <code>-testdaemonportfile</code>. The daemon terminates when the client closes the connection.
+ * 
+ * @see TestDaemon
+ */
+@SuppressWarnings("deprecation")
+public class TestDaemonApplication implements IPlatformRunnable {
+
+    public Object run(Object object) throws Exception {
+        File portFile = getPortFile(Platform.getCommandLineArgs());
+
+        Socket socket;
+        ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        try {
+            writePortFile(portFile, serverSocket.getLocalPort());
+            socket = serverSocket.accept();
+        } finally {
+            serverSocket.close();
+        }
+
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+            new TestDaemon(Activator.getContext(), getWorkspace()).serve(in, out);
+        } finally {
+            socket.close();
+        }
+        return IPlatformRunnable.EXIT_OK;
+    }
+
+    private static File getWorkspace() {
+        Location instanceLocation = Platform.getInstanceLocation();
+        if (instanceLocation == null || instanceLocation.getURL() == null
+                || !"file".equals(instanceLocation.getURL().getProtocol())) {
+            return null;
+        }
+        return new File(instanceLocation.getURL().getPath());
+    }
+
+    private static File getPortFile(String[] args) throws CoreException {
+        for (int i = 0; i < args.length - 1; i++) {
+            if ("-testdaemonportfile".equals(args[i].toLowerCase())) {
+                return new File(args[i + 1]);
+            }
+        }
+        throw new CoreException(new Status(IStatus.ERROR, Activator.PLUGIN_ID, 0,
+                "-testdaemonportfile command line parameter is not specified", null));
+    }
+
+    private static void writePortFile(File portFile, int port) throws Exception {
+        // write and rename, so that the client never sees a partially written file
+        File tempFile = new File(portFile.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tempFile);
+        try {
+            out.write(String.valueOf(port).getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        portFile.delete();
+        if (!tempFile.renameTo(portFile)) {
+            throw new CoreException(new Status(IStatus.ERROR, Activator.PLUGIN_ID, 0, "Could not write " + portFile,
+                    null));
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.surefire;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.execution.AbstractExecutionListener;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.sisu.equinox.launching.EquinoxLauncher;
+import org.eclipse.sisu.equinox.launching.EquinoxLaunchingException;
+import org.eclipse.tycho.core.maven.ChainedExecutionListener;
+import org.eclipse.tycho.launching.LaunchConfiguration;
+
+/**
+ * Client of a test runtime which is shared by the test bundles of a reactor, see
+ * <code>org.eclipse.tycho.surefire.osgibooter.TestDaemon</code> for the protocol. There is at most
+ * one test daemon per build. The daemon is shut down at the end of the Maven session which launched
+ * it, and it also terminates when the connection is closed, e.g. because the build JVM terminates.
+ * 
+ * <p>
+ * The daemon runs the tests of one test bundle at a time, and a test bundle may replace the daemon
+ * with a new one. Therefore callers need to hold the lock on this class from looking up the daemon
+ * until the tests have been run. A daemon which failed or can't be reused is discarded.
+ * </p>
+ */
+class TestDaemonClient {
+
+    static final String APPLICATION = "org.eclipse.tycho.surefire.osgibooter.testdaemon";
+
+    private static final long STARTUP_TIMEOUT = 5 * 60 * 1000L;
+
+    /** time to wait for the daemon in addition to the test timeout, before it is considered hung */
+    private static final int RESPONSE_TIMEOUT_GRACE = 60 * 1000;
+
+    private static final long SHUTDOWN_TIMEOUT = 10 * 1000L;
+
+    static final String BUNDLE_COMMAND = "BUNDLE ";
+    static final String RUN_COMMAND = "RUN ";
+    static final String RESULT_RESPONSE = "RESULT ";
+    static final String TRACE_RESPONSE = "TRACE ";
+    static final String ERROR_RESPONSE = "ERROR ";
+
+    private static TestDaemonClient current;
+
+    /** the request of the session at the end of which the daemon is shut down, or <code>null</code> */
+    private static MavenExecutionRequest shutdownRequest;
+
+    static class Result {
+        final int resultCode;
+        final long bundleUpdateMillis;
+        final long testRunMillis;
+        final boolean reusable;
+
+        Result(int resultCode, long bundleUpdateMillis, long testRunMillis, boolean reusable) {
+            this.resultCode = resultCode;
+            this.bundleUpdateMillis = bundleUpdateMillis;
+            this.testRunMillis = testRunMillis;
+            this.reusable = reusable;
+        }
+    }
+
+    private final String signature;
+    private final Map<String, File> baseBundles;
+    private final Socket socket;
+    private final BufferedReader in;
+    private final PrintWriter out;
+
+    /** the thread waiting for the daemon process, or <code>null</code> */
+    private final Thread process;
+
+    TestDaemonClient(String signature, Map<String, File> baseBundles, Socket socket, Thread process)
+            throws IOException {
+        this.signature = signature;
+        this.baseBundles = baseBundles;
+        this.socket = socket;
+        this.process = process;
+        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+        this.out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+    }
+
+    /**
+     * Returns the running test daemon of this build if it was launched with the given signature.
+     */
+    static synchronized TestDaemonClient getDaemon(String signature) {
+        if (current != null && current.signature.equals(signature) && !current.socket.isClosed()) {
+            return current;
+        }
+        return null;
+    }
+
+    /**
+     * Launches a new test daemon, which replaces the currently running one.
+     *
+     * @param signature
+     *            the launch configuration relevant for the compatibility of test bundles
+     * @param baseBundles
+     *            the bundle files of the daemon installation, by <code>id_version</code>
+     */
+    static synchronized TestDaemonClient launch(MavenSession session, final EquinoxLauncher launcher,
+            final LaunchConfiguration cli, File portFile, String signature, Map<String, File> baseBundles,
+            final Log log) throws IOException {
+        shutdownDaemon();
+        shutdownOnSessionEnd(session);
+        portFile.delete();
+
+        long start = System.currentTimeMillis();
+        Thread process = new Thread("tycho-test-daemon") {
+            @Override
+            public void run() {
+                try {
+                    launcher.execute(cli, 0);
+                } catch (EquinoxLaunchingException e) {
+                    log.error("Test daemon could not be launched", e);
+                }
+            }
+        };
+        process.setDaemon(true);
+        process.start();
+
+        int port = waitForPort(portFile, process, start + STARTUP_TIMEOUT);
+        current = new TestDaemonClient(signature, baseBundles, new Socket(InetAddress.getByName("127.0.0.1"), port),
+                process);
+        log.info("Test daemon started in " + (System.currentTimeMillis() - start) + " ms");
+        return current;
+    }
+
+    /**
+     * Terminates the running test daemon, if any.
+     */
+    static synchronized void shutdownDaemon() {
+        if (current != null) {
+            current.shutdown();
+            current = null;
+        }
+    }
+
+    /**
+     * Registers a listener which shuts the daemon down at the end of the given session, unless
+     * there already is one. The build JVM may outlive the session, e.g. in an embedded Maven.
+     */
+    static synchronized void shutdownOnSessionEnd(MavenSession session) {
+        final MavenExecutionRequest request = session.getRequest();
+        if (request == shutdownRequest) {
+            return;
+        }
+        ChainedExecutionListener listener = new ChainedExecutionListener(request.getExecutionListener());
+        listener.addListener(new AbstractExecutionListener() {
+            @Override
+            public void sessionEnded(ExecutionEvent event) {
+                synchronized (TestDaemonClient.class) {
+                    shutdownDaemon();
+                    if (shutdownRequest == request) {
+                        shutdownRequest = null;
+                    }
+                }
+            }
+        });
+        request.setExecutionListener(listener);
+        shutdownRequest = request;
+    }
+
+    /**
+     * For testing purposes only
+     */
+    static synchronized void setDaemon(TestDaemonClient daemon) {
+        current = daemon;
+    }
+
+    private static int waitForPort(File portFile, Thread process, long deadline) throws IOException {
+        while (!portFile.isFile()) {
+            if (!process.isAlive()) {
+                throw new IOException("Test daemon terminated during startup");
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("Test daemon did not start within " + STARTUP_TIMEOUT + " ms");
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for test daemon");
+            }
+        }
+        return Integer.parseInt(FileUtils.fileRead(portFile, "UTF-8").trim());
+    }
+
+    /**
+     * Returns the bundles which need to be installed in addition to the base bundles of the daemon,
+     * or <code>null</code> if the given bundles can't be run in the daemon because they contain
+     * another file for one of the base bundles.
+     *
+     * @param bundles
+     *            the bundle files of the test runtime, by <code>id_version</code>
+     */
+    List<File> getAdditionalBundles(Map<String, File> bundles) {
+        List<File> result = new ArrayList<File>();
+        for (Map.Entry<String, File> bundle : bundles.entrySet()) {
+            File baseBundle = baseBundles.get(bundle.getKey());
+            if (baseBundle == null) {
+                result.add(bundle.getValue());
+            } else if (!baseBundle.equals(bundle.getValue())) {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs the tests in the daemon. If the tests fail to run, the daemon is discarded.
+     * 
+     * @param timeoutInSeconds
+     *            the time after which the tests are aborted, or <code>0</code> for no timeout
+     * @throws IOException
+     *             if the tests could not be run or did not finish within the timeout
+     */
+    Result runTests(List<File> additionalBundles, File testProperties, int timeoutInSeconds) throws IOException {
+        synchronized (TestDaemonClient.class) {
+            boolean reusable = false;
+            try {
+                for (File bundle : additionalBundles) {
+                    out.println(BUNDLE_COMMAND + "reference:file:" + bundle.getAbsolutePath().replace('\\', '/'));
+                }
+                out.println(RUN_COMMAND + timeoutInSeconds + " " + testProperties.getAbsolutePath());
+                out.flush();
+
+                socket.setSoTimeout(timeoutInSeconds > 0 ? timeoutInSeconds * 1000 + RESPONSE_TIMEOUT_GRACE : 0);
+                Result result = readResponse();
+                reusable = result.reusable;
+                return result;
+            } catch (SocketTimeoutException e) {
+                throw new IOException("Test daemon did not respond within " + timeoutInSeconds + " seconds");
+            } finally {
+                if (!reusable) {
+                    shutdown();
+                    if (current == this) {
+                        current = null;
+                    }
+                }
+            }
+        }
+    }
+
+    private Result readResponse() throws IOException {
+        StringBuilder trace = new StringBuilder();
+        String response;
+        while ((response = in.readLine()) != null && response.startsWith(TRACE_RESPONSE)) {
+            trace.append('\n').append(response.substring(TRACE_RESPONSE.length()));
+        }
+        if (response == null) {
+            throw new IOException("Test daemon terminated unexpectedly");
+        } else if (response.startsWith(ERROR_RESPONSE)) {
+            throw new IOException("Test daemon could not run the tests: "
+                    + response.substring(ERROR_RESPONSE.length()) + trace);
+        } else if (!response.startsWith(RESULT_RESPONSE)) {
+            throw new IOException("Unexpected response from test daemon: " + response);
+        }
+        String[] values = response.substring(RESULT_RESPONSE.length()).split(" ");
+        try {
+            return new Result(Integer.parseInt(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2]),
+                    Boolean.parseBoolean(values[3]));
+        } catch (RuntimeException e) {
+            throw new IOException("Unexpected response from test daemon: " + response);
+        }
+    }
+
+    void shutdown() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // the daemon terminates anyway
+        }
+        if (process != null) {
+            // wait for the daemon to release its files
+            try {
+                process.join(SHUTDOWN_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 Sonatype Inc. and others.
+ * Copyright (c) 2008, 2012 Sonatype Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,20 +11,26 @@
  ******************************************************************************/
 package org.eclipse.tycho.surefire;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.resolver.ArtifactResolutionException;
@@ -41,6 +47,7 @@ import org.apache.maven.repository.RepositorySystem;
 import org.apache.maven.surefire.suite.RunResult;
 import org.apache.maven.toolchain.Toolchain;
 import org.apache.maven.toolchain.ToolchainManager;
+import org.codehaus.plexus.util.DirectoryScanner;
 import org.codehaus.plexus.util.FileUtils;
 import org.eclipse.sisu.equinox.launching.BundleStartLevel;
 import org.eclipse.sisu.equinox.launching.DefaultEquinoxInstallationDescription;
@@ -65,6 +72,8 @@ import org.eclipse.tycho.core.osgitools.DefaultReactorProject;
 import org.eclipse.tycho.core.osgitools.OsgiBundleProject;
 import org.eclipse.tycho.core.resolver.DefaultTargetPlatformResolverFactory;
 import org.eclipse.tycho.core.utils.PlatformPropertiesUtils;
+import org.eclipse.tycho.core.utils.TychoProjectUtils;
+import org.eclipse.tycho.core.utils.WorkerPool;
 import org.eclipse.tycho.launching.LaunchConfiguration;
 import org.eclipse.tycho.launching.LaunchConfigurationFactory;
 import org.osgi.framework.Version;
@@ -265,6 +274,31 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
      */
     private int forkedProcessTimeoutInSeconds;
 
+    /**
+     * Number of test runtimes to run the tests of this bundle in parallel. If greater than one, the
+     * test classes are distributed over that many forked test runtimes, using the test durations of
+     * the previous test reports to balance the load. Each runtime gets its own workspace and
+     * configuration area. Ignored if a debug port is set.
+     * 
+     * @parameter expression="${tycho.test.forkCount}" default-value="1"
+     */
+    private int forkCount;
+
+    /**
+     * If <code>true</code>, the tests are run in a test runtime which is shared with the other test
+     * bundles of the reactor, so that the startup of the test runtime is only paid once. For each
+     * test bundle, only the bundles which are not part of the shared test runtime are installed.
+     * Test bundles which need a different launch configuration, e.g. the UI harness, framework
+     * extensions, or other VM arguments, are run in their own test runtime as usual. The workspace
+     * is cleared after each test bundle; if tests keep the workspace open, the next test bundle
+     * gets a new test runtime. In parallel builds, the tests of only one bundle run in the shared
+     * test runtime at a time. Note that the working directory of the shared test runtime is the
+     * basedir of the test bundle which launched it.
+     * 
+     * @parameter expression="${tycho.test.daemon}" default-value="false"
+     */
+    private boolean useTestDaemon;
+
     /**
      * Bundle-SymbolicName of the test suite, a special bundle that knows how to locate and execute
      * all relevant tests.
@@ -354,6 +388,9 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
     /** @component */
     private BuildPropertiesParser buildPropertiesParser;
 
+    /** bundles of the test runtime which are built in the reactor */
+    private final Set<ArtifactKey> reactorBundles = new HashSet<ArtifactKey>();
+
     public void execute() throws MojoExecutionException, MojoFailureException {
         if (skip || skipExec || skipTests) {
             getLog().info("Skipping tests");
@@ -398,8 +435,10 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
 
         dependencies.addAll(getTestDependencies());
 
-        // TODO 364134 re-use target platform from dependency resolution
-        TargetPlatform targetPlatform = platformResolver.computeTargetPlatform(session, project, reactorProjects);
+        TargetPlatform targetPlatform = TychoProjectUtils.getTargetPlatformIfAvailable(project);
+        if (targetPlatform == null) {
+            targetPlatform = platformResolver.computeTargetPlatform(session, project, reactorProjects);
+        }
 
         DependencyArtifacts testRuntimeArtifacts = platformResolver.resolveDependencies(session, project,
                 targetPlatform, reactorProjects, new SimpleDependencyResolverConfiguration(dependencies));
@@ -433,6 +472,7 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
             // all other projects are added as bundle jars.
             ReactorProject otherProject = artifact.getMavenProject();
             if (otherProject != null) {
+                reactorBundles.add(artifact.getKey());
                 if (otherProject.sameProject(project)) {
                     testRuntime.addBundle(artifact.getKey(), project.getBasedir());
                     continue;
@@ -526,8 +566,12 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
             }
         }
         p.put("failifnotests", String.valueOf(failIfNoTests));
+        storeProperties(p, surefireProperties);
+    }
+
+    private static void storeProperties(Properties p, File file) throws MojoExecutionException {
         try {
-            BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(surefireProperties));
+            BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(file));
             try {
                 p.store(out, null);
             } finally {
@@ -538,6 +582,21 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
         }
     }
 
+    private static Properties loadProperties(File file) throws MojoExecutionException {
+        Properties p = new Properties();
+        try {
+            BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                p.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Can't read test launcher properties file", e);
+        }
+        return p;
+    }
+
     private String getTestProvider(String testFramework) {
         if (TestFramework.TEST_JUNIT.equals(testFramework)) {
             return "org.apache.maven.surefire.junit.JUnit3Provider";
@@ -560,14 +619,16 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
 
     private void runTest(EquinoxInstallation testRuntime) throws MojoExecutionException, MojoFailureException {
         int result;
-        try {
-            File workspace = new File(work, "data").getAbsoluteFile();
-            FileUtils.deleteDirectory(workspace);
-            LaunchConfiguration cli = createCommandLine(testRuntime, workspace);
-            getLog().info("Expected eclipse log file: " + new File(workspace, ".metadata/.log").getCanonicalPath());
-            result = launcher.execute(cli, forkedProcessTimeoutInSeconds);
-        } catch (Exception e) {
-            throw new MojoExecutionException("Error while executing platform", e);
+        if (forkCount > 1 && debugPort <= 0) {
+            result = runShardedTests(testRuntime);
+        } else if (useTestDaemon && canUseTestDaemon()) {
+            // the daemon runs the tests of one bundle at a time, and may be replaced by another bundle
+            synchronized (TestDaemonClient.class) {
+                result = runTestsInDaemon(getTestDaemon(testRuntime), testRuntime);
+            }
+        } else {
+            result = runTestRuntime(testRuntime, new File(work, "data"), new File(work, "configuration"),
+                    surefireProperties);
         }
         switch (result) {
         case 0:
@@ -593,6 +654,207 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
         }
     }
 
+    private int runTestRuntime(EquinoxInstallation testRuntime, File workspace, File configuration,
+            File testProperties) throws MojoExecutionException {
+        try {
+            workspace = workspace.getAbsoluteFile();
+            FileUtils.deleteDirectory(workspace);
+            LaunchConfiguration cli = createCommandLine(testRuntime, workspace, configuration, testProperties);
+            getLog().info("Expected eclipse log file: " + new File(workspace, ".metadata/.log").getCanonicalPath());
+            return launcher.execute(cli, forkedProcessTimeoutInSeconds);
+        } catch (Exception e) {
+            throw new MojoExecutionException("Error while executing platform", e);
+        }
+    }
+
+    /**
+     * Runs the tests in {@link #forkCount} test runtimes in parallel, which all use the same
+     * installation. Since surefire writes one report per test class, the reports of all runtimes
+     * end up side by side in the reports directory.
+     */
+    private int runShardedTests(final EquinoxInstallation testRuntime) throws MojoExecutionException {
+        Properties testProperties = loadProperties(surefireProperties);
+        List<String> testClasses = scanTestClasses(testProperties);
+        List<List<String>> shards = TestShards.partition(testClasses, TestShards.readDurations(reportsDirectory),
+                forkCount);
+        if (shards.size() <= 1) {
+            return runTestRuntime(testRuntime, new File(work, "data"), new File(work, "configuration"),
+                    surefireProperties);
+        }
+        getLog().info("Running " + testClasses.size() + " test classes in " + shards.size() + " test runtimes");
+
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            final File workspace = new File(work, "data-" + i);
+            final File configuration = new File(work, "configuration-" + i);
+            final File shardProperties = new File(surefireProperties.getParentFile(), "surefire-" + i + ".properties");
+            prepareShard(testProperties, shards.get(i), configuration, shardProperties);
+            tasks.add(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    return runTestRuntime(testRuntime, workspace, configuration, shardProperties);
+                }
+            });
+        }
+        try {
+            return combineResults(WorkerPool.invokeAll(tasks, shards.size(), "tycho-test-runtime"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while waiting for tests", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof MojoExecutionException) {
+                throw (MojoExecutionException) e.getCause();
+            }
+            throw new MojoExecutionException("Error while executing platform", e.getCause());
+        }
+    }
+
+    private List<String> scanTestClasses(Properties testProperties) {
+        if (!testClassesDirectory.isDirectory()) {
+            return new ArrayList<String>();
+        }
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(testClassesDirectory);
+        scanner.setIncludes(toPatterns(testProperties.getProperty("includes")));
+        scanner.setExcludes(toPatterns(testProperties.getProperty("excludes")));
+        scanner.scan();
+        List<String> testClasses = new ArrayList<String>();
+        for (String file : scanner.getIncludedFiles()) {
+            testClasses.add(file.replace(File.separatorChar, '/'));
+        }
+        return testClasses;
+    }
+
+    private static String[] toPatterns(String commaSeparated) {
+        return commaSeparated != null ? commaSeparated.split(",") : null;
+    }
+
+    private void prepareShard(Properties testProperties, List<String> testClasses, File configuration,
+            File shardProperties) throws MojoExecutionException {
+        Properties p = new Properties();
+        p.putAll(testProperties);
+        p.put("includes", getIncludesExcludes(testClasses));
+        p.remove("excludes");
+        // whether there are tests at all is determined for all runtimes together
+        p.put("failifnotests", "false");
+        storeProperties(p, shardProperties);
+
+        try {
+            FileUtils.deleteDirectory(configuration);
+            FileUtils.copyFile(new File(work, TychoConstants.CONFIG_INI_PATH), new File(configuration, "config.ini"));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Can't create configuration area " + configuration, e);
+        }
+    }
+
+    private static int combineResults(List<Integer> results) {
+        int combined = RunResult.NO_TESTS;
+        for (int result : results) {
+            // the first failure wins
+            if (result != RunResult.NO_TESTS && (combined == RunResult.NO_TESTS || combined == 0)) {
+                combined = result;
+            }
+        }
+        return combined;
+    }
+
+    /**
+     * Returns <code>false</code> if the tests need a test runtime of their own.
+     */
+    private boolean canUseTestDaemon() {
+        File testBundle = project.getArtifact().getFile();
+        if (useUIHarness || debugPort > 0 || (frameworkExtensions != null && frameworkExtensions.length > 0)
+                || bundleStartLevel != null || testBundle == null || !testBundle.isFile()) {
+            getLog().info("Test runtime can't be shared with other test bundles; not using the test daemon");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns a running test daemon which can run the tests of this bundle, or launches a new one.
+     * Callers need to hold the lock on {@link TestDaemonClient}.
+     */
+    private TestDaemonClient getTestDaemon(EquinoxInstallation testRuntime) throws MojoExecutionException {
+        String signature = getLaunchSignature(testRuntime);
+        Map<String, File> bundles = getTestDaemonBundles(testRuntime);
+
+        TestDaemonClient daemon = TestDaemonClient.getDaemon(signature);
+        if (daemon != null && daemon.getAdditionalBundles(bundles) != null) {
+            return daemon;
+        }
+
+        // the daemon is shared by the projects of the reactor
+        File daemonDir = new File(session.getTopLevelProject().getBuild().getDirectory(), "test-daemon");
+        EquinoxInstallationDescription daemonRuntime = new DefaultEquinoxInstallationDescription();
+        daemonRuntime.addBundlesToExplode(getBundlesToExplode());
+        Map<String, File> baseBundles = new LinkedHashMap<String, File>();
+        for (ArtifactDescriptor artifact : testRuntime.getInstallationDescription().getBundles()) {
+            if (!reactorBundles.contains(artifact.getKey())) {
+                daemonRuntime.addBundle(artifact);
+                baseBundles.put(toBundleId(artifact.getKey()), artifact.getLocation());
+            }
+        }
+        try {
+            TestDaemonClient.shutdownDaemon();
+            FileUtils.deleteDirectory(daemonDir);
+            EquinoxInstallation installation = installationFactory.createInstallation(daemonRuntime, daemonDir);
+            File workspace = new File(daemonDir, "data");
+            EquinoxLaunchConfiguration cli = createBaseCommandLine(installation);
+            addProgramArgs(true, cli, "-data", workspace.getAbsolutePath(), //
+                    "-install", installation.getLocation().getAbsolutePath(), //
+                    "-configuration", new File(daemonDir, "configuration").getAbsolutePath(), //
+                    "-application", TestDaemonClient.APPLICATION, //
+                    "-testdaemonportfile", new File(daemonDir, "port").getAbsolutePath());
+            addApplicationArgs(cli);
+            return TestDaemonClient.launch(session, launcher, cli, new File(daemonDir, "port"), signature,
+                    baseBundles, getLog());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not launch test daemon", e);
+        }
+    }
+
+    private int runTestsInDaemon(TestDaemonClient daemon, EquinoxInstallation testRuntime)
+            throws MojoExecutionException {
+        List<File> additionalBundles = daemon.getAdditionalBundles(getTestDaemonBundles(testRuntime));
+        try {
+            TestDaemonClient.Result result = daemon.runTests(additionalBundles, surefireProperties,
+                    forkedProcessTimeoutInSeconds);
+            getLog().info(
+                    "Tests run in test daemon: " + additionalBundles.size() + " bundles installed in "
+                            + result.bundleUpdateMillis + " ms, tests run in " + result.testRunMillis + " ms");
+            return result.resultCode;
+        } catch (IOException e) {
+            throw new MojoExecutionException("Error while executing tests in test daemon", e);
+        }
+    }
+
+    /**
+     * Returns the bundles of the test runtime as they are installed in the test daemon. In contrast
+     * to the normal test runtime, the packed test bundle is used, so that no dev.properties are
+     * needed.
+     */
+    private Map<String, File> getTestDaemonBundles(EquinoxInstallation testRuntime) {
+        Map<String, File> bundles = new LinkedHashMap<String, File>();
+        for (ArtifactDescriptor artifact : testRuntime.getInstallationDescription().getBundles()) {
+            File location = artifact.getLocation();
+            if (location.equals(project.getBasedir())) {
+                location = project.getArtifact().getFile();
+            }
+            bundles.put(toBundleId(artifact.getKey()), location);
+        }
+        return bundles;
+    }
+
+    private static String toBundleId(ArtifactKey key) {
+        return key.getId() + "_" + key.getVersion();
+    }
+
+    private String getLaunchSignature(EquinoxInstallation testRuntime) {
+        EquinoxLaunchConfiguration cli = createBaseCommandLine(testRuntime);
+        return cli.getJvmExecutable() + "|" + Arrays.asList(cli.getVMArguments()) + "|" + cli.getEnvironment() + "|"
+                + application + "|" + product + "|" + appArgLine;
+    }
+
     private Toolchain getToolchain() {
         Toolchain tc = null;
         if (toolchainManager != null) {
@@ -602,6 +864,24 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
     }
 
     LaunchConfiguration createCommandLine(EquinoxInstallation testRuntime, File workspace) throws MalformedURLException {
+        return createCommandLine(testRuntime, workspace, new File(work, "configuration"), surefireProperties);
+    }
+
+    private LaunchConfiguration createCommandLine(EquinoxInstallation testRuntime, File workspace,
+            File configuration, File testProperties) throws MalformedURLException {
+        EquinoxLaunchConfiguration cli = createBaseCommandLine(testRuntime);
+
+        addProgramArgs(true, cli, "-data", workspace.getAbsolutePath(), //
+                "-dev", devProperties.toURI().toURL().toExternalForm(), //
+                "-install", testRuntime.getLocation().getAbsolutePath(), //
+                "-configuration", configuration.getAbsolutePath(), //
+                "-application", getTestApplication(testRuntime.getInstallationDescription()), //
+                "-testproperties", testProperties.getAbsolutePath());
+        addApplicationArgs(cli);
+        return cli;
+    }
+
+    private EquinoxLaunchConfiguration createBaseCommandLine(EquinoxInstallation testRuntime) {
         EquinoxLaunchConfiguration cli = new EquinoxLaunchConfiguration(testRuntime);
 
         String executable = null;
@@ -636,13 +916,13 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
         if (getLog().isDebugEnabled() || showEclipseLog) {
             cli.addProgramArguments("-debug", "-consolelog");
         }
+        if (environmentVariables != null) {
+            cli.addEnvironmentVariables(environmentVariables);
+        }
+        return cli;
+    }
 
-        addProgramArgs(true, cli, "-data", workspace.getAbsolutePath(), //
-                "-dev", devProperties.toURI().toURL().toExternalForm(), //
-                "-install", testRuntime.getLocation().getAbsolutePath(), //
-                "-configuration", new File(work, "configuration").getAbsolutePath(), //
-                "-application", getTestApplication(testRuntime.getInstallationDescription()), //
-                "-testproperties", surefireProperties.getAbsolutePath());
+    private void addApplicationArgs(EquinoxLaunchConfiguration cli) {
         if (application != null) {
             cli.addProgramArguments("-testApplication", application);
         }
@@ -653,10 +933,6 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
             cli.addProgramArguments("-nouithread");
         }
         addProgramArgs(false, cli, appArgLine);
-        if (environmentVariables != null) {
-            cli.addEnvironmentVariables(environmentVariables);
-        }
-        return cli;
     }
 
     void addProgramArgs(boolean escape, EquinoxLaunchConfiguration cli, String... arguments) {
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.surefire;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Distributes test classes over several test runtimes so that all runtimes need about the same
+ * time. Durations are taken from the XML reports of previous test runs; test classes without
+ * reports are assumed to take the average time.
+ */
+class TestShards {
+
+    private static final Pattern TESTSUITE_ELEMENT = Pattern.compile("<testsuite\\s[^>]*>");
+    private static final Pattern NAME_ATTRIBUTE = Pattern.compile("\\sname=\"([^\"]*)\"");
+    private static final Pattern TIME_ATTRIBUTE = Pattern.compile("\\stime=\"([^\"]*)\"");
+
+    private static final int REPORT_HEADER_SIZE = 4096;
+
+    /**
+     * @param testClasses
+     *            test class file paths relative to the test classes directory, e.g.
+     *            <code>org/example/FooTest.class</code>
+     * @param durations
+     *            durations in seconds by fully qualified class name
+     * @return at most <code>shardCount</code> non-empty lists of test class file paths
+     */
+    static List<List<String>> partition(List<String> testClasses, final Map<String, Double> durations,
+            int shardCount) {
+        List<List<String>> shards = new ArrayList<List<String>>();
+        if (testClasses.isEmpty()) {
+            return shards;
+        }
+        double defaultDuration = getAverageDuration(testClasses, durations);
+        final Map<String, Double> estimates = new HashMap<String, Double>();
+        for (String testClass : testClasses) {
+            Double duration = durations.get(toClassName(testClass));
+            estimates.put(testClass, duration != null ? duration : defaultDuration);
+        }
+
+        // longest first, each to the shard with the least total time so far
+        List<String> sorted = new ArrayList<String>(testClasses);
+        Collections.sort(sorted, new Comparator<String>() {
+            public int compare(String left, String right) {
+                int result = estimates.get(right).compareTo(estimates.get(left));
+                return result != 0 ? result : left.compareTo(right);
+            }
+        });
+        int count = Math.max(1, Math.min(shardCount, testClasses.size()));
+        double[] totals = new double[count];
+        for (int i = 0; i < count; i++) {
+            shards.add(new ArrayList<String>());
+        }
+        for (String testClass : sorted) {
+            int shortest = 0;
+            for (int i = 1; i < count; i++) {
+                if (totals[i] < totals[shortest]) {
+                    shortest = i;
+                }
+            }
+            shards.get(shortest).add(testClass);
+            totals[shortest] += estimates.get(testClass);
+        }
+        return shards;
+    }
+
+    private static double getAverageDuration(List<String> testClasses, Map<String, Double> durations) {
+        double sum = 0;
+        int known = 0;
+        for (String testClass : testClasses) {
+            Double duration = durations.get(toClassName(testClass));
+            if (duration != null) {
+                sum += duration;
+                known++;
+            }
+        }
+        return known > 0 ? sum / known : 1.0;
+    }
+
+    static String toClassName(String testClassFile) {
+        String name = testClassFile.replace('\\', '/');
+        if (name.endsWith(".class")) {
+            name = name.substring(0, name.length() - ".class".length());
+        }
+        return name.replace('/', '.');
+    }
+
+    /**
+     * Reads the test durations from the <code>TEST-*.xml</code> files in the given directory.
+     * Unreadable reports are ignored.
+     */
+    static Map<String, Double> readDurations(File reportsDirectory) {
+        Map<String, Double> durations = new HashMap<String, Double>();
+        File[] reports = reportsDirectory.listFiles();
+        if (reports == null) {
+            return durations;
+        }
+        for (File report : reports) {
+            String name = report.getName();
+            if (!name.startsWith("TEST-") || !name.endsWith(".xml")) {
+                continue;
+            }
+            try {
+                Matcher element = TESTSUITE_ELEMENT.matcher(readHeader(report));
+                if (!element.find()) {
+                    continue;
+                }
+                Matcher suiteName = NAME_ATTRIBUTE.matcher(element.group());
+                Matcher time = TIME_ATTRIBUTE.matcher(element.group());
+                if (suiteName.find() && time.find()) {
+                    durations.put(suiteName.group(1), Double.valueOf(time.group(1).replace(",", "")));
+                }
+            } catch (IOException e) {
+                // no duration for this test
+            } catch (NumberFormatException e) {
+                // no duration for this test
+            }
+        }
+        return durations;
+    }
+
+    private static String readHeader(File report) throws IOException {
+        InputStream in = new FileInputStream(report);
+        try {
+            byte[] buffer = new byte[REPORT_HEADER_SIZE];
+            int length = 0;
+            int read;
+            while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+            }
+            return new String(buffer, 0, length, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.surefire;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+
+public class TestDaemonClientTest extends TestCase {
+
+    private static final String SIGNATURE = "java|[]|{}|null|null|null";
+
+    private FakeDaemon daemon;
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestDaemonClient.shutdownDaemon();
+        if (daemon != null) {
+            daemon.close();
+        }
+    }
+
+    public void testRunTests() throws Exception {
+        TestDaemonClient client = connect("RESULT 255 12 34 true");
+
+        File bundle = new File("bundles/a.jar").getAbsoluteFile();
+        File testProperties = new File("surefire.properties").getAbsoluteFile();
+        TestDaemonClient.Result result = client.runTests(Arrays.asList(bundle), testProperties, 30);
+
+        assertEquals(255, result.resultCode);
+        assertEquals(12, result.bundleUpdateMillis);
+        assertEquals(34, result.testRunMillis);
+        assertEquals(Arrays.asList("BUNDLE reference:file:" + bundle.getAbsolutePath().replace('\\', '/'), "RUN 30 "
+                + testProperties.getAbsolutePath()), daemon.getRequest());
+        assertSame(client, TestDaemonClient.getDaemon(SIGNATURE));
+    }
+
+    public void testDaemonWhichCantBeReusedIsDiscarded() throws Exception {
+        TestDaemonClient client = connect("RESULT 0 1 2 false");
+
+        TestDaemonClient.Result result = client.runTests(Collections.<File> emptyList(), new File("test.properties"),
+                0);
+
+        assertEquals(0, result.resultCode);
+        assertNull(TestDaemonClient.getDaemon(SIGNATURE));
+    }
+
+    public void testErrorIsReported() throws Exception {
+        TestDaemonClient client = connect("TRACE java.lang.IllegalStateException: broken", "TRACE \tat a.B.c(B.java:1)",
+                "ERROR java.lang.IllegalStateException: broken");
+
+        try {
+            client.runTests(Collections.<File> emptyList(), new File("test.properties"), 0);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("java.lang.IllegalStateException: broken"));
+            assertTrue(e.getMessage().contains("\tat a.B.c(B.java:1)"));
+        }
+        assertNull(TestDaemonClient.getDaemon(SIGNATURE));
+    }
+
+    public void testTerminatedDaemonIsDiscarded() throws Exception {
+        TestDaemonClient client = connect();
+
+        try {
+            client.runTests(Collections.<File> emptyList(), new File("test.properties"), 0);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        assertNull(TestDaemonClient.getDaemon(SIGNATURE));
+    }
+
+    public void testOtherSignatureDoesNotUseDaemon() throws Exception {
+        connect("RESULT 0 1 2 true");
+
+        assertNull(TestDaemonClient.getDaemon("other"));
+    }
+
+    public void testDaemonIsShutDownAtSessionEnd() throws Exception {
+        TestDaemonClient client = connect("RESULT 0 1 2 true");
+        MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+        MavenSession session = new MavenSession(null, null, request, new DefaultMavenExecutionResult());
+        TestDaemonClient.shutdownOnSessionEnd(session);
+        TestDaemonClient.shutdownOnSessionEnd(session);
+        assertSame(client, TestDaemonClient.getDaemon(SIGNATURE));
+
+        request.getExecutionListener().sessionEnded(null);
+
+        assertNull(TestDaemonClient.getDaemon(SIGNATURE));
+    }
+
+    public void testAdditionalBundles() throws Exception {
+        TestDaemonClient client = connect();
+
+        Map<String, File> bundles = new LinkedHashMap<String, File>();
+        bundles.put("base_1.0.0", new File("base.jar"));
+        bundles.put("test_1.0.0", new File("test.jar"));
+        assertEquals(Arrays.asList(new File("test.jar")), client.getAdditionalBundles(bundles));
+
+        bundles.put("base_1.0.0", new File("other-base.jar"));
+        assertNull(client.getAdditionalBundles(bundles));
+    }
+
+    /**
+     * Connects to a fake daemon which answers the first request with the given lines, and then
+     * closes the connection.
+     */
+    private TestDaemonClient connect(String... response) throws IOException {
+        daemon = new FakeDaemon(response);
+        daemon.start();
+
+        Map<String, File> baseBundles = new LinkedHashMap<String, File>();
+        baseBundles.put("base_1.0.0", new File("base.jar"));
+        TestDaemonClient client = new TestDaemonClient(SIGNATURE, baseBundles, new Socket(
+                InetAddress.getByName("127.0.0.1"), daemon.getPort()), null);
+        TestDaemonClient.setDaemon(client);
+        return client;
+    }
+
+    private static class FakeDaemon extends Thread {
+        private final ServerSocket serverSocket;
+        private final String[] response;
+        private final List<String> request = new ArrayList<String>();
+
+        FakeDaemon(String[] response) throws IOException {
+            this.serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+            this.response = response;
+            setDaemon(true);
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        synchronized List<String> getRequest() {
+            return new ArrayList<String>(request);
+        }
+
+        @Override
+        public void run() {
+            try {
+                Socket socket = serverSocket.accept();
+                try {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                    PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+                    if (response.length > 0) {
+                        String line;
+                        while ((line = in.readLine()) != null) {
+                            synchronized (this) {
+                                request.add(line);
+                            }
+                            if (line.startsWith(TestDaemonClient.RUN_COMMAND)) {
+                                break;
+                            }
+                        }
+                        for (String responseLine : response) {
+                            out.println(responseLine);
+                        }
+                        out.flush();
+                        // keep the connection open until the client closes it
+                        while (in.readLine() != null) {
+                        }
+                    }
+                } finally {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                // client has gone
+            }
+        }
+
+        void close() throws Exception {
+            serverSocket.close();
+            join(10000);
+        }
+    }
+}
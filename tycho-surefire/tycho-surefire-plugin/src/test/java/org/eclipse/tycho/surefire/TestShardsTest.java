@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Sonatype Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Sonatype Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.surefire;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+public class TestShardsTest extends TestCase {
+
+    public void testPartitionWithoutDurations() {
+        List<List<String>> shards = TestShards.partition(
+                Arrays.asList("a/ATest.class", "a/BTest.class", "a/CTest.class"), new HashMap<String, Double>(), 2);
+
+        assertEquals(2, shards.size());
+        assertEquals(2, shards.get(0).size());
+        assertEquals(1, shards.get(1).size());
+    }
+
+    public void testPartitionBalancesDurations() {
+        Map<String, Double> durations = new HashMap<String, Double>();
+        durations.put("a.SlowTest", 10.0);
+        durations.put("a.ATest", 3.0);
+        durations.put("a.BTest", 3.0);
+        durations.put("a.CTest", 3.0);
+
+        List<List<String>> shards = TestShards.partition(
+                Arrays.asList("a/ATest.class", "a/BTest.class", "a/CTest.class", "a/SlowTest.class"), durations, 2);
+
+        assertEquals(Arrays.asList("a/SlowTest.class"), shards.get(0));
+        assertEquals(Arrays.asList("a/ATest.class", "a/BTest.class", "a/CTest.class"), shards.get(1));
+    }
+
+    public void testNoMoreShardsThanTests() {
+        List<List<String>> shards = TestShards.partition(Arrays.asList("a/ATest.class"),
+                new HashMap<String, Double>(), 4);
+        assertEquals(1, shards.size());
+
+        assertTrue(TestShards.partition(Collections.<String> emptyList(), new HashMap<String, Double>(), 4)
+                .isEmpty());
+    }
+
+    public void testReadDurations() throws IOException {
+        File reportsDir = File.createTempFile("reports", "");
+        reportsDir.delete();
+        reportsDir.mkdirs();
+        try {
+            writeFile(new File(reportsDir, "TEST-a.ATest.xml"), "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+                    + "<testsuite failures=\"0\" time=\"1,234.5\" errors=\"0\" skipped=\"0\" tests=\"1\" name=\"a.ATest\">\n"
+                    + "</testsuite>");
+            writeFile(new File(reportsDir, "a.ATest.txt"), "ignored");
+
+            Map<String, Double> durations = TestShards.readDurations(reportsDir);
+
+            assertEquals(1, durations.size());
+            assertEquals(1234.5, durations.get("a.ATest"), 0.001);
+        } finally {
+            FileUtils.deleteDirectory(reportsDir);
+        }
+    }
+
+    private static void writeFile(File file, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}